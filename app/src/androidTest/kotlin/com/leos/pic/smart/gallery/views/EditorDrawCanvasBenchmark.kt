@@ -0,0 +1,96 @@
+package ca.on.sudbury.hojat.smartgallery.views
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.os.SystemClock
+import android.util.Xml
+import android.view.MotionEvent
+import androidx.benchmark.junit4.BenchmarkRule
+import androidx.benchmark.junit4.measureRepeated
+import androidx.test.platform.app.InstrumentationRegistry
+import org.junit.After
+import org.junit.Rule
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.junit.runners.Parameterized
+import java.io.StringReader
+import java.util.Random
+
+/**
+ * Measures a frame of the draw canvas holding a synthetic set of strokes. A canvas that was never laid out has no
+ * stroke layer and redraws every stroke like before the layer was added, a laid out one only draws its layer.
+ */
+@RunWith(Parameterized::class)
+class EditorDrawCanvasBenchmark(private val strokeCount: Int) {
+    companion object {
+        private const val WIDTH = 1080
+        private const val HEIGHT = 1920
+        private const val POINTS_PER_STROKE = 40
+
+        @JvmStatic
+        @Parameterized.Parameters(name = "{0} strokes")
+        fun strokeCounts() = listOf(50, 200, 500)
+    }
+
+    @get:Rule
+    val benchmarkRule = BenchmarkRule()
+
+    private val frame = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888)
+
+    @After
+    fun tearDown() {
+        frame.recycle()
+    }
+
+    @Test
+    fun drawEveryStroke() {
+        measureFrames(createCanvas(false))
+    }
+
+    @Test
+    fun drawStrokeLayer() {
+        measureFrames(createCanvas(true))
+    }
+
+    private fun measureFrames(drawCanvas: EditorDrawCanvas) {
+        val canvas = Canvas(frame)
+        benchmarkRule.measureRepeated {
+            drawCanvas.draw(canvas)
+        }
+    }
+
+    private fun createCanvas(withLayout: Boolean): EditorDrawCanvas {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        val parser = Xml.newPullParser()
+        parser.setInput(StringReader("<view/>"))
+        parser.next()
+
+        val drawCanvas = EditorDrawCanvas(context, Xml.asAttributeSet(parser))
+        if (withLayout) {
+            drawCanvas.layout(0, 0, WIDTH, HEIGHT)
+        }
+
+        // the same scribbles for every run, each a stroke of its own color
+        val random = Random(47)
+        for (stroke in 0 until strokeCount) {
+            drawCanvas.updateColor(random.nextInt() or 0xFF000000.toInt())
+            var x = random.nextFloat() * WIDTH
+            var y = random.nextFloat() * HEIGHT
+            touch(drawCanvas, MotionEvent.ACTION_DOWN, x, y)
+            for (point in 0 until POINTS_PER_STROKE) {
+                x = (x + random.nextFloat() * 60 - 30).coerceIn(0f, WIDTH.toFloat())
+                y = (y + random.nextFloat() * 60 - 30).coerceIn(0f, HEIGHT.toFloat())
+                touch(drawCanvas, MotionEvent.ACTION_MOVE, x, y)
+            }
+            touch(drawCanvas, MotionEvent.ACTION_UP, x, y)
+        }
+        return drawCanvas
+    }
+
+    private fun touch(drawCanvas: EditorDrawCanvas, action: Int, x: Float, y: Float) {
+        val time = SystemClock.uptimeMillis()
+        val event = MotionEvent.obtain(time, time, action, x, y, 0)
+        drawCanvas.onTouchEvent(event)
+        event.recycle()
+    }
+}
@@ -2,8 +2,11 @@ package ca.on.sudbury.hojat.smartgallery
 
 import android.app.Application
 import ca.on.hojat.fingerprint.core.Reprint
+import ca.on.hojat.palette.bitmappool.BitmapPools
 import ca.on.sudbury.hojat.smartgallery.extensions.baseConfig
+import ca.on.sudbury.hojat.smartgallery.helpers.GlideBitmapPool
 import ca.on.sudbury.hojat.smartgallery.usecases.IsNougatPlusUseCase
+import com.bumptech.glide.Glide
 import com.squareup.picasso.Downloader
 import com.squareup.picasso.Picasso
 import java.util.Locale
@@ -30,6 +33,9 @@ class App : Application() {
             override fun shutdown() {}
         }).build())
 
+        // Let tiles, crops and filter previews reuse Glide's bitmaps
+        BitmapPools.shared = GlideBitmapPool(Glide.get(this).bitmapPool)
+
         // Plant the Timber
         Timber.plant(Timber.DebugTree())
     }
@@ -44,7 +44,7 @@ import ca.on.sudbury.hojat.smartgallery.extensions.baseConfig
 import ca.on.sudbury.hojat.smartgallery.extensions.checkWhatsNew
 import ca.on.sudbury.hojat.smartgallery.extensions.config
 import ca.on.sudbury.hojat.smartgallery.extensions.createDirectoryFromMedia
-import ca.on.sudbury.hojat.smartgallery.extensions.deleteFiles
+import ca.on.sudbury.hojat.smartgallery.extensions.deleteFilesInBatch
 import ca.on.sudbury.hojat.smartgallery.extensions.getCachedDirectories
 import ca.on.sudbury.hojat.smartgallery.extensions.getCachedMedia
 import ca.on.sudbury.hojat.smartgallery.extensions.getDirectorySortingValue
@@ -87,6 +87,7 @@ import ca.on.sudbury.hojat.smartgallery.extensions.underlineText
 import ca.on.sudbury.hojat.smartgallery.extensions.updateDBDirectory
 import ca.on.sudbury.hojat.smartgallery.extensions.updateWidgets
 import ca.on.sudbury.hojat.smartgallery.helpers.DAY_SECONDS
+import ca.on.sudbury.hojat.smartgallery.helpers.DateTakenHarvester
 import ca.on.sudbury.hojat.smartgallery.helpers.DIRECTORY
 import ca.on.sudbury.hojat.smartgallery.helpers.FAVORITES
 import ca.on.sudbury.hojat.smartgallery.helpers.FileLocation
@@ -141,6 +142,7 @@ import java.io.FileInputStream
 import java.io.FileNotFoundException
 import java.io.InputStream
 import java.io.OutputStream
+import timber.log.Timber
 
 class MainActivity : SimpleActivity(), DirectoryOperationsListener {
 
@@ -168,6 +170,7 @@ class MainActivity : SimpleActivity(), DirectoryOperationsListener {
     private var mWasMediaManagementPromptShown = false
     private var mLatestMediaId = 0L
     private var mLatestMediaDateId = 0L
+    private var mDateTakenHarvester: DateTakenHarvester? = null
     private var mCurrentPathPrefix =
         ""                 // used at "Group direct subfolders" for navigation
     private var mOpenedSubfolders =
@@ -262,6 +265,7 @@ class MainActivity : SimpleActivity(), DirectoryOperationsListener {
             config.tempSkipDeleteConfirmation = false
             removeTempFolder()
             checkRecycleBinItems()
+            backfillDateTakens()
             startNewPhotoFetcher()
         }
 
@@ -457,6 +461,7 @@ class MainActivity : SimpleActivity(), DirectoryOperationsListener {
             mTempShowHiddenHandler.removeCallbacksAndMessages(null)
             removeTempFolder()
             unregisterFileUpdateListener()
+            mDateTakenHarvester?.cancel()
 
             if (!config.showAll) {
                 mLastMediaFetcher?.shouldStop = true
@@ -916,10 +921,16 @@ class MainActivity : SimpleActivity(), DirectoryOperationsListener {
         folders: ArrayList<File>
     ) {
         val otgPath = config.otgPath
-        deleteFiles(fileDirItems) {
-            runOnUiThread {
-                refreshItems()
+        deleteFilesInBatch(fileDirItems, !config.useRecycleBin) { result ->
+            if (result.failedPaths.isNotEmpty()) {
+                val notDeleted = resources.getQuantityString(
+                    R.plurals.items_not_deleted,
+                    result.failedPaths.size,
+                    result.failedPaths.size
+                )
+                Toast.makeText(this, notDeleted, Toast.LENGTH_LONG).show()
             }
+            refreshItems()
 
             RunOnBackgroundThreadUseCase {
 
@@ -1769,6 +1780,25 @@ class MainActivity : SimpleActivity(), DirectoryOperationsListener {
         }
     }
 
+    // read the EXIF dates of new images in the background, so sorting by date taken doesn't have to wait for them
+    private fun backfillDateTakens() {
+        Handler().postDelayed({
+            if (isDestroyed || !hasPermission(PERMISSION_READ_STORAGE)) {
+                return@postDelayed
+            }
+
+            val harvester = DateTakenHarvester(applicationContext)
+            mDateTakenHarvester = harvester
+            RunOnBackgroundThreadUseCase {
+                try {
+                    harvester.backfill()
+                } catch (e: Exception) {
+                    Timber.e(e)
+                }
+            }
+        }, 5000L)
+    }
+
     // exclude probably unwanted folders, for example facebook stickers are split between hundreds of separate folders like
     // /storage/emulated/0/Android/data/com.facebook.orca/files/stickers/175139712676531/209575122566323
     // /storage/emulated/0/Android/data/com.facebook.orca/files/stickers/497837993632037/499671223448714
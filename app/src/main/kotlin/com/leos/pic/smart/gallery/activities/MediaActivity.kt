@@ -23,6 +23,7 @@ import com.bumptech.glide.Glide
 import com.bumptech.glide.request.RequestOptions
 import com.bumptech.glide.request.target.SimpleTarget
 import com.bumptech.glide.request.transition.Transition
+import ca.on.sudbury.hojat.smartgallery.helpers.MediumMetadataIndex
 import ca.on.sudbury.hojat.smartgallery.helpers.FAVORITES
 import ca.on.sudbury.hojat.smartgallery.helpers.SORT_BY_RANDOM
 import ca.on.sudbury.hojat.smartgallery.helpers.NavigationIcon
@@ -52,7 +53,6 @@ import ca.on.sudbury.hojat.smartgallery.extensions.emptyAndDisableTheRecycleBin
 import ca.on.sudbury.hojat.smartgallery.extensions.isDownloadsFolder
 import ca.on.sudbury.hojat.smartgallery.extensions.tryDeleteFileDirItem
 import ca.on.sudbury.hojat.smartgallery.extensions.movePathsInRecycleBin
-import ca.on.sudbury.hojat.smartgallery.extensions.deleteDBPath
 import ca.on.sudbury.hojat.smartgallery.extensions.mediaDB
 import ca.on.sudbury.hojat.smartgallery.extensions.getCachedMedia
 import ca.on.sudbury.hojat.smartgallery.extensions.openPath
@@ -86,7 +86,7 @@ import ca.on.sudbury.hojat.smartgallery.extensions.getLatestMediaId
 import ca.on.sudbury.hojat.smartgallery.extensions.getIsPathDirectory
 import ca.on.sudbury.hojat.smartgallery.extensions.isMediaFile
 import ca.on.sudbury.hojat.smartgallery.extensions.recycleBinPath
-import ca.on.sudbury.hojat.smartgallery.extensions.deleteFiles
+import ca.on.sudbury.hojat.smartgallery.extensions.deleteFilesInBatch
 import ca.on.sudbury.hojat.smartgallery.extensions.getProperTextColor
 import ca.on.sudbury.hojat.smartgallery.extensions.handleLockedFolderOpening
 import ca.on.sudbury.hojat.smartgallery.extensions.isExternalStorageManager
@@ -1030,6 +1030,7 @@ class MediaActivity : SimpleActivity(), MediaOperationsListener {
                 } catch (_: Exception) {
                 }
             }.start()
+            MediumMetadataIndex.getInstance(applicationContext).update(mediaToInsert)
         }
     }
 
@@ -1066,21 +1067,28 @@ class MediaActivity : SimpleActivity(), MediaOperationsListener {
     private fun shouldSkipAuthentication() = intent.getBooleanExtra(SKIP_AUTHENTICATION, false)
 
     private fun deleteFilteredFiles(filtered: ArrayList<FileDirItem>) {
-        deleteFiles(filtered) {
-            if (!it) {
+        val deleteFromDatabase = filtered.first().path.startsWith(recycleBinPath) || !config.useRecycleBin
+        deleteFilesInBatch(filtered, deleteFromDatabase) { result ->
+            if (!result.wasSuccess) {
                 Toast.makeText(this, R.string.unknown_error_occurred, Toast.LENGTH_LONG).show()
-                return@deleteFiles
+                // the adapter dropped the whole selection already, bring it back
+                refreshItems()
+                return@deleteFilesInBatch
             }
 
-            mMedia.removeAll { filtered.map { it.path }.contains((it as? Medium)?.path) }
+            val deletedPaths = result.deletedPaths.toHashSet()
+            mMedia.removeAll { deletedPaths.contains((it as? Medium)?.path) }
 
-            RunOnBackgroundThreadUseCase {
-                val useRecycleBin = config.useRecycleBin
-                filtered.forEach {
-                    if (it.path.startsWith(recycleBinPath) || !useRecycleBin) {
-                        deleteDBPath(it.path)
-                    }
-                }
+            if (result.failedPaths.isNotEmpty()) {
+                val notDeleted = resources.getQuantityString(
+                    R.plurals.items_not_deleted,
+                    result.failedPaths.size,
+                    result.failedPaths.size
+                )
+                Toast.makeText(this, notDeleted, Toast.LENGTH_LONG).show()
+                // the adapter dropped the whole selection already, bring the failed items back with one update
+                refreshItems()
+                return@deleteFilesInBatch
             }
 
             if (mMedia.isEmpty()) {
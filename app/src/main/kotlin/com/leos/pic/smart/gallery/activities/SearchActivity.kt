@@ -4,6 +4,8 @@ import android.app.SearchManager
 import android.content.Context
 import android.content.Intent
 import android.os.Bundle
+import android.os.Handler
+import android.os.Looper
 import android.view.Menu
 import android.view.MenuItem
 import android.view.View
@@ -20,7 +22,7 @@ import ca.on.sudbury.hojat.smartgallery.extensions.getProperPrimaryColor
 import ca.on.sudbury.hojat.smartgallery.extensions.recycleBinPath
 import ca.on.sudbury.hojat.smartgallery.extensions.isVideoFast
 import ca.on.sudbury.hojat.smartgallery.extensions.isMediaFile
-import ca.on.sudbury.hojat.smartgallery.extensions.deleteFiles
+import ca.on.sudbury.hojat.smartgallery.extensions.deleteFilesInBatch
 import ca.on.sudbury.hojat.smartgallery.helpers.NavigationIcon
 import ca.on.sudbury.hojat.smartgallery.models.FileDirItem
 import ca.on.hojat.palette.views.MyGridLayoutManager
@@ -29,22 +31,27 @@ import ca.on.sudbury.hojat.smartgallery.asynctasks.GetMediaAsynctask
 import ca.on.sudbury.hojat.smartgallery.base.SimpleActivity
 import ca.on.sudbury.hojat.smartgallery.helpers.GridSpacingItemDecoration
 import ca.on.sudbury.hojat.smartgallery.helpers.MediaFetcher
+import ca.on.sudbury.hojat.smartgallery.helpers.MediaSearch
 import ca.on.sudbury.hojat.smartgallery.helpers.PATH
 import ca.on.sudbury.hojat.smartgallery.helpers.SHOW_ALL
 import ca.on.sudbury.hojat.smartgallery.database.MediaOperationsListener
 import ca.on.sudbury.hojat.smartgallery.databinding.ActivitySearchBinding
 import ca.on.sudbury.hojat.smartgallery.extensions.config
-import ca.on.sudbury.hojat.smartgallery.extensions.deleteDBPath
 import ca.on.sudbury.hojat.smartgallery.extensions.openPath
 import ca.on.sudbury.hojat.smartgallery.extensions.getCachedMedia
+import ca.on.sudbury.hojat.smartgallery.extensions.mediaDB
 import ca.on.sudbury.hojat.smartgallery.extensions.movePathsInRecycleBin
 import ca.on.sudbury.hojat.smartgallery.helpers.ViewType
 import ca.on.sudbury.hojat.smartgallery.models.Medium
 import ca.on.sudbury.hojat.smartgallery.models.ThumbnailItem
 import ca.on.sudbury.hojat.smartgallery.usecases.RunOnBackgroundThreadUseCase
 import java.io.File
+import java.util.Locale
 
 class SearchActivity : SimpleActivity(), MediaOperationsListener {
+    companion object {
+        private const val SEARCH_DELAY = 150L
+    }
 
     private lateinit var binding: ActivitySearchBinding
     private var mIsSearchOpen = false
@@ -53,6 +60,14 @@ class SearchActivity : SimpleActivity(), MediaOperationsListener {
     private var mSearchMenuItem: MenuItem? = null
     private var mCurrAsyncTask: GetMediaAsynctask? = null
     private var mAllMedia = ArrayList<ThumbnailItem>()
+    private val mSearchHandler = Handler(Looper.getMainLooper())
+    private var mSearch: MediaSearch? = null
+    private var mSearchResults = ArrayList<Medium>()
+    private var mSearchGeneration = 0
+    private var mIsLoadingPage = false
+
+    @Volatile
+    private var mAllowedFolders: Set<String>? = null
 
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
@@ -72,6 +87,8 @@ class SearchActivity : SimpleActivity(), MediaOperationsListener {
     override fun onDestroy() {
         super.onDestroy()
         mCurrAsyncTask?.stopFetching()
+        mSearchHandler.removeCallbacksAndMessages(null)
+        mSearch?.cancel()
     }
 
     private fun setupOptionsMenu() {
@@ -125,26 +142,89 @@ class SearchActivity : SimpleActivity(), MediaOperationsListener {
     }
 
     private fun textChanged(text: String) {
+        mSearchHandler.removeCallbacksAndMessages(null)
+        mSearchGeneration++
+        mSearch?.cancel()
+        mSearch = null
+        mIsLoadingPage = false
+
+        if (text.isEmpty()) {
+            showMedia(mAllMedia)
+        } else {
+            // wait for the user to stop typing, searching for every single letter is wasted work
+            mSearchHandler.postDelayed({ startSearch(text) }, SEARCH_DELAY)
+        }
+    }
+
+    private fun startSearch(text: String) {
+        val generation = mSearchGeneration
+        mIsLoadingPage = true
         RunOnBackgroundThreadUseCase {
+            val search = MediaSearch(applicationContext, text, getAllowedFolders())
+            val results = ArrayList(search.nextPage())
+            val grouped = MediaFetcher(applicationContext).groupMedia(ArrayList(results), "")
+            runOnUiThread {
+                if (generation != mSearchGeneration) {
+                    search.cancel()
+                    return@runOnUiThread
+                }
 
-            val filtered =
-                mAllMedia.filter { it is Medium && it.name.contains(text, true) } as ArrayList
-            filtered.sortBy { it is Medium && !it.name.startsWith(text, true) }
-            val grouped =
-                MediaFetcher(applicationContext).groupMedia(filtered as ArrayList<Medium>, "")
+                mIsLoadingPage = false
+                mSearch = search
+                mSearchResults = results
+                showMedia(grouped)
+            }
+        }
+    }
+
+    private fun loadNextPage() {
+        val search = mSearch ?: return
+        if (mIsLoadingPage || search.isExhausted) {
+            return
+        }
+
+        mIsLoadingPage = true
+        val generation = mSearchGeneration
+        val results = ArrayList(mSearchResults)
+        RunOnBackgroundThreadUseCase {
+            val page = search.nextPage()
+            results.addAll(page)
+            val grouped = MediaFetcher(applicationContext).groupMedia(ArrayList(results), "")
             runOnUiThread {
-                if (grouped.isEmpty()) {
-                    binding.searchEmptyTextPlaceholder.text = getString(R.string.no_items_found)
-                    binding.searchEmptyTextPlaceholder.visibility = View.VISIBLE
-                } else {
-                    binding.searchEmptyTextPlaceholder.visibility = View.GONE
+                if (generation != mSearchGeneration) {
+                    return@runOnUiThread
                 }
 
-                handleGridSpacing(grouped)
-                getMediaAdapter()?.updateMedia(grouped)
+                mIsLoadingPage = false
+                if (page.isNotEmpty()) {
+                    mSearchResults = results
+                    showMedia(grouped)
+                }
             }
+        }
+    }
 
+    private fun showMedia(media: ArrayList<ThumbnailItem>) {
+        if (media.isEmpty()) {
+            binding.searchEmptyTextPlaceholder.text = getString(R.string.no_items_found)
+            binding.searchEmptyTextPlaceholder.visibility = View.VISIBLE
+        } else {
+            binding.searchEmptyTextPlaceholder.visibility = View.GONE
         }
+
+        handleGridSpacing(media)
+        getMediaAdapter()?.updateMedia(media)
+    }
+
+    private fun getAllowedFolders(): Set<String> {
+        mAllowedFolders?.let { return it }
+
+        val folders = MediaFetcher(applicationContext).getFoldersToScan()
+            .filter { !config.isFolderProtected(it) }
+            .map { it.lowercase(Locale.ROOT) }
+            .toHashSet()
+        mAllowedFolders = folders
+        return folders
     }
 
     private fun setupAdapter() {
@@ -165,6 +245,19 @@ class SearchActivity : SimpleActivity(), MediaOperationsListener {
             }.apply {
                 binding.searchGrid.adapter = this
             }
+            binding.searchGrid.addOnScrollListener(object : RecyclerView.OnScrollListener() {
+                override fun onScrolled(recyclerView: RecyclerView, dx: Int, dy: Int) {
+                    val isAtEnd = if (config.scrollHorizontally) {
+                        !recyclerView.canScrollHorizontally(1)
+                    } else {
+                        !recyclerView.canScrollVertically(1)
+                    }
+
+                    if (isAtEnd) {
+                        loadNextPage()
+                    }
+                }
+            })
             setupLayoutManager()
             handleGridSpacing(mAllMedia)
         } else if (mLastSearchedText.isEmpty()) {
@@ -284,9 +377,20 @@ class SearchActivity : SimpleActivity(), MediaOperationsListener {
         mCurrAsyncTask?.stopFetching()
         mCurrAsyncTask = GetMediaAsynctask(applicationContext, "", showAll = true) {
             mAllMedia = it.clone() as ArrayList<ThumbnailItem>
-            if (updateItems) {
-                textChanged(mLastSearchedText)
-            }
+            val mediaToInsert = mAllMedia.filter { it is Medium && it.deletedTS == 0L }.map { it as Medium }
+            Thread {
+                // the search index follows the media table, keep it up to date with the scan
+                try {
+                    mediaDB.insertAll(mediaToInsert)
+                } catch (_: Exception) {
+                }
+
+                runOnUiThread {
+                    if (updateItems || mLastSearchedText.isNotEmpty()) {
+                        textChanged(mLastSearchedText)
+                    }
+                }
+            }.start()
         }
 
         mCurrAsyncTask!!.execute()
@@ -327,21 +431,27 @@ class SearchActivity : SimpleActivity(), MediaOperationsListener {
     }
 
     private fun deleteFilteredFiles(filtered: ArrayList<FileDirItem>) {
-        deleteFiles(filtered) {
-            if (!it) {
+        val deleteFromDatabase = filtered.first().path.startsWith(recycleBinPath) || !config.useRecycleBin
+        deleteFilesInBatch(filtered, deleteFromDatabase) { result ->
+            if (!result.wasSuccess) {
                 Toast.makeText(this, R.string.unknown_error_occurred,Toast.LENGTH_LONG).show()
-                return@deleteFiles
+                // the adapter dropped the whole selection already, bring it back
+                refreshItems()
+                return@deleteFilesInBatch
             }
 
-            mAllMedia.removeAll { filtered.map { it.path }.contains((it as? Medium)?.path) }
-
-            RunOnBackgroundThreadUseCase {
-                val useRecycleBin = config.useRecycleBin
-                filtered.forEach {
-                    if (it.path.startsWith(recycleBinPath) || !useRecycleBin) {
-                        deleteDBPath(it.path)
-                    }
-                }
+            val deletedPaths = result.deletedPaths.toHashSet()
+            mAllMedia.removeAll { deletedPaths.contains((it as? Medium)?.path) }
+            mSearchResults.removeAll { deletedPaths.contains(it.path) }
+
+            if (result.failedPaths.isNotEmpty()) {
+                val notDeleted = resources.getQuantityString(
+                    R.plurals.items_not_deleted,
+                    result.failedPaths.size,
+                    result.failedPaths.size
+                )
+                Toast.makeText(this, notDeleted, Toast.LENGTH_LONG).show()
+                refreshItems()
             }
         }
     }
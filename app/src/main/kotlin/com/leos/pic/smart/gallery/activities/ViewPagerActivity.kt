@@ -14,6 +14,7 @@ import android.database.Cursor
 import android.graphics.Bitmap
 import android.graphics.Color
 import android.graphics.Point
+import android.graphics.Rect
 import android.graphics.drawable.ColorDrawable
 import android.graphics.drawable.Icon
 import android.net.Uri
@@ -30,6 +31,7 @@ import android.widget.Toast
 import androidx.exifinterface.media.ExifInterface
 import androidx.print.PrintHelper
 import androidx.viewpager.widget.ViewPager
+import ca.on.hojat.renderer.cropper.TiledBitmapWriter
 import ca.on.sudbury.hojat.smartgallery.BuildConfig
 import ca.on.sudbury.hojat.smartgallery.R
 import com.bumptech.glide.Glide
@@ -39,6 +41,7 @@ import com.bumptech.glide.load.engine.GlideException
 import com.bumptech.glide.request.RequestListener
 import com.bumptech.glide.request.RequestOptions
 import com.bumptech.glide.request.target.Target
+import ca.on.sudbury.hojat.smartgallery.helpers.MediumMetadataIndex
 import ca.on.sudbury.hojat.smartgallery.helpers.FAVORITES
 import ca.on.sudbury.hojat.smartgallery.helpers.NOMEDIA
 import ca.on.sudbury.hojat.smartgallery.helpers.SORT_BY_RANDOM
@@ -1360,20 +1363,27 @@ class ViewPagerActivity : SimpleActivity(), ViewPager.OnPageChangeListener,
                         oldExif = ExifInterface(inputStream!!)
                     }
 
-                    val newBitmap = Glide.with(applicationContext).asBitmap().load(oldPath)
-                        .submit(newSize.x, newSize.y).get()
+                    // huge outputs are written by strips, a single bitmap of them could run out of memory
+                    val format = newPath.getCompressionFormat()
+                    val writeTiled = TiledBitmapWriter.shouldWriteTiled(newSize.x, newSize.y, format)
+                    val newBitmap = if (writeTiled) {
+                        null
+                    } else {
+                        Glide.with(applicationContext).asBitmap().load(oldPath)
+                            .submit(newSize.x, newSize.y).get()
+                    }
 
                     val newFile = File(newPath)
                     val newFileDirItem = FileDirItem(newPath, newPath.getFilenameFromPath())
                     getFileOutputStream(newFileDirItem, true) {
                         if (it != null) {
-                            saveBitmap(
-                                newFile,
-                                newBitmap,
-                                it,
-                                oldExif,
-                                File(oldPath).lastModified()
-                            )
+                            saveBitmap(newFile, it, oldExif, File(oldPath).lastModified()) { out ->
+                                if (newBitmap != null) {
+                                    newBitmap.compress(format, 90, out)
+                                } else {
+                                    writeResizedImageTiled(oldPath, originalSize, newSize, out, format)
+                                }
+                            }
                         } else {
                             Toast.makeText(this, R.string.image_editing_failed, Toast.LENGTH_LONG)
                                 .show()
@@ -1392,16 +1402,44 @@ class ViewPagerActivity : SimpleActivity(), ViewPager.OnPageChangeListener,
         )
     }
 
+    /**
+     * Writes the resized image by strips, in the orientation given by its EXIF data like when it's loaded with Glide.
+     */
+    private fun writeResizedImageTiled(
+        path: String,
+        originalSize: Point,
+        newSize: Point,
+        out: OutputStream,
+        format: Bitmap.CompressFormat
+    ) {
+        val exif = ExifInterface(path)
+        val degrees = TiledBitmapWriter.getRotationBeforeFlip(exif.rotationDegrees, exif.isFlipped)
+        val sideways = degrees % 180 != 0
+        TiledBitmapWriter.write(
+            this,
+            Uri.fromFile(File(path)),
+            Rect(0, 0, originalSize.x, originalSize.y),
+            degrees,
+            exif.isFlipped,
+            false,
+            if (sideways) newSize.y else newSize.x,
+            if (sideways) newSize.x else newSize.y,
+            out,
+            format,
+            90
+        )
+    }
+
     @TargetApi(Build.VERSION_CODES.N)
     private fun saveBitmap(
         file: File,
-        bitmap: Bitmap,
         out: OutputStream,
         oldExif: ExifInterface?,
-        lastModified: Long
+        lastModified: Long,
+        write: (OutputStream) -> Unit
     ) {
         try {
-            bitmap.compress(file.absolutePath.getCompressionFormat(), 90, out)
+            write(out)
 
             if (IsNougatPlusUseCase()) {
                 val newExif = ExifInterface(file.absolutePath)
@@ -1634,6 +1672,7 @@ class ViewPagerActivity : SimpleActivity(), ViewPager.OnPageChangeListener,
         }
 
         refreshUI(media, refetchViewPagerPosition)
+        MediumMetadataIndex.getInstance(applicationContext).update(media)
     }
 
     private fun refreshUI(media: ArrayList<Medium>, refetchViewPagerPosition: Boolean) {
@@ -63,6 +63,7 @@ import ca.on.sudbury.hojat.smartgallery.models.ThumbnailItem
 import ca.on.sudbury.hojat.smartgallery.models.ThumbnailSection
 import ca.on.hojat.palette.recyclerviewfastscroller.RecyclerViewFastScroller
 import ca.on.sudbury.hojat.smartgallery.BuildConfig
+import ca.on.sudbury.hojat.smartgallery.dialogs.BatchConvertDialogFragment
 import ca.on.sudbury.hojat.smartgallery.dialogs.DeleteWithRememberDialogFragment
 import ca.on.sudbury.hojat.smartgallery.dialogs.RenameDialogFragment
 import ca.on.sudbury.hojat.smartgallery.dialogs.RenameItemDialogFragment
@@ -73,7 +74,9 @@ import ca.on.sudbury.hojat.smartgallery.extensions.sharePathsIntent
 import ca.on.sudbury.hojat.smartgallery.helpers.MediaType
 import ca.on.sudbury.hojat.smartgallery.helpers.SmartGalleryTimeFormat
 import ca.on.sudbury.hojat.smartgallery.helpers.ViewType
+import ca.on.sudbury.hojat.smartgallery.usecases.IsGifUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.IsOreoPlusUseCase
+import ca.on.sudbury.hojat.smartgallery.usecases.IsSvgUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.IsRPlusUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.ApplyColorFilterUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.BeVisibleOrGoneUseCase
@@ -202,6 +205,8 @@ class MediaAdapter(
             findItem(R.id.cab_rename).isVisible = !isInRecycleBin
             findItem(R.id.cab_add_to_favorites).isVisible = !isInRecycleBin
             findItem(R.id.cab_fix_date_taken).isVisible = !isInRecycleBin
+            findItem(R.id.cab_resize_and_convert).isVisible =
+                !isInRecycleBin && selectedPaths.any { isConvertibleImage(it) }
             findItem(R.id.cab_move_to).isVisible = !isInRecycleBin
             findItem(R.id.cab_open_with).isVisible = isOneItemSelected
             findItem(R.id.cab_edit).isVisible = isOneItemSelected
@@ -242,6 +247,7 @@ class MediaAdapter(
             R.id.cab_select_all -> selectAll()
             R.id.cab_open_with -> openPath()
             R.id.cab_fix_date_taken -> fixDateTaken()
+            R.id.cab_resize_and_convert -> resizeAndConvertSelection()
             R.id.cab_set_as -> setAs()
             R.id.cab_delete -> checkDeleteConfirmation()
         }
@@ -564,6 +570,43 @@ class MediaAdapter(
         }
     }
 
+    private fun resizeAndConvertSelection() {
+        val paths = getSelectedPaths().filter { isConvertibleImage(it) }
+        val sdCardPath = paths.firstOrNull { path ->
+            with(activity) {
+                !IsRPlusUseCase() && (
+                        IsPathOnSdUseCase(this, path) ||
+                                IsPathOnOtgUseCase(this, path))
+                        && !isSDCardSetAsDefaultStorage()
+            }
+        }
+
+        if (sdCardPath != null) {
+            activity.handleSAFDialog(sdCardPath) {
+                if (it) {
+                    showBatchConvertDialog(paths)
+                }
+            }
+        } else {
+            showBatchConvertDialog(paths)
+        }
+    }
+
+    private fun showBatchConvertDialog(paths: List<String>) {
+        BatchConvertDialogFragment(paths) { result ->
+            val message = activity.getString(
+                R.string.files_converted,
+                result.writtenPaths.size,
+                result.failedCount
+            )
+            Toast.makeText(activity, message, Toast.LENGTH_LONG).show()
+            listener?.refreshItems()
+            finishActMode()
+        }.show(activity.supportFragmentManager, BatchConvertDialogFragment.TAG)
+    }
+
+    private fun isConvertibleImage(path: String) = path.isImageFast() && !IsGifUseCase(path) && !IsSvgUseCase(path)
+
     private fun checkDeleteConfirmation() {
         activity.handleMediaManagementPrompt {
             if (config.isDeletePasswordProtectionOn) {
@@ -658,7 +701,7 @@ class MediaAdapter(
                     removeMedia.add(medium)
                 }
 
-                media.removeAll(removeMedia)
+                media.removeAll(removeMedia.toHashSet())
                 listener?.tryDeleteFiles(fileDirItems)
                 listener?.updateMediaGridDecoration(media)
                 removeSelectedItems(positions)
@@ -312,8 +312,18 @@ abstract class MyRecyclerViewAdapter(
     }
 
     protected fun removeSelectedItems(positions: ArrayList<Int>) {
-        positions.forEach {
-            notifyItemRemoved(it)
+        // neighbouring positions are removed as one range, so large selections don't get animated item by item
+        val sortedPositions = positions.sortedDescending()
+        var index = 0
+        while (index < sortedPositions.size) {
+            var start = sortedPositions[index]
+            var count = 1
+            while (index + count < sortedPositions.size && sortedPositions[index + count] == start - 1) {
+                start--
+                count++
+            }
+            notifyItemRangeRemoved(start, count)
+            index += count
         }
         finishActMode()
     }
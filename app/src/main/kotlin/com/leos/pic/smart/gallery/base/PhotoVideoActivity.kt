@@ -25,7 +25,6 @@ import ca.on.sudbury.hojat.smartgallery.extensions.setAs
 import ca.on.sudbury.hojat.smartgallery.extensions.openPath
 import ca.on.sudbury.hojat.smartgallery.extensions.openEditor
 import ca.on.sudbury.hojat.smartgallery.extensions.showFileOnMap
-import ca.on.sudbury.hojat.smartgallery.extensions.parseFileChannel
 import ca.on.sudbury.hojat.smartgallery.extensions.isImageFast
 import ca.on.sudbury.hojat.smartgallery.extensions.isVideoFast
 import ca.on.sudbury.hojat.smartgallery.extensions.isRawFast
@@ -59,6 +58,7 @@ import ca.on.sudbury.hojat.smartgallery.fragments.ViewPagerFragment
 import ca.on.sudbury.hojat.smartgallery.helpers.BottomAction
 import ca.on.sudbury.hojat.smartgallery.helpers.MEDIUM
 import ca.on.sudbury.hojat.smartgallery.helpers.PATH
+import ca.on.sudbury.hojat.smartgallery.helpers.PanoramaDetector
 import ca.on.sudbury.hojat.smartgallery.helpers.SKIP_AUTHENTICATION
 import ca.on.sudbury.hojat.smartgallery.helpers.SHOW_FAVORITES
 import ca.on.sudbury.hojat.smartgallery.helpers.IS_VIEW_INTENT
@@ -75,7 +75,6 @@ import ca.on.sudbury.hojat.smartgallery.usecases.RunOnBackgroundThreadUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.ShowSystemUiUseCase
 import ca.on.sudbury.hojat.smartgallery.video.VideoPlayerActivity
 import java.io.File
-import java.io.FileInputStream
 
 open class PhotoVideoActivity : SimpleActivity(), ViewPagerFragment.FragmentListener {
 
@@ -348,10 +347,7 @@ open class PhotoVideoActivity : SimpleActivity(), ViewPagerFragment.FragmentList
         val realPath = intent?.extras?.getString(REAL_FILE_PATH) ?: ""
         try {
             if (realPath.isNotEmpty()) {
-                val fis = FileInputStream(File(realPath))
-                parseFileChannel(realPath, fis.channel, 0, 0, 0) {
-                    isPanorama = true
-                }
+                isPanorama = PanoramaDetector.isPanoramaVideo(realPath)
             }
         } catch (ignored: Exception) {
         } catch (ignored: OutOfMemoryError) {
@@ -31,6 +31,9 @@ interface FavoritesDao {
     @Query("DELETE FROM favorites WHERE full_path = :path COLLATE NOCASE")
     fun deleteFavoritePath(path: String)
 
+    @Query("DELETE FROM favorites WHERE full_path COLLATE NOCASE IN (:paths)")
+    fun deleteFavoritePaths(paths: List<String>)
+
     @Query("DELETE FROM favorites")
     fun clearFavorites()
 }
@@ -21,6 +21,15 @@ interface MediumDao {
     @Query("SELECT filename, full_path, parent_path, last_modified, date_taken, size, type, video_duration, is_favorite, deleted_ts, media_store_id FROM media WHERE deleted_ts != 0")
     fun getDeletedMedia(): List<Medium>
 
+    @Query("SELECT media.filename, media.full_path, media.parent_path, media.last_modified, media.date_taken, media.size, media.type, media.video_duration, media.is_favorite, media.deleted_ts, media.media_store_id FROM media JOIN media_fts ON media.id = media_fts.docid WHERE media_fts MATCH :match AND media.deleted_ts = 0 AND media.type IN (:types) ORDER BY media.filename NOT LIKE :prefix ESCAPE '\\', media.filename COLLATE NOCASE LIMIT :limit OFFSET :offset")
+    fun searchMediaByWords(match: String, prefix: String, types: List<Int>, limit: Int, offset: Int): List<Medium>
+
+    @Query("SELECT filename, full_path, parent_path, last_modified, date_taken, size, type, video_duration, is_favorite, deleted_ts, media_store_id FROM media WHERE deleted_ts = 0 AND type IN (:types) AND filename LIKE :pattern ESCAPE '\\' AND id NOT IN (SELECT docid FROM media_fts WHERE media_fts MATCH :match) ORDER BY filename COLLATE NOCASE LIMIT :limit OFFSET :offset")
+    fun searchMediaBySubstring(pattern: String, match: String, types: List<Int>, limit: Int, offset: Int): List<Medium>
+
+    @Query("SELECT filename, full_path, parent_path, last_modified, date_taken, size, type, video_duration, is_favorite, deleted_ts, media_store_id FROM media WHERE deleted_ts = 0 AND type IN (:types) AND filename LIKE :pattern ESCAPE '\\' ORDER BY filename COLLATE NOCASE LIMIT :limit OFFSET :offset")
+    fun searchMediaByPattern(pattern: String, types: List<Int>, limit: Int, offset: Int): List<Medium>
+
     @Query("SELECT COUNT(filename) FROM media WHERE deleted_ts != 0")
     fun getDeletedMediaCount(): Long
 
@@ -39,6 +48,9 @@ interface MediumDao {
     @Query("DELETE FROM media WHERE full_path = :path COLLATE NOCASE")
     fun deleteMediumPath(path: String)
 
+    @Query("DELETE FROM media WHERE full_path COLLATE NOCASE IN (:paths)")
+    fun deleteMediumPaths(paths: List<String>)
+
     @Query("UPDATE OR REPLACE media SET filename = :newFilename, full_path = :newFullPath, parent_path = :newParentPath WHERE full_path = :oldPath COLLATE NOCASE")
     fun updateMedium(
         newFilename: String,
@@ -0,0 +1,25 @@
+package ca.on.sudbury.hojat.smartgallery.database
+
+import androidx.room.Dao
+import androidx.room.Insert
+import androidx.room.OnConflictStrategy
+import androidx.room.Query
+import ca.on.sudbury.hojat.smartgallery.models.MediumMetadata
+
+@Dao
+interface MediumMetadataDao {
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    fun insertAll(metadata: List<MediumMetadata>)
+
+    @Query("SELECT id, full_path, parent_path, last_modified, size, width, height, orientation, camera_make, camera_model, latitude, longitude, altitude, is_panorama, duration, bit_depth FROM media_metadata WHERE full_path = :path COLLATE NOCASE")
+    fun getMetadata(path: String): MediumMetadata?
+
+    @Query("SELECT id, full_path, parent_path, last_modified, size, width, height, orientation, camera_make, camera_model, latitude, longitude, altitude, is_panorama, duration, bit_depth FROM media_metadata WHERE parent_path = :path COLLATE NOCASE")
+    fun getMetadataFromPath(path: String): List<MediumMetadata>
+
+    @Query("DELETE FROM media_metadata WHERE full_path = :path COLLATE NOCASE")
+    fun deleteMetadataPath(path: String)
+
+    @Query("DELETE FROM media_metadata WHERE full_path COLLATE NOCASE IN (:paths)")
+    fun deleteMetadataPaths(paths: List<String>)
+}
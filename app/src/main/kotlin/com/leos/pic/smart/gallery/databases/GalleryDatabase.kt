@@ -11,15 +11,18 @@ import ca.on.sudbury.hojat.smartgallery.database.MediumDao
 import ca.on.sudbury.hojat.smartgallery.database.WidgetsDao
 import ca.on.sudbury.hojat.smartgallery.database.DateTakensDao
 import ca.on.sudbury.hojat.smartgallery.database.FavoritesDao
+import ca.on.sudbury.hojat.smartgallery.database.MediumMetadataDao
 import ca.on.sudbury.hojat.smartgallery.models.Directory
 import ca.on.sudbury.hojat.smartgallery.models.Medium
 import ca.on.sudbury.hojat.smartgallery.models.Widget
 import ca.on.sudbury.hojat.smartgallery.models.DateTaken
 import ca.on.sudbury.hojat.smartgallery.models.Favorite
+import ca.on.sudbury.hojat.smartgallery.models.MediumFts
+import ca.on.sudbury.hojat.smartgallery.models.MediumMetadata
 
 @Database(
-    entities = [Directory::class, Medium::class, Widget::class, DateTaken::class, Favorite::class],
-    version = 10
+    entities = [Directory::class, Medium::class, Widget::class, DateTaken::class, Favorite::class, MediumMetadata::class, MediumFts::class],
+    version = 12
 )
 abstract class GalleryDatabase : RoomDatabase() {
 
@@ -33,6 +36,8 @@ abstract class GalleryDatabase : RoomDatabase() {
 
     abstract fun FavoritesDao(): FavoritesDao
 
+    abstract fun MediumMetadataDao(): MediumMetadataDao
+
     companion object {
         private var db: GalleryDatabase? = null
 
@@ -52,6 +57,14 @@ abstract class GalleryDatabase : RoomDatabase() {
                             .addMigrations(MIGRATION_7_8)
                             .addMigrations(MIGRATION_8_9)
                             .addMigrations(MIGRATION_9_10)
+                            .addMigrations(MIGRATION_10_11)
+                            .addMigrations(MIGRATION_11_12)
+                            .addCallback(object : RoomDatabase.Callback() {
+                                override fun onOpen(db: SupportSQLiteDatabase) {
+                                    // media are stored with REPLACE, without this the search index wouldn't see the replaced rows go away
+                                    db.execSQL("PRAGMA recursive_triggers = ON")
+                                }
+                            })
                             .build()
                     }
                 }
@@ -106,5 +119,23 @@ abstract class GalleryDatabase : RoomDatabase() {
                 database.execSQL("ALTER TABLE media ADD COLUMN media_store_id INTEGER default 0 NOT NULL")
             }
         }
+
+        private val MIGRATION_10_11 = object : Migration(10, 11) {
+            override fun migrate(database: SupportSQLiteDatabase) {
+                database.execSQL("CREATE TABLE IF NOT EXISTS `media_metadata` (`id` INTEGER PRIMARY KEY AUTOINCREMENT, `full_path` TEXT NOT NULL, `parent_path` TEXT NOT NULL, `last_modified` INTEGER NOT NULL, `size` INTEGER NOT NULL, `width` INTEGER NOT NULL, `height` INTEGER NOT NULL, `orientation` INTEGER NOT NULL, `camera_make` TEXT NOT NULL, `camera_model` TEXT NOT NULL, `latitude` REAL, `longitude` REAL, `altitude` REAL, `is_panorama` INTEGER NOT NULL, `duration` INTEGER NOT NULL, `bit_depth` INTEGER NOT NULL)")
+                database.execSQL("CREATE UNIQUE INDEX `index_media_metadata_full_path` ON `media_metadata` (`full_path`)")
+            }
+        }
+
+        private val MIGRATION_11_12 = object : Migration(11, 12) {
+            override fun migrate(database: SupportSQLiteDatabase) {
+                database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS `media_fts` USING FTS4(`filename` TEXT NOT NULL, `parent_path` TEXT NOT NULL, content=`media`)")
+                database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_media_fts_BEFORE_UPDATE BEFORE UPDATE ON `media` BEGIN DELETE FROM `media_fts` WHERE `docid`=OLD.`rowid`; END")
+                database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_media_fts_BEFORE_DELETE BEFORE DELETE ON `media` BEGIN DELETE FROM `media_fts` WHERE `docid`=OLD.`rowid`; END")
+                database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_media_fts_AFTER_UPDATE AFTER UPDATE ON `media` BEGIN INSERT INTO `media_fts`(`docid`, `filename`, `parent_path`) VALUES (NEW.`rowid`, NEW.`filename`, NEW.`parent_path`); END")
+                database.execSQL("CREATE TRIGGER IF NOT EXISTS room_fts_content_sync_media_fts_AFTER_INSERT AFTER INSERT ON `media` BEGIN INSERT INTO `media_fts`(`docid`, `filename`, `parent_path`) VALUES (NEW.`rowid`, NEW.`filename`, NEW.`parent_path`); END")
+                database.execSQL("INSERT INTO `media_fts`(`media_fts`) VALUES ('rebuild')")
+            }
+        }
     }
 }
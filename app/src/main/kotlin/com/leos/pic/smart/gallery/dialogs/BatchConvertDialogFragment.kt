@@ -0,0 +1,158 @@
+package ca.on.sudbury.hojat.smartgallery.dialogs
+
+import android.os.Bundle
+import android.view.LayoutInflater
+import android.view.View
+import android.view.ViewGroup
+import android.widget.EditText
+import android.widget.Toast
+import androidx.fragment.app.DialogFragment
+import ca.on.sudbury.hojat.smartgallery.R
+import ca.on.sudbury.hojat.smartgallery.activities.BaseSimpleActivity
+import ca.on.sudbury.hojat.smartgallery.databinding.DialogFragmentBatchConvertBinding
+import ca.on.sudbury.hojat.smartgallery.helpers.BatchImageConverter
+import ca.on.sudbury.hojat.smartgallery.usecases.RunOnBackgroundThreadUseCase
+
+/**
+ * Lets the user pick the maximum size, format and quality for resizing and converting the selected images, then shows
+ * the progress of the conversion. If an earlier conversion was interrupted, it can be resumed instead.
+ */
+class BatchConvertDialogFragment(
+    private val paths: List<String>,
+    val callback: (result: BatchImageConverter.Result) -> Unit
+) : DialogFragment() {
+
+    // the binding
+    private var _binding: DialogFragmentBatchConvertBinding? = null
+    private val binding get() = _binding!!
+
+    private var converter: BatchImageConverter? = null
+    private var pendingJob: BatchImageConverter.Job? = null
+
+    /**
+     * Create the UI of the dialog
+     */
+    override fun onCreateView(
+        inflater: LayoutInflater,
+        container: ViewGroup?,
+        savedInstanceState: Bundle?
+    ): View {
+
+        // load the binding
+        _binding = DialogFragmentBatchConvertBinding.inflate(inflater, container, false)
+
+        loadDialogUi()
+        return binding.root
+    }
+
+    private fun loadDialogUi() {
+        pendingJob = BatchImageConverter.getPendingJob(requireContext())
+        pendingJob?.let {
+            binding.batchConvertResume.visibility = View.VISIBLE
+            binding.batchConvertResume.text = getString(R.string.resume_batch_conversion, it.remainingCount)
+        }
+    }
+
+    /**
+     * Register listeners for views.
+     */
+    override fun onViewCreated(view: View, savedInstanceState: Bundle?) {
+        super.onViewCreated(view, savedInstanceState)
+
+        with(binding.batchConvertDialogBottomRow) {
+            btnOk.setOnClickListener {
+                val pending = pendingJob
+                if (pending != null && binding.batchConvertResume.isChecked) {
+                    startConversion(pending)
+                    return@setOnClickListener
+                }
+
+                val width = getViewValue(binding.batchConvertWidth)
+                val height = getViewValue(binding.batchConvertHeight)
+                if (width <= 0 || height <= 0) {
+                    Toast.makeText(activity, R.string.invalid_values, Toast.LENGTH_LONG).show()
+                    return@setOnClickListener
+                }
+
+                val quality = getViewValue(binding.batchConvertQuality)
+                if (quality !in 1..100) {
+                    Toast.makeText(activity, R.string.invalid_quality, Toast.LENGTH_LONG).show()
+                    return@setOnClickListener
+                }
+
+                val extension = when (binding.batchConvertFormat.checkedRadioButtonId) {
+                    R.id.batch_convert_format_png -> "png"
+                    R.id.batch_convert_format_webp -> "webp"
+                    else -> "jpg"
+                }
+
+                val newConverter = BatchImageConverter(requireActivity() as BaseSimpleActivity)
+                converter = newConverter
+                RunOnBackgroundThreadUseCase {
+                    val job = newConverter.createJob(paths, width, height, extension, quality)
+                    activity?.runOnUiThread {
+                        startConversion(job)
+                    }
+                }
+            }
+
+            btnCancel.setOnClickListener {
+                val running = converter
+                if (running != null) {
+                    running.cancel()
+                } else {
+                    dismiss()
+                }
+            }
+        }
+    }
+
+    private fun startConversion(job: BatchImageConverter.Job) {
+        val activity = activity as? BaseSimpleActivity ?: return
+        val runningConverter = converter ?: BatchImageConverter(activity).also { converter = it }
+        isCancelable = false
+        binding.batchConvertOptions.visibility = View.GONE
+        binding.batchConvertProgressHolder.visibility = View.VISIBLE
+        binding.batchConvertDialogBottomRow.btnOk.visibility = View.GONE
+        updateProgress(job.outputs.size - job.remainingCount, job.outputs.size)
+
+        RunOnBackgroundThreadUseCase {
+            val result = runningConverter.convert(job) { done, total ->
+                activity.runOnUiThread {
+                    updateProgress(done, total)
+                }
+            }
+
+            activity.runOnUiThread {
+                callback(result)
+                if (_binding != null) {
+                    dismissAllowingStateLoss()
+                }
+            }
+        }
+    }
+
+    private fun updateProgress(done: Int, total: Int) {
+        val currentBinding = _binding ?: return
+        currentBinding.batchConvertProgress.max = total
+        currentBinding.batchConvertProgress.progress = done
+        currentBinding.batchConvertProgressLabel.text = getString(R.string.converting_files, done, total)
+    }
+
+    /**
+     * Clean all used resources.
+     */
+    override fun onDestroyView() {
+        super.onDestroyView()
+        _binding = null
+    }
+
+    private fun getViewValue(view: EditText): Int {
+        val textValue = view.text.toString().trim()
+        return if (textValue.isEmpty()) 0 else textValue.toInt()
+    }
+
+    companion object {
+        const val TAG = "BatchConvertDialogFragment"
+    }
+}
@@ -1,5 +1,6 @@
 package ca.on.sudbury.hojat.smartgallery.dialogs
 
+import android.content.DialogInterface
 import android.os.Bundle
 import android.text.Html
 import android.view.LayoutInflater
@@ -132,6 +133,21 @@ class WritePermissionDialogFragment(
         }
     }
 
+    /**
+     * Going back or tapping outside of the dialog doesn't grant the permission either, the waiting callback has to hear
+     * about it, or a batch of deletions never finishes.
+     */
+    override fun onCancel(dialog: DialogInterface) {
+        super.onCancel(dialog)
+        if (mode == Mode.SdCard || mode == Mode.Otg) {
+            permissionNotGranted()
+        } else {
+            val funAfter = BaseSimpleActivity.funAfterSdk30Action
+            BaseSimpleActivity.funAfterSdk30Action = null
+            funAfter?.invoke(false)
+        }
+    }
+
     private fun dialogConfirmed() {
         dismiss()
         callback()
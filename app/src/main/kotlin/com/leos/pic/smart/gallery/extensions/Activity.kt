@@ -3,7 +3,6 @@ package ca.on.sudbury.hojat.smartgallery.extensions
 import android.annotation.SuppressLint
 import android.annotation.TargetApi
 import android.content.ActivityNotFoundException
-import android.content.ContentProviderOperation
 import android.content.ContentValues
 import android.content.Context
 import android.content.Intent
@@ -34,7 +33,6 @@ import ca.on.sudbury.hojat.smartgallery.BuildConfig
 import ca.on.sudbury.hojat.smartgallery.R
 import ca.on.sudbury.hojat.smartgallery.activities.BaseSimpleActivity
 import ca.on.sudbury.hojat.smartgallery.base.SimpleActivity
-import ca.on.sudbury.hojat.smartgallery.databases.GalleryDatabase
 import ca.on.sudbury.hojat.smartgallery.dialogs.AppSideLoadedDialogFragment
 import ca.on.sudbury.hojat.smartgallery.dialogs.ConfirmationAdvancedDialogFragment
 import ca.on.sudbury.hojat.smartgallery.dialogs.ConfirmationDialogFragment
@@ -42,8 +40,10 @@ import ca.on.sudbury.hojat.smartgallery.dialogs.PickDirectoryDialogFragment
 import ca.on.sudbury.hojat.smartgallery.dialogs.SecurityDialogFragment
 import ca.on.sudbury.hojat.smartgallery.dialogs.WhatsNewDialogFragment
 import ca.on.sudbury.hojat.smartgallery.dialogs.WritePermissionDialogFragment
+import ca.on.sudbury.hojat.smartgallery.helpers.BatchDeleter
 import ca.on.sudbury.hojat.smartgallery.helpers.CREATE_DOCUMENT_SDK_30
 import ca.on.sudbury.hojat.smartgallery.helpers.DARK_GREY
+import ca.on.sudbury.hojat.smartgallery.helpers.DateTakenHarvester
 import ca.on.sudbury.hojat.smartgallery.helpers.EXTRA_SHOW_ADVANCED
 import ca.on.sudbury.hojat.smartgallery.helpers.IS_FROM_GALLERY
 import ca.on.sudbury.hojat.smartgallery.helpers.LICENSE_APNG
@@ -72,7 +72,6 @@ import ca.on.sudbury.hojat.smartgallery.helpers.REQUEST_SET_AS
 import ca.on.sudbury.hojat.smartgallery.helpers.SIDELOADING_FALSE
 import ca.on.sudbury.hojat.smartgallery.helpers.SIDELOADING_TRUE
 import ca.on.sudbury.hojat.smartgallery.models.Android30RenameFormat
-import ca.on.sudbury.hojat.smartgallery.models.DateTaken
 import ca.on.sudbury.hojat.smartgallery.models.FaqItem
 import ca.on.sudbury.hojat.smartgallery.models.FileDirItem
 import ca.on.sudbury.hojat.smartgallery.models.Release
@@ -98,8 +97,6 @@ import java.io.FileOutputStream
 import java.io.IOException
 import java.io.InputStream
 import java.io.OutputStream
-import java.text.SimpleDateFormat
-import java.util.Locale
 import kotlin.collections.ArrayList
 import kotlin.collections.HashMap
 
@@ -941,6 +938,8 @@ fun BaseSimpleActivity.deleteFileBg(
                     handleSAFDialog(path) {
                         if (it) {
                             trySAFFileDelete(fileDirItem, allowDeleteFolder, callback)
+                        } else {
+                            callback?.invoke(false)
                         }
                     }
                 } else if (isAccessibleWithSAFSdk30(path)) {
@@ -950,6 +949,8 @@ fun BaseSimpleActivity.deleteFileBg(
                         handleSAFDialogSdk30(path) {
                             if (it) {
                                 deleteDocumentWithSAFSdk30(fileDirItem, allowDeleteFolder, callback)
+                            } else {
+                                callback?.invoke(false)
                             }
                         }
                     }
@@ -969,7 +970,23 @@ fun BaseSimpleActivity.deleteFiles(
     callback: ((wasSuccess: Boolean) -> Unit)? = null
 ) {
     RunOnBackgroundThreadUseCase {
-        deleteFilesBg(this, files, allowDeleteFolder, callback)
+        deleteFilesBg(this, files, allowDeleteFolder) {
+            callback?.invoke(it.wasSuccess)
+        }
+    }
+}
+
+/**
+ * Deletes large selections with one bulk MediaStore delete per volume and one database transaction for all of them,
+ * and tells exactly which files couldn't be deleted. The callback is called on the main thread.
+ */
+fun BaseSimpleActivity.deleteFilesInBatch(
+    files: List<FileDirItem>,
+    deleteFromDatabase: Boolean,
+    callback: (result: BatchDeleter.Result) -> Unit
+) {
+    RunOnBackgroundThreadUseCase {
+        deleteFilesBg(this, files, deleteFromDatabase = deleteFromDatabase, callback = callback)
     }
 }
 
@@ -1416,90 +1433,28 @@ fun AppCompatActivity.fixDateTaken(
     hasRescanned: Boolean = false,
     callback: (() -> Unit)? = null
 ) {
-    val batchSize = 50
     if (showToasts && !hasRescanned) {
         Toast.makeText(this, R.string.fixing, Toast.LENGTH_LONG).show()
     }
 
-    val pathsToRescan = ArrayList<String>()
     try {
-        var didUpdateFile = false
-        val operations = ArrayList<ContentProviderOperation>()
         RunOnBackgroundThreadUseCase {
-            val dateTakens = ArrayList<DateTaken>()
-
-            for (path in paths) {
-                try {
-                    val dateTime: String =
-                        ExifInterface(path).getAttribute(ExifInterface.TAG_DATETIME_ORIGINAL)
-                            ?: ExifInterface(path).getAttribute(ExifInterface.TAG_DATETIME)
-                            ?: continue
-
-                    // some formats contain a "T" in the middle, some don't
-                    // sample dates: 2015-07-26T14:55:23, 2018:09:05 15:09:05
-                    val t = if (dateTime.substring(10, 11) == "T") "\'T\'" else " "
-                    val separator = dateTime.substring(4, 5)
-                    val format = "yyyy${separator}MM${separator}dd${t}kk:mm:ss"
-                    val formatter = SimpleDateFormat(format, Locale.getDefault())
-                    val timestamp = formatter.parse(dateTime).time
-
-                    val uri = getFileUri(path)
-                    ContentProviderOperation.newUpdate(uri).apply {
-                        val selection = "${Images.Media.DATA} = ?"
-                        val selectionArgs = arrayOf(path)
-                        withSelection(selection, selectionArgs)
-                        withValue(Images.Media.DATE_TAKEN, timestamp)
-                        operations.add(build())
-                    }
-
-                    if (operations.size % batchSize == 0) {
-                        contentResolver.applyBatch(MediaStore.AUTHORITY, operations)
-                        operations.clear()
-                    }
-
-                    mediaDB.updateFavoriteDateTaken(path, timestamp)
-                    didUpdateFile = true
-
-                    val dateTaken = DateTaken(
-                        null,
-                        path,
-                        path.getFilenameFromPath(),
-                        path.getParentPath(),
-                        timestamp,
-                        (System.currentTimeMillis() / 1000).toInt(),
-                        File(path).lastModified()
-                    )
-                    dateTakens.add(dateTaken)
-                    if (!hasRescanned && getFileDateTaken(path) == 0L) {
-                        pathsToRescan.add(path)
+            val harvester = DateTakenHarvester(this)
+            val dateTakens = harvester.harvest(paths)
+            if (dateTakens.isEmpty()) {
+                runOnUiThread {
+                    if (showToasts) {
+                        Toast.makeText(this, R.string.no_date_takens_found, Toast.LENGTH_LONG).show()
                     }
-                } catch (e: Exception) {
-                    continue
-                }
-            }
-
-            if (!didUpdateFile) {
-                if (showToasts) {
-                    Toast.makeText(this, R.string.no_date_takens_found, Toast.LENGTH_LONG).show()
-                }
 
-                runOnUiThread {
                     callback?.invoke()
                 }
                 return@RunOnBackgroundThreadUseCase
             }
 
-            val resultSize = contentResolver.applyBatch(MediaStore.AUTHORITY, operations).size
-            if (resultSize == 0) {
-                didUpdateFile = false
-            }
-
-            if (hasRescanned || pathsToRescan.isEmpty()) {
-                if (dateTakens.isNotEmpty()) {
-                    GalleryDatabase.getInstance(applicationContext).DateTakensDao()
-                        .insertAll(dateTakens)
-                }
-
+            val unknownPaths = harvester.store(dateTakens)
+            if (hasRescanned || unknownPaths.isEmpty()) {
+                val didUpdateFile = unknownPaths.size < dateTakens.size
                 runOnUiThread {
                     if (showToasts) {
                         Toast.makeText(
@@ -1512,8 +1467,9 @@ fun AppCompatActivity.fixDateTaken(
                     callback?.invoke()
                 }
             } else {
-                applicationContext.rescanPaths(pathsToRescan) {
-                    fixDateTaken(paths, showToasts, true, callback)
+                // the MediaStore doesn't know these files yet, let it scan them and try again
+                applicationContext.rescanPaths(ArrayList(unknownPaths)) {
+                    fixDateTaken(ArrayList(unknownPaths), showToasts, true, callback)
                 }
             }
         }
@@ -2076,11 +2032,12 @@ private fun deleteFilesBg(
     owner: BaseSimpleActivity,
     files: List<FileDirItem>,
     allowDeleteFolder: Boolean = false,
-    callback: ((wasSuccess: Boolean) -> Unit)? = null
+    deleteFromDatabase: Boolean = false,
+    callback: ((result: BatchDeleter.Result) -> Unit)? = null
 ) {
     if (files.isEmpty()) {
         owner.runOnUiThread {
-            callback?.invoke(true)
+            callback?.invoke(BatchDeleter.Result(ArrayList(), ArrayList()))
         }
         return
     }
@@ -2102,12 +2059,27 @@ private fun deleteFilesBg(
                 val fileUris = owner.getFileUrisFromFileDirItems(files)
 
                 owner.deleteSDK30Uris(fileUris) { success ->
-                    owner.runOnUiThread {
-                        callback?.invoke(success)
+                    RunOnBackgroundThreadUseCase {
+                        val paths = files.map { it.path }
+                        if (success && deleteFromDatabase) {
+                            BatchDeleter(owner).deleteFromDatabase(paths)
+                        }
+
+                        owner.runOnUiThread {
+                            callback?.invoke(
+                                if (success) {
+                                    BatchDeleter.Result(paths, ArrayList())
+                                } else {
+                                    BatchDeleter.Result(ArrayList(), paths)
+                                }
+                            )
+                        }
                     }
                 }
             } else {
-                deleteFilesCasual(owner, files, allowDeleteFolder, callback)
+                RunOnBackgroundThreadUseCase {
+                    deleteFilesCasual(owner, files, allowDeleteFolder, deleteFromDatabase, callback)
+                }
             }
         }
     }
@@ -2117,30 +2089,58 @@ private fun deleteFilesCasual(
     owner: BaseSimpleActivity,
     files: List<FileDirItem>,
     allowDeleteFolder: Boolean = false,
-    callback: ((wasSuccess: Boolean) -> Unit)? = null
+    deleteFromDatabase: Boolean = false,
+    callback: ((result: BatchDeleter.Result) -> Unit)? = null
 ) {
-    var wasSuccess = false
-    val failedFileDirItems = java.util.ArrayList<FileDirItem>()
-    files.forEachIndexed { index, file ->
+    // the plain files are deleted in bulk, only the ones needing the SAF or a system dialog go one by one
+    val deleter = BatchDeleter(owner)
+    val batchResult = deleter.delete(files, deleteFromDatabase)
+    val pendingItems = batchResult.pendingItems
+    val deletedPaths = ArrayList(batchResult.deletedPaths)
+    val failedPaths = ArrayList(batchResult.failedPaths)
+    val pendingDeletedPaths = ArrayList<String>()
+    val pendingFailedItems = ArrayList<FileDirItem>()
+
+    val finish = {
+        RunOnBackgroundThreadUseCase {
+            if (deleteFromDatabase) {
+                deleter.deleteFromDatabase(pendingDeletedPaths)
+            }
+
+            deletedPaths.addAll(pendingDeletedPaths)
+            owner.runOnUiThread {
+                callback?.invoke(BatchDeleter.Result(deletedPaths, failedPaths))
+            }
+        }
+    }
+
+    if (pendingItems.isEmpty()) {
+        finish()
+        return
+    }
+
+    var remainingCnt = pendingItems.size
+    pendingItems.forEach { file ->
         owner.deleteFileBg(file, allowDeleteFolder, true) {
-            if (it) {
-                wasSuccess = true
-            } else {
-                failedFileDirItems.add(file)
+            val isLast = synchronized(pendingFailedItems) {
+                if (it) {
+                    pendingDeletedPaths.add(file.path)
+                } else {
+                    pendingFailedItems.add(file)
+                }
+                --remainingCnt == 0
             }
 
-            if (index == files.lastIndex) {
-                if (IsRPlusUseCase() && failedFileDirItems.isNotEmpty()) {
-                    val fileUris = owner.getFileUrisFromFileDirItems(failedFileDirItems)
+            if (isLast) {
+                if (IsRPlusUseCase() && pendingFailedItems.isNotEmpty()) {
+                    val fileUris = owner.getFileUrisFromFileDirItems(pendingFailedItems)
                     owner.deleteSDK30Uris(fileUris) { success ->
-                        owner.runOnUiThread {
-                            callback?.invoke(success)
-                        }
+                        pendingFailedItems.mapTo(if (success) pendingDeletedPaths else failedPaths) { it.path }
+                        finish()
                     }
                 } else {
-                    owner.runOnUiThread {
-                        callback?.invoke(wasSuccess)
-                    }
+                    pendingFailedItems.mapTo(failedPaths) { it.path }
+                    finish()
                 }
             }
         }
@@ -67,9 +67,9 @@ import ca.on.sudbury.hojat.smartgallery.helpers.FONT_SIZE_SMALL
 import ca.on.sudbury.hojat.smartgallery.helpers.FileLocation
 import ca.on.sudbury.hojat.smartgallery.helpers.GroupBy
 import ca.on.sudbury.hojat.smartgallery.helpers.INVALID_NAVIGATION_BAR_COLOR
-import ca.on.sudbury.hojat.smartgallery.helpers.IsoTypeReader
 import ca.on.sudbury.hojat.smartgallery.helpers.MediaFetcher
 import ca.on.sudbury.hojat.smartgallery.helpers.MediaType
+import ca.on.sudbury.hojat.smartgallery.helpers.MediumMetadataIndex
 import ca.on.sudbury.hojat.smartgallery.helpers.NOMEDIA
 import ca.on.sudbury.hojat.smartgallery.helpers.PERMISSION_CALL_PHONE
 import ca.on.sudbury.hojat.smartgallery.helpers.PERMISSION_CAMERA
@@ -112,6 +112,7 @@ import ca.on.sudbury.hojat.smartgallery.models.FileDirItem
 import ca.on.sudbury.hojat.smartgallery.models.Medium
 import ca.on.sudbury.hojat.smartgallery.models.SharedTheme
 import ca.on.sudbury.hojat.smartgallery.models.ThumbnailItem
+import ca.on.sudbury.hojat.smartgallery.svg.SvgCache
 import ca.on.sudbury.hojat.smartgallery.svg.SvgSoftwareLayerSetter
 import ca.on.sudbury.hojat.smartgallery.usecases.IsGifUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.IsMarshmallowPlusUseCase
@@ -151,8 +152,6 @@ import java.io.File
 import java.io.FileInputStream
 import java.io.InputStream
 import java.net.URLDecoder
-import java.nio.ByteBuffer
-import java.nio.channels.FileChannel
 import java.text.SimpleDateFormat
 import java.util.*
 import java.util.regex.Pattern
@@ -1567,7 +1566,7 @@ private fun loadSVG(
     target.scaleType =
         if (cropThumbnails) ImageView.ScaleType.CENTER_CROP else ImageView.ScaleType.FIT_CENTER
 
-    val options = RequestOptions().signature(signature)
+    val options = SvgCache.requestOptions(path, signature)
     var builder = Glide.with(owner.applicationContext)
         .`as`(PictureDrawable::class.java)
         .listener(SvgSoftwareLayerSetter())
@@ -1795,6 +1794,7 @@ fun Context.getCachedMedia(
                         }
                     } catch (ignored: Exception) {
                     }
+                    mediaToDelete.forEach { MediumMetadataIndex.getInstance(this).remove(it.path) }
                 }
             }.start()
         } catch (ignored: Exception) {
@@ -1873,6 +1873,7 @@ fun Context.updateDBMediaPath(oldPath: String, newPath: String) {
             .updateFavorite(newFilename, newPath, newParentPath, oldPath)
     } catch (ignored: Exception) {
     }
+    MediumMetadataIndex.getInstance(this).remove(oldPath)
 }
 
 fun Context.updateDBDirectory(directory: Directory) {
@@ -2023,6 +2024,7 @@ fun Context.getResolution(path: String): Point? {
 
 fun Context.deleteDBPath(path: String) {
     deleteMediumWithPath(this, path.replaceFirst(recycleBinPath, RECYCLE_BIN))
+    MediumMetadataIndex.getInstance(this).remove(path)
 }
 
 private fun deleteMediumWithPath(owner: Context, path: String) {
@@ -2045,73 +2047,6 @@ fun Context.updateWidgets() {
     }
 }
 
-// based on https://github.com/sannies/mp4parser/blob/master/examples/src/main/java/com/google/code/mp4parser/example/PrintStructure.java
-fun Context.parseFileChannel(
-    path: String,
-    fc: FileChannel,
-    level: Int,
-    start: Long,
-    end: Long,
-    callback: () -> Unit
-) {
-    val fileChannelContainers = arrayListOf("moov", "trak", "mdia", "minf", "udta", "stbl")
-    try {
-        var iteration = 0
-        var currEnd = end
-        fc.position(start)
-        if (currEnd <= 0) {
-            currEnd = start + fc.size()
-        }
-
-        while (currEnd - fc.position() > 8) {
-            // just a check to avoid deadloop at some videos
-            if (iteration++ > 50) {
-                return
-            }
-
-            val begin = fc.position()
-            val byteBuffer = ByteBuffer.allocate(8)
-            fc.read(byteBuffer)
-            byteBuffer.rewind()
-            val size = IsoTypeReader.readUInt32(byteBuffer)
-            val type = IsoTypeReader.read4cc(byteBuffer)
-            val newEnd = begin + size
-
-            if (type == "uuid") {
-                val fis = FileInputStream(File(path))
-                fis.skip(begin)
-
-                val sb = StringBuilder()
-                val buffer = ByteArray(1024)
-                while (sb.length < size) {
-                    val n = fis.read(buffer)
-                    if (n != -1) {
-                        sb.append(String(buffer, 0, n))
-                    } else {
-                        break
-                    }
-                }
-
-                val xmlString = sb.toString().lowercase(Locale.getDefault())
-                if (xmlString.contains("gspherical:projectiontype>equirectangular") || xmlString.contains(
-                        "gspherical:projectiontype=\"equirectangular\""
-                    )
-                ) {
-                    callback.invoke()
-                }
-                return
-            }
-
-            if (fileChannelContainers.contains(type)) {
-                parseFileChannel(path, fc, level + 1, begin + 8, newEnd, callback)
-            }
-
-            fc.position(newEnd)
-        }
-    } catch (ignored: Exception) {
-    }
-}
-
 @RequiresApi(Build.VERSION_CODES.Q)
 fun Context.addPathToDB(path: String) {
     RunOnBackgroundThreadUseCase {
@@ -2748,8 +2683,8 @@ fun Context.deleteFromMediaStore(path: String, callback: ((needsRescan: Boolean)
             val needsRescan = contentResolver.delete(getFileUri(path), where, args) != 1
             callback?.invoke(needsRescan)
         } catch (ignored: Exception) {
+            callback?.invoke(true)
         }
-        callback?.invoke(true)
     }
 
 }
@@ -1,5 +1,6 @@
 package ca.on.sudbury.hojat.smartgallery.fragments
 
+import android.graphics.Point
 import android.provider.MediaStore
 import android.provider.MediaStore.Files
 import android.provider.MediaStore.Images
@@ -15,13 +16,17 @@ import ca.on.sudbury.hojat.smartgallery.extensions.formatDate
 import ca.on.sudbury.hojat.smartgallery.extensions.config
 import ca.on.sudbury.hojat.smartgallery.helpers.ExtendedDetails
 import ca.on.sudbury.hojat.smartgallery.helpers.MAX_CLOSE_DOWN_GESTURE_DURATION
+import ca.on.sudbury.hojat.smartgallery.helpers.MediumMetadataIndex
 import ca.on.sudbury.hojat.smartgallery.models.Medium
+import ca.on.sudbury.hojat.smartgallery.models.MediumMetadata
 import ca.on.sudbury.hojat.smartgallery.usecases.FormatFileSizeUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.GetCameraModelUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.GetDateTakenUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.GetGeneralPropertiesUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.GetMegaPixelUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.IsPathOnOtgUseCase
+import ca.on.sudbury.hojat.smartgallery.usecases.RunOnBackgroundThreadUseCase
+import timber.log.Timber
 import java.io.File
 import kotlin.math.abs
 
@@ -63,6 +68,7 @@ abstract class ViewPagerFragment : Fragment() {
             return ""
         }
 
+        val metadata = MediumMetadataIndex.getInstance(requireContext()).peek(medium)
         val details = StringBuilder()
         val detailsFlag = requireContext().config.extendedDetails
         if (detailsFlag and ExtendedDetails.Name.id != 0) {
@@ -78,7 +84,13 @@ abstract class ViewPagerFragment : Fragment() {
         }
 
         if (detailsFlag and ExtendedDetails.Resolution.id != 0) {
-            with(requireContext().getResolution(file.absolutePath)) {
+            val resolution = if (metadata != null && metadata.width > 0 && metadata.height > 0) {
+                Point(metadata.width, metadata.height)
+            } else {
+                requireContext().getResolution(file.absolutePath)
+            }
+
+            with(resolution) {
                 "${this?.x} x ${this?.y} ${GetMegaPixelUseCase(this)}".let {
                     if (it.isNotEmpty()) details.appendLine(
                         it
@@ -97,7 +109,12 @@ abstract class ViewPagerFragment : Fragment() {
         }
 
         if (detailsFlag and ExtendedDetails.CameraModel.id != 0) {
-            GetCameraModelUseCase(exif).let { if (it.isNotEmpty()) details.appendLine(it) }
+            val cameraModel = if (metadata != null) {
+                if (metadata.cameraMake.isBlank()) "" else "${metadata.cameraMake} ${metadata.cameraModel}".trim()
+            } else {
+                GetCameraModelUseCase(exif)
+            }
+            cameraModel.let { if (it.isNotEmpty()) details.appendLine(it) }
         }
 
         if (detailsFlag and ExtendedDetails.ExifProperties.id != 0) {
@@ -105,11 +122,38 @@ abstract class ViewPagerFragment : Fragment() {
         }
 
         if (detailsFlag and ExtendedDetails.Gps.id != 0) {
-            getLatLonAltitude(medium.path).let { if (it.isNotEmpty()) details.appendLine(it) }
+            val latLonAltitude = if (metadata != null) getLatLonAltitude(metadata) else getLatLonAltitude(medium.path)
+            latLonAltitude.let { if (it.isNotEmpty()) details.appendLine(it) }
         }
         return details.toString().trim()
     }
 
+    /**
+     * Calls [callback] on the UI thread once the metadata of the medium is in memory, so [getMediumExtendedDetails]
+     * doesn't have to read it from the file. Media missing from memory are indexed on a background thread first.
+     */
+    fun withIndexedMetadata(medium: Medium, callback: () -> Unit) {
+        val index = MediumMetadataIndex.getInstance(requireContext())
+        if (!index.canIndex(medium) || index.peek(medium) != null) {
+            callback()
+            return
+        }
+
+        RunOnBackgroundThreadUseCase {
+            try {
+                index.get(medium)
+            } catch (e: Exception) {
+                Timber.w("Failed to index ${medium.path}: $e")
+            }
+
+            activity?.runOnUiThread {
+                if (view != null) {
+                    callback()
+                }
+            }
+        }
+    }
+
     fun getPathToLoad(medium: Medium) =
         if (IsPathOnOtgUseCase(context, medium.path))
             medium.path.getOTGPublicPath(requireContext()) else medium.path
@@ -154,6 +198,14 @@ abstract class ViewPagerFragment : Fragment() {
         return result.trimStart(',').trim()
     }
 
+    private fun getLatLonAltitude(metadata: MediumMetadata): String {
+        val latitude = metadata.latitude ?: return ""
+        val longitude = metadata.longitude ?: return ""
+        var result = "${latitude.toFloat()},  ${longitude.toFloat()}"
+        metadata.altitude?.let { result += ",  ${it}m" }
+        return result
+    }
+
     protected fun handleEvent(event: MotionEvent) {
         when (event.actionMasked) {
             MotionEvent.ACTION_DOWN -> {
@@ -0,0 +1,184 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import android.annotation.TargetApi
+import android.content.Context
+import android.net.Uri
+import android.os.Build
+import android.os.storage.StorageManager
+import android.provider.MediaStore
+import android.provider.MediaStore.Files
+import android.provider.MediaStore.Images
+import ca.on.sudbury.hojat.smartgallery.databases.GalleryDatabase
+import ca.on.sudbury.hojat.smartgallery.extensions.getFileUri
+import ca.on.sudbury.hojat.smartgallery.extensions.getIsPathDirectory
+import ca.on.sudbury.hojat.smartgallery.extensions.getParentPath
+import ca.on.sudbury.hojat.smartgallery.extensions.internalStoragePath
+import ca.on.sudbury.hojat.smartgallery.extensions.isAudioSlow
+import ca.on.sudbury.hojat.smartgallery.extensions.isImageSlow
+import ca.on.sudbury.hojat.smartgallery.extensions.isRestrictedSAFOnlyRoot
+import ca.on.sudbury.hojat.smartgallery.extensions.isVideoSlow
+import ca.on.sudbury.hojat.smartgallery.extensions.recycleBinPath
+import ca.on.sudbury.hojat.smartgallery.extensions.rescanPaths
+import ca.on.sudbury.hojat.smartgallery.models.FileDirItem
+import ca.on.sudbury.hojat.smartgallery.usecases.IsPathOnOtgUseCase
+import ca.on.sudbury.hojat.smartgallery.usecases.IsQPlusUseCase
+import ca.on.sudbury.hojat.smartgallery.usecases.IsRPlusUseCase
+import timber.log.Timber
+import java.io.File
+import java.util.Locale
+
+/**
+ * Deletes many files at once. The files themselves are removed one by one, but their MediaStore rows are deleted with
+ * one bulk delete per volume and media table, and their media, favorites, date_takens and media_metadata rows in one
+ * transaction.
+ *
+ * Files that can only be deleted through the SAF or with a confirmation of the system aren't touched, they are
+ * returned as [Result.pendingItems] for the caller to handle.
+ */
+class BatchDeleter(context: Context) {
+    companion object {
+        // keeps the selections well below the limit of 999 SQL variables
+        private const val BATCH_SIZE = 500
+    }
+
+    class Result(
+        val deletedPaths: List<String>,
+        val failedPaths: List<String>,
+        val pendingItems: List<FileDirItem> = ArrayList()
+    ) {
+        val wasSuccess get() = deletedPaths.isNotEmpty()
+    }
+
+    private val appContext = context.applicationContext
+
+    /**
+     * Deletes the given files, must not be called on the main thread.
+     */
+    fun delete(items: List<FileDirItem>, deleteFromDatabase: Boolean): Result {
+        val deletedPaths = ArrayList<String>(items.size)
+        val failedPaths = ArrayList<String>()
+        val pendingItems = ArrayList<FileDirItem>()
+        val internalStoragePath = appContext.internalStoragePath
+        items.forEach { item ->
+            val path = item.path
+            val file = File(path)
+            when {
+                appContext.isRestrictedSAFOnlyRoot(path) || IsPathOnOtgUseCase(appContext, path) ||
+                        appContext.getIsPathDirectory(path) -> pendingItems.add(item)
+                !IsRPlusUseCase() && path.startsWith(internalStoragePath) && !file.canWrite() -> failedPaths.add(path)
+                (!file.exists() && file.length() == 0L) || file.delete() -> deletedPaths.add(path)
+                else -> pendingItems.add(item)
+            }
+        }
+
+        deleteFromMediaStore(deletedPaths)
+        if (deleteFromDatabase) {
+            deleteFromDatabase(deletedPaths)
+        }
+        return Result(deletedPaths, failedPaths, pendingItems)
+    }
+
+    /**
+     * Removes the rows of the given paths from the media, favorites, date_takens and media_metadata tables in one
+     * transaction.
+     */
+    fun deleteFromDatabase(paths: List<String>) {
+        if (paths.isEmpty()) {
+            return
+        }
+
+        val recycleBinPath = appContext.recycleBinPath
+        val database = GalleryDatabase.getInstance(appContext)
+        try {
+            database.runInTransaction {
+                paths.chunked(BATCH_SIZE).forEach { chunk ->
+                    database.MediumDao().deleteMediumPaths(chunk.map { it.replaceFirst(recycleBinPath, RECYCLE_BIN) })
+                    database.FavoritesDao().deleteFavoritePaths(chunk)
+                    database.DateTakensDao().deleteDateTakenPaths(chunk)
+                    database.MediumMetadataDao().deleteMetadataPaths(chunk)
+                }
+            }
+        } catch (e: Exception) {
+            Timber.e(e)
+        }
+        MediumMetadataIndex.getInstance(appContext).evict(paths)
+    }
+
+    private fun deleteFromMediaStore(paths: List<String>) {
+        val needsRescan = ArrayList<String>()
+        val volumeNames = HashMap<String, String?>()
+        val pathsByUri = paths.groupBy { path ->
+            val parentPath = path.getParentPath()
+            val volumeName = if (IsQPlusUseCase()) {
+                volumeNames.getOrPut(parentPath) { getVolumeName(parentPath) }
+            } else {
+                null
+            }
+            getContentUri(path, volumeName)
+        }
+
+        pathsByUri.forEach { (uri, uriPaths) ->
+            uriPaths.chunked(BATCH_SIZE).forEach { chunk ->
+                val selection = "${MediaStore.MediaColumns.DATA} IN (${chunk.joinToString(",") { "?" }})"
+                val selectionArgs = chunk.toTypedArray()
+                val deletedCount = try {
+                    appContext.contentResolver.delete(uri, selection, selectionArgs)
+                } catch (e: Exception) {
+                    Timber.e(e)
+                    -1
+                }
+
+                // files in folders the MediaStore doesn't index never had a row, only the rows still there need a scan
+                if (deletedCount != chunk.size) {
+                    needsRescan.addAll(getRemainingPaths(uri, selection, selectionArgs))
+                }
+            }
+        }
+
+        // the files are gone, so the scanner drops the rows the delete couldn't remove
+        appContext.rescanPaths(needsRescan)
+    }
+
+    /**
+     * Returns the paths of the selection that still have a row. If the rows can't be queried, all of them are returned.
+     */
+    private fun getRemainingPaths(uri: Uri, selection: String, selectionArgs: Array<String>): List<String> {
+        val remainingPaths = ArrayList<String>()
+        try {
+            val projection = arrayOf(MediaStore.MediaColumns.DATA)
+            appContext.contentResolver.query(uri, projection, selection, selectionArgs, null)?.use { cursor ->
+                while (cursor.moveToNext()) {
+                    cursor.getString(0)?.let { remainingPaths.add(it) }
+                }
+            }
+        } catch (e: Exception) {
+            Timber.e(e)
+            return selectionArgs.toList()
+        }
+        return remainingPaths
+    }
+
+    private fun getContentUri(path: String, volumeName: String?): Uri {
+        if (volumeName == null) {
+            return getFileUri(path)
+        }
+
+        return when {
+            path.isImageSlow() -> Images.Media.getContentUri(volumeName)
+            path.isVideoSlow() -> MediaStore.Video.Media.getContentUri(volumeName)
+            path.isAudioSlow() -> MediaStore.Audio.Media.getContentUri(volumeName)
+            else -> Files.getContentUri(volumeName)
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.Q)
+    private fun getVolumeName(path: String): String? {
+        val storageManager = appContext.getSystemService(Context.STORAGE_SERVICE) as StorageManager
+        val volume = storageManager.getStorageVolume(File(path)) ?: return null
+        return if (volume.isPrimary) {
+            MediaStore.VOLUME_EXTERNAL_PRIMARY
+        } else {
+            volume.uuid?.lowercase(Locale.US)
+        }
+    }
+}
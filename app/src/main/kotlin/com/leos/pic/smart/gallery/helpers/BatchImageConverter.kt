@@ -0,0 +1,437 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.Canvas
+import android.graphics.Matrix
+import android.graphics.Paint
+import android.graphics.Rect
+import android.graphics.RectF
+import android.net.Uri
+import androidx.exifinterface.media.ExifInterface
+import ca.on.hojat.renderer.cropper.TiledBitmapWriter
+import ca.on.sudbury.hojat.smartgallery.activities.BaseSimpleActivity
+import ca.on.sudbury.hojat.smartgallery.extensions.config
+import ca.on.sudbury.hojat.smartgallery.extensions.getCompressionFormat
+import ca.on.sudbury.hojat.smartgallery.extensions.getDoesFilePathExist
+import ca.on.sudbury.hojat.smartgallery.extensions.getFileOutputStreamSync
+import ca.on.sudbury.hojat.smartgallery.extensions.getFilenameFromPath
+import ca.on.sudbury.hojat.smartgallery.extensions.getMimeType
+import ca.on.sudbury.hojat.smartgallery.extensions.getParentPath
+import ca.on.sudbury.hojat.smartgallery.extensions.rescanPaths
+import ca.on.sudbury.hojat.smartgallery.usecases.CopyNonDimensionExifAttributesUseCase
+import ca.on.sudbury.hojat.smartgallery.usecases.IsJpgUseCase
+import ca.on.sudbury.hojat.smartgallery.usecases.RunOnBackgroundThreadUseCase
+import com.google.gson.Gson
+import timber.log.Timber
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.Writer
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.math.roundToInt
+import ca.on.hojat.renderer.exif.ExifInterface as HeaderExifInterface
+
+/**
+ * Resizes many images to fit a maximum size and converts them to JPEG, PNG or WebP on a few threads. Every image is
+ * written next to its source with a new name, upright, with the EXIF data of the source.
+ *
+ * The images being processed at once never take more than a fixed part of the heap, a worker waits until the pixels
+ * of its image fit into what the others left. Huge JPEG and PNG outputs are written by strips.
+ *
+ * The job is stored in the preferences when it starts and every processed image is appended to a progress file, if
+ * it's cancelled or the app gets killed the remaining images can be converted later with [convert].
+ */
+class BatchImageConverter(private val activity: BaseSimpleActivity) {
+    companion object {
+        private const val MAX_WORKERS = 4
+        private const val TEMP_FOLDER = "batch_conversion"
+
+        // one line per processed image, its index in Job.outputs and whether it was written, next to the files dir
+        // as that one is the recycle bin
+        private const val PROGRESS_FILE = "batch_conversion_progress"
+
+        // roughly the bytes TiledBitmapWriter needs for every pixel of the longer side of the output, the strip or the
+        // band and the decoded region
+        private const val TILED_BYTES_PER_LINE = 2048L
+
+        private val HEADER_EXIF_OPTIONS = HeaderExifInterface.Options.OPTION_IFD_0 or
+                HeaderExifInterface.Options.OPTION_IFD_EXIF or
+                HeaderExifInterface.Options.OPTION_IFD_GPS or
+                HeaderExifInterface.Options.OPTION_IFD_INTEROPERABILITY
+
+        /**
+         * Returns the job that was cancelled or interrupted before converting all of its images, if any.
+         */
+        fun getPendingJob(context: Context): Job? {
+            val json = context.config.pendingBatchConversion
+            if (json.isEmpty()) {
+                return null
+            }
+
+            return try {
+                Gson().fromJson(json, Job::class.java)
+                    ?.also { readProgress(context, it) }
+                    ?.takeIf { it.remainingCount > 0 }
+            } catch (e: Exception) {
+                null
+            }
+        }
+
+        /**
+         * Decodes the image at the given sample size and draws it like its EXIF orientation says, flipped horizontally
+         * first and then rotated clockwise like the values of the androidx ExifInterface, scaled to the exact size.
+         */
+        internal fun decodeUpright(
+            path: String,
+            sampleSize: Int,
+            degrees: Int,
+            isFlipped: Boolean,
+            width: Int,
+            height: Int
+        ): Bitmap? {
+            val options = BitmapFactory.Options().apply { inSampleSize = sampleSize }
+            val decoded = BitmapFactory.decodeFile(path, options) ?: return null
+
+            val matrix = Matrix()
+            matrix.setRotate(degrees.toFloat())
+            if (isFlipped) {
+                matrix.preScale(-1f, 1f)
+            }
+            val rotated = RectF(0f, 0f, decoded.width.toFloat(), decoded.height.toFloat())
+            matrix.mapRect(rotated)
+            matrix.postTranslate(-rotated.left, -rotated.top)
+            matrix.postScale(width / rotated.width(), height / rotated.height())
+
+            val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+            Canvas(bitmap).drawBitmap(decoded, matrix, Paint(Paint.FILTER_BITMAP_FLAG))
+            decoded.recycle()
+            return bitmap
+        }
+
+        private fun getProgressFile(context: Context) = File(context.noBackupFilesDir, PROGRESS_FILE)
+
+        private fun readProgress(context: Context, job: Job) {
+            val file = getProgressFile(context)
+            if (!file.exists()) {
+                return
+            }
+
+            val sources = job.outputs.keys.toList()
+            try {
+                file.forEachLine { line ->
+                    // the last line can be cut off if the app got killed while writing it
+                    val source = sources.getOrNull(line.substringBefore(' ').toIntOrNull() ?: return@forEachLine)
+                        ?: return@forEachLine
+                    if (job.donePaths.add(source) && line.endsWith(" 1")) {
+                        job.writtenPaths.add(job.outputs[source]!!)
+                    }
+                }
+            } catch (e: IOException) {
+                Timber.e(e)
+            }
+        }
+    }
+
+    /**
+     * The images to convert with the path every one of them is written to. [donePaths] are the sources processed
+     * already, [writtenPaths] the outputs that were written successfully.
+     */
+    data class Job(
+        val maxWidth: Int,
+        val maxHeight: Int,
+        val extension: String,
+        val quality: Int,
+        val outputs: LinkedHashMap<String, String>,
+        val donePaths: HashSet<String> = HashSet(),
+        val writtenPaths: ArrayList<String> = ArrayList()
+    ) {
+        val format: Bitmap.CompressFormat get() = ".$extension".getCompressionFormat()
+
+        val remainingCount get() = outputs.keys.count { it !in donePaths }
+    }
+
+    class Result(val writtenPaths: List<String>, val failedCount: Int, val wasCancelled: Boolean)
+
+    private val cancelled = AtomicBoolean(false)
+
+    // the heap available to the images being processed, in kilobytes
+    private val budgetKb = (Runtime.getRuntime().maxMemory() / 4 / 1024).toInt()
+    private val memoryBudget = Semaphore(budgetKb, true)
+
+    val isCancelled get() = cancelled.get()
+
+    fun cancel() = cancelled.set(true)
+
+    /**
+     * Creates a job writing every image next to itself, with the extension of the format. Existing files are never
+     * overwritten, the name gets a counter instead.
+     */
+    fun createJob(paths: List<String>, maxWidth: Int, maxHeight: Int, extension: String, quality: Int): Job {
+        val outputs = LinkedHashMap<String, String>()
+        val reserved = HashSet<String>()
+        paths.forEach { path ->
+            val parent = path.getParentPath()
+            val name = path.getFilenameFromPath().substringBeforeLast('.')
+            var output = "$parent/$name.$extension"
+            var index = 1
+            while (output in reserved || activity.getDoesFilePathExist(output)) {
+                output = String.format("%s/%s(%d).%s", parent, name, index++, extension)
+            }
+            reserved.add(output)
+            outputs[path] = output
+        }
+        return Job(maxWidth, maxHeight, extension, quality, outputs)
+    }
+
+    /**
+     * Converts the images of the job that weren't converted yet, then lets the MediaStore know about all the written
+     * files at once. [onProgress] is called from the worker threads.
+     */
+    fun convert(job: Job, onProgress: ((done: Int, total: Int) -> Unit)? = null): Result {
+        val progress = saveJob(job)
+        val paths = job.outputs.keys.withIndex().filter { it.value !in job.donePaths }
+        val total = job.outputs.size
+        val done = AtomicInteger(total - paths.size)
+        val failed = AtomicInteger()
+        val tempFolder = File(activity.cacheDir, TEMP_FOLDER).apply { mkdirs() }
+
+        if (paths.isNotEmpty()) {
+            val workerCount = minOf(Runtime.getRuntime().availableProcessors(), MAX_WORKERS, paths.size)
+            val executor = Executors.newFixedThreadPool(workerCount)
+            val nextIndex = AtomicInteger()
+            val worker = Callable {
+                while (!cancelled.get()) {
+                    val index = nextIndex.getAndIncrement()
+                    if (index >= paths.size) {
+                        break
+                    }
+
+                    val (jobIndex, path) = paths[index]
+                    val output = job.outputs[path]!!
+                    val wasWritten = try {
+                        convertImage(path, output, job, File(tempFolder, "$index.${job.extension}"))
+                    } catch (e: OutOfMemoryError) {
+                        Timber.e(e)
+                        false
+                    } catch (e: Exception) {
+                        Timber.e(e)
+                        false
+                    }
+
+                    if (!wasWritten) {
+                        failed.incrementAndGet()
+                    }
+
+                    synchronized(job) {
+                        job.donePaths.add(path)
+                        if (wasWritten) {
+                            job.writtenPaths.add(output)
+                        }
+                        progress?.let { saveProgress(it, jobIndex, wasWritten) }
+                    }
+                    onProgress?.invoke(done.incrementAndGet(), total)
+                }
+            }
+
+            try {
+                executor.invokeAll(List(workerCount) { worker })
+            } finally {
+                executor.shutdown()
+            }
+        }
+
+        try {
+            progress?.close()
+        } catch (e: IOException) {
+            Timber.e(e)
+        }
+
+        if (!cancelled.get()) {
+            activity.config.pendingBatchConversion = ""
+            getProgressFile(activity).delete()
+        }
+
+        val writtenPaths = synchronized(job) { ArrayList(job.writtenPaths) }
+        publish(job, writtenPaths)
+        return Result(writtenPaths, failed.get(), cancelled.get())
+    }
+
+    /**
+     * Stores the job with the images processed so far and starts a new progress file, returns the writer of the file
+     * or null if it can't be written, then only the stored job is left to resume from.
+     */
+    private fun saveJob(job: Job): Writer? {
+        activity.config.pendingBatchConversion = Gson().toJson(job)
+        return try {
+            FileOutputStream(getProgressFile(activity)).bufferedWriter()
+        } catch (e: IOException) {
+            Timber.e(e)
+            null
+        }
+    }
+
+    /**
+     * Appends the image to the progress file, it's flushed right away so it survives the app being killed.
+     */
+    private fun saveProgress(progress: Writer, index: Int, wasWritten: Boolean) {
+        try {
+            progress.write("$index ${if (wasWritten) 1 else 0}\n")
+            progress.flush()
+        } catch (e: IOException) {
+            Timber.e(e)
+        }
+    }
+
+    private fun convertImage(path: String, output: String, job: Job, temp: File): Boolean {
+        val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+        BitmapFactory.decodeFile(path, bounds)
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return false
+        }
+
+        // the size limits apply to the image as it's shown, which may be rotated by its EXIF orientation
+        val exif = ExifInterface(path)
+        val degrees = exif.rotationDegrees
+        val sideways = degrees % 180 != 0
+        val width = if (sideways) bounds.outHeight else bounds.outWidth
+        val height = if (sideways) bounds.outWidth else bounds.outHeight
+        val scale = minOf(job.maxWidth.toFloat() / width, job.maxHeight.toFloat() / height, 1f)
+        val newWidth = (width * scale).roundToInt().coerceAtLeast(1)
+        val newHeight = (height * scale).roundToInt().coerceAtLeast(1)
+
+        var sampleSize = 1
+        while (sampleSize * 2 * scale <= 1) {
+            sampleSize *= 2
+        }
+
+        val format = job.format
+        val writeTiled = TiledBitmapWriter.shouldWriteTiled(newWidth, newHeight, format)
+        val bytes = if (writeTiled) {
+            maxOf(newWidth, newHeight) * TILED_BYTES_PER_LINE
+        } else {
+            4L * (bounds.outWidth / sampleSize) * (bounds.outHeight / sampleSize) + 4L * newWidth * newHeight
+        }
+
+        // an image larger than the whole budget waits for all the others and then runs alone
+        val permits = (bytes / 1024).toInt().coerceIn(1, budgetKb)
+        try {
+            memoryBudget.acquire(permits)
+            try {
+                temp.outputStream().buffered().use { out ->
+                    if (writeTiled) {
+                        // the writer rotates before flipping
+                        TiledBitmapWriter.write(
+                            activity,
+                            Uri.fromFile(File(path)),
+                            Rect(0, 0, bounds.outWidth, bounds.outHeight),
+                            TiledBitmapWriter.getRotationBeforeFlip(degrees, exif.isFlipped),
+                            exif.isFlipped,
+                            false,
+                            newWidth,
+                            newHeight,
+                            out,
+                            format,
+                            job.quality
+                        )
+                    } else {
+                        val bitmap = decodeUpright(path, sampleSize, degrees, exif.isFlipped, newWidth, newHeight)
+                            ?: return false
+                        bitmap.compress(format, job.quality, out)
+                        bitmap.recycle()
+                    }
+                }
+            } finally {
+                memoryBudget.release(permits)
+            }
+
+            return writeOutput(path, output, temp, format, newWidth, newHeight)
+        } finally {
+            temp.delete()
+        }
+    }
+
+    /**
+     * Copies the encoded image to its final place with the EXIF data of the source. JPEG to JPEG goes through the
+     * renderer's EXIF writer, which keeps every tag and streams the image, the other formats use the androidx one.
+     */
+    private fun writeOutput(
+        path: String,
+        output: String,
+        temp: File,
+        format: Bitmap.CompressFormat,
+        width: Int,
+        height: Int
+    ): Boolean {
+        var headerExif: HeaderExifInterface? = null
+        if (format == Bitmap.CompressFormat.JPEG && IsJpgUseCase(path)) {
+            try {
+                headerExif = HeaderExifInterface().apply {
+                    readExif(path, HEADER_EXIF_OPTIONS)
+                    if (allTags.isNullOrEmpty()) {
+                        return@apply
+                    }
+
+                    // the pixels are upright now and the old dimensions and thumbnail are gone
+                    setTagValue(HeaderExifInterface.TAG_ORIENTATION, HeaderExifInterface.Orientation.TOP_LEFT)
+                    setTagValue(HeaderExifInterface.TAG_PIXEL_X_DIMENSION, width)
+                    setTagValue(HeaderExifInterface.TAG_PIXEL_Y_DIMENSION, height)
+                    deleteTag(HeaderExifInterface.TAG_IMAGE_WIDTH)
+                    deleteTag(HeaderExifInterface.TAG_IMAGE_LENGTH)
+                }.takeIf { !it.allTags.isNullOrEmpty() }
+            } catch (e: Exception) {
+                Timber.e(e)
+            }
+        } else {
+            try {
+                CopyNonDimensionExifAttributesUseCase(ExifInterface(path), ExifInterface(temp.absolutePath))
+            } catch (e: Exception) {
+                Timber.e(e)
+            }
+        }
+
+        val out = activity.getFileOutputStreamSync(output, output.getMimeType()) ?: return false
+        out.buffered().use { buffered ->
+            FileInputStream(temp).buffered().use { input ->
+                if (headerExif != null) {
+                    headerExif.writeExif(input, buffered)
+                } else {
+                    input.copyTo(buffered)
+                }
+            }
+        }
+
+        if (activity.config.keepLastModified) {
+            File(output).setLastModified(File(path).lastModified())
+        }
+        return true
+    }
+
+    /**
+     * Lets the MediaStore scan the new files, then gives them the dates taken of their sources in one batch.
+     */
+    private fun publish(job: Job, writtenPaths: List<String>) {
+        if (writtenPaths.isEmpty()) {
+            return
+        }
+
+        val written = writtenPaths.toHashSet()
+        val sources = job.outputs.filterValues { it in written }
+        activity.applicationContext.rescanPaths(writtenPaths) {
+            RunOnBackgroundThreadUseCase {
+                val harvester = DateTakenHarvester(activity)
+                val dateTakens = harvester.harvest(sources.keys.toList())
+                    .mapKeys { sources[it.key]!! }
+                if (dateTakens.isNotEmpty()) {
+                    harvester.store(dateTakens)
+                }
+            }
+        }
+    }
+}
@@ -493,6 +493,14 @@ class Config(context: Context) : BaseConfig(context) {
         get() = prefs.getLong(LAST_BIN_CHECK, 0L)
         set(lastBinCheck) = prefs.edit().putLong(LAST_BIN_CHECK, lastBinCheck).apply()
 
+    var lastDateTakenBackfill: Long
+        get() = prefs.getLong(LAST_DATE_TAKEN_BACKFILL, 0L)
+        set(lastDateTakenBackfill) = prefs.edit().putLong(LAST_DATE_TAKEN_BACKFILL, lastDateTakenBackfill).apply()
+
+    var pendingBatchConversion: String
+        get() = prefs.getString(PENDING_BATCH_CONVERSION, "")!!
+        set(pendingBatchConversion) = prefs.edit().putString(PENDING_BATCH_CONVERSION, pendingBatchConversion).apply()
+
     var showHighestQuality: Boolean
         get() = prefs.getBoolean(SHOW_HIGHEST_QUALITY, false)
         set(showHighestQuality) = prefs.edit().putBoolean(SHOW_HIGHEST_QUALITY, showHighestQuality)
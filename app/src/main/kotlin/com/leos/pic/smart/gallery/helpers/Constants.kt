@@ -72,6 +72,8 @@ const val SHOW_RECYCLE_BIN_LAST = "show_recycle_bin_last"
 const val ALLOW_ZOOMING_IMAGES = "allow_zooming_images"
 const val WAS_SVG_SHOWING_HANDLED = "was_svg_showing_handled"
 const val LAST_BIN_CHECK = "last_bin_check"
+const val LAST_DATE_TAKEN_BACKFILL = "last_date_taken_backfill"
+const val PENDING_BATCH_CONVERSION = "pending_batch_conversion"
 const val SHOW_HIGHEST_QUALITY = "show_highest_quality"
 const val ALLOW_DOWN_GESTURE = "allow_down_gesture"
 const val LAST_EDITOR_CROP_ASPECT_RATIO = "last_editor_crop_aspect_ratio"
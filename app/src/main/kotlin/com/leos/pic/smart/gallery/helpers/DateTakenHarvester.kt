@@ -0,0 +1,225 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import android.content.ContentProviderOperation
+import android.content.Context
+import android.provider.MediaStore
+import android.provider.MediaStore.Files
+import android.provider.MediaStore.Images
+import androidx.exifinterface.media.ExifInterface
+import ca.on.sudbury.hojat.smartgallery.databases.GalleryDatabase
+import ca.on.sudbury.hojat.smartgallery.extensions.config
+import ca.on.sudbury.hojat.smartgallery.extensions.getFileUri
+import ca.on.sudbury.hojat.smartgallery.extensions.getFilenameFromPath
+import ca.on.sudbury.hojat.smartgallery.extensions.getLongValue
+import ca.on.sudbury.hojat.smartgallery.extensions.getParentPath
+import ca.on.sudbury.hojat.smartgallery.extensions.queryCursor
+import ca.on.sudbury.hojat.smartgallery.models.DateTaken
+import ca.on.sudbury.hojat.smartgallery.usecases.IsJpgUseCase
+import timber.log.Timber
+import java.io.File
+import java.io.FileInputStream
+import java.text.SimpleDateFormat
+import java.util.Locale
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import ca.on.hojat.renderer.exif.ExifInterface as HeaderExifInterface
+
+/**
+ * Reads the EXIF dates of many files on a few threads and stores them in the MediaStore and the date_takens table
+ * in large batches. Only the tags needed for the date are read, not the whole EXIF of every file.
+ *
+ * A harvester can be cancelled from any thread, the files read until then are still returned.
+ */
+class DateTakenHarvester(context: Context) {
+    companion object {
+        private const val MAX_WORKERS = 4
+        private const val OPERATIONS_BATCH_SIZE = 500
+
+        // SimpleDateFormat isn't thread safe, every worker gets its own instances
+        private val dateFormats = object : ThreadLocal<HashMap<String, SimpleDateFormat>>() {
+            override fun initialValue() = HashMap<String, SimpleDateFormat>()
+        }
+
+        /**
+         * Parses an EXIF date into a timestamp, or returns null if it isn't valid.
+         */
+        fun parseExifDate(dateTime: String): Long? {
+            return try {
+                // some formats contain a "T" in the middle, some don't
+                // sample dates: 2015-07-26T14:55:23, 2018:09:05 15:09:05
+                val t = if (dateTime.substring(10, 11) == "T") "\'T\'" else " "
+                val separator = dateTime.substring(4, 5)
+                val format = "yyyy${separator}MM${separator}dd${t}kk:mm:ss"
+                val formatter = dateFormats.get()!!.getOrPut(format) { SimpleDateFormat(format, Locale.getDefault()) }
+                formatter.parse(dateTime)?.time
+            } catch (e: Exception) {
+                null
+            }
+        }
+    }
+
+    private val appContext = context.applicationContext
+    private val cancelled = AtomicBoolean(false)
+
+    val isCancelled get() = cancelled.get()
+
+    fun cancel() = cancelled.set(true)
+
+    /**
+     * Returns the dates taken of the given files, the ones without a valid EXIF date are left out.
+     * [onProgress] is called from the worker threads.
+     */
+    fun harvest(paths: List<String>, onProgress: ((done: Int, total: Int) -> Unit)? = null): Map<String, Long> {
+        val dateTakens = ConcurrentHashMap<String, Long>()
+        if (paths.isEmpty()) {
+            return dateTakens
+        }
+
+        val workerCount = minOf(Runtime.getRuntime().availableProcessors(), MAX_WORKERS, paths.size)
+        val executor = Executors.newFixedThreadPool(workerCount)
+        val nextIndex = AtomicInteger()
+        val done = AtomicInteger()
+        val worker = Callable {
+            while (!cancelled.get()) {
+                val index = nextIndex.getAndIncrement()
+                if (index >= paths.size) {
+                    break
+                }
+
+                val path = paths[index]
+                val timestamp = readDateTime(path)?.let { parseExifDate(it) }
+                if (timestamp != null && timestamp > 0L) {
+                    dateTakens[path] = timestamp
+                }
+                onProgress?.invoke(done.incrementAndGet(), paths.size)
+            }
+        }
+
+        try {
+            executor.invokeAll(List(workerCount) { worker })
+        } finally {
+            executor.shutdown()
+        }
+        return dateTakens
+    }
+
+    /**
+     * Writes the given dates into the MediaStore, the media table and the date_takens table.
+     * Returns the paths the MediaStore has no entry for.
+     */
+    fun store(dateTakens: Map<String, Long>): List<String> {
+        val unknownPaths = ArrayList<String>()
+        dateTakens.entries.chunked(OPERATIONS_BATCH_SIZE).forEach { chunk ->
+            if (cancelled.get()) {
+                return@forEach
+            }
+
+            val operations = chunk.map { (path, timestamp) ->
+                ContentProviderOperation.newUpdate(getFileUri(path))
+                    .withSelection("${Images.Media.DATA} = ?", arrayOf(path))
+                    .withValue(Images.Media.DATE_TAKEN, timestamp)
+                    .build()
+            }
+
+            try {
+                val results = appContext.contentResolver.applyBatch(MediaStore.AUTHORITY, ArrayList(operations))
+                results.forEachIndexed { index, result ->
+                    if (result.count == 0) {
+                        unknownPaths.add(chunk[index].key)
+                    }
+                }
+            } catch (e: Exception) {
+                Timber.e(e)
+                chunk.mapTo(unknownPaths) { it.key }
+            }
+        }
+
+        val database = GalleryDatabase.getInstance(appContext)
+        database.runInTransaction {
+            val mediumDao = database.MediumDao()
+            dateTakens.forEach { (path, timestamp) ->
+                mediumDao.updateFavoriteDateTaken(path, timestamp)
+            }
+            database.DateTakensDao().insertAll(createDateTakens(dateTakens))
+        }
+        return unknownPaths
+    }
+
+    /**
+     * Fills the date_takens table with the EXIF dates of the images modified since the last backfill.
+     */
+    fun backfill(onProgress: ((done: Int, total: Int) -> Unit)? = null) {
+        val config = appContext.config
+        val startedAt = System.currentTimeMillis()
+        val lastBackfill = config.lastDateTakenBackfill
+        val knownLastModifieds = GalleryDatabase.getInstance(appContext).DateTakensDao().getAllDateTakens()
+            .associate { it.fullPath to it.lastModified }
+
+        val paths = ArrayList<String>()
+        val projection = arrayOf(Images.Media.DATA, Images.Media.DATE_MODIFIED)
+        val selection = "${Files.FileColumns.MEDIA_TYPE} = ? AND ${Images.Media.DATE_MODIFIED} > ?"
+        val selectionArgs = arrayOf(Files.FileColumns.MEDIA_TYPE_IMAGE.toString(), (lastBackfill / 1000).toString())
+        appContext.queryCursor(Files.getContentUri("external"), projection, selection, selectionArgs) { cursor ->
+            val path = cursor.getString(cursor.getColumnIndexOrThrow(Images.Media.DATA)) ?: return@queryCursor
+            val lastModified = cursor.getLongValue(Images.Media.DATE_MODIFIED) * 1000
+            if ((knownLastModifieds[path] ?: 0L) / 1000 != lastModified / 1000) {
+                paths.add(path)
+            }
+        }
+
+        val dateTakens = harvest(paths, onProgress)
+        if (dateTakens.isNotEmpty()) {
+            GalleryDatabase.getInstance(appContext).DateTakensDao().insertAll(createDateTakens(dateTakens))
+        }
+
+        if (!cancelled.get()) {
+            config.lastDateTakenBackfill = startedAt
+        }
+    }
+
+    private fun createDateTakens(dateTakens: Map<String, Long>): List<DateTaken> {
+        val lastFixed = (System.currentTimeMillis() / 1000).toInt()
+        return dateTakens.map { (path, timestamp) ->
+            DateTaken(
+                null,
+                path,
+                path.getFilenameFromPath(),
+                path.getParentPath(),
+                timestamp,
+                lastFixed,
+                File(path).lastModified()
+            )
+        }
+    }
+
+    private fun readDateTime(path: String): String? {
+        if (IsJpgUseCase(path)) {
+            try {
+                val exif = HeaderExifInterface()
+                FileInputStream(path).buffered().use {
+                    exif.readExifTags(
+                        it,
+                        HeaderExifInterface.TAG_DATE_TIME_ORIGINAL,
+                        HeaderExifInterface.TAG_DATE_TIME
+                    )
+                }
+
+                val dateTime = exif.getTagStringValue(HeaderExifInterface.TAG_DATE_TIME_ORIGINAL)
+                    ?: exif.getTagStringValue(HeaderExifInterface.TAG_DATE_TIME)
+                return dateTime?.trimEnd('\u0000', ' ')
+            } catch (ignored: Exception) {
+                // not a valid JPEG after all, let the androidx ExifInterface have a look
+            }
+        }
+
+        return try {
+            val exif = ExifInterface(path)
+            exif.getAttribute(ExifInterface.TAG_DATETIME_ORIGINAL) ?: exif.getAttribute(ExifInterface.TAG_DATETIME)
+        } catch (e: Exception) {
+            null
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import android.graphics.Bitmap
+import com.zomato.photofilters.imageprocessors.Filter
+import com.zomato.photofilters.imageprocessors.SubFilter
+import java.util.Random
+import java.util.WeakHashMap
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Applies the filters of the editor with fewer passes over the pixels than [Filter.processFilter].
+ *
+ * Consecutive sub filters that change every color channel on its own, like tone curves, brightness, contrast or color
+ * overlays, are run once on a ramp of all the channel values and fused into lookup tables applied in a single pass.
+ * A sub filter is only fused if it gives the same pixels as the lookup table on a probe image, the ones that mix the
+ * channels or depend on the position of a pixel are applied as they are.
+ *
+ * Passes over large bitmaps are split into bands of rows processed in parallel.
+ */
+object FilterProcessor {
+    private const val BAND_HEIGHT = 64
+    private const val PROBE_SIZE = 32
+
+    // smaller bitmaps aren't worth handing over to other threads
+    private const val MIN_PARALLEL_PIXELS = 512 * 512
+
+    private val threadCount = Runtime.getRuntime().availableProcessors().coerceIn(1, 4)
+
+    val executor: ExecutorService = Executors.newFixedThreadPool(threadCount) { runnable ->
+        Thread(runnable, "FilterProcessor").apply { isDaemon = true }
+    }
+
+    private val plans = WeakHashMap<Filter, List<Stage>>()
+
+    private sealed class Stage {
+        class Lookup(val red: IntArray, val green: IntArray, val blue: IntArray) : Stage()
+        class Single(val subFilter: SubFilter) : Stage()
+    }
+
+    /**
+     * Applies the filter to the mutable bitmap, usually in place. Don't call it from the [executor] with [parallel] set,
+     * it waits for tasks of the same executor.
+     *
+     * @param onProgress called with the percentage done, from the calling thread
+     */
+    fun apply(
+        filter: Filter,
+        bitmap: Bitmap,
+        parallel: Boolean = true,
+        onProgress: ((Int) -> Unit)? = null
+    ): Bitmap {
+        val stages = getPlan(filter)
+        var result = bitmap
+        stages.forEachIndexed { index, stage ->
+            val reportStage: ((Float) -> Unit)? = onProgress?.let { callback ->
+                { done -> callback(((index + done) * 100 / stages.size).toInt()) }
+            }
+
+            when (stage) {
+                is Stage.Lookup -> applyLookup(result, stage, parallel, reportStage)
+                is Stage.Single -> result = stage.subFilter.process(result)
+            }
+            reportStage?.invoke(1f)
+        }
+        return result
+    }
+
+    /**
+     * Applies the filters to their own copies of the same small bitmap, in parallel.
+     */
+    fun applyAll(filters: List<Filter>, bitmap: Bitmap): List<Bitmap> {
+        val tasks = filters.map { filter ->
+            executor.submit(Callable {
+                apply(filter, bitmap.copy(Bitmap.Config.ARGB_8888, true), false)
+            })
+        }
+        return tasks.map { it.get() }
+    }
+
+    private fun getPlan(filter: Filter): List<Stage> {
+        synchronized(plans) {
+            plans[filter]?.let { return it }
+        }
+
+        // the sub filters keep some state, the same filter is never measured twice at once
+        synchronized(filter) {
+            val plan = synchronized(plans) { plans[filter] } ?: createPlan(filter)
+            synchronized(plans) {
+                plans[filter] = plan
+            }
+            return plan
+        }
+    }
+
+    private fun createPlan(filter: Filter): List<Stage> {
+        val stages = ArrayList<Stage>()
+        val run = ArrayList<SubFilter>()
+        for (subFilter in filter.subFilters) {
+            if (isPerChannel(subFilter)) {
+                run.add(subFilter)
+            } else {
+                if (run.isNotEmpty()) {
+                    stages.add(measure(run))
+                    run.clear()
+                }
+                stages.add(Stage.Single(subFilter))
+            }
+        }
+
+        if (run.isNotEmpty()) {
+            stages.add(measure(run))
+        }
+        return stages
+    }
+
+    /**
+     * Runs the sub filters on a ramp of every channel value, which gives the lookup tables of them together.
+     */
+    private fun measure(subFilters: List<SubFilter>): Stage.Lookup {
+        val ramp = IntArray(256) { (0xFF shl 24) or (it shl 16) or (it shl 8) or it }
+        var bitmap = Bitmap.createBitmap(ramp.size, 1, Bitmap.Config.ARGB_8888)
+        bitmap.setPixels(ramp, 0, ramp.size, 0, 0, ramp.size, 1)
+        subFilters.forEach { bitmap = it.process(bitmap) }
+        bitmap.getPixels(ramp, 0, ramp.size, 0, 0, ramp.size, 1)
+
+        return Stage.Lookup(
+            IntArray(256) { (ramp[it] shr 16) and 0xFF },
+            IntArray(256) { (ramp[it] shr 8) and 0xFF },
+            IntArray(256) { ramp[it] and 0xFF }
+        )
+    }
+
+    private fun isPerChannel(subFilter: SubFilter): Boolean {
+        val lookup = measure(listOf(subFilter))
+        val random = Random(PROBE_SIZE.toLong())
+        val probe = IntArray(PROBE_SIZE * PROBE_SIZE) { (0xFF shl 24) or random.nextInt(0x1000000) }
+        val expected = probe.copyOf()
+        applyLookup(expected, 0, expected.size, lookup)
+
+        var bitmap = Bitmap.createBitmap(PROBE_SIZE, PROBE_SIZE, Bitmap.Config.ARGB_8888)
+        bitmap.setPixels(probe, 0, PROBE_SIZE, 0, 0, PROBE_SIZE, PROBE_SIZE)
+        bitmap = subFilter.process(bitmap)
+        bitmap.getPixels(probe, 0, PROBE_SIZE, 0, 0, PROBE_SIZE, PROBE_SIZE)
+        return probe.contentEquals(expected)
+    }
+
+    private fun applyLookup(bitmap: Bitmap, lookup: Stage.Lookup, parallel: Boolean, onProgress: ((Float) -> Unit)?) {
+        val width = bitmap.width
+        val height = bitmap.height
+        val bandCount = (height + BAND_HEIGHT - 1) / BAND_HEIGHT
+        val workerCount = if (!parallel || width.toLong() * height < MIN_PARALLEL_PIXELS) 1 else threadCount
+        val doneBands = AtomicInteger()
+
+        // the bands are interleaved between the workers, the calling thread is the first one and reports the progress
+        val processBands = { first: Int ->
+            val pixels = IntArray(width * BAND_HEIGHT)
+            var band = first
+            while (band < bandCount) {
+                val top = band * BAND_HEIGHT
+                val rows = minOf(BAND_HEIGHT, height - top)
+                bitmap.getPixels(pixels, 0, width, 0, top, width, rows)
+                applyLookup(pixels, 0, width * rows, lookup)
+                bitmap.setPixels(pixels, 0, width, 0, top, width, rows)
+
+                val done = doneBands.incrementAndGet()
+                if (first == 0) {
+                    onProgress?.invoke(done.toFloat() / bandCount)
+                }
+                band += workerCount
+            }
+        }
+
+        val tasks = (1 until workerCount).map { executor.submit(Callable { processBands(it) }) }
+        processBands(0)
+        tasks.forEach { it.get() }
+    }
+
+    private fun applyLookup(pixels: IntArray, from: Int, to: Int, lookup: Stage.Lookup) {
+        val red = lookup.red
+        val green = lookup.green
+        val blue = lookup.blue
+        for (i in from until to) {
+            val pixel = pixels[i]
+            pixels[i] = (pixel and 0xFF000000.toInt()) or
+                    (red[(pixel shr 16) and 0xFF] shl 16) or
+                    (green[(pixel shr 8) and 0xFF] shl 8) or
+                    blue[pixel and 0xFF]
+        }
+    }
+}
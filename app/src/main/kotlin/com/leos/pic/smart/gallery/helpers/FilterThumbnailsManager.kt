@@ -1,6 +1,5 @@
 package ca.on.sudbury.hojat.smartgallery.helpers
 
-import android.graphics.Bitmap
 import ca.on.sudbury.hojat.smartgallery.models.FilterItem
 
 class FilterThumbnailsManager {
@@ -11,12 +10,18 @@ class FilterThumbnailsManager {
         filterThumbnails.add(filterItem)
     }
 
+    /**
+     * Renders the thumbnails of all the filters in parallel. The thumbnails usually share their bitmap, each filter
+     * gets its own copy of it.
+     */
     fun processThumbs(): ArrayList<FilterItem> {
-        for (filterItem in filterThumbnails) {
-            filterItem.bitmap =
-                filterItem.filter.processFilter(Bitmap.createBitmap(filterItem.bitmap))
-            processedThumbnails.add(filterItem)
+        filterThumbnails.groupBy { it.bitmap }.forEach { (bitmap, filterItems) ->
+            val thumbnails = FilterProcessor.applyAll(filterItems.map { it.filter }, bitmap)
+            filterItems.forEachIndexed { index, filterItem ->
+                filterItem.bitmap = thumbnails[index]
+            }
         }
+        processedThumbnails.addAll(filterThumbnails)
         return processedThumbnails
     }
 
@@ -0,0 +1,49 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import android.graphics.Bitmap
+import ca.on.hojat.palette.bitmappool.BitmapPool
+import ca.on.hojat.palette.bitmappool.BitmapPoolStats
+import java.util.Collections
+import java.util.WeakHashMap
+
+/**
+ * Exposes Glide's own bitmap pool to the palette and renderer modules, so tiles, crops and filter previews
+ * share the same memory budget as the thumbnails.
+ */
+class GlideBitmapPool(private val glidePool: com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool) :
+    BitmapPool {
+    // Glide allocates a new bitmap on a miss without telling us, so remember what went in to count the hits
+    private val pooledBitmaps = Collections.synchronizedSet(Collections.newSetFromMap(WeakHashMap<Bitmap, Boolean>()))
+    private val stats = BitmapPoolStats()
+
+    override fun get(width: Int, height: Int, config: Bitmap.Config): Bitmap? {
+        val bitmap = glidePool.getDirty(width, height, config)
+        if (pooledBitmaps.remove(bitmap)) {
+            stats.recordHit()
+        } else {
+            stats.recordMiss()
+        }
+        return bitmap
+    }
+
+    override fun put(bitmap: Bitmap) {
+        if (bitmap.isRecycled) {
+            return
+        }
+
+        if (!bitmap.isMutable) {
+            bitmap.recycle()
+            return
+        }
+
+        pooledBitmaps.add(bitmap)
+        stats.recordPut()
+        glidePool.put(bitmap)
+    }
+
+    override fun clear() {
+        glidePool.clearMemory()
+    }
+
+    override fun getStats() = stats
+}
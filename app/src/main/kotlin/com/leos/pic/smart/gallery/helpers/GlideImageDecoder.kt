@@ -6,25 +6,30 @@ import android.net.Uri
 import ca.on.hojat.palette.subscaleview.ImageDecoder
 import com.bumptech.glide.Glide
 import com.bumptech.glide.load.DecodeFormat
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy
 import com.bumptech.glide.request.RequestOptions
-import com.bumptech.glide.request.target.Target
 import com.bumptech.glide.signature.ObjectKey
 
 
 class GlideImageDecoder(private val degrees: Int, val signature: ObjectKey) : ImageDecoder {
 
-    override fun decode(context: Context, uri: Uri): Bitmap {
+    override fun decode(context: Context, uri: Uri, maxWidth: Int, maxHeight: Int): Bitmap {
         val options = RequestOptions()
             .format(DecodeFormat.PREFER_ARGB_8888)
             .signature(signature)
-            .fitCenter()
+            .downsample(DownsampleStrategy.CENTER_INSIDE)
+
+        // Glide applies the EXIF rotation before sizing, the requested size is in the orientation of the file
+        val isSideways = degrees == 90 || degrees == 270
+        val targetWidth = if (isSideways) maxHeight else maxWidth
+        val targetHeight = if (isSideways) maxWidth else maxHeight
 
         val builder = Glide.with(context)
             .asBitmap()
             .load(uri.toString().substringAfter("file://"))
             .apply(options)
             .transform(RotateTransformation(-degrees))
-            .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+            .submit(targetWidth, targetHeight)
 
         return builder.get()
     }
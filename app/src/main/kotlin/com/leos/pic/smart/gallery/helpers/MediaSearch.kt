@@ -0,0 +1,97 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import android.content.Context
+import ca.on.sudbury.hojat.smartgallery.extensions.config
+import ca.on.sudbury.hojat.smartgallery.extensions.getParentPath
+import ca.on.sudbury.hojat.smartgallery.extensions.mediaDB
+import ca.on.sudbury.hojat.smartgallery.models.Medium
+import java.util.Locale
+
+/**
+ * A search for media by name, answered page by page from the full-text index of the media table.
+ *
+ * Files with a word in their name or folder starting with the searched words come first, the ones whose name starts
+ * with the whole text at the very top. Then come the files that only contain the text somewhere inside a word.
+ */
+class MediaSearch(context: Context, text: String, private val allowedFolders: Set<String>) {
+    companion object {
+        const val PAGE_SIZE = 300
+
+        private val WORD_SEPARATOR = Regex("[^\\p{L}\\p{N}]+")
+    }
+
+    private val appContext = context.applicationContext
+    private val showHidden = appContext.config.shouldShowHidden
+    private val types = getFilteredTypes(appContext.config.filterMedia)
+
+    // the default FTS tokenizer splits on everything but letters and digits, the words have to be split the same way
+    // lowercase words can't be mistaken for operators like OR
+    private val match = text.split(WORD_SEPARATOR).filter { it.isNotEmpty() }
+        .joinToString(" ") { "${it.lowercase(Locale.ROOT)}*" }
+    private val escapedText = text.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_")
+
+    private var wordOffset = 0
+    private var substringOffset = 0
+    private var wordsDone = match.isEmpty()
+
+    @Volatile
+    var isCancelled = false
+        private set
+
+    var isExhausted = false
+        private set
+
+    fun cancel() {
+        isCancelled = true
+    }
+
+    /**
+     * Returns the next page of results, or an empty list once there are no more. Runs database queries,
+     * don't call it on the UI thread.
+     */
+    fun nextPage(): List<Medium> {
+        val results = ArrayList<Medium>()
+        while (results.isEmpty() && !isExhausted && !isCancelled) {
+            val page = if (!wordsDone) {
+                mediaDB.searchMediaByWords(match, "$escapedText%", types, PAGE_SIZE, wordOffset).also {
+                    wordOffset += it.size
+                    wordsDone = it.size < PAGE_SIZE
+                }
+            } else {
+                val pattern = "%$escapedText%"
+                val media = if (match.isEmpty()) {
+                    mediaDB.searchMediaByPattern(pattern, types, PAGE_SIZE, substringOffset)
+                } else {
+                    mediaDB.searchMediaBySubstring(pattern, match, types, PAGE_SIZE, substringOffset)
+                }
+                substringOffset += media.size
+                isExhausted = media.size < PAGE_SIZE
+                media
+            }
+
+            page.filterTo(results) { isVisible(it) }
+        }
+        return results
+    }
+
+    private val mediaDB get() = appContext.mediaDB
+
+    private fun isVisible(medium: Medium): Boolean {
+        if (!showHidden && medium.path.contains("/.")) {
+            return false
+        }
+
+        val folder = medium.parentPath.lowercase(Locale.ROOT)
+        return allowedFolders.contains(folder) ||
+                (medium.isPortrait() && allowedFolders.contains(folder.getParentPath()))
+    }
+
+    private fun getFilteredTypes(filterMedia: Int) = arrayListOf(
+        MediaType.Image.id,
+        MediaType.Video.id,
+        MediaType.Gif.id,
+        MediaType.Raw.id,
+        MediaType.Svg.id,
+        MediaType.Portrait.id
+    ).filter { filterMedia and it != 0 }
+}
@@ -0,0 +1,247 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.media.MediaMetadataRetriever
+import android.util.LruCache
+import androidx.exifinterface.media.ExifInterface
+import ca.on.sudbury.hojat.smartgallery.databases.GalleryDatabase
+import ca.on.sudbury.hojat.smartgallery.models.Medium
+import ca.on.sudbury.hojat.smartgallery.models.MediumMetadata
+import ca.on.sudbury.hojat.smartgallery.usecases.IsJpgUseCase
+import ca.on.sudbury.hojat.smartgallery.usecases.IsOreoPlusUseCase
+import timber.log.Timber
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import ca.on.hojat.renderer.exif.ExifInterface as HeaderExifInterface
+
+/**
+ * Keeps the [MediumMetadata] of the media in the database, so the viewers and dialogs don't have to read it
+ * from the files again. Missing and outdated rows are extracted in the background, folder by folder as they are opened.
+ *
+ * The recently used rows are kept in memory too, [peek] only looks at those and is safe to call on the UI thread.
+ */
+class MediumMetadataIndex private constructor(context: Context) {
+    companion object {
+        private const val BATCH_SIZE = 50
+        private const val MEMORY_CACHE_SIZE = 2000
+        private const val HEADER_EXIF_OPTIONS = HeaderExifInterface.Options.OPTION_IFD_0 or
+                HeaderExifInterface.Options.OPTION_IFD_EXIF or HeaderExifInterface.Options.OPTION_IFD_GPS
+
+        // ISO 6709 locations of videos, like "+37.5090-122.2594/" or "+37.5090-122.2594+012.500/"
+        private val LOCATION_REGEX = Regex("([+-]\\d+(?:\\.\\d+)?)([+-]\\d+(?:\\.\\d+)?)([+-]\\d+(?:\\.\\d+)?)?")
+
+        private var instance: MediumMetadataIndex? = null
+
+        fun getInstance(context: Context): MediumMetadataIndex {
+            synchronized(MediumMetadataIndex::class) {
+                if (instance == null) {
+                    instance = MediumMetadataIndex(context.applicationContext)
+                }
+                return instance!!
+            }
+        }
+    }
+
+    private val appContext = context
+    private val memoryCache = LruCache<String, MediumMetadata>(MEMORY_CACHE_SIZE)
+    private val executor = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "MediumMetadataIndex").apply { priority = Thread.MIN_PRIORITY }
+    }
+
+    // every update gets a new generation, an older update stops as soon as a newer one is requested
+    private val generation = AtomicInteger()
+
+    /**
+     * Tells if the medium can be kept in the index, media in the recycle bin or behind a content uri aren't.
+     */
+    fun canIndex(medium: Medium) = medium.deletedTS == 0L && !medium.path.startsWith("content:/")
+
+    /**
+     * Returns the metadata of the medium if it is in memory and up to date.
+     */
+    fun peek(medium: Medium): MediumMetadata? = memoryCache.get(medium.path)?.takeIf { it.isUpToDate(medium) }
+
+    /**
+     * Returns the metadata of the medium, extracting it if needed. Reads the disk, don't call it on the UI thread.
+     */
+    fun get(medium: Medium): MediumMetadata {
+        peek(medium)?.let { return it }
+
+        val dao = GalleryDatabase.getInstance(appContext).MediumMetadataDao()
+        val stored = dao.getMetadata(medium.path)
+        if (stored != null && stored.isUpToDate(medium)) {
+            memoryCache.put(medium.path, stored)
+            return stored
+        }
+
+        val metadata = extract(medium)
+        dao.insertAll(listOf(metadata))
+        memoryCache.put(medium.path, metadata)
+        return metadata
+    }
+
+    /**
+     * Forgets the metadata of a deleted or renamed file. Writes the database, don't call it on the UI thread.
+     */
+    fun remove(path: String) {
+        memoryCache.remove(path)
+        try {
+            GalleryDatabase.getInstance(appContext).MediumMetadataDao().deleteMetadataPath(path)
+        } catch (e: Exception) {
+            Timber.w("Failed to remove the metadata of $path: $e")
+        }
+    }
+
+    /**
+     * Drops the in-memory copies of the metadata of the given paths, for callers deleting their rows themselves.
+     */
+    fun evict(paths: Collection<String>) {
+        paths.forEach { memoryCache.remove(it) }
+    }
+
+    /**
+     * Loads the stored metadata of the given media into memory, then extracts the missing and outdated ones.
+     */
+    fun update(media: List<Medium>) {
+        val currentGeneration = generation.incrementAndGet()
+        val mediaToIndex = media.filter { canIndex(it) }
+        executor.execute {
+            try {
+                updateMedia(mediaToIndex, currentGeneration)
+            } catch (e: Exception) {
+                Timber.w("Failed to update the media metadata: $e")
+            }
+        }
+    }
+
+    private fun updateMedia(media: List<Medium>, currentGeneration: Int) {
+        val dao = GalleryDatabase.getInstance(appContext).MediumMetadataDao()
+        val stored = HashMap<String, MediumMetadata>()
+        media.map { it.parentPath }.distinct().forEach { parentPath ->
+            dao.getMetadataFromPath(parentPath).associateByTo(stored) { it.fullPath }
+        }
+
+        val outdated = ArrayList<Medium>()
+        media.forEach {
+            val metadata = stored[it.path]
+            if (metadata != null && metadata.isUpToDate(it)) {
+                memoryCache.put(it.path, metadata)
+            } else {
+                outdated.add(it)
+            }
+        }
+
+        val extracted = ArrayList<MediumMetadata>(BATCH_SIZE)
+        for (medium in outdated) {
+            if (generation.get() != currentGeneration) {
+                break
+            }
+
+            val metadata = extract(medium)
+            memoryCache.put(medium.path, metadata)
+            extracted.add(metadata)
+            if (extracted.size == BATCH_SIZE) {
+                dao.insertAll(extracted)
+                extracted.clear()
+            }
+        }
+
+        if (extracted.isNotEmpty()) {
+            dao.insertAll(extracted)
+        }
+    }
+
+    private fun extract(medium: Medium): MediumMetadata {
+        val metadata = MediumMetadata(
+            null, medium.path, medium.parentPath, medium.modified, medium.size,
+            0, 0, 0, "", "", null, null, null, false, 0L, 0
+        )
+
+        try {
+            if (medium.isVideo()) {
+                readVideoMetadata(medium.path, metadata)
+            } else if (!medium.isSVG()) {
+                readImageMetadata(medium, metadata)
+            }
+        } catch (e: Exception) {
+            Timber.d("Failed to read the metadata of ${medium.path}: $e")
+        } catch (e: OutOfMemoryError) {
+        }
+
+        metadata.isPanorama = PanoramaDetector.detect(appContext, medium)
+        return metadata
+    }
+
+    private fun readImageMetadata(medium: Medium, metadata: MediumMetadata) {
+        val options = BitmapFactory.Options()
+        options.inJustDecodeBounds = true
+        BitmapFactory.decodeFile(medium.path, options)
+        metadata.width = maxOf(options.outWidth, 0)
+        metadata.height = maxOf(options.outHeight, 0)
+        metadata.bitDepth = if (IsOreoPlusUseCase() && options.outConfig == Bitmap.Config.RGBA_F16) 16 else 8
+
+        if (medium.isGIF()) {
+            return
+        }
+
+        if (IsJpgUseCase(medium.path)) {
+            try {
+                readJpegExif(medium.path, metadata)
+                return
+            } catch (ignored: Exception) {
+                // not a valid JPEG after all, let the androidx ExifInterface have a look
+            }
+        }
+
+        val exif = ExifInterface(medium.path)
+        metadata.orientation = exif.rotationDegrees
+        metadata.cameraMake = exif.getAttribute(ExifInterface.TAG_MAKE)?.trim() ?: ""
+        metadata.cameraModel = exif.getAttribute(ExifInterface.TAG_MODEL)?.trim() ?: ""
+        exif.latLong?.let {
+            metadata.latitude = it[0]
+            metadata.longitude = it[1]
+            metadata.altitude = exif.getAltitude(0.0).takeIf { altitude -> altitude != 0.0 }
+        }
+    }
+
+    /**
+     * Maps the file and reads only the pages holding its EXIF header, the values of the unused tags are never decoded.
+     */
+    private fun readJpegExif(path: String, metadata: MediumMetadata) {
+        val exif = HeaderExifInterface()
+        exif.readExifMapped(path, HEADER_EXIF_OPTIONS)
+
+        val orientation = exif.getTagIntValue(HeaderExifInterface.TAG_ORIENTATION)
+        metadata.orientation = orientation?.let { HeaderExifInterface.getRotationForOrientationValue(it.toShort()) } ?: 0
+        metadata.cameraMake = exif.getTagStringValue(HeaderExifInterface.TAG_MAKE)?.trimEnd('\u0000')?.trim() ?: ""
+        metadata.cameraModel = exif.getTagStringValue(HeaderExifInterface.TAG_MODEL)?.trimEnd('\u0000')?.trim() ?: ""
+        exif.latLongAsDoubles?.let {
+            metadata.latitude = it[0]
+            metadata.longitude = it[1]
+            metadata.altitude = exif.getAltitude(0.0).takeIf { altitude -> altitude != 0.0 }
+        }
+    }
+
+    private fun readVideoMetadata(path: String, metadata: MediumMetadata) {
+        val retriever = MediaMetadataRetriever()
+        try {
+            retriever.setDataSource(path)
+            metadata.width = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH)?.toIntOrNull() ?: 0
+            metadata.height = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT)?.toIntOrNull() ?: 0
+            metadata.orientation =
+                retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION)?.toIntOrNull() ?: 0
+            metadata.duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION)?.toLongOrNull() ?: 0L
+
+            val location = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_LOCATION)
+            LOCATION_REGEX.find(location ?: "")?.let {
+                metadata.latitude = it.groupValues[1].toDouble()
+                metadata.longitude = it.groupValues[2].toDouble()
+                metadata.altitude = it.groupValues[3].toDoubleOrNull()
+            }
+        } finally {
+            retriever.release()
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+
+/**
+ * Walks the boxes of an MP4 (ISO base media) file. Only box headers are read, all through one reused buffer, so
+ * large boxes like "mdat" cost nothing. Box types are passed around as big endian ints, see [fourcc].
+ *
+ * Malformed files are not an error, the walk just ends at the first box that doesn't fit into its parent.
+ */
+class Mp4BoxReader(private val channel: FileChannel) {
+    companion object {
+        private const val MAX_DEPTH = 8
+        private const val MAX_BOXES_PER_LEVEL = 1000
+
+        val TYPE_UUID = fourcc("uuid")
+
+        private val CONTAINERS = intArrayOf(
+            fourcc("moov"),
+            fourcc("trak"),
+            fourcc("mdia"),
+            fourcc("minf"),
+            fourcc("udta"),
+            fourcc("stbl")
+        )
+
+        fun fourcc(type: String): Int {
+            var value = 0
+            for (i in 0 until 4) {
+                value = (value shl 8) or (type[i].code and 0xFF)
+            }
+            return value
+        }
+    }
+
+    fun interface BoxVisitor {
+        /**
+         * Called for every box, containers before their children. Returning true stops the walk.
+         */
+        fun visit(type: Int, payloadPosition: Long, payloadSize: Long, depth: Int): Boolean
+    }
+
+    private val header = ByteBuffer.allocate(8)
+
+    /**
+     * Visits the boxes of the whole file. Returns true if the visitor stopped the walk.
+     */
+    fun walk(visitor: BoxVisitor) = walk(0, channel.size(), 0, visitor)
+
+    /**
+     * Fills [buffer] from the given file position. Returns false if the file ends first.
+     */
+    fun read(buffer: ByteBuffer, position: Long): Boolean {
+        var currentPosition = position
+        while (buffer.hasRemaining()) {
+            val read = channel.read(buffer, currentPosition)
+            if (read <= 0) {
+                return false
+            }
+            currentPosition += read
+        }
+        return true
+    }
+
+    private fun walk(start: Long, end: Long, depth: Int, visitor: BoxVisitor): Boolean {
+        var position = start
+        var boxCount = 0
+        while (end - position >= 8) {
+            if (++boxCount > MAX_BOXES_PER_LEVEL) {
+                return false
+            }
+
+            if (!readHeader(position)) {
+                return false
+            }
+
+            var size = header.getLong(0)
+            val type = (size and 0xFFFFFFFFL).toInt()
+            size = size ushr 32
+            var headerSize = 8L
+            if (size == 1L) {
+                // the real size follows the type as a 64 bit value
+                if (!readHeader(position + 8)) {
+                    return false
+                }
+                size = header.getLong(0)
+                headerSize = 16L
+            } else if (size == 0L) {
+                // the box extends to the end of its parent
+                size = end - position
+            }
+
+            if (size < headerSize || size > end - position) {
+                return false
+            }
+
+            val payloadPosition = position + headerSize
+            if (visitor.visit(type, payloadPosition, size - headerSize, depth)) {
+                return true
+            }
+
+            if (depth < MAX_DEPTH && type in CONTAINERS && walk(payloadPosition, position + size, depth + 1, visitor)) {
+                return true
+            }
+            position += size
+        }
+        return false
+    }
+
+    private fun readHeader(position: Long): Boolean {
+        header.clear()
+        return read(header, position)
+    }
+}
@@ -0,0 +1,204 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import android.content.Context
+import android.net.Uri
+import ca.on.sudbury.hojat.smartgallery.models.Medium
+import timber.log.Timber
+import java.io.BufferedInputStream
+import java.io.DataInputStream
+import java.io.EOFException
+import java.io.File
+import java.io.FileInputStream
+import java.io.InputStream
+import java.nio.ByteBuffer
+
+/**
+ * Tells if a photo or a video is a 360° panorama. Photos are recognized by the GPano tags of their XMP metadata,
+ * videos by the metadata in their spherical video uuid box.
+ *
+ * Only the first XMP segment of a photo is read, not the whole file. The results are stored with the rest of the
+ * metadata in the media_metadata table by [MediumMetadataIndex], so every version of a file is inspected once.
+ */
+object PanoramaDetector {
+    private const val MARKER_PREFIX = 0xFF
+    private const val MARKER_SOI = 0xD8
+    private const val MARKER_APP1 = 0xE1
+    private const val MARKER_SOS = 0xDA
+    private const val MARKER_EOI = 0xD9
+
+    private const val MAX_SPHERICAL_METADATA_SIZE = 64 * 1024
+
+    private val XMP_HEADER = "http://ns.adobe.com/xap/1.0/\u0000".toByteArray(Charsets.US_ASCII)
+
+    private val PANORAMA_KEYS = arrayOf(
+        "GPano:UsePanoramaViewer=\"True\"",
+        "<GPano:UsePanoramaViewer>True</GPano:UsePanoramaViewer>",
+        "GPano:FullPanoWidthPixels=",
+        "GPano:ProjectionType>Equirectangular"
+    ).map { it.lowercase().toByteArray(Charsets.US_ASCII) }
+
+    // the uuid of the spherical video metadata box, ffcc8263-f855-4a93-8814-587a02521fdd
+    private val SPHERICAL_UUID = intArrayOf(
+        0xFF, 0xCC, 0x82, 0x63, 0xF8, 0x55, 0x4A, 0x93, 0x88, 0x14, 0x58, 0x7A, 0x02, 0x52, 0x1F, 0xDD
+    ).map { it.toByte() }.toByteArray()
+
+    private val SPHERICAL_KEYS = arrayOf(
+        "GSpherical:ProjectionType>equirectangular",
+        "GSpherical:ProjectionType=\"equirectangular\""
+    ).map { it.lowercase().toByteArray(Charsets.US_ASCII) }
+
+    /**
+     * Uses the indexed metadata of the medium, indexing it first if needed. Media the index doesn't keep, like the
+     * ones in the recycle bin or behind a content uri, are inspected directly. Reads the disk, don't call it on the UI
+     * thread, check [MediumMetadataIndex.peek] there first.
+     */
+    fun isPanorama(context: Context, medium: Medium): Boolean {
+        val index = MediumMetadataIndex.getInstance(context)
+        if (!index.canIndex(medium)) {
+            return detect(context, medium)
+        }
+
+        return try {
+            index.get(medium).isPanorama
+        } catch (e: Exception) {
+            Timber.w("Failed to index ${medium.path}: $e")
+            detect(context, medium)
+        }
+    }
+
+    /**
+     * Inspects the file itself, the result isn't stored anywhere.
+     */
+    fun detect(context: Context, medium: Medium): Boolean = try {
+        if (medium.isVideo()) {
+            isPanoramaVideo(medium.path)
+        } else {
+            openInputStream(context, medium.path)?.use { isPanoramaPhoto(it) } ?: false
+        }
+    } catch (e: Exception) {
+        Timber.d("Failed to check if ${medium.path} is a panorama: $e")
+        false
+    } catch (e: OutOfMemoryError) {
+        false
+    }
+
+    /**
+     * Looks for the panorama keys in the first XMP segment of a JPEG. Stops at the image data, files without XMP
+     * aren't read further than their headers.
+     */
+    fun isPanoramaPhoto(inputStream: InputStream): Boolean {
+        val input = DataInputStream(BufferedInputStream(inputStream))
+        if (input.readUnsignedByte() != MARKER_PREFIX || input.readUnsignedByte() != MARKER_SOI) {
+            return false
+        }
+
+        try {
+            while (true) {
+                if (input.readUnsignedByte() != MARKER_PREFIX) {
+                    return false
+                }
+
+                var marker = input.readUnsignedByte()
+                while (marker == MARKER_PREFIX) {
+                    marker = input.readUnsignedByte()
+                }
+
+                if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                    return false
+                }
+
+                val length = input.readUnsignedShort() - 2
+                if (length < 0) {
+                    return false
+                }
+
+                if (marker == MARKER_APP1 && length > XMP_HEADER.size) {
+                    val segment = ByteArray(length)
+                    input.readFully(segment)
+                    if (startsWith(segment, XMP_HEADER)) {
+                        return PANORAMA_KEYS.any { indexOfIgnoreCase(segment, XMP_HEADER.size, it) >= 0 }
+                    }
+                } else {
+                    input.skipFully(length)
+                }
+            }
+        } catch (e: EOFException) {
+            return false
+        }
+    }
+
+    /**
+     * Looks for the equirectangular projection in the spherical video metadata of an MP4. The walk ends at the
+     * metadata box, the media data is never read.
+     */
+    fun isPanoramaVideo(path: String): Boolean {
+        FileInputStream(File(path)).use {
+            val reader = Mp4BoxReader(it.channel)
+            var isPanorama = false
+            reader.walk { type, payloadPosition, payloadSize, _ ->
+                if (type != Mp4BoxReader.TYPE_UUID || payloadSize < SPHERICAL_UUID.size) {
+                    return@walk false
+                }
+
+                val userType = ByteBuffer.allocate(SPHERICAL_UUID.size)
+                if (!reader.read(userType, payloadPosition) || !userType.array().contentEquals(SPHERICAL_UUID)) {
+                    return@walk false
+                }
+
+                val metadataSize = minOf(payloadSize - SPHERICAL_UUID.size, MAX_SPHERICAL_METADATA_SIZE.toLong())
+                val metadata = ByteBuffer.allocate(metadataSize.toInt())
+                if (reader.read(metadata, payloadPosition + SPHERICAL_UUID.size)) {
+                    isPanorama = SPHERICAL_KEYS.any { key -> indexOfIgnoreCase(metadata.array(), 0, key) >= 0 }
+                }
+                true
+            }
+            return isPanorama
+        }
+    }
+
+    private fun openInputStream(context: Context, path: String) = if (path.startsWith("content:/")) {
+        context.contentResolver.openInputStream(Uri.parse(path))
+    } else {
+        File(path).inputStream()
+    }
+
+    private fun startsWith(data: ByteArray, prefix: ByteArray): Boolean {
+        for (i in prefix.indices) {
+            if (data[i] != prefix[i]) {
+                return false
+            }
+        }
+        return true
+    }
+
+    // the keys are lowercase ASCII, so lowercasing the ASCII letters of the data is enough
+    private fun indexOfIgnoreCase(data: ByteArray, start: Int, key: ByteArray): Int {
+        val last = data.size - key.size
+        var i = start
+        while (i <= last) {
+            var j = 0
+            while (j < key.size && toLowerCase(data[i + j]) == key[j]) {
+                j++
+            }
+
+            if (j == key.size) {
+                return i
+            }
+            i++
+        }
+        return -1
+    }
+
+    private fun toLowerCase(byte: Byte) = if (byte in 'A'.code.toByte()..'Z'.code.toByte()) (byte + 32).toByte() else byte
+
+    private fun DataInputStream.skipFully(count: Int) {
+        var remaining = count
+        while (remaining > 0) {
+            val skipped = skipBytes(remaining)
+            if (skipped <= 0) {
+                throw EOFException()
+            }
+            remaining -= skipped
+        }
+    }
+}
@@ -2,12 +2,19 @@ package ca.on.sudbury.hojat.smartgallery.helpers
 
 import android.graphics.Bitmap
 import android.graphics.Matrix
+import com.bumptech.glide.load.Key
 import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool
 import com.bumptech.glide.load.resource.bitmap.BitmapTransformation
 import java.security.MessageDigest
 
 class RotateTransformation(private var degrees: Int) : BitmapTransformation() {
-    override fun updateDiskCacheKey(messageDigest: MessageDigest) {}
+    companion object {
+        private const val ID = "ca.on.sudbury.hojat.smartgallery.helpers.RotateTransformation"
+    }
+
+    override fun updateDiskCacheKey(messageDigest: MessageDigest) {
+        messageDigest.update("$ID$degrees".toByteArray(Key.CHARSET))
+    }
 
     override fun transform(
         pool: BitmapPool,
@@ -15,6 +22,10 @@ class RotateTransformation(private var degrees: Int) : BitmapTransformation() {
         outWidth: Int,
         outHeight: Int
     ): Bitmap {
+        if (degrees % 360 == 0) {
+            return toTransform
+        }
+
         val matrix = Matrix()
         matrix.postRotate(degrees.toFloat())
         return Bitmap.createBitmap(
@@ -27,4 +38,8 @@ class RotateTransformation(private var degrees: Int) : BitmapTransformation() {
             true
         )
     }
+
+    override fun equals(other: Any?) = other is RotateTransformation && other.degrees == degrees
+
+    override fun hashCode() = ID.hashCode() + degrees
 }
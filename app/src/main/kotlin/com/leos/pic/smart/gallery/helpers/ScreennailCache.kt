@@ -0,0 +1,169 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import android.content.Context
+import android.graphics.Bitmap
+import ca.on.sudbury.hojat.smartgallery.models.Medium
+import com.bumptech.glide.Glide
+import com.bumptech.glide.load.DecodeFormat
+import com.bumptech.glide.load.engine.DiskCacheStrategy
+import com.bumptech.glide.load.resource.bitmap.DownsampleStrategy
+import com.bumptech.glide.request.RequestOptions
+import timber.log.Timber
+import java.io.File
+import java.io.FileOutputStream
+import java.security.MessageDigest
+import java.util.Collections
+import java.util.concurrent.Executors
+
+/**
+ * A persistent cache of screen sized previews ("screennails"), sitting between Glide's grid thumbnails and
+ * a full decode of the original. Opening a large HEIC or RAW photo the second time can show its screennail
+ * right away instead of decoding the original again.
+ *
+ * Entries are keyed by [Medium.getSignature], so an edited file gets a new entry and the stale one ages out.
+ * The cache has its own size budget, the least recently used entries are evicted first.
+ */
+class ScreennailCache private constructor(context: Context) {
+    companion object {
+        private const val DIRECTORY_NAME = "screennails"
+        private const val MAX_CACHE_SIZE = 150L * 1024 * 1024
+        private const val JPEG_QUALITY = 85
+        private const val TEMP_SUFFIX = ".tmp"
+
+        private var instance: ScreennailCache? = null
+
+        fun getInstance(context: Context): ScreennailCache {
+            synchronized(ScreennailCache::class) {
+                if (instance == null) {
+                    instance = ScreennailCache(context.applicationContext)
+                }
+                return instance!!
+            }
+        }
+    }
+
+    private val appContext = context
+    private val directory = File(context.cacheDir, DIRECTORY_NAME)
+
+    // a single worker is enough, filling the cache must not compete with the visible image for the CPU
+    private val executor = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "ScreennailCache").apply { priority = Thread.MIN_PRIORITY }
+    }
+    private val pendingKeys = Collections.synchronizedSet(HashSet<String>())
+    private var currentSize = -1L
+
+    /**
+     * Returns the screennail of the given medium, if there is one. Marks it as recently used.
+     */
+    fun get(medium: Medium): File? {
+        val file = getFile(medium.getSignature())
+        if (!file.exists()) {
+            return null
+        }
+
+        file.setLastModified(System.currentTimeMillis())
+        return file
+    }
+
+    /**
+     * Creates the screennail of the given medium in the background, unless it exists already.
+     * [maxSize] is the longer side of the screen, screennails are fitted into a square of it so they don't
+     * depend on the current device orientation.
+     */
+    fun fill(medium: Medium, maxSize: Int) {
+        if (maxSize <= 0 || !(medium.isImage() || medium.isRaw() || medium.isPortrait()) || medium.isWebP()) {
+            return
+        }
+
+        val key = getKey(medium.getSignature())
+        if (!pendingKeys.add(key)) {
+            return
+        }
+
+        executor.execute {
+            try {
+                if (!getFile(medium.getSignature()).exists()) {
+                    createScreennail(medium, key, maxSize)
+                }
+            } catch (e: Exception) {
+                Timber.w("Failed to create the screennail of ${medium.path}: $e")
+            } catch (e: OutOfMemoryError) {
+                Timber.w("Not enough memory for the screennail of ${medium.path}")
+            } finally {
+                pendingKeys.remove(key)
+            }
+        }
+    }
+
+    fun clear() {
+        executor.execute {
+            directory.listFiles()?.forEach { it.delete() }
+            currentSize = 0L
+        }
+    }
+
+    private fun createScreennail(medium: Medium, key: String, maxSize: Int) {
+        val options = RequestOptions()
+            .format(DecodeFormat.PREFER_ARGB_8888)
+            .downsample(DownsampleStrategy.CENTER_INSIDE)
+            .diskCacheStrategy(DiskCacheStrategy.NONE)
+            .skipMemoryCache(true)
+
+        val target = Glide.with(appContext)
+            .asBitmap()
+            .load(medium.path)
+            .apply(options)
+            .submit(maxSize, maxSize)
+
+        try {
+            val bitmap = target.get()
+            directory.mkdirs()
+            val tempFile = File(directory, key + TEMP_SUFFIX)
+            FileOutputStream(tempFile).use {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, it)
+            }
+
+            val file = File(directory, key)
+            if (tempFile.renameTo(file)) {
+                if (currentSize >= 0) {
+                    currentSize += file.length()
+                }
+                trimToSize()
+            } else {
+                tempFile.delete()
+            }
+        } finally {
+            Glide.with(appContext).clear(target)
+        }
+    }
+
+    // runs on the executor only, so the size bookkeeping needs no locking
+    private fun trimToSize() {
+        val files = directory.listFiles() ?: return
+        if (currentSize < 0) {
+            currentSize = files.sumOf { it.length() }
+        }
+
+        if (currentSize <= MAX_CACHE_SIZE) {
+            return
+        }
+
+        files.sortedBy { it.lastModified() }.forEach {
+            if (currentSize <= MAX_CACHE_SIZE) {
+                return
+            }
+
+            val length = it.length()
+            if (it.delete()) {
+                currentSize -= length
+            }
+        }
+    }
+
+    private fun getFile(signature: String) = File(directory, getKey(signature))
+
+    private fun getKey(signature: String): String {
+        val digest = MessageDigest.getInstance("SHA-1").digest(signature.toByteArray())
+        return digest.joinToString("") { "%02x".format(it) }
+    }
+}
@@ -17,9 +17,17 @@ import android.provider.MediaStore.Images
 import android.provider.MediaStore.Video
 import androidx.annotation.RequiresApi
 import ca.on.sudbury.hojat.smartgallery.extensions.addPathToDB
+import ca.on.sudbury.hojat.smartgallery.extensions.getFilenameFromPath
+import ca.on.sudbury.hojat.smartgallery.extensions.getLongValue
 import ca.on.sudbury.hojat.smartgallery.extensions.getParentPath
 import ca.on.sudbury.hojat.smartgallery.extensions.getStringValue
+import ca.on.sudbury.hojat.smartgallery.extensions.isImageFast
+import ca.on.sudbury.hojat.smartgallery.extensions.isRawFast
+import ca.on.sudbury.hojat.smartgallery.extensions.realScreenSize
 import ca.on.sudbury.hojat.smartgallery.extensions.updateDirectoryPath
+import ca.on.sudbury.hojat.smartgallery.helpers.MediaType
+import ca.on.sudbury.hojat.smartgallery.helpers.ScreennailCache
+import ca.on.sudbury.hojat.smartgallery.models.Medium
 import ca.on.sudbury.hojat.smartgallery.usecases.RunOnBackgroundThreadUseCase
 
 // based on https://developer.android.com/reference/android/app/job/JobInfo.Builder.html#addTriggerContentUri(android.app.job.JobInfo.TriggerContentUri)
@@ -98,7 +106,11 @@ class NewPhotoFetcher : JobService() {
 
                     var cursor: Cursor? = null
                     try {
-                        val projection = arrayOf(Images.ImageColumns.DATA)
+                        val projection = arrayOf(
+                            Images.ImageColumns.DATA,
+                            Images.ImageColumns.DATE_MODIFIED,
+                            Images.ImageColumns.SIZE
+                        )
                         val uris = arrayListOf(
                             Images.Media.EXTERNAL_CONTENT_URI,
                             Video.Media.EXTERNAL_CONTENT_URI
@@ -115,6 +127,11 @@ class NewPhotoFetcher : JobService() {
                                 val path = cursor!!.getStringValue(Images.ImageColumns.DATA)
                                 affectedFolderPaths.add(path.getParentPath())
                                 addPathToDB(path)
+                                fillScreennail(
+                                    path,
+                                    cursor!!.getLongValue(Images.ImageColumns.DATE_MODIFIED) * 1000,
+                                    cursor!!.getLongValue(Images.ImageColumns.SIZE)
+                                )
                             }
                         }
                     } catch (ignored: Exception) {
@@ -133,6 +150,34 @@ class NewPhotoFetcher : JobService() {
         return true
     }
 
+    // new photos are likely to be opened soon, prepare their screen sized previews right away
+    private fun fillScreennail(path: String, lastModified: Long, size: Long) {
+        val type = when {
+            path.isRawFast() -> MediaType.Raw.id
+            path.isImageFast() -> MediaType.Image.id
+            else -> return
+        }
+
+        // the signature has to match the one of the media fetched by MediaFetcher
+        val medium = Medium(
+            null,
+            path.getFilenameFromPath(),
+            path,
+            path.getParentPath(),
+            lastModified,
+            lastModified,
+            size,
+            type,
+            0,
+            false,
+            0L,
+            0L
+        )
+
+        val screenSize = realScreenSize
+        ScreennailCache.getInstance(this).fill(medium, maxOf(screenSize.x, screenSize.y))
+    }
+
     override fun onStopJob(params: JobParameters): Boolean {
         mHandler.removeCallbacks(mWorker)
         return false
@@ -0,0 +1,16 @@
+package ca.on.sudbury.hojat.smartgallery.models
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Fts4
+
+/**
+ * Full-text index over the names and folders of the media table, used by the search. Room keeps it in sync
+ * with the media table through triggers.
+ */
+@Fts4(contentEntity = Medium::class)
+@Entity(tableName = "media_fts")
+data class MediumFts(
+    @ColumnInfo(name = "filename") var name: String,
+    @ColumnInfo(name = "parent_path") var parentPath: String
+)
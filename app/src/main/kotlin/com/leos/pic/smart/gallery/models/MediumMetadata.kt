@@ -0,0 +1,33 @@
+package ca.on.sudbury.hojat.smartgallery.models
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import androidx.room.Index
+import androidx.room.PrimaryKey
+
+/**
+ * The metadata of a medium that is otherwise read from the file again and again, like its resolution or camera.
+ * A row belongs to a given version of the file, it is outdated as soon as the last modified time or the size change.
+ * The orientation is in degrees. Unknown numbers are stored as 0, unknown locations as null.
+ */
+@Entity(tableName = "media_metadata", indices = [Index(value = ["full_path"], unique = true)])
+data class MediumMetadata(
+    @PrimaryKey(autoGenerate = true) var id: Int?,
+    @ColumnInfo(name = "full_path") var fullPath: String,
+    @ColumnInfo(name = "parent_path") var parentPath: String,
+    @ColumnInfo(name = "last_modified") var lastModified: Long,
+    @ColumnInfo(name = "size") var size: Long,
+    @ColumnInfo(name = "width") var width: Int,
+    @ColumnInfo(name = "height") var height: Int,
+    @ColumnInfo(name = "orientation") var orientation: Int,
+    @ColumnInfo(name = "camera_make") var cameraMake: String,
+    @ColumnInfo(name = "camera_model") var cameraModel: String,
+    @ColumnInfo(name = "latitude") var latitude: Double?,
+    @ColumnInfo(name = "longitude") var longitude: Double?,
+    @ColumnInfo(name = "altitude") var altitude: Double?,
+    @ColumnInfo(name = "is_panorama") var isPanorama: Boolean,
+    @ColumnInfo(name = "duration") var duration: Long,
+    @ColumnInfo(name = "bit_depth") var bitDepth: Int
+) {
+    fun isUpToDate(medium: Medium) = lastModified == medium.modified && size == medium.size
+}
@@ -5,6 +5,7 @@ import android.annotation.TargetApi
 import android.content.Intent
 import android.graphics.Bitmap
 import android.graphics.Bitmap.CompressFormat
+import android.graphics.Canvas
 import android.graphics.Color
 import android.graphics.Point
 import android.net.Uri
@@ -18,6 +19,7 @@ import android.widget.SeekBar
 import android.widget.Toast
 import androidx.exifinterface.media.ExifInterface
 import androidx.recyclerview.widget.LinearLayoutManager
+import ca.on.hojat.palette.bitmappool.BitmapPools
 import ca.on.hojat.renderer.cropper.CropImageView
 import ca.on.sudbury.hojat.smartgallery.BuildConfig
 import ca.on.sudbury.hojat.smartgallery.R
@@ -60,6 +62,7 @@ import ca.on.sudbury.hojat.smartgallery.extensions.config
 import ca.on.sudbury.hojat.smartgallery.extensions.fixDateTaken
 import ca.on.sudbury.hojat.smartgallery.extensions.openEditor
 import ca.on.sudbury.hojat.smartgallery.helpers.AspectRatio
+import ca.on.sudbury.hojat.smartgallery.helpers.FilterProcessor
 import ca.on.sudbury.hojat.smartgallery.helpers.FilterThumbnailsManager
 import ca.on.sudbury.hojat.smartgallery.models.FilterItem
 import ca.on.sudbury.hojat.smartgallery.usecases.IsNougatPlusUseCase
@@ -116,6 +119,8 @@ class EditActivity : SimpleActivity(), CropImageView.OnCropImageCompleteListener
     private var wasDrawCanvasPositioned = false
     private var oldExif: ExifInterface? = null
     private var filterInitialBitmap: Bitmap? = null
+    private var filterPreviewBitmap: Bitmap? = null
+    private var filterPreviewGeneration = 0
     private var originalUri: Uri? = null
 
     override fun onCreate(savedInstanceState: Bundle?) {
@@ -393,14 +398,25 @@ class EditActivity : SimpleActivity(), CropImageView.OnCropImageCompleteListener
                 binding.bottomEditorFilterActions.bottomActionsFilterList.adapter = null
                 binding.bottomEditorFilterActions.bottomActionsFilterList.visibility = View.GONE
 
+                // the full resolution image is only filtered now, the editor showed a screen sized preview
+                binding.editorFilterProgress.progress = 0
+                binding.editorFilterProgress.visibility = View.VISIBLE
                 RunOnBackgroundThreadUseCase {
                     try {
                         val originalBitmap = Glide.with(applicationContext).asBitmap().load(uri)
                             .submit(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get()
-                        currentFilter.filter.processFilter(originalBitmap)
-                        saveBitmapToFile(originalBitmap, savePath, false)
+                        var lastProgress = 0
+                        val filteredBitmap = FilterProcessor.apply(currentFilter.filter, originalBitmap) { progress ->
+                            if (progress != lastProgress) {
+                                lastProgress = progress
+                                runOnUiThread { binding.editorFilterProgress.progress = progress }
+                            }
+                        }
+                        saveBitmapToFile(filteredBitmap, savePath, false)
                     } catch (e: OutOfMemoryError) {
                         Toast.makeText(this, R.string.out_of_memory_error, Toast.LENGTH_LONG).show()
+                    } finally {
+                        runOnUiThread { binding.editorFilterProgress.visibility = View.GONE }
                     }
                 }
             }
@@ -440,8 +456,7 @@ class EditActivity : SimpleActivity(), CropImageView.OnCropImageCompleteListener
 
                     val originalBitmap = Glide.with(applicationContext).asBitmap().load(uri)
                         .submit(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get()
-                    currentFilter.filter.processFilter(originalBitmap)
-                    shareBitmap(originalBitmap)
+                    shareBitmap(FilterProcessor.apply(currentFilter.filter, originalBitmap))
                 }
                 binding.cropImageView.visibility == View.VISIBLE -> {
                     isSharingBitmap = true
@@ -728,19 +743,20 @@ class EditActivity : SimpleActivity(), CropImageView.OnCropImageCompleteListener
                     return@RunOnBackgroundThreadUseCase
                 }
 
-                runOnUiThread {
-                    val filterThumbnailsManager = FilterThumbnailsManager()
-                    filterThumbnailsManager.clearThumbs()
+                // every thumbnail is rendered from the same small bitmap, in parallel and off the UI thread
+                val filterThumbnailsManager = FilterThumbnailsManager()
+                filterThumbnailsManager.clearThumbs()
 
-                    val noFilter = Filter(getString(R.string.none))
-                    filterThumbnailsManager.addThumb(FilterItem(bitmap, noFilter))
+                val noFilter = Filter(getString(R.string.none))
+                filterThumbnailsManager.addThumb(FilterItem(bitmap, noFilter))
 
-                    FilterPack.getFilterPack(this).forEach {
-                        val filterItem = FilterItem(bitmap, it)
-                        filterThumbnailsManager.addThumb(filterItem)
-                    }
+                FilterPack.getFilterPack(this).forEach {
+                    val filterItem = FilterItem(bitmap, it)
+                    filterThumbnailsManager.addThumb(filterItem)
+                }
 
-                    val filterItems = filterThumbnailsManager.processThumbs()
+                val filterItems = filterThumbnailsManager.processThumbs()
+                runOnUiThread {
                     val adapter = FiltersAdapter(applicationContext, filterItems) {
                         val layoutManager =
                             binding.bottomEditorFilterActions.bottomActionsFilterList.layoutManager as LinearLayoutManager
@@ -772,9 +788,37 @@ class EditActivity : SimpleActivity(), CropImageView.OnCropImageCompleteListener
         updateCropRotateActionButtons()
     }
 
+    /**
+     * Previews the filter on the screen sized bitmap shown by the editor, in the background. Only the preview of the
+     * last selected filter is shown.
+     */
     private fun applyFilter(filterItem: FilterItem) {
-        val newBitmap = Bitmap.createBitmap(filterInitialBitmap!!)
-        binding.defaultImageView.setImageBitmap(filterItem.filter.processFilter(newBitmap))
+        val initialBitmap = filterInitialBitmap!!
+        val generation = ++filterPreviewGeneration
+        RunOnBackgroundThreadUseCase {
+            val newBitmap = BitmapPools.shared.get(initialBitmap.width, initialBitmap.height, Bitmap.Config.ARGB_8888)
+                ?: Bitmap.createBitmap(initialBitmap.width, initialBitmap.height, Bitmap.Config.ARGB_8888)
+            newBitmap.eraseColor(Color.TRANSPARENT)
+            Canvas(newBitmap).drawBitmap(initialBitmap, 0f, 0f, null)
+
+            val filteredBitmap = FilterProcessor.apply(filterItem.filter, newBitmap)
+            runOnUiThread {
+                if (generation != filterPreviewGeneration || isDestroyed) {
+                    BitmapPools.shared.put(filteredBitmap)
+                    return@runOnUiThread
+                }
+
+                binding.defaultImageView.setImageBitmap(filteredBitmap)
+
+                // the previous preview is not shown anymore, let the next one reuse it
+                filterPreviewBitmap?.let {
+                    if (it !== filteredBitmap) {
+                        BitmapPools.shared.put(it)
+                    }
+                }
+                filterPreviewBitmap = filteredBitmap
+            }
+        }
     }
 
     private fun updateAspectRatio(aspectRatio: Int) {
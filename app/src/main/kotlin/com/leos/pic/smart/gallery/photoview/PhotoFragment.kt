@@ -65,13 +65,19 @@ import ca.on.sudbury.hojat.smartgallery.helpers.SHOULD_INIT_FRAGMENT
 import ca.on.sudbury.hojat.smartgallery.helpers.MEDIUM
 import ca.on.sudbury.hojat.smartgallery.helpers.GlideImageDecoder
 import ca.on.sudbury.hojat.smartgallery.helpers.PicassoRegionDecoder
+import ca.on.sudbury.hojat.smartgallery.helpers.ScreennailCache
 import ca.on.sudbury.hojat.smartgallery.helpers.PATH
+import ca.on.sudbury.hojat.smartgallery.helpers.MediumMetadataIndex
+import ca.on.sudbury.hojat.smartgallery.helpers.PanoramaDetector
 import ca.on.sudbury.hojat.smartgallery.helpers.WEIRD_TILE_DPI
 import ca.on.sudbury.hojat.smartgallery.helpers.HIGH_TILE_DPI
 import ca.on.sudbury.hojat.smartgallery.helpers.NORMAL_TILE_DPI
 import ca.on.sudbury.hojat.smartgallery.helpers.LOW_TILE_DPI
 import ca.on.sudbury.hojat.smartgallery.models.Medium
 import ca.on.sudbury.hojat.smartgallery.usecases.IsRPlusUseCase
+import ca.on.sudbury.hojat.smartgallery.svg.SvgCache
+import ca.on.sudbury.hojat.smartgallery.svg.SvgImageDecoder
+import ca.on.sudbury.hojat.smartgallery.svg.SvgRegionDecoder
 import ca.on.sudbury.hojat.smartgallery.svg.SvgSoftwareLayerSetter
 import ca.on.sudbury.hojat.smartgallery.usecases.BeVisibleOrGoneUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.IsPathOnOtgUseCase
@@ -80,8 +86,6 @@ import ca.on.sudbury.hojat.smartgallery.usecases.RunOnBackgroundThreadUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.SaveRotatedImageUseCase
 import com.squareup.picasso.Callback
 import com.squareup.picasso.Picasso
-import org.apache.sanselan.common.byteSources.ByteSourceInputStream
-import org.apache.sanselan.formats.jpeg.JpegImageParser
 import pl.droidsonroids.gif.InputSource
 import java.io.File
 import java.io.FileOutputStream
@@ -91,6 +95,9 @@ import kotlin.math.ceil
 
 private const val DEFAULT_DOUBLE_TAP_ZOOM = 2f
 private const val ZOOMABLE_VIEW_LOAD_DELAY = 100L
+
+// SVGs are tiled as if they were this many screens large, so they stay sharp when zoomed in
+private const val SVG_SOURCE_SIZE_IN_SCREENS = 4
 private const val SAME_ASPECT_RATIO_THRESHOLD = 0.01
 
 class PhotoFragment : ViewPagerFragment() {
@@ -213,18 +220,11 @@ class PhotoFragment : ViewPagerFragment() {
             if (mMedium.path.isEmpty()) {
                 var out: FileOutputStream? = null
                 try {
-                    var inputStream =
-                        requireContext().contentResolver.openInputStream(Uri.parse(mOriginalPath))
-                    val exif = ExifInterface()
-                    exif.readExif(inputStream, ExifInterface.Options.OPTION_ALL)
-                    val tag = exif.getTag(ExifInterface.TAG_ORIENTATION)
-                    val orientation = tag?.getValueAsInt(-1) ?: -1
-                    inputStream =
+                    val orientation = readExifOrientation(Uri.parse(mOriginalPath), -1)
+                    val inputStream =
                         requireContext().contentResolver.openInputStream(Uri.parse(mOriginalPath))
                     val original = BitmapFactory.decodeStream(inputStream)
                     val rotated = rotateViaMatrix(original, orientation)
-                    exif.setTagValue(ExifInterface.TAG_ORIENTATION, 1)
-                    exif.removeCompressedThumbnail()
 
                     val file = Uri.parse(mOriginalPath).lastPathSegment?.let {
                         File(
@@ -454,7 +454,29 @@ class PhotoFragment : ViewPagerFragment() {
             Glide.with(requireContext())
                 .`as`(PictureDrawable::class.java)
                 .listener(SvgSoftwareLayerSetter())
+                .addListener(object : RequestListener<PictureDrawable> {
+                    override fun onLoadFailed(
+                        e: GlideException?,
+                        model: Any?,
+                        target: Target<PictureDrawable>?,
+                        isFirstResource: Boolean
+                    ) = false
+
+                    override fun onResourceReady(
+                        resource: PictureDrawable?,
+                        model: Any?,
+                        target: Target<PictureDrawable>?,
+                        dataSource: DataSource?,
+                        isFirstResource: Boolean
+                    ): Boolean {
+                        if (mIsFragmentVisible) {
+                            scheduleZoomableView()
+                        }
+                        return false
+                    }
+                })
                 .load(mMedium.path)
+                .apply(SvgCache.requestOptions(mMedium.path, mMedium.getKey()))
                 .into(binding.gesturesView)
         }
     }
@@ -500,38 +522,57 @@ class PhotoFragment : ViewPagerFragment() {
             options.diskCacheStrategy(DiskCacheStrategy.NONE)
         }
 
-        Glide.with(requireContext())
+        val request = Glide.with(requireContext())
             .load(path)
             .apply(options)
-            .listener(object : RequestListener<Drawable> {
-                override fun onLoadFailed(
-                    e: GlideException?,
-                    model: Any?,
-                    target: Target<Drawable>?,
-                    isFirstResource: Boolean
-                ): Boolean {
-                    if (activity != null && !activity!!.isDestroyed && !activity!!.isFinishing) {
-                        tryLoadingWithPicasso(addZoomableView)
-                    }
-                    return false
+
+        // show the persisted screen sized preview while the original is being decoded
+        val canUseScreennail = mCurrentRotationDegrees == 0 && path == mMedium.path
+        val screennail = if (canUseScreennail) ScreennailCache.getInstance(requireContext()).get(mMedium) else null
+        if (screennail != null) {
+            val screennailOptions = RequestOptions()
+                .signature(mMedium.getKey())
+                .priority(Priority.IMMEDIATE)
+                .diskCacheStrategy(DiskCacheStrategy.NONE)
+                .fitCenter()
+            request.thumbnail(Glide.with(requireContext()).load(screennail).apply(screennailOptions))
+        }
+
+        request.listener(object : RequestListener<Drawable> {
+            override fun onLoadFailed(
+                e: GlideException?,
+                model: Any?,
+                target: Target<Drawable>?,
+                isFirstResource: Boolean
+            ): Boolean {
+                if (activity != null && !activity!!.isDestroyed && !activity!!.isFinishing) {
+                    tryLoadingWithPicasso(addZoomableView)
+                }
+                return false
+            }
+
+            override fun onResourceReady(
+                resource: Drawable?,
+                model: Any?,
+                target: Target<Drawable>?,
+                dataSource: DataSource?,
+                isFirstResource: Boolean
+            ): Boolean {
+                val allowZoomingImages = context?.config?.allowZoomingImages ?: true
+                binding.gesturesView.controller.settings.isZoomEnabled =
+                    mMedium.isRaw() || mCurrentRotationDegrees != 0 || allowZoomingImages == false
+                if (mIsFragmentVisible && addZoomableView) {
+                    scheduleZoomableView()
                 }
 
-                override fun onResourceReady(
-                    resource: Drawable?,
-                    model: Any?,
-                    target: Target<Drawable>?,
-                    dataSource: DataSource?,
-                    isFirstResource: Boolean
-                ): Boolean {
-                    val allowZoomingImages = context?.config?.allowZoomingImages ?: true
-                    binding.gesturesView.controller.settings.isZoomEnabled =
-                        mMedium.isRaw() || mCurrentRotationDegrees != 0 || allowZoomingImages == false
-                    if (mIsFragmentVisible && addZoomableView) {
-                        scheduleZoomableView()
+                if (canUseScreennail && screennail == null) {
+                    context?.let {
+                        ScreennailCache.getInstance(it).fill(mMedium, maxOf(mScreenWidth, mScreenHeight))
                     }
-                    return false
                 }
-            }).into(binding.gesturesView)
+                return false
+            }
+        }).into(binding.gesturesView)
     }
 
     private fun tryLoadingWithPicasso(addZoomableView: Boolean) {
@@ -690,7 +731,7 @@ class PhotoFragment : ViewPagerFragment() {
     private fun scheduleZoomableView() {
         mLoadZoomableViewHandler.removeCallbacksAndMessages(null)
         mLoadZoomableViewHandler.postDelayed({
-            if (mIsFragmentVisible && context?.config?.allowZoomingImages == true && (mMedium.isImage() || mMedium.isPortrait()) && !mIsSubsamplingVisible) {
+            if (mIsFragmentVisible && context?.config?.allowZoomingImages == true && (mMedium.isImage() || mMedium.isPortrait() || mMedium.isSVG()) && !mIsSubsamplingVisible) {
                 addZoomableView()
             }
         }, ZOOMABLE_VIEW_LOAD_DELAY)
@@ -703,18 +744,27 @@ class PhotoFragment : ViewPagerFragment() {
         val showHighestQuality = config.showHighestQuality
         val minTileDpi = if (showHighestQuality) -1 else getMinTileDpi()
 
+        val svgSourceSize = maxOf(mScreenWidth, mScreenHeight) * SVG_SOURCE_SIZE_IN_SCREENS
         val bitmapDecoder = object : DecoderFactory<ImageDecoder> {
-            override fun make() = GlideImageDecoder(rotation, mMedium.getKey())
+            override fun make(): ImageDecoder = if (mMedium.isSVG()) {
+                SvgImageDecoder(mMedium.path, mMedium.getKey(), svgSourceSize)
+            } else {
+                GlideImageDecoder(rotation, mMedium.getKey())
+            }
         }
 
         val regionDecoder = object : DecoderFactory<ImageRegionDecoder> {
-            override fun make() = PicassoRegionDecoder(
-                showHighestQuality,
-                mScreenWidth,
-                mScreenHeight,
-                minTileDpi,
-                mMedium.isHeic()
-            )
+            override fun make(): ImageRegionDecoder = if (mMedium.isSVG()) {
+                SvgRegionDecoder(mMedium.path, mMedium.getKey(), svgSourceSize)
+            } else {
+                PicassoRegionDecoder(
+                    showHighestQuality,
+                    mScreenWidth,
+                    mScreenHeight,
+                    minTileDpi,
+                    mMedium.isHeic()
+                )
+            }
         }
 
         var newOrientation = (rotation + mCurrentRotationDegrees) % 360
@@ -794,30 +844,27 @@ class PhotoFragment : ViewPagerFragment() {
     }
 
     private fun checkIfPanorama() {
-        mIsPanorama = try {
-            val inputStream = if (mMedium.path.startsWith("content:/")) {
-                requireContext().contentResolver.openInputStream(Uri.parse(mMedium.path))
-            } else {
-                File(mMedium.path).inputStream()
-            }
+        val metadata = MediumMetadataIndex.getInstance(requireContext()).peek(mMedium)
+        if (metadata != null) {
+            showPanoramaOutline(metadata.isPanorama)
+            return
+        }
 
-            val imageParser = JpegImageParser().getXmpXml(
-                ByteSourceInputStream(inputStream, mMedium.name),
-                HashMap<String, Any>()
-            )
-            imageParser.contains("GPano:UsePanoramaViewer=\"True\"", true) ||
-                    imageParser.contains(
-                        "<GPano:UsePanoramaViewer>True</GPano:UsePanoramaViewer>",
-                        true
-                    ) ||
-                    imageParser.contains("GPano:FullPanoWidthPixels=") ||
-                    imageParser.contains("GPano:ProjectionType>Equirectangular")
-        } catch (e: Exception) {
-            false
-        } catch (e: OutOfMemoryError) {
-            false
+        val medium = mMedium
+        val path = medium.path
+        val context = requireContext().applicationContext
+        RunOnBackgroundThreadUseCase {
+            val isPanorama = PanoramaDetector.isPanorama(context, medium)
+            activity?.runOnUiThread {
+                if (_binding != null && mMedium.path == path) {
+                    showPanoramaOutline(isPanorama)
+                }
+            }
         }
+    }
 
+    private fun showPanoramaOutline(isPanorama: Boolean) {
+        mIsPanorama = isPanorama
         BeVisibleOrGoneUseCase(binding.panoramaOutline, mIsPanorama)
         if (mIsFullscreen) {
             binding.panoramaOutline.alpha = 0f
@@ -826,36 +873,34 @@ class PhotoFragment : ViewPagerFragment() {
 
     private fun getImageOrientation(): Int {
         val defaultOrientation = -1
-        var orient = defaultOrientation
-
-
         val path = getFilePathToShow()
-        orient = if (path.startsWith("content:/")) {
-            val inputStream = requireContext().contentResolver.openInputStream(Uri.parse(path))
-            val exif = ExifInterface()
-            exif.readExif(inputStream, ExifInterface.Options.OPTION_ALL)
-            val tag = exif.getTag(ExifInterface.TAG_ORIENTATION)
-            tag?.getValueAsInt(defaultOrientation) ?: defaultOrientation
+        if (path.startsWith("content:/")) {
+            return readExifOrientation(Uri.parse(path), defaultOrientation)
+        }
+
+        var orient = if (IsPathOnOtgUseCase(requireContext(), path)) {
+            defaultOrientation
         } else {
             val exif = androidx.exifinterface.media.ExifInterface(path)
             exif.getAttributeInt(TAG_ORIENTATION, defaultOrientation)
         }
 
-        if (orient == defaultOrientation ||
-            IsPathOnOtgUseCase(requireContext(), getFilePathToShow())
-        ) {
-            val uri =
-                if (path.startsWith("content:/")) Uri.parse(path) else Uri.fromFile(File(path))
-            val inputStream = requireContext().contentResolver.openInputStream(uri)
-            val exif2 = ExifInterface()
-            exif2.readExif(inputStream, ExifInterface.Options.OPTION_ALL)
-            orient =
-                exif2.getTag(ExifInterface.TAG_ORIENTATION)?.getValueAsInt(defaultOrientation)
-                    ?: defaultOrientation
+        if (orient == defaultOrientation) {
+            orient = readExifOrientation(Uri.fromFile(File(path)), defaultOrientation)
         }
         return orient
     }
 
+    // reads just the orientation tag, without parsing the other IFDs, the maker notes and the thumbnail
+    private fun readExifOrientation(uri: Uri, defaultOrientation: Int): Int {
+        val inputStream = requireContext().contentResolver.openInputStream(uri) ?: return defaultOrientation
+        return inputStream.use {
+            val exif = ExifInterface()
+            exif.readExifTags(it, ExifInterface.TAG_ORIENTATION)
+            exif.getTag(ExifInterface.TAG_ORIENTATION)?.getValueAsInt(defaultOrientation) ?: defaultOrientation
+        }
+    }
+
     private fun getDoubleTapZoomScale(width: Int, height: Int): Float {
         val bitmapAspectRatio = height / width.toFloat()
         val screenAspectRatio = mScreenHeight / mScreenWidth.toFloat()
@@ -888,18 +933,20 @@ class PhotoFragment : ViewPagerFragment() {
 
     private fun initExtendedDetails() {
         if (requireContext().config.showExtendedDetails) {
-            binding.photoDetails.apply {
-                visibility =
-                    View.INVISIBLE   // make it invisible so we can measure it, but not show yet
-                text = getMediumExtendedDetails(mMedium)
-                onGlobalLayout {
-                    if (isAdded) {
-                        val realY = getExtendedDetailsY(height)
-                        if (realY > 0) {
-                            y = realY
-                            BeVisibleOrGoneUseCase(this, text.isNotEmpty())
-                            alpha =
-                                if (!requireContext().config.hideExtendedDetails || !mIsFullscreen) 1f else 0f
+            // make it invisible so we can measure it, but not show yet
+            binding.photoDetails.visibility = View.INVISIBLE
+            withIndexedMetadata(mMedium) {
+                binding.photoDetails.apply {
+                    text = getMediumExtendedDetails(mMedium)
+                    onGlobalLayout {
+                        if (isAdded) {
+                            val realY = getExtendedDetailsY(height)
+                            if (realY > 0) {
+                                y = realY
+                                BeVisibleOrGoneUseCase(this, text.isNotEmpty())
+                                alpha =
+                                    if (!requireContext().config.hideExtendedDetails || !mIsFullscreen) 1f else 0f
+                            }
                         }
                     }
                 }
@@ -0,0 +1,108 @@
+package ca.on.sudbury.hojat.smartgallery.svg
+
+import android.content.Context
+import android.graphics.Picture
+import android.net.Uri
+import android.util.LruCache
+import ca.on.hojat.renderer.svg.SVG
+import ca.on.hojat.renderer.svg.SVGParseException
+import com.bumptech.glide.load.Key
+import com.bumptech.glide.load.Option
+import com.bumptech.glide.request.RequestOptions
+import java.io.File
+import java.io.IOException
+
+/**
+ * Keeps the recently parsed SVG documents and their recorded [Picture]s in memory, shared by the thumbnails
+ * and the viewer. A Picture is recorded at the document size and scaled by its drawable, so one recording
+ * serves every requested size.
+ *
+ * Entries are keyed by the path and signature of the file, requests without [CACHE_KEY] aren't cached.
+ */
+object SvgCache {
+    val CACHE_KEY: Option<String> = Option.memory("ca.on.sudbury.hojat.smartgallery.svg.SvgCache.CacheKey")
+
+    // neither the documents nor the recordings tell their size, they are weighted by the size of their source
+    private const val MIN_ENTRY_SIZE = 1024
+    private const val MAX_CACHE_SIZE = 32 * 1024 * 1024
+
+    // immutable, the cache must always get the same size for an entry it holds
+    private class Entry(val svg: SVG, val sourceSize: Int, val picture: Picture? = null)
+
+    private val cache = object : LruCache<String, Entry>(getCacheSize()) {
+        override fun sizeOf(key: String, value: Entry): Int {
+            // the parsed tree and the recording both take a few times the size of the source
+            val size = maxOf(value.sourceSize, MIN_ENTRY_SIZE)
+            return if (value.picture == null) size * 2 else size * 4
+        }
+    }
+
+    /**
+     * Returns request options that load the file through this cache.
+     */
+    fun requestOptions(path: String, signature: Key): RequestOptions = RequestOptions()
+        .signature(signature)
+        .set(CACHE_KEY, getCacheKey(path, signature))
+
+    fun getCacheKey(path: String, signature: Key) = "$path|$signature"
+
+    fun getSvg(key: String): SVG? = cache.get(key)?.svg
+
+    /**
+     * Returns the parsed document of the file, parsing it if it isn't cached. Reads the disk, don't call it on the UI thread.
+     */
+    @Throws(IOException::class)
+    fun getSvg(context: Context, path: String, signature: Key): SVG {
+        val key = getCacheKey(path, signature)
+        getSvg(key)?.let { return it }
+
+        val inputStream = if (path.startsWith("content:/")) {
+            context.contentResolver.openInputStream(Uri.parse(path))
+        } else {
+            File(path).inputStream()
+        } ?: throw IOException("Cannot open $path")
+
+        val bytes = inputStream.use { it.readBytes() }
+        val svg = try {
+            SVG.getFromInputStream(bytes.inputStream())
+        } catch (e: SVGParseException) {
+            throw IOException("Cannot load SVG from $path", e)
+        }
+
+        putSvg(key, svg, bytes.size)
+        return svg
+    }
+
+    fun putSvg(key: String, svg: SVG, sourceSize: Int) {
+        cache.put(key, Entry(svg, sourceSize))
+    }
+
+    /**
+     * Returns the recording of the document, recording it on the first call.
+     */
+    fun getPicture(key: String?, svg: SVG): Picture {
+        if (key == null) {
+            return renderToPicture(svg)
+        }
+
+        val entry = cache.get(key)?.takeIf { it.svg === svg } ?: return renderToPicture(svg)
+
+        entry.picture?.let { return it }
+        val picture = renderToPicture(svg)
+
+        // a new entry, so the size of the recording is accounted for
+        cache.put(key, Entry(svg, entry.sourceSize, picture))
+        return picture
+    }
+
+    fun clear() = cache.evictAll()
+
+    private fun renderToPicture(svg: SVG): Picture {
+        // the same document can be requested by the thumbnail and the viewer at once
+        synchronized(svg) {
+            return svg.renderToPicture()
+        }
+    }
+
+    private fun getCacheSize() = minOf(Runtime.getRuntime().maxMemory() / 16, MAX_CACHE_SIZE.toLong()).toInt()
+}
@@ -7,6 +7,7 @@ import com.bumptech.glide.load.ResourceDecoder
 import com.bumptech.glide.load.engine.Resource
 import com.bumptech.glide.load.resource.SimpleResource
 
+import java.io.FilterInputStream
 import java.io.IOException
 import java.io.InputStream
 
@@ -21,11 +22,41 @@ class SvgDecoder : ResourceDecoder<InputStream, SVG> {
         height: Int,
         options: Options
     ): Resource<SVG> {
+        val cacheKey = options.get(SvgCache.CACHE_KEY)
+        if (cacheKey != null) {
+            SvgCache.getSvg(cacheKey)?.let { return SimpleResource(it) }
+        }
+
         try {
-            val svg = SVG.getFromInputStream(source)
+            val countingStream = CountingInputStream(source)
+            val svg = SVG.getFromInputStream(countingStream)
+            if (cacheKey != null) {
+                SvgCache.putSvg(cacheKey, svg, countingStream.count)
+            }
             return SimpleResource(svg)
         } catch (ex: SVGParseException) {
             throw IOException("Cannot load SVG from stream", ex)
         }
     }
+
+    private class CountingInputStream(source: InputStream) : FilterInputStream(source) {
+        var count = 0
+            private set
+
+        override fun read(): Int {
+            val byte = super.read()
+            if (byte >= 0) {
+                count++
+            }
+            return byte
+        }
+
+        override fun read(buffer: ByteArray, offset: Int, length: Int): Int {
+            val read = super.read(buffer, offset, length)
+            if (read > 0) {
+                count += read
+            }
+            return read
+        }
+    }
 }
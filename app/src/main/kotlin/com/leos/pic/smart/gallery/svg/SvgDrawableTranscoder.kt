@@ -13,7 +13,7 @@ class SvgDrawableTranscoder : ResourceTranscoder<SVG, PictureDrawable> {
         options: Options
     ): Resource<PictureDrawable> {
         val svg = toTranscode.get()
-        val picture = svg.renderToPicture()
+        val picture = SvgCache.getPicture(options.get(SvgCache.CACHE_KEY), svg)
         val drawable = PictureDrawable(picture)
         return SimpleResource(drawable)
     }
@@ -0,0 +1,35 @@
+package ca.on.sudbury.hojat.smartgallery.svg
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.net.Uri
+import ca.on.hojat.palette.subscaleview.ImageDecoder
+import com.bumptech.glide.load.Key
+import kotlin.math.roundToInt
+
+/**
+ * Renders a whole SVG for the zoomable view, at the source size given by [SvgRegionDecoder] fitted into the requested size.
+ */
+class SvgImageDecoder(
+    private val path: String,
+    private val signature: Key,
+    private val minSourceSize: Int
+) : ImageDecoder {
+    override fun decode(context: Context, uri: Uri, maxWidth: Int, maxHeight: Int): Bitmap {
+        val svg = SvgCache.getSvg(context, path, signature)
+        val picture = SvgCache.getPicture(SvgCache.getCacheKey(path, signature), svg)
+        val sourceScale = SvgRegionDecoder.getSourceScale(picture, minSourceSize)
+        val sourceWidth = picture.width * sourceScale
+        val sourceHeight = picture.height * sourceScale
+        val scale = minOf(1f, maxWidth / sourceWidth, maxHeight / sourceHeight) * sourceScale
+
+        val width = maxOf((picture.width * scale).roundToInt(), 1)
+        val height = maxOf((picture.height * scale).roundToInt(), 1)
+        val bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+        val canvas = Canvas(bitmap)
+        canvas.scale(scale, scale)
+        canvas.drawPicture(picture)
+        return bitmap
+    }
+}
@@ -0,0 +1,76 @@
+package ca.on.sudbury.hojat.smartgallery.svg
+
+import android.content.Context
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Picture
+import android.graphics.Point
+import android.graphics.Rect
+import android.net.Uri
+import ca.on.hojat.palette.subscaleview.ImageRegionDecoder
+import com.bumptech.glide.load.Key
+import java.io.IOException
+import kotlin.math.ceil
+import kotlin.math.roundToInt
+
+/**
+ * Renders the tiles of an SVG for the zoomable view. The document is given a source size larger than the screen,
+ * every tile only rasterizes its own part of the cached recording at its own sample size, so the image stays sharp
+ * at every zoom level while the memory used is bounded by the tiles on the screen.
+ */
+class SvgRegionDecoder(
+    private val path: String,
+    private val signature: Key,
+    private val minSourceSize: Int
+) : ImageRegionDecoder {
+    companion object {
+        // keeps the largest tiles and the source coordinates in a sane range for huge documents
+        private const val MAX_SOURCE_SIZE = 32768
+
+        /**
+         * Returns the scale that gives the longer side of the document at least [minSourceSize] pixels.
+         */
+        fun getSourceScale(picture: Picture, minSourceSize: Int): Float {
+            val longerSide = maxOf(picture.width, picture.height).toFloat()
+            return (minSourceSize / longerSide).coerceIn(1f, MAX_SOURCE_SIZE / longerSide)
+        }
+    }
+
+    @Volatile
+    private var picture: Picture? = null
+    private var sourceScale = 1f
+
+    @Throws(IOException::class)
+    override fun init(context: Context, uri: Uri): Point {
+        val svg = SvgCache.getSvg(context, path, signature)
+        val picture = SvgCache.getPicture(SvgCache.getCacheKey(path, signature), svg)
+        if (picture.width <= 0 || picture.height <= 0) {
+            throw IOException("The SVG at $path has no size")
+        }
+
+        sourceScale = getSourceScale(picture, minSourceSize)
+        this.picture = picture
+        return Point((picture.width * sourceScale).roundToInt(), (picture.height * sourceScale).roundToInt())
+    }
+
+    override fun decodeRegion(sRect: Rect, sampleSize: Int): Bitmap {
+        val picture = picture ?: throw IllegalStateException("Cannot decode a region of a recycled decoder")
+        val width = ceil(sRect.width() / sampleSize.toFloat()).toInt()
+        val height = ceil(sRect.height() / sampleSize.toFloat()).toInt()
+        val bitmap = Bitmap.createBitmap(maxOf(width, 1), maxOf(height, 1), Bitmap.Config.ARGB_8888)
+
+        // the recording is immutable, tiles can be drawn from it on several threads at once
+        val canvas = Canvas(bitmap)
+        canvas.scale(1f / sampleSize, 1f / sampleSize)
+        canvas.translate(-sRect.left.toFloat(), -sRect.top.toFloat())
+        canvas.scale(sourceScale, sourceScale)
+        canvas.drawPicture(picture)
+        return bitmap
+    }
+
+    override fun isReady() = picture != null
+
+    override fun recycle() {
+        picture = null
+    }
+}
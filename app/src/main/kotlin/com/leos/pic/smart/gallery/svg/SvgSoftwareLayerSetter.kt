@@ -2,6 +2,7 @@ package ca.on.sudbury.hojat.smartgallery.svg
 
 import android.graphics.drawable.PictureDrawable
 import android.widget.ImageView
+import ca.on.sudbury.hojat.smartgallery.usecases.IsMarshmallowPlusUseCase
 
 import com.bumptech.glide.load.DataSource
 import com.bumptech.glide.load.engine.GlideException
@@ -29,8 +30,11 @@ class SvgSoftwareLayerSetter : RequestListener<PictureDrawable> {
         dataSource: DataSource,
         isFirstResource: Boolean
     ): Boolean {
+        // pictures can be drawn with hardware acceleration since Marshmallow, a software layer would
+        // rasterize the whole picture again at every redraw
+        val layerType = if (IsMarshmallowPlusUseCase()) ImageView.LAYER_TYPE_NONE else ImageView.LAYER_TYPE_SOFTWARE
         val view = (target as ImageViewTarget<*>).view
-        view.setLayerType(ImageView.LAYER_TYPE_SOFTWARE, null)
+        view.setLayerType(layerType, null)
         return false
     }
 }
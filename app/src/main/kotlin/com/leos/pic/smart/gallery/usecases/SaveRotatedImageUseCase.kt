@@ -10,6 +10,8 @@ import android.os.Build
 import androidx.annotation.RequiresApi
 import androidx.appcompat.app.AppCompatActivity
 import androidx.exifinterface.media.ExifInterface
+import ca.on.hojat.renderer.exif.ExifPatcher
+import ca.on.hojat.renderer.jpeg.JpegTransform
 import ca.on.sudbury.hojat.smartgallery.activities.BaseSimpleActivity
 import ca.on.sudbury.hojat.smartgallery.extensions.config
 import ca.on.sudbury.hojat.smartgallery.extensions.getCompressionFormat
@@ -53,8 +55,14 @@ object SaveRotatedImageUseCase {
             newDegrees += 360
         }
 
-        if (oldPath == newPath && IsJpgUseCase(oldPath)) {
-            if (tryRotateByExif(owner, oldPath, newDegrees, showToasts, callback)) {
+        if (IsJpgUseCase(oldPath)) {
+            if (oldPath == newPath && tryRotateByExif(owner, oldPath, newDegrees, showToasts, callback)) {
+                return
+            }
+
+            // the orientation couldn't be saved in place, move the blocks instead of decoding the image
+            if (tryRotateLosslessly(owner, oldPath, newPath, newDegrees)) {
+                callback.invoke()
                 return
             }
         }
@@ -70,7 +78,7 @@ object SaveRotatedImageUseCase {
                 val oldLastModified = File(oldPath).lastModified()
                 if (IsJpgUseCase(oldPath)) {
                     copyFile(owner, oldPath, tmpPath)
-                    saveExifRotation(ExifInterface(tmpPath), newDegrees)
+                    saveExifRotation(tmpPath, newDegrees)
                 } else {
                     val inputstream = owner.getFileInputStreamSync(oldPath)
                     val bitmap = BitmapFactory.decodeStream(inputstream)
@@ -101,6 +109,43 @@ object SaveRotatedImageUseCase {
 
     }
 
+    /**
+     * Rotates the pixels of a JPEG by moving its DCT blocks, so nothing gets recompressed. The current orientation gets
+     * applied as well. The entropy coded data is written again with the standard Huffman tables, so it's only used when
+     * the EXIF orientation can't be saved. Returns false if the image can't be transformed as a whole.
+     */
+    private fun tryRotateLosslessly(
+        owner: BaseSimpleActivity,
+        oldPath: String,
+        newPath: String,
+        degrees: Int
+    ): Boolean {
+        val tmpFile = File(owner.cacheDir, ".tmp_${newPath.getFilenameFromPath()}")
+        return try {
+            val oldLastModified = File(oldPath).lastModified()
+            val inputStream = owner.getFileInputStreamSync(oldPath) ?: return false
+            inputStream.use { input ->
+                FileOutputStream(tmpFile).use { out ->
+                    JpegTransform.transform(input, out, JpegTransform.Transform.fromDegrees(degrees), true, false)
+                }
+            }
+
+            copyFile(owner, tmpFile.absolutePath, newPath)
+            owner.applicationContext.rescanPaths(arrayListOf(newPath))
+            fileRotatedSuccessfully(owner, newPath, oldLastModified)
+            true
+        } catch (e: IOException) {
+            // unsupported encodings and sizes with partial MCUs end up here
+            Timber.d(e)
+            false
+        } catch (e: OutOfMemoryError) {
+            Timber.e(e)
+            false
+        } finally {
+            tmpFile.delete()
+        }
+    }
+
     @TargetApi(Build.VERSION_CODES.N)
     private fun tryRotateByExif(
         owner: AppCompatActivity,
@@ -173,7 +218,7 @@ object SaveRotatedImageUseCase {
                             IsPathOnOtgUseCase(owner, path)) &&
                     !owner.isSDCardSetAsDefaultStorage())
         ) {
-            saveExifRotation(ExifInterface(path), degrees)
+            saveExifRotation(path, degrees)
             return true
         } else if (IsNougatPlusUseCase()) {
             val documentFile = owner.getSomeDocumentFile(path)
@@ -188,6 +233,18 @@ object SaveRotatedImageUseCase {
         return false
     }
 
+    /**
+     * Overwrites just the orientation value in the file when it has one, so the image data isn't copied around.
+     */
+    private fun saveExifRotation(path: String, degrees: Int) {
+        val orientation = ExifInterface(path)
+            .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)
+        val orientationDegrees = (getDegreesFromOrientation(orientation) + degrees) % 360
+        if (!ExifPatcher.patchOrientation(path, orientationFromDegrees(orientationDegrees).toInt())) {
+            throw IOException("Failed to save the orientation of $path")
+        }
+    }
+
     private fun saveExifRotation(exif: ExifInterface, degrees: Int) {
         val orientation =
             exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)
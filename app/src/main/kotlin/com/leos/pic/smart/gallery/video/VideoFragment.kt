@@ -53,12 +53,13 @@ import ca.on.sudbury.hojat.smartgallery.extensions.config
 import ca.on.sudbury.hojat.smartgallery.extensions.hasNavBar
 import ca.on.sudbury.hojat.smartgallery.extensions.navigationBarRight
 import ca.on.sudbury.hojat.smartgallery.extensions.navigationBarSize
-import ca.on.sudbury.hojat.smartgallery.extensions.parseFileChannel
 import ca.on.sudbury.hojat.smartgallery.fragments.ViewPagerFragment
+import ca.on.sudbury.hojat.smartgallery.helpers.MediumMetadataIndex
 import ca.on.sudbury.hojat.smartgallery.helpers.Config
 import ca.on.sudbury.hojat.smartgallery.helpers.MEDIUM
 import ca.on.sudbury.hojat.smartgallery.helpers.SHOULD_INIT_FRAGMENT
 import ca.on.sudbury.hojat.smartgallery.helpers.PATH
+import ca.on.sudbury.hojat.smartgallery.helpers.PanoramaDetector
 import ca.on.sudbury.hojat.smartgallery.helpers.FAST_FORWARD_VIDEO_MS
 import ca.on.sudbury.hojat.smartgallery.models.Medium
 import ca.on.sudbury.hojat.smartgallery.usecases.BeVisibleOrGoneUseCase
@@ -66,7 +67,6 @@ import ca.on.sudbury.hojat.smartgallery.usecases.BeVisibleOrInvisibleUseCase
 import ca.on.sudbury.hojat.smartgallery.usecases.RunOnBackgroundThreadUseCase
 import timber.log.Timber
 import java.io.File
-import java.io.FileInputStream
 import kotlin.math.roundToInt
 
 class VideoFragment : ViewPagerFragment(), TextureView.SurfaceTextureListener,
@@ -200,22 +200,22 @@ class VideoFragment : ViewPagerFragment(), TextureView.SurfaceTextureListener,
         initTimeHolder()
         checkIfPanorama()
 
-        RunOnBackgroundThreadUseCase {
-            activity?.getVideoResolution(mMedium.path)?.apply {
-                mVideoSize.x = x
-                mVideoSize.y = y
+        val metadata = MediumMetadataIndex.getInstance(requireContext()).peek(mMedium)
+        if (metadata != null && metadata.width > 0 && metadata.height > 0) {
+            mVideoSize.x = metadata.width
+            mVideoSize.y = metadata.height
+        } else {
+            RunOnBackgroundThreadUseCase {
+                activity?.getVideoResolution(mMedium.path)?.apply {
+                    mVideoSize.x = x
+                    mVideoSize.y = y
+                }
             }
         }
 
 
         if (mIsPanorama) {
-            binding.apply {
-                panoramaOutline.visibility = View.VISIBLE
-                videoPlayOutline.visibility = View.GONE
-                videoVolumeController.visibility = View.GONE
-                videoBrightnessController.visibility = View.GONE
-                Glide.with(requireContext()).load(mMedium.path).into(videoPreview)
-            }
+            showPanorama()
         }
 
         if (!mIsPanorama) {
@@ -507,17 +507,19 @@ class VideoFragment : ViewPagerFragment(), TextureView.SurfaceTextureListener,
 
     private fun checkExtendedDetails() {
         if (mConfig.showExtendedDetails) {
-            binding.videoDetails.apply {
-                visibility =
-                    View.INVISIBLE   // make it invisible so we can measure it, but not show yet
-                text = getMediumExtendedDetails(mMedium)
-                onGlobalLayout {
-                    if (isAdded) {
-                        val realY = getExtendedDetailsY(height)
-                        if (realY > 0) {
-                            y = realY
-                            BeVisibleOrGoneUseCase(this, text.isNotEmpty())
-                            alpha = if (!mConfig.hideExtendedDetails || !mIsFullscreen) 1f else 0f
+            // make it invisible so we can measure it, but not show yet
+            binding.videoDetails.visibility = View.INVISIBLE
+            withIndexedMetadata(mMedium) {
+                binding.videoDetails.apply {
+                    text = getMediumExtendedDetails(mMedium)
+                    onGlobalLayout {
+                        if (isAdded) {
+                            val realY = getExtendedDetailsY(height)
+                            if (realY > 0) {
+                                y = realY
+                                BeVisibleOrGoneUseCase(this, text.isNotEmpty())
+                                alpha = if (!mConfig.hideExtendedDetails || !mIsFullscreen) 1f else 0f
+                            }
                         }
                     }
                 }
@@ -549,15 +551,38 @@ class VideoFragment : ViewPagerFragment(), TextureView.SurfaceTextureListener,
     }
 
     private fun checkIfPanorama() {
-        try {
-            val fis = FileInputStream(File(mMedium.path))
-            fis.use {
-                requireContext().parseFileChannel(mMedium.path, it.channel, 0, 0, 0) {
-                    mIsPanorama = true
+        val metadata = MediumMetadataIndex.getInstance(requireContext()).peek(mMedium)
+        if (metadata != null) {
+            mIsPanorama = metadata.isPanorama
+            return
+        }
+
+        // the fragment is set up as a regular video meanwhile and switched over if it turns out to be a panorama
+        val medium = mMedium
+        val context = requireContext().applicationContext
+        RunOnBackgroundThreadUseCase {
+            if (PanoramaDetector.isPanorama(context, medium)) {
+                activity?.runOnUiThread {
+                    if (_binding != null && !mIsPanorama) {
+                        mIsPanorama = true
+                        pauseVideo()
+                        showPanorama()
+                    }
                 }
             }
-        } catch (ignored: Exception) {
-        } catch (ignored: OutOfMemoryError) {
+        }
+    }
+
+    private fun showPanorama() {
+        binding.apply {
+            panoramaOutline.visibility = View.VISIBLE
+            videoPlayOutline.visibility = View.GONE
+            videoSurface.visibility = View.GONE
+            videoSurfaceFrame.visibility = View.GONE
+            videoVolumeController.visibility = View.GONE
+            videoBrightnessController.visibility = View.GONE
+            videoPreview.visibility = View.VISIBLE
+            Glide.with(requireContext()).load(mMedium.path).into(videoPreview)
         }
     }
 
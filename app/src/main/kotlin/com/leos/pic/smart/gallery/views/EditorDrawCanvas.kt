@@ -14,7 +14,19 @@ import ca.on.sudbury.hojat.smartgallery.R
 import ca.on.sudbury.hojat.smartgallery.extensions.getProperPrimaryColor
 import ca.on.sudbury.hojat.smartgallery.models.PaintOptions
 
+/**
+ * Lets the user draw over an image. Finished strokes are drawn once into a layer bitmap, every frame only draws the
+ * layer and the current stroke. An undo redraws the layer from the last snapshot taken before the undone stroke, a
+ * snapshot is taken every [CHECKPOINT_INTERVAL] strokes.
+ */
 class EditorDrawCanvas(context: Context, attrs: AttributeSet) : View(context, attrs) {
+    companion object {
+        private const val CHECKPOINT_INTERVAL = 25
+
+        // every snapshot takes as much memory as the layer
+        private const val MAX_CHECKPOINTS = 3
+    }
+
     private var mCurX = 0f
     private var mCurY = 0f
     private var mStartX = 0f
@@ -26,6 +38,11 @@ class EditorDrawCanvas(context: Context, attrs: AttributeSet) : View(context, at
     private var mPath = Path()
     private var mPaintOptions = PaintOptions()
     private var backgroundBitmap: Bitmap? = null
+    private var mStrokeLayer: Bitmap? = null
+    private var mStrokeLayerCanvas: Canvas? = null
+
+    // the snapshots of the layer by the number of strokes drawn into them
+    private val mCheckpoints = sortedMapOf<Int, Bitmap>()
 
     init {
         mColor = context.getProperPrimaryColor()
@@ -47,9 +64,14 @@ class EditorDrawCanvas(context: Context, attrs: AttributeSet) : View(context, at
             canvas.drawBitmap(backgroundBitmap!!, 0f, 0f, null)
         }
 
-        for ((key, value) in mPaths) {
-            changePaint(value)
-            canvas.drawPath(key, mPaint)
+        val strokeLayer = mStrokeLayer
+        if (strokeLayer != null) {
+            canvas.drawBitmap(strokeLayer, 0f, 0f, null)
+        } else {
+            for ((key, value) in mPaths) {
+                changePaint(value)
+                canvas.drawPath(key, mPaint)
+            }
         }
 
         changePaint(mPaintOptions)
@@ -57,6 +79,21 @@ class EditorDrawCanvas(context: Context, attrs: AttributeSet) : View(context, at
         canvas.restore()
     }
 
+    override fun onSizeChanged(w: Int, h: Int, oldw: Int, oldh: Int) {
+        super.onSizeChanged(w, h, oldw, oldh)
+        clearCheckpoints()
+        mStrokeLayer?.recycle()
+        mStrokeLayer = null
+        mStrokeLayerCanvas = null
+
+        if (w > 0 && h > 0) {
+            val strokeLayer = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888)
+            mStrokeLayer = strokeLayer
+            mStrokeLayerCanvas = Canvas(strokeLayer)
+            redrawStrokeLayer()
+        }
+    }
+
     @SuppressLint("ClickableViewAccessibility")
     override fun onTouchEvent(event: MotionEvent): Boolean {
         val x = event.x
@@ -108,6 +145,10 @@ class EditorDrawCanvas(context: Context, attrs: AttributeSet) : View(context, at
         }
 
         mPaths[mPath] = mPaintOptions
+        mStrokeLayerCanvas?.let { drawStroke(it, mPath, mPaintOptions) }
+        if (mPaths.size % CHECKPOINT_INTERVAL == 0) {
+            addCheckpoint()
+        }
         mPath = Path()
         mPaintOptions = PaintOptions(mPaintOptions.color, mPaintOptions.strokeWidth)
     }
@@ -146,6 +187,55 @@ class EditorDrawCanvas(context: Context, attrs: AttributeSet) : View(context, at
 
         val lastKey = mPaths.keys.lastOrNull()
         mPaths.remove(lastKey)
+        redrawStrokeLayer()
         invalidate()
     }
+
+    private fun drawStroke(canvas: Canvas, path: Path, paintOptions: PaintOptions) {
+        changePaint(paintOptions)
+        canvas.drawPath(path, mPaint)
+    }
+
+    private fun addCheckpoint() {
+        val strokeLayer = mStrokeLayer ?: return
+        val snapshot = if (mCheckpoints.size >= MAX_CHECKPOINTS) {
+            // reuse the oldest snapshot, undoing further back replays the strokes from an older one
+            mCheckpoints.remove(mCheckpoints.firstKey())!!
+        } else {
+            Bitmap.createBitmap(strokeLayer.width, strokeLayer.height, Bitmap.Config.ARGB_8888)
+        }
+
+        snapshot.eraseColor(Color.TRANSPARENT)
+        Canvas(snapshot).drawBitmap(strokeLayer, 0f, 0f, null)
+        mCheckpoints[mPaths.size] = snapshot
+    }
+
+    private fun clearCheckpoints() {
+        mCheckpoints.values.forEach { it.recycle() }
+        mCheckpoints.clear()
+    }
+
+    /**
+     * Redraws the layer from the last snapshot that doesn't contain more strokes than there are, then replays the
+     * strokes drawn after it.
+     */
+    private fun redrawStrokeLayer() {
+        val canvas = mStrokeLayerCanvas ?: return
+
+        // the snapshots of strokes that don't exist anymore are useless
+        while (mCheckpoints.isNotEmpty() && mCheckpoints.lastKey() > mPaths.size) {
+            mCheckpoints.remove(mCheckpoints.lastKey())!!.recycle()
+        }
+
+        mStrokeLayer!!.eraseColor(Color.TRANSPARENT)
+        var replayFrom = 0
+        if (mCheckpoints.isNotEmpty()) {
+            replayFrom = mCheckpoints.lastKey()
+            canvas.drawBitmap(mCheckpoints[replayFrom]!!, 0f, 0f, null)
+        }
+
+        mPaths.entries.drop(replayFrom).forEach { (path, paintOptions) ->
+            drawStroke(canvas, path, paintOptions)
+        }
+    }
 }
@@ -0,0 +1,97 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import android.graphics.Bitmap
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotNull
+import org.junit.Assert.assertTrue
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.GraphicsMode
+
+/**
+ * Draws a small image in every EXIF orientation and checks each pixel lands where the definition of the orientation
+ * puts it.
+ */
+@RunWith(RobolectricTestRunner::class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+class BatchImageConverterTest {
+    companion object {
+        private const val WIDTH = 7
+        private const val HEIGHT = 5
+    }
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    // the rotation and flip the androidx ExifInterface reports for each orientation
+    private val orientations = mapOf(
+        1 to Pair(0, false),
+        2 to Pair(0, true),
+        3 to Pair(180, false),
+        4 to Pair(180, true),
+        5 to Pair(270, true),
+        6 to Pair(90, false),
+        7 to Pair(90, true),
+        8 to Pair(270, false)
+    )
+
+    @Test
+    fun transposedAndTransverseImagesAreDrawnUpright() {
+        checkOrientation(5)
+        checkOrientation(7)
+    }
+
+    @Test
+    fun rotatedAndMirroredImagesAreDrawnUpright() {
+        listOf(1, 2, 3, 4, 6, 8).forEach { checkOrientation(it) }
+    }
+
+    private fun checkOrientation(orientation: Int) {
+        val source = createSource()
+        val (degrees, isFlipped) = orientations.getValue(orientation)
+        val sideways = degrees % 180 != 0
+        val width = if (sideways) HEIGHT else WIDTH
+        val height = if (sideways) WIDTH else HEIGHT
+        val upright = BatchImageConverter.decodeUpright(source.path, 1, degrees, isFlipped, width, height)
+        assertNotNull(upright)
+
+        val message = "orientation $orientation"
+        assertEquals(message, width, upright!!.width)
+        assertEquals(message, height, upright.height)
+        val w = WIDTH - 1
+        val h = HEIGHT - 1
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                val (sourceX, sourceY) = when (orientation) {
+                    2 -> Pair(w - x, y)
+                    3 -> Pair(w - x, h - y)
+                    4 -> Pair(x, h - y)
+                    5 -> Pair(y, x)
+                    6 -> Pair(y, h - x)
+                    7 -> Pair(w - y, h - x)
+                    8 -> Pair(w - y, x)
+                    else -> Pair(x, y)
+                }
+                assertEquals("$message at $x,$y", colorOf(sourceX, sourceY), upright.getPixel(x, y))
+            }
+        }
+        upright.recycle()
+    }
+
+    private fun createSource() = folder.newFile().apply {
+        val bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888)
+        for (y in 0 until HEIGHT) {
+            for (x in 0 until WIDTH) {
+                bitmap.setPixel(x, y, colorOf(x, y))
+            }
+        }
+        outputStream().use { assertTrue(bitmap.compress(Bitmap.CompressFormat.PNG, 100, it)) }
+        bitmap.recycle()
+    }
+
+    // a color of its own for every pixel
+    private fun colorOf(x: Int, y: Int) = 0xFF000000.toInt() or (x * 36 shl 16) or (y * 60 shl 8) or 0x80
+}
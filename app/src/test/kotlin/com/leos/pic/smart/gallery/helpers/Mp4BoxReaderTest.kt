@@ -0,0 +1,211 @@
+package ca.on.sudbury.hojat.smartgallery.helpers
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.After
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.FileInputStream
+import java.nio.ByteBuffer
+
+/**
+ * Walks files built box by box, the malformed ones must end the walk without reading past their boxes.
+ */
+class Mp4BoxReaderTest {
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private val streams = ArrayList<FileInputStream>()
+
+    private data class Box(val type: String, val payloadPosition: Long, val payloadSize: Long, val depth: Int)
+
+    @After
+    fun tearDown() {
+        streams.forEach { it.close() }
+    }
+
+    @Test
+    fun containersAreVisitedBeforeTheirChildren() {
+        val file = bytes(
+            box("ftyp", ByteArray(8)),
+            box(
+                "moov",
+                box("mvhd", ByteArray(100)),
+                box("trak", box("tkhd", ByteArray(84)), box("mdia", box("minf", box("stbl", box("stsd", ByteArray(16)))))),
+                box("udta", box("uuid", ByteArray(20)))
+            ),
+            box("mdat", ByteArray(1000))
+        )
+
+        assertEquals(
+            listOf(
+                Box("ftyp", 8, 8, 0),
+                Box("moov", 24, 292, 0),
+                Box("mvhd", 32, 100, 1),
+                Box("trak", 140, 140, 1),
+                Box("tkhd", 148, 84, 2),
+                Box("mdia", 240, 40, 2),
+                Box("minf", 248, 32, 3),
+                Box("stbl", 256, 24, 4),
+                Box("stsd", 264, 16, 5),
+                Box("udta", 288, 28, 1),
+                Box("uuid", 296, 20, 2),
+                Box("mdat", 324, 1000, 0)
+            ),
+            walk(file)
+        )
+    }
+
+    @Test
+    fun onlyContainersAreEntered() {
+        // the payload of a leaf box looks like a box, but must not be read as one
+        val file = bytes(box("mdat", box("moov", ByteArray(4))), box("free", ByteArray(0)))
+        assertEquals(listOf(Box("mdat", 8, 12, 0), Box("free", 28, 0, 0)), walk(file))
+    }
+
+    @Test
+    fun sizeZeroExtendsToTheEndOfTheParent() {
+        val file = bytes(
+            box("moov", box("trak", box("free")), sizedBox(0, "udta", box("uuid", ByteArray(4)))),
+            sizedBox(0, "mdat", ByteArray(50))
+        )
+
+        assertEquals(
+            listOf(
+                Box("moov", 8, 36, 0),
+                Box("trak", 16, 8, 1),
+                Box("free", 24, 0, 2),
+                Box("udta", 32, 12, 1),
+                Box("uuid", 40, 4, 2),
+                Box("mdat", 52, 50, 0)
+            ),
+            walk(file)
+        )
+    }
+
+    @Test
+    fun sizeOneIsFollowedByTheRealSize() {
+        val file = bytes(
+            largeBox(16L + 24, "moov", box("trak", box("free", ByteArray(8)))),
+            largeBox(16L + 10, "mdat", ByteArray(10)),
+            box("free", ByteArray(2))
+        )
+
+        assertEquals(
+            listOf(
+                Box("moov", 16, 24, 0),
+                Box("trak", 24, 16, 1),
+                Box("free", 32, 8, 2),
+                Box("mdat", 56, 10, 0),
+                Box("free", 74, 2, 0)
+            ),
+            walk(file)
+        )
+    }
+
+    @Test
+    fun theWalkEndsAtABoxLargerThanTheFile() {
+        // an mdat of more than 4 GiB, cut off after a few bytes
+        val file = bytes(box("ftyp", ByteArray(4)), largeBox(5L shl 30, "mdat", ByteArray(100)))
+        assertEquals(listOf(Box("ftyp", 8, 4, 0)), walk(file))
+
+        val cut = bytes(box("ftyp", ByteArray(4)), box("moov", box("trak", ByteArray(8)))).copyOf(30)
+        assertEquals(listOf(Box("ftyp", 8, 4, 0)), walk(cut))
+    }
+
+    @Test
+    fun truncatedHeadersAreIgnored() {
+        // less than a header left
+        val file = bytes(box("ftyp", ByteArray(4)), ByteArray(7))
+        assertEquals(listOf(Box("ftyp", 8, 4, 0)), walk(file))
+
+        // the 64 bit size is missing
+        val large = bytes(box("ftyp", ByteArray(4)), sizedBox(1, "mdat", ByteArray(4)))
+        assertEquals(listOf(Box("ftyp", 8, 4, 0)), walk(large))
+
+        // sizes smaller than the header can't be skipped
+        val small = bytes(box("ftyp", ByteArray(4)), sizedBox(4, "free", ByteArray(4)), box("moov", ByteArray(0)))
+        assertEquals(listOf(Box("ftyp", 8, 4, 0)), walk(small))
+        val smallLarge = bytes(largeBox(15, "free", ByteArray(0)), box("moov", ByteArray(0)))
+        assertEquals(emptyList<Box>(), walk(smallLarge))
+    }
+
+    @Test
+    fun aChildLargerThanItsParentOnlyEndsTheParent() {
+        val file = bytes(
+            box("moov", box("trak", box("free")), sizedBox(100, "udta", ByteArray(8))),
+            box("mdat", ByteArray(4))
+        )
+
+        assertEquals(
+            listOf(Box("moov", 8, 32, 0), Box("trak", 16, 8, 1), Box("free", 24, 0, 2), Box("mdat", 48, 4, 0)),
+            walk(file)
+        )
+    }
+
+    @Test
+    fun theVisitorCanStopTheWalk() {
+        val file = bytes(
+            box("moov", box("trak", box("tkhd", ByteArray(4))), box("udta", ByteArray(4))),
+            box("mdat", ByteArray(4))
+        )
+
+        val visited = ArrayList<String>()
+        assertTrue(reader(file).walk { type, _, _, _ ->
+            visited.add(typeName(type))
+            type == Mp4BoxReader.fourcc("tkhd")
+        })
+        assertEquals(listOf("moov", "trak", "tkhd"), visited)
+
+        assertFalse(reader(file).walk { _, _, _, _ -> false })
+    }
+
+    @Test
+    fun readFailsAtTheEndOfTheFile() {
+        val reader = reader(bytes(box("uuid", byteArrayOf(1, 2, 3, 4))))
+        val buffer = ByteBuffer.allocate(4)
+        assertTrue(reader.read(buffer, 8))
+        assertEquals(0x01020304, buffer.getInt(0))
+
+        buffer.clear()
+        assertFalse(reader.read(buffer, 10))
+    }
+
+    private fun walk(file: ByteArray): List<Box> {
+        val boxes = ArrayList<Box>()
+        assertFalse(reader(file).walk { type, payloadPosition, payloadSize, depth ->
+            boxes.add(Box(typeName(type), payloadPosition, payloadSize, depth))
+            false
+        })
+        return boxes
+    }
+
+    private fun reader(file: ByteArray): Mp4BoxReader {
+        val path = folder.newFile()
+        path.writeBytes(file)
+        val stream = FileInputStream(path)
+        streams.add(stream)
+        return Mp4BoxReader(stream.channel)
+    }
+
+    private fun typeName(type: Int) = String(ByteBuffer.allocate(4).putInt(type).array(), Charsets.ISO_8859_1)
+
+    private fun bytes(vararg parts: ByteArray) = parts.fold(ByteArray(0)) { all, part -> all + part }
+
+    private fun box(type: String, vararg payload: ByteArray): ByteArray {
+        val content = bytes(*payload)
+        return sizedBox(8 + content.size, type, content)
+    }
+
+    private fun sizedBox(size: Int, type: String, vararg payload: ByteArray): ByteArray {
+        val header = ByteBuffer.allocate(8).putInt(size).putInt(Mp4BoxReader.fourcc(type)).array()
+        return header + bytes(*payload)
+    }
+
+    private fun largeBox(size: Long, type: String, vararg payload: ByteArray): ByteArray {
+        val header = ByteBuffer.allocate(16).putInt(1).putInt(Mp4BoxReader.fourcc(type)).putLong(size).array()
+        return header + bytes(*payload)
+    }
+}
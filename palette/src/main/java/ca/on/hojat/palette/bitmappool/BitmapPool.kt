@@ -0,0 +1,24 @@
+package ca.on.hojat.palette.bitmappool
+
+import android.graphics.Bitmap
+
+/**
+ * A pool of mutable bitmaps which can be handed to BitmapFactory/BitmapRegionDecoder as inBitmap, or drawn into
+ * directly, instead of allocating a fresh bitmap every time.
+ */
+interface BitmapPool {
+    /**
+     * Returns a mutable bitmap of exactly the given size and config with undefined content, or null if
+     * there is no reusable bitmap, in which case the caller allocates one itself.
+     */
+    fun get(width: Int, height: Int, config: Bitmap.Config): Bitmap?
+
+    /**
+     * Hands a bitmap over to the pool, the caller must not use it anymore. Immutable or recycled bitmaps are just recycled.
+     */
+    fun put(bitmap: Bitmap)
+
+    fun clear()
+
+    fun getStats(): BitmapPoolStats
+}
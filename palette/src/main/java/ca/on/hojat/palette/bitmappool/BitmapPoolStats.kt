@@ -0,0 +1,35 @@
+package ca.on.hojat.palette.bitmappool
+
+import java.util.concurrent.atomic.AtomicLong
+
+class BitmapPoolStats {
+    private val hits = AtomicLong()
+    private val misses = AtomicLong()
+    private val puts = AtomicLong()
+    private val evictions = AtomicLong()
+
+    fun recordHit() = hits.incrementAndGet()
+
+    fun recordMiss() = misses.incrementAndGet()
+
+    fun recordPut() = puts.incrementAndGet()
+
+    fun recordEviction() = evictions.incrementAndGet()
+
+    fun getHitCount() = hits.get()
+
+    fun getMissCount() = misses.get()
+
+    fun getPutCount() = puts.get()
+
+    fun getEvictionCount() = evictions.get()
+
+    fun getHitRate(): Float {
+        val hits = getHitCount()
+        val requests = hits + getMissCount()
+        return if (requests == 0L) 0f else hits.toFloat() / requests
+    }
+
+    override fun toString() =
+        "hits=${getHitCount()}, misses=${getMissCount()}, puts=${getPutCount()}, evictions=${getEvictionCount()}, hitRate=${getHitRate()}"
+}
@@ -0,0 +1,35 @@
+package ca.on.hojat.palette.bitmappool
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import kotlin.math.max
+
+/**
+ * Holds the [BitmapPool] shared by all modules. The app replaces the default pool with one backed by Glide at startup.
+ */
+object BitmapPools {
+    private const val DEFAULT_MAX_SIZE_DIVIDER = 8
+
+    @Volatile
+    @JvmStatic
+    var shared: BitmapPool = SizeBucketedBitmapPool(Runtime.getRuntime().maxMemory() / DEFAULT_MAX_SIZE_DIVIDER)
+
+    /**
+     * Sets up [options] to decode into a pooled bitmap of the given size. BitmapRegionDecoder keeps the size of the
+     * provided bitmap, so [width] and [height] have to match the decoded region.
+     */
+    @JvmStatic
+    fun prepareReusableBitmap(options: BitmapFactory.Options, width: Int, height: Int) {
+        options.inMutable = true
+        options.inBitmap = shared.get(max(width, 1), max(height, 1), options.inPreferredConfig ?: Bitmap.Config.ARGB_8888)
+    }
+
+    /**
+     * Gives the pooled bitmap set up by [prepareReusableBitmap] back, if the decoder refused to use it.
+     */
+    @JvmStatic
+    fun releaseReusableBitmap(options: BitmapFactory.Options) {
+        options.inBitmap?.let { shared.put(it) }
+        options.inBitmap = null
+    }
+}
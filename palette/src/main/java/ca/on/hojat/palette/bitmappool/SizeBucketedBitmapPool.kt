@@ -0,0 +1,69 @@
+package ca.on.hojat.palette.bitmappool
+
+import android.graphics.Bitmap
+import java.util.ArrayDeque
+
+/**
+ * A [BitmapPool] keeping bitmaps in buckets of the same width, height and config, so a bitmap can be handed out
+ * without reconfiguring it. Tiles of the same sample size level and filter previews of the same image all land in
+ * the same bucket. Once the pool grows over [maxSize] bytes, the least recently added bitmaps get recycled.
+ */
+class SizeBucketedBitmapPool(private val maxSize: Long) : BitmapPool {
+    private val buckets = HashMap<BucketKey, ArrayDeque<Bitmap>>()
+    private val lruKeys = ArrayDeque<BucketKey>()
+    private val stats = BitmapPoolStats()
+    private var currentSize = 0L
+
+    @Synchronized
+    override fun get(width: Int, height: Int, config: Bitmap.Config): Bitmap? {
+        val key = BucketKey(width, height, config)
+        val bitmap = buckets[key]?.pollLast()
+        if (bitmap == null) {
+            stats.recordMiss()
+            return null
+        }
+
+        lruKeys.removeLastOccurrence(key)
+        currentSize -= bitmap.allocationByteCount
+        stats.recordHit()
+        return bitmap
+    }
+
+    @Synchronized
+    override fun put(bitmap: Bitmap) {
+        if (bitmap.isRecycled) {
+            return
+        }
+
+        if (!bitmap.isMutable || bitmap.config == null || bitmap.allocationByteCount > maxSize / 2) {
+            bitmap.recycle()
+            return
+        }
+
+        val key = BucketKey(bitmap.width, bitmap.height, bitmap.config)
+        buckets.getOrPut(key) { ArrayDeque() }.add(bitmap)
+        lruKeys.add(key)
+        currentSize += bitmap.allocationByteCount
+        stats.recordPut()
+        trimToSize(maxSize)
+    }
+
+    @Synchronized
+    override fun clear() {
+        trimToSize(0)
+    }
+
+    override fun getStats() = stats
+
+    private fun trimToSize(size: Long) {
+        while (currentSize > size) {
+            val key = lruKeys.pollFirst() ?: break
+            val bitmap = buckets[key]?.pollFirst() ?: continue
+            currentSize -= bitmap.allocationByteCount
+            bitmap.recycle()
+            stats.recordEviction()
+        }
+    }
+
+    private data class BucketKey(val width: Int, val height: Int, val config: Bitmap.Config)
+}
@@ -5,5 +5,8 @@ import android.graphics.Bitmap
 import android.net.Uri
 
 interface ImageDecoder {
-    fun decode(context: Context, uri: Uri): Bitmap
+    /**
+     * Decodes the whole image, sampled down so it fits into [maxWidth] x [maxHeight] given in the orientation of the source file.
+     */
+    fun decode(context: Context, uri: Uri, maxWidth: Int, maxHeight: Int): Bitmap
 }
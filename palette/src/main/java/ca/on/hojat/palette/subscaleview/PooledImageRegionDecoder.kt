@@ -0,0 +1,217 @@
+package ca.on.hojat.palette.subscaleview
+
+import android.app.ActivityManager
+import android.content.ContentResolver
+import android.content.Context
+import android.content.res.AssetManager
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.graphics.BitmapRegionDecoder
+import android.graphics.Point
+import android.graphics.Rect
+import android.net.Uri
+import ca.on.hojat.palette.bitmappool.BitmapPools
+import ca.on.hojat.palette.subscaleview.SubsamplingScaleImageView.Companion.ASSET_PREFIX
+import timber.log.Timber
+import java.io.File
+import java.util.ArrayDeque
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * An [ImageRegionDecoder] which keeps several [BitmapRegionDecoder]s open on the same source, so tiles
+ * can be decoded in parallel. A single [BitmapRegionDecoder] serializes every decodeRegion call internally.
+ *
+ * The first decoder is opened in [init], the others lazily whenever every open decoder is busy. The pool size
+ * is limited by the core count and the available memory. If the source can't be opened a second time,
+ * the pool falls back to the single decoder opened in [init].
+ */
+class PooledImageRegionDecoder @JvmOverloads constructor(
+    private val bitmapConfig: Bitmap.Config = Bitmap.Config.RGB_565
+) : ImageRegionDecoder {
+    companion object {
+        private const val MAX_DECODERS = 4
+
+        // every open decoder keeps its own copy of the source data, so don't let them take more than this part of the heap
+        private const val MEMORY_BUDGET_DIVIDER = 4
+    }
+
+    private val lock = ReentrantLock()
+    private val decoderReleased = lock.newCondition()
+    private val allDecoders = ArrayList<BitmapRegionDecoder>()
+    private val idleDecoders = ArrayDeque<BitmapRegionDecoder>()
+    private var pendingDecoders = 0
+    private var maxDecoders = 1
+    private var recycled = false
+
+    private var context: Context? = null
+    private var uri: Uri? = null
+
+    override fun isReady() = lock.withLock { !recycled && allDecoders.isNotEmpty() }
+
+    override fun init(context: Context, uri: Uri): Point {
+        this.context = context.applicationContext
+        this.uri = uri
+
+        val decoder = openDecoder(context, uri)
+        lock.withLock {
+            allDecoders.add(decoder)
+            idleDecoders.add(decoder)
+            maxDecoders = calculateMaxDecoders(context, uri)
+        }
+        return Point(decoder.width, decoder.height)
+    }
+
+    override fun decodeRegion(sRect: Rect, sampleSize: Int): Bitmap {
+        val decoder = acquireDecoder()
+        try {
+            val options = BitmapFactory.Options()
+            options.inSampleSize = sampleSize
+            options.inPreferredConfig = bitmapConfig
+            BitmapPools.prepareReusableBitmap(options, sRect.width() / sampleSize, sRect.height() / sampleSize)
+            val bitmap = try {
+                decoder.decodeRegion(sRect, options)
+            } catch (e: IllegalArgumentException) {
+                // the pooled bitmap could not be reused, decode into a new one
+                BitmapPools.releaseReusableBitmap(options)
+                decoder.decodeRegion(sRect, options)
+            }
+
+            return bitmap
+                ?: throw RuntimeException("Pooled region decoder returned null bitmap - image format may not be supported")
+        } finally {
+            releaseDecoder(decoder)
+        }
+    }
+
+    override fun recycle() {
+        lock.withLock {
+            recycled = true
+            // decoders which are still decoding get recycled once they are released
+            while (idleDecoders.isNotEmpty()) {
+                val decoder = idleDecoders.poll()!!
+                decoder.recycle()
+                allDecoders.remove(decoder)
+            }
+            decoderReleased.signalAll()
+        }
+        context = null
+    }
+
+    fun getDecoderCount() = lock.withLock { allDecoders.size }
+
+    private fun acquireDecoder(): BitmapRegionDecoder {
+        while (true) {
+            lock.withLock {
+                while (true) {
+                    check(!recycled) { "Cannot decode region after decoder has been recycled" }
+                    val idleDecoder = idleDecoders.poll()
+                    if (idleDecoder != null) {
+                        return idleDecoder
+                    }
+
+                    if (allDecoders.size + pendingDecoders < maxDecoders) {
+                        pendingDecoders++
+                        break
+                    }
+                    decoderReleased.await()
+                }
+            }
+
+            // opening a decoder can take a while, do not block the other tiles meanwhile
+            val newDecoder = openAdditionalDecoder()
+            lock.withLock {
+                pendingDecoders--
+                if (newDecoder == null) {
+                    maxDecoders = allDecoders.size.coerceAtLeast(1)
+                } else if (recycled) {
+                    newDecoder.recycle()
+                } else {
+                    allDecoders.add(newDecoder)
+                    return newDecoder
+                }
+            }
+        }
+    }
+
+    private fun releaseDecoder(decoder: BitmapRegionDecoder) {
+        lock.withLock {
+            if (recycled) {
+                decoder.recycle()
+                allDecoders.remove(decoder)
+            } else {
+                idleDecoders.add(decoder)
+            }
+            decoderReleased.signal()
+        }
+    }
+
+    private fun openAdditionalDecoder(): BitmapRegionDecoder? {
+        val context = context ?: return null
+        val uri = uri ?: return null
+        return try {
+            openDecoder(context, uri).also {
+                Timber.d("Opened region decoder ${getDecoderCount() + 1} of $maxDecoders for $uri")
+            }
+        } catch (e: Exception) {
+            Timber.w("Cannot reopen $uri, falling back to a single region decoder: $e")
+            null
+        } catch (e: OutOfMemoryError) {
+            Timber.w("Not enough memory for another region decoder: $e")
+            null
+        }
+    }
+
+    private fun openDecoder(context: Context, uri: Uri): BitmapRegionDecoder {
+        val uriString = uri.toString()
+        return when {
+            uriString.startsWith(ASSET_PREFIX) -> {
+                val assetName = uriString.substring(ASSET_PREFIX.length)
+                context.assets.open(assetName, AssetManager.ACCESS_RANDOM).use {
+                    BitmapRegionDecoder.newInstance(it, false)
+                }
+            }
+            isFileUri(uri) -> BitmapRegionDecoder.newInstance(uri.path!!, false)
+            else -> context.contentResolver.openInputStream(uri)!!.use {
+                BitmapRegionDecoder.newInstance(it, false)
+            }
+        } ?: throw RuntimeException("Cannot open region decoder for $uri")
+    }
+
+    private fun calculateMaxDecoders(context: Context, uri: Uri): Int {
+        var decoders = Runtime.getRuntime().availableProcessors().coerceAtMost(MAX_DECODERS)
+        val activityManager = context.getSystemService(Context.ACTIVITY_SERVICE) as? ActivityManager
+        if (activityManager != null) {
+            val memoryInfo = ActivityManager.MemoryInfo()
+            activityManager.getMemoryInfo(memoryInfo)
+            if (memoryInfo.lowMemory) {
+                return 1
+            }
+
+            if (activityManager.isLowRamDevice) {
+                decoders = decoders.coerceAtMost(2)
+            }
+        }
+
+        val sourceLength = getSourceLength(context, uri)
+        if (sourceLength > 0) {
+            val memoryBudget = Runtime.getRuntime().maxMemory() / MEMORY_BUDGET_DIVIDER
+            decoders = decoders.coerceAtMost((memoryBudget / sourceLength).toInt())
+        }
+        return decoders.coerceAtLeast(1)
+    }
+
+    private fun getSourceLength(context: Context, uri: Uri): Long {
+        return try {
+            when {
+                uri.toString().startsWith(ASSET_PREFIX) -> -1L
+                isFileUri(uri) -> File(uri.path!!).length()
+                else -> context.contentResolver.openAssetFileDescriptor(uri, "r")?.use { it.length } ?: -1L
+            }
+        } catch (e: Exception) {
+            -1L
+        }
+    }
+
+    private fun isFileUri(uri: Uri) = (uri.scheme == null || uri.scheme == ContentResolver.SCHEME_FILE) && uri.path != null
+}
@@ -8,31 +8,51 @@ import ca.on.hojat.palette.subscaleview.SubsamplingScaleImageView.Companion.ASSE
 import java.io.InputStream
 
 class SkiaImageDecoder : ImageDecoder {
-    override fun decode(context: Context, uri: Uri): Bitmap {
-        val uriString = uri.toString()
+    override fun decode(context: Context, uri: Uri, maxWidth: Int, maxHeight: Int): Bitmap {
         val options = BitmapFactory.Options()
-        val bitmap: Bitmap?
+        options.inJustDecodeBounds = true
+        decodeStream(context, uri, options)
+
+        options.inJustDecodeBounds = false
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, maxWidth, maxHeight)
         options.inPreferredConfig = Bitmap.Config.RGB_565
-        when {
+        val bitmap = decodeStream(context, uri, options)
+
+        if (bitmap == null) {
+            throw RuntimeException("Skia image region decoder returned null bitmap - image format may not be supported")
+        }
+        return bitmap
+    }
+
+    private fun decodeStream(context: Context, uri: Uri, options: BitmapFactory.Options): Bitmap? {
+        val uriString = uri.toString()
+        return when {
             uriString.startsWith(ASSET_PREFIX) -> {
                 val assetName = uriString.substring(ASSET_PREFIX.length)
-                bitmap = BitmapFactory.decodeStream(context.assets.open(assetName), null, options)
+                context.assets.open(assetName).use {
+                    BitmapFactory.decodeStream(it, null, options)
+                }
             }
             else -> {
                 var inputStream: InputStream? = null
                 try {
                     val contentResolver = context.contentResolver
                     inputStream = contentResolver.openInputStream(uri)
-                    bitmap = BitmapFactory.decodeStream(inputStream, null, options)
+                    BitmapFactory.decodeStream(inputStream, null, options)
                 } finally {
                     inputStream?.close()
                 }
             }
         }
+    }
 
-        if (bitmap == null) {
-            throw RuntimeException("Skia image region decoder returned null bitmap - image format may not be supported")
+    private fun calculateInSampleSize(width: Int, height: Int, maxWidth: Int, maxHeight: Int): Int {
+        var inSampleSize = 1
+        if (maxWidth > 0 && maxHeight > 0) {
+            while (width / inSampleSize > maxWidth || height / inSampleSize > maxHeight) {
+                inSampleSize *= 2
+            }
         }
-        return bitmap
+        return inSampleSize
     }
 }
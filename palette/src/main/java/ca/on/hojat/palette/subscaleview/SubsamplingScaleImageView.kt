@@ -23,6 +23,7 @@ import java.net.URLDecoder
 import java.util.Locale
 import java.util.concurrent.locks.ReentrantReadWriteLock
 import androidx.appcompat.widget.AppCompatImageView
+import ca.on.hojat.palette.bitmappool.BitmapPools
 import timber.log.Timber
 import kotlin.math.abs
 import kotlin.math.atan2
@@ -113,6 +114,7 @@ open class SubsamplingScaleImageView @JvmOverloads constructor(
 
     private var decoder: ImageRegionDecoder? = null
     private val decoderLock = ReentrantReadWriteLock(true)
+    private val tileScheduler = TileScheduler(::decodeTile, ::onTileDecoded)
 
     private var sCenterStart: PointF? = null
     private var vCenterStart: PointF? = null
@@ -263,10 +265,11 @@ open class SubsamplingScaleImageView @JvmOverloads constructor(
             sin = sin(0.0)
         }
 
+        tileScheduler.cancelAll()
         tileMap?.values?.forEach {
             for (tile in it) {
                 tile.visible = false
-                tile.bitmap?.recycle()
+                tile.bitmap?.let { BitmapPools.shared.put(it) }
                 tile.bitmap = null
             }
         }
@@ -1034,6 +1037,31 @@ open class SubsamplingScaleImageView @JvmOverloads constructor(
                 )
             }
 
+            canvas.drawText(
+                "Tiles: ${tileScheduler.getQueueDepth()} queued, ${tileScheduler.getInFlightCount()} decoding, ${
+                    String.format(
+                        Locale.ENGLISH,
+                        "%.1f",
+                        tileScheduler.getAverageDecodeTimeMs()
+                    )
+                } ms avg",
+                px(5).toFloat(),
+                px(60).toFloat(),
+                debugTextPaint!!
+            )
+            canvas.drawText(
+                "Bitmap pool: ${
+                    String.format(
+                        Locale.ENGLISH,
+                        "%.0f",
+                        BitmapPools.shared.getStats().getHitRate() * 100
+                    )
+                }% hits",
+                px(5).toFloat(),
+                px(75).toFloat(),
+                debugTextPaint!!
+            )
+
             debugLinePaint!!.color = Color.MAGENTA
         }
     }
@@ -1130,18 +1158,23 @@ open class SubsamplingScaleImageView @JvmOverloads constructor(
             return
         }
 
-        if (fullImageSampleSize == 1 && sWidth() < maxTileDimensions.x && sHeight() < maxTileDimensions.y) {
+        // decode the whole bitmap only if it fits on the screen, larger images get a screen sized base layer made of
+        // tiles, so memory use is bounded by the view size and full resolution detail is decoded only while zooming
+        if (fullImageSampleSize == 1 && sWidth() < maxTileDimensions.x && sHeight() < maxTileDimensions.y && sWidth() <= width && sHeight() <= height) {
             decoder!!.recycle()
             decoder = null
-            val task = BitmapLoadTask(this, context, bitmapDecoderFactory, uri!!)
+            val rotation = getRequiredRotation()
+            val maxWidth = if (rotation == ORIENTATION_90 || rotation == ORIENTATION_270) height else width
+            val maxHeight = if (rotation == ORIENTATION_90 || rotation == ORIENTATION_270) width else height
+            val task = BitmapLoadTask(this, context, bitmapDecoderFactory, uri!!, maxWidth, maxHeight)
             execute(task)
         } else {
             initialiseTileMap(maxTileDimensions)
 
+            val sCenter = getCenter()
             val baseGrid = tileMap!![fullImageSampleSize]
             for (baseTile in baseGrid!!) {
-                val task = TileLoadTask(this, decoder!!, baseTile)
-                execute(task)
+                tileScheduler.schedule(baseTile, getTileDistance(baseTile, sCenter))
             }
             refreshRequiredTiles(true)
         }
@@ -1158,25 +1191,27 @@ open class SubsamplingScaleImageView @JvmOverloads constructor(
         }
 
         val sampleSize = fullImageSampleSize.coerceAtMost(calculateInSampleSize(scale))
+        val sCenter = getCenter()
 
         tileMap!!.values.forEach {
             for (tile in it) {
                 if (tile.sampleSize < sampleSize || tile.sampleSize > sampleSize && tile.sampleSize != fullImageSampleSize) {
+                    tileScheduler.cancel(tile)
                     tile.visible = false
-                    tile.bitmap?.recycle()
+                    tile.bitmap?.let { BitmapPools.shared.put(it) }
                     tile.bitmap = null
                 }
 
                 if (tile.sampleSize == sampleSize) {
                     if (tileVisible(tile)) {
                         tile.visible = true
-                        if (!tile.loading && tile.bitmap == null && load) {
-                            val task = TileLoadTask(this, decoder!!, tile)
-                            execute(task)
+                        if (tile.bitmap == null && (load || tileScheduler.isScheduled(tile))) {
+                            tileScheduler.schedule(tile, getTileDistance(tile, sCenter))
                         }
                     } else if (tile.sampleSize != fullImageSampleSize) {
+                        tileScheduler.cancel(tile)
                         tile.visible = false
-                        tile.bitmap?.recycle()
+                        tile.bitmap?.let { BitmapPools.shared.put(it) }
                         tile.bitmap = null
                     }
                 } else if (tile.sampleSize == fullImageSampleSize) {
@@ -1186,6 +1221,15 @@ open class SubsamplingScaleImageView @JvmOverloads constructor(
         }
     }
 
+    private fun getTileDistance(tile: Tile, sCenter: PointF?): Float {
+        if (sCenter == null) {
+            return 0f
+        }
+
+        val sRect = tile.sRect!!
+        return distance(sRect.exactCenterX(), sCenter.x, sRect.exactCenterY(), sCenter.y)
+    }
+
     private fun tileVisible(tile: Tile): Boolean {
         if (this.imageRotation == 0f) {
             val sVisLeft = viewToSourceX(0f)
@@ -1517,65 +1561,29 @@ open class SubsamplingScaleImageView @JvmOverloads constructor(
         requestLayout()
     }
 
-    private class TileLoadTask internal constructor(
-        view: SubsamplingScaleImageView,
-        decoder: ImageRegionDecoder,
-        tile: Tile
-    ) :
-        AsyncTask<Void, Void, Bitmap>() {
-        private val viewRef = WeakReference(view)
-        private val decoderRef = WeakReference(decoder)
-        private val tileRef = WeakReference(tile)
-        private var exception: Exception? = null
-
-        init {
-            tile.loading = true
+    private fun decodeTile(tile: Tile): Bitmap? {
+        if (!tile.visible) {
+            return null
         }
 
-        @Deprecated("Deprecated in Java")
-        override fun doInBackground(vararg params: Void): Bitmap? {
-            try {
-                val view = viewRef.get()
-                val decoder = decoderRef.get()
-                val tile = tileRef.get()
-                if (decoder != null && tile != null && view != null && decoder.isReady() && tile.visible) {
-                    view.debug("TileLoadTask.doInBackground, tile.sRect=${tile.sRect as Rect}, tile.sampleSize=${tile.sampleSize}")
-                    view.decoderLock.readLock().lock()
-                    try {
-                        if (decoder.isReady()) {
-                            view.fileSRect(tile.sRect, tile.fileSRect)
-                            return decoder.decodeRegion(tile.fileSRect!!, tile.sampleSize)
-                        } else {
-                            tile.loading = false
-                        }
-                    } finally {
-                        view.decoderLock.readLock().unlock()
-                    }
-                } else {
-                    tile?.loading = false
-                }
-            } catch (e: Exception) {
-                Timber.e("Failed to decode tile $e")
-                exception = e
-            } catch (e: OutOfMemoryError) {
-                Timber.e("Failed to decode tile - OutOfMemoryError $e")
-                exception = RuntimeException(e)
+        debug("decodeTile, tile.sRect=${tile.sRect as Rect}, tile.sampleSize=${tile.sampleSize}")
+        decoderLock.readLock().lock()
+        try {
+            val decoder = decoder
+            if (decoder?.isReady() == true) {
+                fileSRect(tile.sRect, tile.fileSRect)
+                return decoder.decodeRegion(tile.fileSRect!!, tile.sampleSize)
             }
-
-            return null
+        } finally {
+            decoderLock.readLock().unlock()
         }
+        return null
+    }
 
-        @Deprecated("Deprecated in Java")
-        override fun onPostExecute(bitmap: Bitmap?) {
-            val subsamplingScaleImageView = viewRef.get()
-            val tile = tileRef.get()
-            if (subsamplingScaleImageView != null && tile != null) {
-                if (bitmap != null) {
-                    tile.bitmap = bitmap
-                    tile.loading = false
-                    subsamplingScaleImageView.onTileLoaded()
-                }
-            }
+    private fun onTileDecoded(tile: Tile, bitmap: Bitmap?) {
+        if (bitmap != null) {
+            tile.bitmap = bitmap
+            onTileLoaded()
         }
     }
 
@@ -1595,7 +1603,9 @@ open class SubsamplingScaleImageView @JvmOverloads constructor(
         view: SubsamplingScaleImageView,
         context: Context,
         decoderFactory: DecoderFactory<out ImageDecoder>,
-        private val source: Uri
+        private val source: Uri,
+        private val maxWidth: Int,
+        private val maxHeight: Int
     ) : AsyncTask<Void, Void, Int>() {
         private val viewRef = WeakReference(view)
         private val contextRef = WeakReference(context)
@@ -1612,7 +1622,7 @@ open class SubsamplingScaleImageView @JvmOverloads constructor(
 
                 if (context != null && decoderFactory != null && view != null) {
                     view.debug("BitmapLoadTask.doInBackground")
-                    bitmap = decoderFactory.make().decode(context, source)
+                    bitmap = decoderFactory.make().decode(context, source, maxWidth, maxHeight)
                     return view.orientation
                 }
             } catch (e: Exception) {
@@ -1660,6 +1670,10 @@ open class SubsamplingScaleImageView @JvmOverloads constructor(
         asyncTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR)
     }
 
+    fun getTileQueueDepth() = tileScheduler.getQueueDepth()
+
+    fun getAverageTileDecodeTimeMs() = tileScheduler.getAverageDecodeTimeMs()
+
     fun setMaxTileSize(maxPixels: Int) {
         maxTileWidth = maxPixels
         maxTileHeight = maxPixels
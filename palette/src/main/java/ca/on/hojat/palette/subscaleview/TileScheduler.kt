@@ -0,0 +1,141 @@
+package ca.on.hojat.palette.subscaleview
+
+import android.graphics.Bitmap
+import android.os.Handler
+import android.os.Looper
+import ca.on.hojat.palette.bitmappool.BitmapPools
+import ca.on.hojat.palette.subscaleview.SubsamplingScaleImageView.Tile
+import timber.log.Timber
+import java.util.concurrent.PriorityBlockingQueue
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Decodes the tiles of a [SubsamplingScaleImageView] on a small thread pool. Queued tiles are ordered by their
+ * sample size level first (coarse levels fill the screen faster) and by their distance from the viewport center,
+ * so the tiles the user is looking at come first. Tiles which leave the viewport are cancelled, queued ones are
+ * dropped from the queue and the results of in-flight ones are thrown away.
+ *
+ * [schedule], [cancel] and [cancelAll] must be called from the main thread, decoded tiles are delivered on it too.
+ */
+class TileScheduler(
+    private val tileDecoder: (Tile) -> Bitmap?,
+    private val onTileDecoded: (Tile, Bitmap?) -> Unit,
+    threadCount: Int = DEFAULT_THREAD_COUNT
+) {
+    companion object {
+        private val DEFAULT_THREAD_COUNT = Runtime.getRuntime().availableProcessors().coerceIn(2, 4)
+        private const val KEEP_ALIVE_SECONDS = 5L
+    }
+
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val executor = ThreadPoolExecutor(
+        threadCount,
+        threadCount,
+        KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS,
+        PriorityBlockingQueue()
+    ).apply {
+        allowCoreThreadTimeOut(true)
+    }
+
+    private val jobs = HashMap<Tile, TileJob>()
+    private val sequence = AtomicLong()
+    private val decodedTiles = AtomicLong()
+    private val totalDecodeNanos = AtomicLong()
+    private val cancelledTiles = AtomicLong()
+
+    /**
+     * Queues the tile, or updates its priority if it is still waiting in the queue.
+     */
+    fun schedule(tile: Tile, distance: Float) {
+        val existingJob = jobs[tile]
+        if (existingJob != null) {
+            if (existingJob.distance != distance && executor.remove(existingJob)) {
+                existingJob.distance = distance
+                executor.execute(existingJob)
+            }
+            return
+        }
+
+        tile.loading = true
+        val job = TileJob(tile, tile.sampleSize, distance, sequence.getAndIncrement())
+        jobs[tile] = job
+        executor.execute(job)
+    }
+
+    fun cancel(tile: Tile) {
+        val job = jobs.remove(tile) ?: return
+        job.cancelled = true
+        executor.remove(job)
+        tile.loading = false
+        cancelledTiles.incrementAndGet()
+    }
+
+    fun cancelAll() {
+        jobs.keys.toList().forEach { cancel(it) }
+    }
+
+    fun isScheduled(tile: Tile) = jobs.containsKey(tile)
+
+    fun getQueueDepth() = executor.queue.size
+
+    fun getInFlightCount() = executor.activeCount
+
+    fun getCancelledCount() = cancelledTiles.get()
+
+    fun getAverageDecodeTimeMs(): Float {
+        val decoded = decodedTiles.get()
+        return if (decoded == 0L) 0f else totalDecodeNanos.get() / decoded / 1_000_000f
+    }
+
+    private fun deliver(job: TileJob, bitmap: Bitmap?) {
+        mainHandler.post {
+            if (job.cancelled || jobs[job.tile] !== job) {
+                bitmap?.let { BitmapPools.shared.put(it) }
+                return@post
+            }
+
+            jobs.remove(job.tile)
+            job.tile.loading = false
+            onTileDecoded(job.tile, bitmap)
+        }
+    }
+
+    private inner class TileJob(
+        val tile: Tile,
+        val sampleSize: Int,
+        @Volatile var distance: Float,
+        val sequence: Long
+    ) : Runnable, Comparable<TileJob> {
+        @Volatile
+        var cancelled = false
+
+        override fun run() {
+            if (cancelled) {
+                return
+            }
+
+            var bitmap: Bitmap? = null
+            val start = System.nanoTime()
+            try {
+                bitmap = tileDecoder(tile)
+                totalDecodeNanos.addAndGet(System.nanoTime() - start)
+                decodedTiles.incrementAndGet()
+            } catch (e: Exception) {
+                Timber.e("Failed to decode tile $e")
+            } catch (e: OutOfMemoryError) {
+                Timber.e("Failed to decode tile - OutOfMemoryError $e")
+            }
+
+            deliver(this, bitmap)
+        }
+
+        override fun compareTo(other: TileJob) = when {
+            sampleSize != other.sampleSize -> other.sampleSize.compareTo(sampleSize)
+            distance != other.distance -> distance.compareTo(other.distance)
+            else -> sequence.compareTo(other.sequence)
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package ca.on.hojat.renderer.svg;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures parsing a corpus of documents shaped like the large files people open: a map made of
+ * long paths, a CAD export of transformed lines and polylines, an icon sheet with a stylesheet and
+ * a text heavy page. They are generated, so the corpus is the same on every device. Parsing goes
+ * through the XML pull parser of the platform, so it is measured on a device rather than the JVM.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SVGParseBenchmark {
+
+    private static final String MAP = createMap(new Random(40));
+
+    private static final String CAD_DRAWING = createCadDrawing(new Random(41));
+
+    private static final String ICON_SHEET = createIconSheet(new Random(42));
+
+    private static final String TEXT_PAGE = createTextPage(new Random(43));
+
+    @Rule
+    public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    @Test
+    public void parseMap() throws SVGParseException {
+        parse(MAP);
+    }
+
+    @Test
+    public void parseCadDrawing() throws SVGParseException {
+        parse(CAD_DRAWING);
+    }
+
+    @Test
+    public void parseIconSheet() throws SVGParseException {
+        parse(ICON_SHEET);
+    }
+
+    @Test
+    public void parseTextPage() throws SVGParseException {
+        parse(TEXT_PAGE);
+    }
+
+    private void parse(String document) throws SVGParseException {
+        BenchmarkState state = mBenchmarkRule.getState();
+        while (state.keepRunning()) {
+            SVG.getFromString(document);
+        }
+    }
+
+    /**
+     * Roads and borders: a few hundred paths of a few hundred segments each, styled by attributes.
+     */
+    private static String createMap(Random random) {
+        StringBuilder svg = startDocument(4096, 4096);
+        for (int i = 0; i < 300; i++) {
+            svg.append(String.format(Locale.US,
+                    "<path fill=\"none\" stroke=\"#%06x\" stroke-width=\"%.2f\" stroke-linejoin=\"round\" d=\"M%.3f,%.3f",
+                    random.nextInt(0x1000000), 0.5f + random.nextFloat() * 4, random.nextFloat() * 4096, random.nextFloat() * 4096));
+            for (int segment = 0; segment < 200; segment++) {
+                switch (segment % 4) {
+                    case 0:
+                        svg.append(String.format(Locale.US, "l%.3f,%.3f", random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10));
+                        break;
+                    case 1:
+                        svg.append(String.format(Locale.US, " %.3f %.3f", random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10));
+                        break;
+                    case 2:
+                        svg.append(String.format(Locale.US, "c%.3f,%.3f %.3f,%.3f %.3f,%.3f",
+                                random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10,
+                                random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10, random.nextFloat() * 20 - 10));
+                        break;
+                    default:
+                        svg.append(String.format(Locale.US, "L%.3f %.3fh%.3fv%.3f",
+                                random.nextFloat() * 4096, random.nextFloat() * 4096, random.nextFloat() * 10, -random.nextFloat() * 10));
+                        break;
+                }
+            }
+            svg.append("\"/>\n");
+        }
+        return svg.append("</svg>").toString();
+    }
+
+    /**
+     * Layers of transformed groups holding thousands of lines and polylines with inline styles.
+     */
+    private static String createCadDrawing(Random random) {
+        StringBuilder svg = startDocument(2000, 1400);
+        for (int layer = 0; layer < 20; layer++) {
+            svg.append(String.format(Locale.US, "<g id=\"layer%d\" transform=\"translate(%.1f %.1f) rotate(%.2f) scale(%.3f)\">\n",
+                    layer, random.nextFloat() * 100, random.nextFloat() * 100, random.nextFloat() * 360, 0.5f + random.nextFloat()));
+            for (int i = 0; i < 150; i++) {
+                svg.append(String.format(Locale.US,
+                        "<line x1=\"%.4f\" y1=\"%.4f\" x2=\"%.4f\" y2=\"%.4f\" style=\"stroke:#%06x;stroke-width:0.35mm;stroke-dasharray:2,1\"/>\n",
+                        random.nextFloat() * 2000, random.nextFloat() * 1400, random.nextFloat() * 2000, random.nextFloat() * 1400,
+                        random.nextInt(0x1000000)));
+            }
+            for (int i = 0; i < 30; i++) {
+                svg.append("<polyline style=\"fill:none;stroke:black;stroke-width:0.25mm\" points=\"");
+                for (int point = 0; point < 40; point++) {
+                    svg.append(String.format(Locale.US, "%.4f,%.4f ", random.nextFloat() * 2000, random.nextFloat() * 1400));
+                }
+                svg.append("\"/>\n");
+            }
+            svg.append("</g>\n");
+        }
+        return svg.append("</svg>").toString();
+    }
+
+    /**
+     * Symbols styled by class selectors, each placed many times through use elements.
+     */
+    private static String createIconSheet(Random random) {
+        StringBuilder svg = startDocument(1024, 1024);
+        svg.append("<style>");
+        for (int i = 0; i < 40; i++) {
+            svg.append(String.format(Locale.US, ".c%d{fill:#%06x;stroke:#%06x} .c%d:first-child{opacity:0.5}\n",
+                    i, random.nextInt(0x1000000), random.nextInt(0x1000000), i));
+        }
+        svg.append("</style><defs>");
+        for (int i = 0; i < 40; i++) {
+            svg.append(String.format(Locale.US, "<symbol id=\"s%d\" viewBox=\"0 0 512 512\">", i));
+            svg.append(String.format(Locale.US, "<title>icon %d</title><path class=\"c%d\" d=\"M314.07,138.78a32.71,32.71,0,1,1-32.71,32.71"
+                    + "A32.71,32.71,0,0,1,314.07,138.78Zm-4.22,123.8-22.38,26.76L214.2,213.88,122.07,348.13h270.7Z\"/>", i, i));
+            svg.append(String.format(Locale.US, "<circle class=\"c%d\" cx=\"256\" cy=\"256\" r=\"%.1f\"/></symbol>", (i + 1) % 40, 50 + random.nextFloat() * 200));
+        }
+        svg.append("</defs>\n");
+        for (int i = 0; i < 1000; i++) {
+            svg.append(String.format(Locale.US, "<use href=\"#s%d\" x=\"%d\" y=\"%d\" width=\"32\" height=\"32\"/>\n",
+                    random.nextInt(40), (i % 32) * 32, (i / 32) * 32));
+        }
+        return svg.append("</svg>").toString();
+    }
+
+    /**
+     * Paragraphs of text and tspans with font properties and positions.
+     */
+    private static String createTextPage(Random random) {
+        StringBuilder svg = startDocument(800, 6000);
+        String[] words = {"lorem", "ipsum", "dolor", "sit", "amet", "consectetur", "adipiscing", "elit"};
+        for (int line = 0; line < 400; line++) {
+            svg.append(String.format(Locale.US,
+                    "<text x=\"20\" y=\"%d\" font-family=\"serif, sans-serif\" font-size=\"12px\" fill=\"#333\">", 20 + line * 15));
+            for (int span = 0; span < 6; span++) {
+                svg.append(String.format(Locale.US, "<tspan dx=\"%.1f\" font-weight=\"%s\">", random.nextFloat() * 4,
+                        random.nextBoolean() ? "bold" : "normal"));
+                for (int word = 0; word < 3; word++) {
+                    svg.append(words[random.nextInt(words.length)]).append(' ');
+                }
+                svg.append("</tspan>");
+            }
+            svg.append("</text>\n");
+        }
+        return svg.append("</svg>").toString();
+    }
+
+    private static StringBuilder startDocument(int width, int height) {
+        return new StringBuilder(String.format(Locale.US,
+                "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" viewBox=\"0 0 %d %d\">\n",
+                width, height, width, height));
+    }
+}
@@ -0,0 +1,140 @@
+package ca.on.hojat.renderer.svg;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Measures redrawing a document at changing scales, like while pinch zooming it. A document parsed
+ * for every frame has nothing compiled yet, so it renders like before the paths and shaders were
+ * kept across renders, a document parsed once reuses them.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SVGRenderBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private static final int SHAPE_COUNT = 400;
+
+    private static final String DOCUMENT = createDocument();
+
+    @Rule
+    public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private Bitmap mBitmap;
+
+    private Canvas mCanvas;
+
+    @Before
+    public void setUp() {
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+    }
+
+    @After
+    public void tearDown() {
+        mBitmap.recycle();
+    }
+
+    @Test
+    public void renderParsedOnce() throws SVGParseException {
+        SVG svg = SVG.getFromString(DOCUMENT);
+        BenchmarkState state = mBenchmarkRule.getState();
+        int frame = 0;
+        while (state.keepRunning()) {
+            draw(svg, frame++);
+        }
+    }
+
+    @Test
+    public void renderParsedForEveryFrame() throws SVGParseException {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int frame = 0;
+        while (state.keepRunning()) {
+            state.pauseTiming();
+            SVG svg = SVG.getFromString(DOCUMENT);
+            state.resumeTiming();
+
+            draw(svg, frame++);
+        }
+    }
+
+    private void draw(SVG svg, int frame) {
+        float scale = 1f + (frame % 16) / 8f;
+        mCanvas.drawColor(Color.WHITE);
+        mCanvas.save();
+        mCanvas.scale(scale, scale, SIZE / 2f, SIZE / 2f);
+        svg.renderToCanvas(mCanvas);
+        mCanvas.restore();
+    }
+
+    /**
+     * A document of curved paths and polygons, half of them even-odd filled, painted
+     * with a few shared linear and radial gradients.
+     */
+    private static String createDocument() {
+        Random random = new Random(41);
+        StringBuilder svg = new StringBuilder();
+        svg.append(String.format(Locale.US,
+                "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"%d\" height=\"%d\" viewBox=\"0 0 %d %d\">",
+                SIZE, SIZE, SIZE, SIZE));
+
+        svg.append("<defs>");
+        for (int i = 0; i < 4; i++) {
+            svg.append(String.format(Locale.US,
+                    "<linearGradient id=\"l%d\" x1=\"0\" y1=\"0\" x2=\"1\" y2=\"%d\">"
+                            + "<stop offset=\"0\" stop-color=\"#%06x\"/><stop offset=\"1\" stop-color=\"#%06x\"/>"
+                            + "</linearGradient>",
+                    i, i % 2, random.nextInt(0x1000000), random.nextInt(0x1000000)));
+            svg.append(String.format(Locale.US,
+                    "<radialGradient id=\"r%d\" cx=\"0.5\" cy=\"0.5\" r=\"0.5\" fx=\"0.3\" fy=\"0.3\">"
+                            + "<stop offset=\"0\" stop-color=\"#%06x\"/><stop offset=\"1\" stop-color=\"#%06x\"/>"
+                            + "</radialGradient>",
+                    i, random.nextInt(0x1000000), random.nextInt(0x1000000)));
+        }
+        svg.append("</defs>");
+
+        for (int i = 0; i < SHAPE_COUNT; i++) {
+            String fill = (i % 3 == 0) ? String.format(Locale.US, "#%06x", random.nextInt(0x1000000))
+                    : String.format(Locale.US, "url(#%s%d)", (i % 3 == 1) ? "l" : "r", i % 4);
+            String fillRule = (i % 8 < 4) ? "evenodd" : "nonzero";
+            float x = random.nextFloat() * SIZE;
+            float y = random.nextFloat() * SIZE;
+
+            if (i % 4 == 3) {
+                svg.append("<polygon points=\"");
+                for (int point = 0; point < 12; point++) {
+                    svg.append(String.format(Locale.US, "%.1f,%.1f ",
+                            x + random.nextFloat() * 120 - 60, y + random.nextFloat() * 120 - 60));
+                }
+                svg.append(String.format(Locale.US, "\" fill=\"%s\" fill-rule=\"%s\" stroke=\"#333\"/>", fill, fillRule));
+            } else {
+                svg.append(String.format(Locale.US, "<path d=\"M%.1f %.1f", x, y));
+                for (int curve = 0; curve < 8; curve++) {
+                    svg.append(String.format(Locale.US, " c%.1f %.1f %.1f %.1f %.1f %.1f",
+                            random.nextFloat() * 80 - 40, random.nextFloat() * 80 - 40,
+                            random.nextFloat() * 80 - 40, random.nextFloat() * 80 - 40,
+                            random.nextFloat() * 80 - 40, random.nextFloat() * 80 - 40));
+                }
+                svg.append(String.format(Locale.US, "z\" fill=\"%s\" fill-rule=\"%s\" stroke=\"#333\" stroke-width=\"2\"/>",
+                        fill, fillRule));
+            }
+        }
+
+        svg.append("</svg>");
+        return svg.toString();
+    }
+}
@@ -1,8 +1,12 @@
 package ca.on.hojat.renderer.cropper;
 
 import android.os.AsyncTask;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.ref.WeakReference;
 import android.graphics.Bitmap;
+import android.graphics.Point;
+import android.graphics.Rect;
 import android.net.Uri;
 import android.content.Context;
 
@@ -206,6 +210,10 @@ final class BitmapCroppingWorkerTask
         try {
             if (!isCancelled()) {
 
+                if (mUri != null && mSaveUri != null && writeTiled()) {
+                    return new BitmapCroppingWorkerTask.Result(mSaveUri, 1);
+                }
+
                 BitmapUtils.BitmapSampled bitmapSampled;
                 if (mUri != null) {
                     bitmapSampled =
@@ -246,7 +254,7 @@ final class BitmapCroppingWorkerTask
                 } else {
                     BitmapUtils.writeBitmapToUri(
                             mContext, bitmap, mSaveUri, mSaveCompressFormat, mSaveCompressQuality);
-                    bitmap.recycle();
+                    BitmapUtils.releaseBitmap(bitmap);
                     return new BitmapCroppingWorkerTask.Result(mSaveUri, bitmapSampled.sampleSize);
                 }
             }
@@ -274,9 +282,61 @@ final class BitmapCroppingWorkerTask
             }
             if (!completeCalled && result.bitmap != null) {
                 // fast release of unused bitmap
-                result.bitmap.recycle();
+                BitmapUtils.releaseBitmap(result.bitmap);
+            }
+        }
+    }
+
+    /**
+     * Write a large full resolution crop straight from the source to the save uri by strips, see
+     * {@link TiledBitmapWriter}. Sampling and crops rotated by not straight angle aren't supported.
+     *
+     * @return false if the crop should be done as a single bitmap instead
+     */
+    private boolean writeTiled() throws IOException {
+        if (mDegreesRotated % 90 != 0 || mReqSizeOptions == CropImageView.RequestSizeOptions.SAMPLING) {
+            return false;
+        }
+
+        Rect rect =
+                BitmapUtils.getRectFromPoints(
+                        mCropPoints, mOrgWidth, mOrgHeight, mFixAspectRatio, mAspectRatioX, mAspectRatioY);
+        boolean sideways = mDegreesRotated % 180 != 0;
+        Point size =
+                BitmapUtils.getResizedSize(
+                        sideways ? rect.height() : rect.width(),
+                        sideways ? rect.width() : rect.height(),
+                        mReqWidth,
+                        mReqHeight,
+                        mReqSizeOptions);
+        if (!TiledBitmapWriter.shouldWriteTiled(size.x, size.y, mSaveCompressFormat)) {
+            return false;
+        }
+
+        OutputStream outputStream = null;
+        try {
+            outputStream = mContext.getContentResolver().openOutputStream(mSaveUri);
+            if (outputStream == null) {
+                throw new IOException("Failed to open " + mSaveUri);
+            }
+            TiledBitmapWriter.write(
+                    mContext,
+                    mUri,
+                    rect,
+                    mDegreesRotated,
+                    mFlipHorizontally,
+                    mFlipVertically,
+                    size.x,
+                    size.y,
+                    outputStream,
+                    mSaveCompressFormat,
+                    mSaveCompressQuality);
+        } finally {
+            if (outputStream != null) {
+                outputStream.close();
             }
         }
+        return true;
     }
 
     // region: Inner class: Result
@@ -107,7 +107,7 @@ final class BitmapLoadingWorkerTask extends AsyncTask<Void, Void, BitmapLoadingW
             }
             if (!completeCalled && result.bitmap != null) {
                 // fast release of unused bitmap
-                result.bitmap.recycle();
+                BitmapUtils.releaseBitmap(result.bitmap);
             }
         }
     }
@@ -13,7 +13,10 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Point;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.net.Uri;
@@ -21,6 +24,8 @@ import android.util.Pair;
 
 import androidx.exifinterface.media.ExifInterface;
 
+import ca.on.hojat.palette.bitmappool.BitmapPools;
+
 import java.io.File;
 import java.io.Closeable;
 import java.io.IOException;
@@ -133,6 +138,12 @@ final class BitmapUtils {
                                     options.outWidth, options.outHeight, reqWidth, reqHeight),
                             calculateInSampleSizeByMaxTextureSize(options.outWidth, options.outHeight));
 
+            // Reuse a pooled bitmap, the decoder reconfigures it if it's at least as large as the sampled image
+            BitmapPools.prepareReusableBitmap(
+                    options,
+                    (options.outWidth + options.inSampleSize - 1) / options.inSampleSize,
+                    (options.outHeight + options.inSampleSize - 1) / options.inSampleSize);
+
             // Decode bitmap with inSampleSize set
             Bitmap bitmap = decodeImage(resolver, uri, options);
 
@@ -443,31 +454,14 @@ final class BitmapUtils {
     static Bitmap resizeBitmap(
             Bitmap bitmap, int reqWidth, int reqHeight, CropImageView.RequestSizeOptions options) {
         try {
-            if (reqWidth > 0
-                    && reqHeight > 0
-                    && (options == CropImageView.RequestSizeOptions.RESIZE_FIT
-                    || options == CropImageView.RequestSizeOptions.RESIZE_INSIDE
-                    || options == CropImageView.RequestSizeOptions.RESIZE_EXACT)) {
-
-                Bitmap resized = null;
-                if (options == CropImageView.RequestSizeOptions.RESIZE_EXACT) {
-                    resized = Bitmap.createScaledBitmap(bitmap, reqWidth, reqHeight, false);
-                } else {
-                    int width = bitmap.getWidth();
-                    int height = bitmap.getHeight();
-                    float scale = max(width / (float) reqWidth, height / (float) reqHeight);
-                    if (scale > 1 || options == CropImageView.RequestSizeOptions.RESIZE_FIT) {
-                        resized =
-                                Bitmap.createScaledBitmap(
-                                        bitmap, (int) (width / scale), (int) (height / scale), false);
-                    }
-                }
-                if (resized != null) {
-                    if (resized != bitmap) {
-                        bitmap.recycle();
-                    }
-                    return resized;
+            Point size =
+                    getResizedSize(bitmap.getWidth(), bitmap.getHeight(), reqWidth, reqHeight, options);
+            if (size.x != bitmap.getWidth() || size.y != bitmap.getHeight()) {
+                Bitmap resized = Bitmap.createScaledBitmap(bitmap, size.x, size.y, false);
+                if (resized != bitmap) {
+                    releaseBitmap(bitmap);
                 }
+                return resized;
             }
         } catch (Exception e) {
             Timber.tag("AIC").w(e, "Failed to resize cropped image, return bitmap before resize");
@@ -475,6 +469,26 @@ final class BitmapUtils {
         return bitmap;
     }
 
+    /**
+     * Get the size an image of the given size is resized to by the given option, see {@link
+     * #resizeBitmap(Bitmap, int, int, CropImageView.RequestSizeOptions)}.
+     */
+    static Point getResizedSize(
+            int width, int height, int reqWidth, int reqHeight, CropImageView.RequestSizeOptions options) {
+        if (reqWidth > 0 && reqHeight > 0) {
+            if (options == CropImageView.RequestSizeOptions.RESIZE_EXACT) {
+                return new Point(reqWidth, reqHeight);
+            } else if (options == CropImageView.RequestSizeOptions.RESIZE_FIT
+                    || options == CropImageView.RequestSizeOptions.RESIZE_INSIDE) {
+                float scale = max(width / (float) reqWidth, height / (float) reqHeight);
+                if (scale > 1 || options == CropImageView.RequestSizeOptions.RESIZE_FIT) {
+                    return new Point((int) (width / scale), (int) (height / scale));
+                }
+            }
+        }
+        return new Point(width, height);
+    }
+
     // region: Private methods
 
     /**
@@ -506,8 +520,12 @@ final class BitmapUtils {
         Rect rect =
                 getRectFromPoints(points, orgWidth, orgHeight, fixAspectRatio, aspectRatioX, aspectRatioY);
 
-        int width = reqWidth > 0 ? reqWidth : rect.width();
-        int height = reqHeight > 0 ? reqHeight : rect.height();
+        // the requested size is of the rotated output, compare it to the sides of the region they end up as
+        boolean sideways = degreesRotated % 180 == 90;
+        int outputWidth = reqWidth > 0 ? reqWidth : sideways ? rect.height() : rect.width();
+        int outputHeight = reqHeight > 0 ? reqHeight : sideways ? rect.width() : rect.height();
+        int width = sideways ? outputHeight : outputWidth;
+        int height = sideways ? outputWidth : outputHeight;
 
         Bitmap result = null;
         int sampleSize = 1;
@@ -524,16 +542,23 @@ final class BitmapUtils {
         if (result != null) {
             try {
                 // rotate the decoded region by the required amount
-                result = rotateAndFlipBitmapInt(result, degreesRotated, flipHorizontally, flipVertically);
-
-                // rotating by 0, 90, 180 or 270 degrees doesn't require extra cropping
-                if (degreesRotated % 90 != 0) {
-
+                if (degreesRotated % 90 == 0) {
+                    result = rotateAndFlipBitmapInt(result, degreesRotated, flipHorizontally, flipVertically);
+                } else {
                     // extra crop because non rectangular crop cannot be done directly on the image without
-                    // rotating first
+                    // rotating first, drawn in the same pass as the rotation
                     result =
-                            cropForRotatedImage(
-                                    result, points, rect, degreesRotated, fixAspectRatio, aspectRatioX, aspectRatioY);
+                            rotateFlipAndCropRegion(
+                                    result,
+                                    points,
+                                    rect,
+                                    sampleSize,
+                                    degreesRotated,
+                                    fixAspectRatio,
+                                    aspectRatioX,
+                                    aspectRatioY,
+                                    flipHorizontally,
+                                    flipVertically);
                 }
             } catch (OutOfMemoryError e) {
                 if (result != null) {
@@ -610,7 +635,7 @@ final class BitmapUtils {
                                     flipVertically);
                 } finally {
                     if (result != fullBitmap) {
-                        fullBitmap.recycle();
+                        releaseBitmap(fullBitmap);
                     }
                 }
             }
@@ -656,6 +681,12 @@ final class BitmapUtils {
             try {
                 stream = resolver.openInputStream(uri);
                 return BitmapFactory.decodeStream(stream, EMPTY_RECT, options);
+            } catch (IllegalArgumentException e) {
+                if (options.inBitmap == null) {
+                    throw e;
+                }
+                // the pooled bitmap could not be reused, try again with a new one
+                BitmapPools.releaseReusableBitmap(options);
             } catch (OutOfMemoryError e) {
                 options.inSampleSize *= 2;
             } finally {
@@ -685,9 +716,20 @@ final class BitmapUtils {
             stream = context.getContentResolver().openInputStream(uri);
             decoder = BitmapRegionDecoder.newInstance(stream, false);
             do {
+                // the region decoder keeps the size of a reused bitmap, so only reuse one when the size is exact
+                if (options.inSampleSize == 1) {
+                    BitmapPools.prepareReusableBitmap(options, rect.width(), rect.height());
+                }
                 try {
                     return new BitmapUtils.BitmapSampled(decoder.decodeRegion(rect, options), options.inSampleSize);
+                } catch (IllegalArgumentException e) {
+                    if (options.inBitmap == null) {
+                        throw e;
+                    }
+                    BitmapPools.releaseReusableBitmap(options);
+                    return new BitmapUtils.BitmapSampled(decoder.decodeRegion(rect, options), options.inSampleSize);
                 } catch (OutOfMemoryError e) {
+                    BitmapPools.releaseReusableBitmap(options);
                     options.inSampleSize *= 2;
                 }
             } while (options.inSampleSize <= 512);
@@ -718,37 +760,90 @@ final class BitmapUtils {
             int aspectRatioX,
             int aspectRatioY) {
         if (degreesRotated % 90 != 0) {
-
-            int adjLeft = 0, adjTop = 0, width = 0, height = 0;
-            double rads = toRadians(degreesRotated);
-            int compareTo =
-                    degreesRotated < 90 || (degreesRotated > 180 && degreesRotated < 270)
-                            ? rect.left
-                            : rect.right;
-            for (int i = 0; i < points.length; i += 2) {
-                if (points[i] >= compareTo - 1 && points[i] <= compareTo + 1) {
-                    adjLeft = (int) abs(sin(rads) * (rect.bottom - points[i + 1]));
-                    adjTop = (int) abs(cos(rads) * (points[i + 1] - rect.top));
-                    width = (int) abs((points[i + 1] - rect.top) / sin(rads));
-                    height = (int) abs((rect.bottom - points[i + 1]) / cos(rads));
-                    break;
-                }
-            }
-
-            rect.set(adjLeft, adjTop, adjLeft + width, adjTop + height);
-            if (fixAspectRatio) {
-                fixRectForAspectRatio(rect, aspectRatioX, aspectRatioY);
-            }
+            rect = getRotatedCropRect(points, rect, degreesRotated, fixAspectRatio, aspectRatioX, aspectRatioY);
 
             Bitmap bitmapTmp = bitmap;
             bitmap = Bitmap.createBitmap(bitmap, rect.left, rect.top, rect.width(), rect.height());
             if (bitmapTmp != bitmap) {
-                bitmapTmp.recycle();
+                releaseBitmap(bitmapTmp);
             }
         }
         return bitmap;
     }
 
+    /**
+     * Rotate and flip a region decoded for a crop rotated by not straight angle and crop it to the final
+     * rectangle, drawn in one pass into a bitmap of the final size instead of a rotated copy of the
+     * whole region that is cropped again.<br>
+     * The given region is released.
+     *
+     * @param sampleSize the sampling the region was decoded with, the points are in the original image
+     */
+    private static Bitmap rotateFlipAndCropRegion(
+            Bitmap region,
+            float[] points,
+            Rect rect,
+            int sampleSize,
+            int degreesRotated,
+            boolean fixAspectRatio,
+            int aspectRatioX,
+            int aspectRatioY,
+            boolean flipHorizontally,
+            boolean flipVertically) {
+        Matrix matrix = new Matrix();
+        matrix.setRotate(degreesRotated);
+        matrix.postScale(flipHorizontally ? -1 : 1, flipVertically ? -1 : 1);
+        RectF bounds = new RectF(0, 0, region.getWidth(), region.getHeight());
+        matrix.mapRect(bounds);
+
+        Rect cropRect =
+                getRotatedCropRect(points, rect, degreesRotated, fixAspectRatio, aspectRatioX, aspectRatioY);
+        int left = min(cropRect.left / sampleSize, max(round(bounds.width()) - 1, 0));
+        int top = min(cropRect.top / sampleSize, max(round(bounds.height()) - 1, 0));
+        int width = max(min(cropRect.width() / sampleSize, round(bounds.width()) - left), 1);
+        int height = max(min(cropRect.height() / sampleSize, round(bounds.height()) - top), 1);
+
+        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        matrix.postTranslate(-bounds.left - left, -bounds.top - top);
+        new Canvas(result).drawBitmap(region, matrix, new Paint(Paint.ANTI_ALIAS_FLAG));
+        releaseBitmap(region);
+        return result;
+    }
+
+    /**
+     * Get the final crop rectangle inside the bounding box of a crop rotated by not straight angle, in
+     * the coordinates of the original image.
+     */
+    private static Rect getRotatedCropRect(
+            float[] points,
+            Rect rect,
+            int degreesRotated,
+            boolean fixAspectRatio,
+            int aspectRatioX,
+            int aspectRatioY) {
+        int adjLeft = 0, adjTop = 0, width = 0, height = 0;
+        double rads = toRadians(degreesRotated);
+        int compareTo =
+                degreesRotated < 90 || (degreesRotated > 180 && degreesRotated < 270)
+                        ? rect.left
+                        : rect.right;
+        for (int i = 0; i < points.length; i += 2) {
+            if (points[i] >= compareTo - 1 && points[i] <= compareTo + 1) {
+                adjLeft = (int) abs(sin(rads) * (rect.bottom - points[i + 1]));
+                adjTop = (int) abs(cos(rads) * (points[i + 1] - rect.top));
+                width = (int) abs((points[i + 1] - rect.top) / sin(rads));
+                height = (int) abs((rect.bottom - points[i + 1]) / cos(rads));
+                break;
+            }
+        }
+
+        Rect cropRect = new Rect(adjLeft, adjTop, adjLeft + width, adjTop + height);
+        if (fixAspectRatio) {
+            fixRectForAspectRatio(cropRect, aspectRatioX, aspectRatioY);
+        }
+        return cropRect;
+    }
+
     /**
      * Calculate the largest inSampleSize value that is a power of 2 and keeps both height and width
      * larger than the requested height and width.
@@ -795,7 +890,7 @@ final class BitmapUtils {
             Bitmap newBitmap =
                     Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, false);
             if (newBitmap != bitmap) {
-                bitmap.recycle();
+                releaseBitmap(bitmap);
             }
             return newBitmap;
         } else {
@@ -853,6 +948,15 @@ final class BitmapUtils {
         }
     }
 
+    /**
+     * Hand a bitmap which is not used anymore over to the shared bitmap pool, so later decodes can reuse it.
+     */
+    static void releaseBitmap(Bitmap bitmap) {
+        if (bitmap != null) {
+            BitmapPools.getShared().put(bitmap);
+        }
+    }
+
     /**
      * Close the given closeable object (Stream) in a safe way: check if it is null and catch-log
      * exception thrown.
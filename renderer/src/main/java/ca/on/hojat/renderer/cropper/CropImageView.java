@@ -1312,7 +1312,7 @@ public class CropImageView extends FrameLayout {
 
         // if we allocated the bitmap, release it as fast as possible
         if (mBitmap != null && (mImageResource > 0 || mLoadedImageUri != null)) {
-            mBitmap.recycle();
+            BitmapUtils.releaseBitmap(mBitmap);
         }
         mBitmap = null;
 
@@ -0,0 +1,400 @@
+package ca.on.hojat.renderer.cropper;
+
+import ca.on.hojat.renderer.jpeg.HuffmanTable;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a baseline JFIF JPEG strip by strip, with 2x2 subsampled chroma and the standard
+ * quantization and Huffman tables scaled by the quality like libjpeg does.<br>
+ * Rows are collected until a row of 16x16 MCUs is complete, so at most 16 rows of the image are
+ * held by the encoder.
+ */
+final class JpegStripEncoder implements StripEncoder {
+
+    // region: Fields and Consts
+
+    private static final int MCU_SIZE = 16;
+
+    private static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    private static final int[] LUMINANCE_QUANTIZATION = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99
+    };
+
+    private static final int[] CHROMINANCE_QUANTIZATION = {
+            17, 18, 24, 47, 99, 99, 99, 99,
+            18, 21, 26, 66, 99, 99, 99, 99,
+            24, 26, 56, 99, 99, 99, 99, 99,
+            47, 66, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99,
+            99, 99, 99, 99, 99, 99, 99, 99
+    };
+
+    private static final double[] AAN_SCALE_FACTORS = {
+            1.0, 1.387039845, 1.306562965, 1.175875602, 1.0, 0.785694958, 0.541196100, 0.275899379
+    };
+
+    private final OutputStream mOut;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final int[] mLuminanceTable = new int[64];
+
+    private final int[] mChrominanceTable = new int[64];
+
+    private final float[] mLuminanceDivisors = new float[64];
+
+    private final float[] mChrominanceDivisors = new float[64];
+
+    /**
+     * The luminance and chrominance of a row of MCUs, the chrominance is already subsampled.
+     */
+    private final float[] mY;
+
+    private final float[] mCb;
+
+    private final float[] mCr;
+
+    private final int mPaddedWidth;
+
+    private final float[] mBlock = new float[64];
+
+    private final int[] mQuantized = new int[64];
+
+    private int mBufferedRows;
+
+    private int mRowsWritten;
+
+    private int mLastDcY, mLastDcCb, mLastDcCr;
+
+    private int mBitBuffer;
+
+    private int mBitCount;
+    // endregion
+
+    JpegStripEncoder(OutputStream out, int width, int height, int quality) throws IOException {
+        if (width <= 0 || height <= 0 || width > 65535 || height > 65535) {
+            throw new IllegalArgumentException("Invalid JPEG size: " + width + "x" + height);
+        }
+        mOut = new BufferedOutputStream(out, 64 * 1024);
+        mWidth = width;
+        mHeight = height;
+        mPaddedWidth = (width + MCU_SIZE - 1) / MCU_SIZE * MCU_SIZE;
+        mY = new float[mPaddedWidth * MCU_SIZE];
+        mCb = new float[mPaddedWidth * MCU_SIZE / 4];
+        mCr = new float[mPaddedWidth * MCU_SIZE / 4];
+
+        initQuantizationTables(quality);
+        writeHeaders();
+    }
+
+    @Override
+    public void writeRows(int[] pixels, int rowCount) throws IOException {
+        for (int y = 0; y < rowCount && mRowsWritten < mHeight; y++, mRowsWritten++) {
+            convertRow(pixels, y * mWidth, mBufferedRows);
+            if (++mBufferedRows == MCU_SIZE) {
+                encodeMcuRow();
+                mBufferedRows = 0;
+            }
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (mBufferedRows > 0) {
+            // the last row of MCUs repeats the last row of the image, like the padding on the right
+            int lastRow = mBufferedRows - 1;
+            while (mBufferedRows < MCU_SIZE) {
+                System.arraycopy(mY, lastRow * mPaddedWidth, mY, mBufferedRows * mPaddedWidth, mPaddedWidth);
+                mBufferedRows++;
+            }
+            if (lastRow % 2 == 0) {
+                // only one row of the last pair was summed up
+                int chromaWidth = mPaddedWidth / 2;
+                int row = lastRow / 2;
+                for (int x = 0; x < chromaWidth; x++) {
+                    mCb[row * chromaWidth + x] *= 2;
+                    mCr[row * chromaWidth + x] *= 2;
+                }
+            }
+            for (int row = lastRow / 2 + 1; row < MCU_SIZE / 2; row++) {
+                int chromaWidth = mPaddedWidth / 2;
+                System.arraycopy(mCb, (lastRow / 2) * chromaWidth, mCb, row * chromaWidth, chromaWidth);
+                System.arraycopy(mCr, (lastRow / 2) * chromaWidth, mCr, row * chromaWidth, chromaWidth);
+            }
+            encodeMcuRow();
+            mBufferedRows = 0;
+        }
+
+        // pad the last byte with ones
+        if (mBitCount > 0) {
+            writeBits(0x7F, 7);
+        }
+        mOut.write(0xFF);
+        mOut.write(0xD9);
+        mOut.flush();
+    }
+
+    // region: Private methods
+
+    private void initQuantizationTables(int quality) {
+        quality = Math.max(1, Math.min(100, quality));
+        int scale = quality < 50 ? 5000 / quality : 200 - quality * 2;
+        for (int i = 0; i < 64; i++) {
+            mLuminanceTable[i] = Math.max(1, Math.min(255, (LUMINANCE_QUANTIZATION[i] * scale + 50) / 100));
+            mChrominanceTable[i] = Math.max(1, Math.min(255, (CHROMINANCE_QUANTIZATION[i] * scale + 50) / 100));
+        }
+
+        // the scaling of the AAN DCT is folded into the quantization
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                int i = row * 8 + col;
+                double scaleFactor = AAN_SCALE_FACTORS[row] * AAN_SCALE_FACTORS[col] * 8;
+                mLuminanceDivisors[i] = (float) (1.0 / (mLuminanceTable[i] * scaleFactor));
+                mChrominanceDivisors[i] = (float) (1.0 / (mChrominanceTable[i] * scaleFactor));
+            }
+        }
+    }
+
+    private void writeHeaders() throws IOException {
+        // SOI and a JFIF APP0 segment
+        writeBytes(0xFF, 0xD8);
+        writeBytes(0xFF, 0xE0, 0x00, 0x10, 'J', 'F', 'I', 'F', 0x00, 0x01, 0x01, 0x00, 0x00, 0x01, 0x00, 0x01, 0x00, 0x00);
+
+        // DQT
+        writeBytes(0xFF, 0xDB, 0x00, 2 + 2 * 65);
+        mOut.write(0x00);
+        for (int i = 0; i < 64; i++) {
+            mOut.write(mLuminanceTable[ZIGZAG[i]]);
+        }
+        mOut.write(0x01);
+        for (int i = 0; i < 64; i++) {
+            mOut.write(mChrominanceTable[ZIGZAG[i]]);
+        }
+
+        // SOF0, luminance sampled 2x2 and both chrominance components 1x1
+        writeBytes(0xFF, 0xC0, 0x00, 17, 8);
+        writeBytes(mHeight >> 8, mHeight & 0xFF, mWidth >> 8, mWidth & 0xFF);
+        writeBytes(3, 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1);
+
+        // DHT
+        int length = 2
+                + HuffmanTable.DC_LUMINANCE.getSegmentLength()
+                + HuffmanTable.AC_LUMINANCE.getSegmentLength()
+                + HuffmanTable.DC_CHROMINANCE.getSegmentLength()
+                + HuffmanTable.AC_CHROMINANCE.getSegmentLength();
+        writeBytes(0xFF, 0xC4, length >> 8, length & 0xFF);
+        HuffmanTable.DC_LUMINANCE.write(mOut, 0x00);
+        HuffmanTable.AC_LUMINANCE.write(mOut, 0x10);
+        HuffmanTable.DC_CHROMINANCE.write(mOut, 0x01);
+        HuffmanTable.AC_CHROMINANCE.write(mOut, 0x11);
+
+        // SOS
+        writeBytes(0xFF, 0xDA, 0x00, 12, 3, 1, 0x00, 2, 0x11, 3, 0x11, 0x00, 0x3F, 0x00);
+    }
+
+    private void writeBytes(int... bytes) throws IOException {
+        for (int b : bytes) {
+            mOut.write(b);
+        }
+    }
+
+    /**
+     * Convert a row of the image to YCbCr into the MCU buffers, the chrominance of every 2x2 pixels
+     * is summed up into one sample, averaged when the row of MCUs is encoded.
+     */
+    private void convertRow(int[] pixels, int offset, int row) {
+        int chromaWidth = mPaddedWidth / 2;
+        int chromaOffset = (row / 2) * chromaWidth;
+        boolean firstOfPair = row % 2 == 0;
+        if (firstOfPair) {
+            for (int x = 0; x < chromaWidth; x++) {
+                mCb[chromaOffset + x] = 0;
+                mCr[chromaOffset + x] = 0;
+            }
+        }
+
+        int yOffset = row * mPaddedWidth;
+        for (int x = 0; x < mPaddedWidth; x++) {
+            // the MCUs on the right repeat the last column of the image
+            int pixel = pixels[offset + Math.min(x, mWidth - 1)];
+            int r = (pixel >> 16) & 0xFF;
+            int g = (pixel >> 8) & 0xFF;
+            int b = pixel & 0xFF;
+
+            mY[yOffset + x] = 0.299f * r + 0.587f * g + 0.114f * b - 128;
+            mCb[chromaOffset + x / 2] += -0.168736f * r - 0.331264f * g + 0.5f * b;
+            mCr[chromaOffset + x / 2] += 0.5f * r - 0.418688f * g - 0.081312f * b;
+        }
+    }
+
+    private void encodeMcuRow() throws IOException {
+        int chromaWidth = mPaddedWidth / 2;
+        HuffmanTable dcLuminance = HuffmanTable.DC_LUMINANCE;
+        HuffmanTable acLuminance = HuffmanTable.AC_LUMINANCE;
+        HuffmanTable dcChrominance = HuffmanTable.DC_CHROMINANCE;
+        HuffmanTable acChrominance = HuffmanTable.AC_CHROMINANCE;
+        for (int i = 0; i < mCb.length; i++) {
+            mCb[i] *= 0.25f;
+            mCr[i] *= 0.25f;
+        }
+
+        for (int mcuX = 0; mcuX < mPaddedWidth; mcuX += MCU_SIZE) {
+            mLastDcY = encodeBlock(mY, mPaddedWidth, mcuX, 0, mLuminanceDivisors, dcLuminance, acLuminance, mLastDcY);
+            mLastDcY = encodeBlock(mY, mPaddedWidth, mcuX + 8, 0, mLuminanceDivisors, dcLuminance, acLuminance, mLastDcY);
+            mLastDcY = encodeBlock(mY, mPaddedWidth, mcuX, 8, mLuminanceDivisors, dcLuminance, acLuminance, mLastDcY);
+            mLastDcY = encodeBlock(mY, mPaddedWidth, mcuX + 8, 8, mLuminanceDivisors, dcLuminance, acLuminance, mLastDcY);
+            mLastDcCb = encodeBlock(mCb, chromaWidth, mcuX / 2, 0, mChrominanceDivisors, dcChrominance, acChrominance, mLastDcCb);
+            mLastDcCr = encodeBlock(mCr, chromaWidth, mcuX / 2, 0, mChrominanceDivisors, dcChrominance, acChrominance, mLastDcCr);
+        }
+    }
+
+    /**
+     * Transform, quantize and write one 8x8 block, returns its DC value for the next block.
+     */
+    private int encodeBlock(
+            float[] plane,
+            int stride,
+            int left,
+            int top,
+            float[] divisors,
+            HuffmanTable dcTable,
+            HuffmanTable acTable,
+            int lastDc)
+            throws IOException {
+        float[] block = mBlock;
+        for (int y = 0; y < 8; y++) {
+            System.arraycopy(plane, (top + y) * stride + left, block, y * 8, 8);
+        }
+        forwardDct(block);
+
+        int[] quantized = mQuantized;
+        for (int i = 0; i < 64; i++) {
+            int position = ZIGZAG[i];
+            quantized[i] = Math.round(block[position] * divisors[position]);
+        }
+
+        int dc = quantized[0];
+        int diff = dc - lastDc;
+        int category = getCategory(diff);
+        writeBits(dcTable.getCode(category), dcTable.getLength(category));
+        if (category > 0) {
+            writeBits(diff < 0 ? diff - 1 : diff, category);
+        }
+
+        int run = 0;
+        for (int i = 1; i < 64; i++) {
+            int value = quantized[i];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                writeBits(acTable.getCode(0xF0), acTable.getLength(0xF0));
+                run -= 16;
+            }
+            category = getCategory(value);
+            int symbol = (run << 4) | category;
+            writeBits(acTable.getCode(symbol), acTable.getLength(symbol));
+            writeBits(value < 0 ? value - 1 : value, category);
+            run = 0;
+        }
+        if (run > 0) {
+            writeBits(acTable.getCode(0x00), acTable.getLength(0x00));
+        }
+        return dc;
+    }
+
+    private static int getCategory(int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    /**
+     * The floating point AAN forward DCT, the output is scaled by the factors folded into the
+     * quantization divisors.
+     */
+    private static void forwardDct(float[] data) {
+        for (int pass = 0; pass < 2; pass++) {
+            // rows in the first pass, columns in the second
+            int step = pass == 0 ? 1 : 8;
+            int next = pass == 0 ? 8 : 1;
+            for (int line = 0, o = 0; line < 8; line++, o += next) {
+                float tmp0 = data[o] + data[o + 7 * step];
+                float tmp7 = data[o] - data[o + 7 * step];
+                float tmp1 = data[o + step] + data[o + 6 * step];
+                float tmp6 = data[o + step] - data[o + 6 * step];
+                float tmp2 = data[o + 2 * step] + data[o + 5 * step];
+                float tmp5 = data[o + 2 * step] - data[o + 5 * step];
+                float tmp3 = data[o + 3 * step] + data[o + 4 * step];
+                float tmp4 = data[o + 3 * step] - data[o + 4 * step];
+
+                // even part
+                float tmp10 = tmp0 + tmp3;
+                float tmp13 = tmp0 - tmp3;
+                float tmp11 = tmp1 + tmp2;
+                float tmp12 = tmp1 - tmp2;
+
+                data[o] = tmp10 + tmp11;
+                data[o + 4 * step] = tmp10 - tmp11;
+
+                float z1 = (tmp12 + tmp13) * 0.707106781f;
+                data[o + 2 * step] = tmp13 + z1;
+                data[o + 6 * step] = tmp13 - z1;
+
+                // odd part
+                tmp10 = tmp4 + tmp5;
+                tmp11 = tmp5 + tmp6;
+                tmp12 = tmp6 + tmp7;
+
+                float z5 = (tmp10 - tmp12) * 0.382683433f;
+                float z2 = 0.541196100f * tmp10 + z5;
+                float z4 = 1.306562965f * tmp12 + z5;
+                float z3 = tmp11 * 0.707106781f;
+
+                float z11 = tmp7 + z3;
+                float z13 = tmp7 - z3;
+
+                data[o + 5 * step] = z13 + z2;
+                data[o + 3 * step] = z13 - z2;
+                data[o + step] = z11 + z4;
+                data[o + 7 * step] = z11 - z4;
+            }
+        }
+    }
+
+    private void writeBits(int value, int count) throws IOException {
+        mBitBuffer = (mBitBuffer << count) | (value & ((1 << count) - 1));
+        mBitCount += count;
+        while (mBitCount >= 8) {
+            int b = (mBitBuffer >> (mBitCount - 8)) & 0xFF;
+            mOut.write(b);
+            if (b == 0xFF) {
+                // byte stuffing, a 0xFF in the entropy coded data is followed by a zero
+                mOut.write(0);
+            }
+            mBitCount -= 8;
+        }
+        mBitBuffer &= (1 << mBitCount) - 1;
+    }
+    // endregion
+
+}
@@ -0,0 +1,261 @@
+package ca.on.hojat.renderer.cropper;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an 8 bit RGB or RGBA PNG strip by strip. Every row is filtered with the filter that gives
+ * the smallest sum of differences and streamed into the compressed image data, which is written in
+ * chunks of a fixed size.
+ */
+final class PngStripEncoder implements StripEncoder {
+
+    // region: Fields and Consts
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final int FILTER_NONE = 0;
+
+    private static final int FILTER_SUB = 1;
+
+    private static final int FILTER_UP = 2;
+
+    private static final int FILTER_AVERAGE = 3;
+
+    private static final int FILTER_PAETH = 4;
+
+    private final DataOutputStream mOut;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    private final int mBytesPerPixel;
+
+    private final Deflater mDeflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+    private final DeflaterOutputStream mImageData;
+
+    private byte[] mRow;
+
+    private byte[] mPreviousRow;
+
+    private final byte[][] mFiltered = new byte[5][];
+
+    private int mRowsWritten;
+    // endregion
+
+    PngStripEncoder(OutputStream out, int width, int height, boolean hasAlpha) throws IOException {
+        mOut = new DataOutputStream(out);
+        mWidth = width;
+        mHeight = height;
+        mBytesPerPixel = hasAlpha ? 4 : 3;
+
+        int rowSize = width * mBytesPerPixel;
+        mRow = new byte[rowSize];
+        mPreviousRow = new byte[rowSize];
+        for (int i = 0; i < mFiltered.length; i++) {
+            mFiltered[i] = new byte[rowSize + 1];
+            mFiltered[i][0] = (byte) i;
+        }
+
+        mOut.write(SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8;
+        header[9] = (byte) (hasAlpha ? 6 : 2);
+        writeChunk("IHDR", header, header.length);
+
+        mImageData = new DeflaterOutputStream(new ChunkOutputStream(), mDeflater, CHUNK_SIZE);
+    }
+
+    @Override
+    public void writeRows(int[] pixels, int rowCount) throws IOException {
+        for (int y = 0; y < rowCount && mRowsWritten < mHeight; y++, mRowsWritten++) {
+            int offset = y * mWidth;
+            for (int x = 0, i = 0; x < mWidth; x++) {
+                int pixel = pixels[offset + x];
+                mRow[i++] = (byte) (pixel >> 16);
+                mRow[i++] = (byte) (pixel >> 8);
+                mRow[i++] = (byte) pixel;
+                if (mBytesPerPixel == 4) {
+                    mRow[i++] = (byte) (pixel >>> 24);
+                }
+            }
+
+            byte[] filtered = filterRow();
+            mImageData.write(filtered, 0, filtered.length);
+
+            byte[] swap = mPreviousRow;
+            mPreviousRow = mRow;
+            mRow = swap;
+        }
+    }
+
+    @Override
+    public void finish() throws IOException {
+        // a truncated strip is padded with empty rows so the image data stays valid
+        int[] empty = new int[mWidth];
+        while (mRowsWritten < mHeight) {
+            writeRows(empty, 1);
+        }
+
+        mImageData.finish();
+        mImageData.flush();
+        mDeflater.end();
+        writeChunk("IEND", new byte[0], 0);
+        mOut.flush();
+    }
+
+    // region: Private methods
+
+    /**
+     * Filter the current row with every filter type and return the one with the smallest sum of
+     * absolute values, the usual heuristic of PNG encoders. The first row has no previous row, its
+     * previous row is all zeros.
+     */
+    private byte[] filterRow() {
+        int bpp = mBytesPerPixel;
+        byte[] none = mFiltered[FILTER_NONE];
+        byte[] sub = mFiltered[FILTER_SUB];
+        byte[] up = mFiltered[FILTER_UP];
+        byte[] average = mFiltered[FILTER_AVERAGE];
+        byte[] paeth = mFiltered[FILTER_PAETH];
+        long noneSum = 0, subSum = 0, upSum = 0, averageSum = 0, paethSum = 0;
+
+        for (int i = 0; i < mRow.length; i++) {
+            int x = mRow[i] & 0xFF;
+            int a = i >= bpp ? mRow[i - bpp] & 0xFF : 0;
+            int b = mPreviousRow[i] & 0xFF;
+            int c = i >= bpp ? mPreviousRow[i - bpp] & 0xFF : 0;
+
+            byte value = (byte) x;
+            none[i + 1] = value;
+            noneSum += Math.abs((int) value);
+
+            value = (byte) (x - a);
+            sub[i + 1] = value;
+            subSum += Math.abs((int) value);
+
+            value = (byte) (x - b);
+            up[i + 1] = value;
+            upSum += Math.abs((int) value);
+
+            value = (byte) (x - ((a + b) >> 1));
+            average[i + 1] = value;
+            averageSum += Math.abs((int) value);
+
+            value = (byte) (x - paethPredictor(a, b, c));
+            paeth[i + 1] = value;
+            paethSum += Math.abs((int) value);
+        }
+
+        int best = FILTER_NONE;
+        long bestSum = noneSum;
+        if (subSum < bestSum) {
+            best = FILTER_SUB;
+            bestSum = subSum;
+        }
+        if (upSum < bestSum) {
+            best = FILTER_UP;
+            bestSum = upSum;
+        }
+        if (averageSum < bestSum) {
+            best = FILTER_AVERAGE;
+            bestSum = averageSum;
+        }
+        if (paethSum < bestSum) {
+            best = FILTER_PAETH;
+        }
+        return mFiltered[best];
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        } else if (pb <= pc) {
+            return b;
+        } else {
+            return c;
+        }
+    }
+
+    private void writeChunk(String type, byte[] data, int length) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] typeBytes = type.getBytes("US-ASCII");
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        mOut.writeInt(length);
+        mOut.write(typeBytes);
+        mOut.write(data, 0, length);
+        mOut.writeInt((int) crc.getValue());
+    }
+
+    private static void writeInt(byte[] data, int offset, int value) {
+        data[offset] = (byte) (value >>> 24);
+        data[offset + 1] = (byte) (value >>> 16);
+        data[offset + 2] = (byte) (value >>> 8);
+        data[offset + 3] = (byte) value;
+    }
+    // endregion
+
+    // region: Inner class: ChunkOutputStream
+
+    /**
+     * Collects the compressed image data and writes it as IDAT chunks of {@link #CHUNK_SIZE} bytes.
+     */
+    private final class ChunkOutputStream extends OutputStream {
+
+        private final byte[] mBuffer = new byte[CHUNK_SIZE];
+
+        private int mSize;
+
+        @Override
+        public void write(int b) throws IOException {
+            mBuffer[mSize++] = (byte) b;
+            if (mSize == mBuffer.length) {
+                flush();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int count = Math.min(len, mBuffer.length - mSize);
+                System.arraycopy(b, off, mBuffer, mSize, count);
+                mSize += count;
+                off += count;
+                len -= count;
+                if (mSize == mBuffer.length) {
+                    flush();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (mSize > 0) {
+                writeChunk("IDAT", mBuffer, mSize);
+                mSize = 0;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+    // endregion
+}
@@ -0,0 +1,23 @@
+package ca.on.hojat.renderer.cropper;
+
+import java.io.IOException;
+
+/**
+ * Encodes an image given from top to bottom in strips of rows, so only the current strip of the
+ * image has to be in memory.
+ */
+interface StripEncoder {
+
+    /**
+     * Encode the next rows of the image.
+     *
+     * @param pixels   the ARGB pixels of the rows, one row after another, each as wide as the image
+     * @param rowCount the number of rows given
+     */
+    void writeRows(int[] pixels, int rowCount) throws IOException;
+
+    /**
+     * Finish the image after all of its rows were written, the output stream isn't closed.
+     */
+    void finish() throws IOException;
+}
@@ -0,0 +1,402 @@
+package ca.on.hojat.renderer.cropper;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.net.Uri;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes a cropped, rotated, flipped and scaled version of an image without ever having the whole
+ * output in memory.<br>
+ * The output is produced in strips of rows, for every strip only the part of the source it is made
+ * of is decoded, at the largest sample size that keeps it at least as large as the output, then the
+ * strip is drawn and streamed into a JPEG or PNG encoder. The memory used is bounded by the width of
+ * the output times the height of a strip, no matter how large the output is.<br>
+ * Outputs rotated sideways are drawn by bands of columns in the order of the source rows and
+ * gathered in a scratch file before being encoded, see {@link #writeByColumns}.
+ */
+public final class TiledBitmapWriter {
+
+    // region: Fields and Consts
+
+    /**
+     * The rows of the output produced at once, a multiple of the 16 rows of a row of JPEG MCUs.
+     */
+    private static final int STRIP_HEIGHT = 64;
+
+    /**
+     * The sampled source pixels decoded around a strip, so the filtering at its edges reads the
+     * same pixels as when drawing the whole image at once.
+     */
+    private static final int STRIP_MARGIN = 2;
+
+    /**
+     * Outputs with more pixels than this are written by strips, smaller ones are cheap enough to
+     * build as a single bitmap.
+     */
+    private static final long MIN_TILED_PIXELS = 16L * 1024 * 1024;
+    // endregion
+
+    private TiledBitmapWriter() {
+    }
+
+    /**
+     * Whether the output of the given size and format should be written by this class instead of
+     * compressing a single bitmap.
+     */
+    public static boolean shouldWriteTiled(int width, int height, Bitmap.CompressFormat format) {
+        return (format == Bitmap.CompressFormat.JPEG || format == Bitmap.CompressFormat.PNG)
+                && (long) width * height > MIN_TILED_PIXELS;
+    }
+
+    /**
+     * Get the rotation to pass to {@link #write} with a horizontal flip for an image whose EXIF
+     * data flips it horizontally and then rotates it by the given degrees, like the values of
+     * {@code androidx.exifinterface.media.ExifInterface}. Flipping first turns the rotation the
+     * other way, so a flipped 90 degrees, the EXIF transverse orientation, is written as 270
+     * degrees and then flipped.
+     */
+    public static int getRotationBeforeFlip(int degreesAfterFlip, boolean flipped) {
+        return flipped ? (360 - degreesAfterFlip) % 360 : degreesAfterFlip;
+    }
+
+    /**
+     * Write the given rectangle of the source image, rotated and then flipped like in {@link
+     * CropImageView} and scaled to the output size, into the given stream.
+     *
+     * @param sourceRect     the rectangle of the source image to write, in source pixels
+     * @param degreesRotated the clockwise rotation, a multiple of 90 degrees
+     * @param outputWidth    the width of the output after the rotation
+     * @param outputHeight   the height of the output after the rotation
+     * @param format         JPEG or PNG
+     */
+    public static void write(
+            Context context,
+            Uri source,
+            Rect sourceRect,
+            int degreesRotated,
+            boolean flipHorizontally,
+            boolean flipVertically,
+            int outputWidth,
+            int outputHeight,
+            OutputStream outputStream,
+            Bitmap.CompressFormat format,
+            int quality)
+            throws IOException {
+        if (degreesRotated % 90 != 0) {
+            throw new IllegalArgumentException("Only right angles are supported: " + degreesRotated);
+        }
+        if (format != Bitmap.CompressFormat.JPEG && format != Bitmap.CompressFormat.PNG) {
+            throw new IllegalArgumentException("Unsupported format: " + format);
+        }
+
+        InputStream stream = null;
+        BitmapRegionDecoder decoder = null;
+        try {
+            stream = context.getContentResolver().openInputStream(source);
+            if (stream == null) {
+                throw new IOException("Failed to open " + source);
+            }
+            decoder = BitmapRegionDecoder.newInstance(stream, false);
+            Rect bounds = new Rect(sourceRect);
+            if (!bounds.intersect(0, 0, decoder.getWidth(), decoder.getHeight())) {
+                throw new IOException("The rectangle " + sourceRect + " is outside of " + source);
+            }
+
+            // maps the pixels of the source rectangle to the output
+            Matrix toOutput = new Matrix();
+            toOutput.setRotate(degreesRotated);
+            toOutput.postScale(flipHorizontally ? -1 : 1, flipVertically ? -1 : 1);
+            RectF rotated = new RectF(0, 0, bounds.width(), bounds.height());
+            toOutput.mapRect(rotated);
+            toOutput.postTranslate(-rotated.left, -rotated.top);
+            toOutput.postScale(outputWidth / rotated.width(), outputHeight / rotated.height());
+            toOutput.preTranslate(-bounds.left, -bounds.top);
+
+            int sampleSize = 1;
+            float scale = max(outputWidth / rotated.width(), outputHeight / rotated.height());
+            while (sampleSize * 2 * scale <= 1) {
+                sampleSize *= 2;
+            }
+
+            // JPEG has no alpha, transparent pixels end up on black like when compressing a bitmap
+            int background = format == Bitmap.CompressFormat.JPEG ? Color.BLACK : Color.TRANSPARENT;
+            SourceDrawer drawer = new SourceDrawer(decoder, source, bounds, toOutput, sampleSize, background);
+            if (degreesRotated % 180 == 0) {
+                writeByRows(drawer, outputWidth, outputHeight, outputStream, format, quality);
+            } else {
+                writeByColumns(
+                        context, drawer, outputWidth, outputHeight, outputStream, format, quality);
+            }
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Write an output whose rows are rows of the source, every strip of rows is drawn and encoded
+     * right away.
+     */
+    private static void writeByRows(
+            SourceDrawer drawer,
+            int outputWidth,
+            int outputHeight,
+            OutputStream outputStream,
+            Bitmap.CompressFormat format,
+            int quality)
+            throws IOException {
+        Bitmap strip = Bitmap.createBitmap(outputWidth, STRIP_HEIGHT, Bitmap.Config.ARGB_8888);
+        try {
+            Canvas canvas = new Canvas(strip);
+            int[] pixels = new int[outputWidth * STRIP_HEIGHT];
+            StripEncoder encoder = null;
+            for (int top = 0; top < outputHeight; top += STRIP_HEIGHT) {
+                int rows = min(STRIP_HEIGHT, outputHeight - top);
+                boolean hasAlpha = drawer.draw(strip, canvas, 0, top, outputWidth, top + rows);
+                if (encoder == null) {
+                    encoder = newEncoder(outputStream, outputWidth, outputHeight, format, quality, hasAlpha);
+                }
+
+                strip.getPixels(pixels, 0, outputWidth, 0, 0, outputWidth, rows);
+                encoder.writeRows(pixels, rows);
+            }
+
+            if (encoder == null) {
+                throw new IOException("Nothing to write from " + drawer.mSource);
+            }
+            encoder.finish();
+        } finally {
+            strip.recycle();
+        }
+    }
+
+    /**
+     * Write an output whose rows are columns of the source. A strip of output rows is made of a
+     * band of columns over the whole height of the source, and decoding such a band costs nearly
+     * as much as decoding the whole image, so the output is drawn by bands of columns instead,
+     * which are bands of rows of the source walked from its top. The bands are gathered in a
+     * scratch file in the cache, then read back and encoded by strips of rows.
+     */
+    private static void writeByColumns(
+            Context context,
+            SourceDrawer drawer,
+            int outputWidth,
+            int outputHeight,
+            OutputStream outputStream,
+            Bitmap.CompressFormat format,
+            int quality)
+            throws IOException {
+        File scratch = File.createTempFile("tiled", ".argb", context.getCacheDir());
+        RandomAccessFile file = null;
+        Bitmap band = null;
+        try {
+            file = new RandomAccessFile(scratch, "rw");
+            FileChannel channel = file.getChannel();
+            long rowSize = (long) outputWidth * 4;
+            file.setLength(rowSize * outputHeight);
+
+            // the first output column comes from the bottom of the source when it is rotated
+            // clockwise and not flipped horizontally, or counter clockwise and flipped
+            float[] firstColumn = {0, 0};
+            float[] lastColumn = {outputWidth, 0};
+            drawer.mToSource.mapPoints(firstColumn);
+            drawer.mToSource.mapPoints(lastColumn);
+            boolean fromRight = firstColumn[1] > lastColumn[1];
+
+            band = Bitmap.createBitmap(STRIP_HEIGHT, outputHeight, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(band);
+            int[] pixels = new int[STRIP_HEIGHT * outputHeight];
+            ByteBuffer row = ByteBuffer.allocate(STRIP_HEIGHT * 4);
+            boolean hasAlpha = false;
+            int bandCount = (outputWidth + STRIP_HEIGHT - 1) / STRIP_HEIGHT;
+            for (int i = 0; i < bandCount; i++) {
+                int left = (fromRight ? bandCount - 1 - i : i) * STRIP_HEIGHT;
+                int columns = min(STRIP_HEIGHT, outputWidth - left);
+                hasAlpha |= drawer.draw(band, canvas, left, 0, left + columns, outputHeight);
+
+                band.getPixels(pixels, 0, columns, 0, 0, columns, outputHeight);
+                for (int y = 0; y < outputHeight; y++) {
+                    row.clear();
+                    row.asIntBuffer().put(pixels, y * columns, columns);
+                    row.limit(columns * 4);
+                    writeFully(channel, row, y * rowSize + left * 4L);
+                }
+            }
+            band.recycle();
+            band = null;
+
+            StripEncoder encoder =
+                    newEncoder(outputStream, outputWidth, outputHeight, format, quality, hasAlpha);
+            int[] stripPixels = new int[outputWidth * STRIP_HEIGHT];
+            ByteBuffer strip = ByteBuffer.allocate(stripPixels.length * 4);
+            for (int top = 0; top < outputHeight; top += STRIP_HEIGHT) {
+                int rows = min(STRIP_HEIGHT, outputHeight - top);
+                strip.clear();
+                strip.limit(rows * outputWidth * 4);
+                while (strip.hasRemaining()) {
+                    if (channel.read(strip, top * rowSize + strip.position()) < 0) {
+                        throw new IOException("The scratch file of " + drawer.mSource + " is truncated");
+                    }
+                }
+                strip.flip();
+                strip.asIntBuffer().get(stripPixels, 0, rows * outputWidth);
+                encoder.writeRows(stripPixels, rows);
+            }
+            encoder.finish();
+        } finally {
+            if (band != null) {
+                band.recycle();
+            }
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ignored) {
+                }
+            }
+            //noinspection ResultOfMethodCallIgnored
+            scratch.delete();
+        }
+    }
+
+    private static StripEncoder newEncoder(
+            OutputStream outputStream,
+            int width,
+            int height,
+            Bitmap.CompressFormat format,
+            int quality,
+            boolean hasAlpha)
+            throws IOException {
+        return format == Bitmap.CompressFormat.JPEG
+                ? new JpegStripEncoder(outputStream, width, height, quality)
+                : new PngStripEncoder(outputStream, width, height, hasAlpha);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * Get the coordinate clamped to the start of the source rectangle and aligned to a multiple of
+     * the sample size from it.
+     */
+    private static int alignToSample(int start, int value, int sampleSize) {
+        return start + max(value - start, 0) / sampleSize * sampleSize;
+    }
+
+    // region: Inner class: SourceDrawer
+
+    /**
+     * Draws areas of the output, decoding for each only the part of the source it is made of.
+     */
+    private static final class SourceDrawer {
+
+        private final BitmapRegionDecoder mDecoder;
+
+        private final Uri mSource;
+
+        private final Rect mBounds;
+
+        private final Matrix mToOutput;
+
+        private final Matrix mToSource = new Matrix();
+
+        private final int mSampleSize;
+
+        private final int mBackground;
+
+        private final BitmapFactory.Options mOptions = new BitmapFactory.Options();
+
+        private final Paint mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+        private final RectF mArea = new RectF();
+
+        private final Rect mRegion = new Rect();
+
+        private final Matrix mDrawMatrix = new Matrix();
+
+        SourceDrawer(
+                BitmapRegionDecoder decoder,
+                Uri source,
+                Rect bounds,
+                Matrix toOutput,
+                int sampleSize,
+                int background) {
+            mDecoder = decoder;
+            mSource = source;
+            mBounds = bounds;
+            mToOutput = toOutput;
+            mSampleSize = sampleSize;
+            mBackground = background;
+            toOutput.invert(mToSource);
+            mOptions.inSampleSize = sampleSize;
+        }
+
+        /**
+         * Draw the given area of the output into the bitmap, the top left corner of the area at
+         * its origin.
+         *
+         * @return whether the decoded source has alpha
+         */
+        boolean draw(Bitmap bitmap, Canvas canvas, int left, int top, int right, int bottom)
+                throws IOException {
+            // the source pixels of the area, aligned to the sample size from the corner of the
+            // source rectangle so every area samples the same pixels
+            mArea.set(left, top, right, bottom);
+            mToSource.mapRect(mArea);
+            int margin = STRIP_MARGIN * mSampleSize;
+            mRegion.set(
+                    alignToSample(mBounds.left, (int) Math.floor(mArea.left) - margin, mSampleSize),
+                    alignToSample(mBounds.top, (int) Math.floor(mArea.top) - margin, mSampleSize),
+                    min((int) Math.ceil(mArea.right) + margin, mBounds.right),
+                    min((int) Math.ceil(mArea.bottom) + margin, mBounds.bottom));
+            if (mRegion.isEmpty()) {
+                throw new IOException("Failed to map " + mArea + " of " + mSource);
+            }
+
+            Bitmap decoded = mDecoder.decodeRegion(mRegion, mOptions);
+            if (decoded == null) {
+                throw new IOException("Failed to decode " + mRegion + " of " + mSource);
+            }
+
+            mDrawMatrix.setScale(mSampleSize, mSampleSize);
+            mDrawMatrix.postTranslate(mRegion.left, mRegion.top);
+            mDrawMatrix.postConcat(mToOutput);
+            mDrawMatrix.postTranslate(-left, -top);
+
+            bitmap.eraseColor(mBackground);
+            canvas.drawBitmap(decoded, mDrawMatrix, mPaint);
+            boolean hasAlpha = decoded.hasAlpha();
+            BitmapUtils.releaseBitmap(decoded);
+            return hasAlpha;
+        }
+    }
+    // endregion
+}
@@ -0,0 +1,519 @@
+package ca.on.hojat.renderer.exif;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import timber.log.Timber;
+
+/**
+ * Reads the EXIF header of a JPEG or TIFF file from a {@link ByteBuffer}, e.g. a memory-mapped file.
+ * <p/>
+ * Unlike {@link ExifParser}, nothing is streamed or queued: the IFDs are read in place by following their
+ * offsets and the tag values are only decoded when they are first accessed, so scanning many files only pays
+ * for the tags which are actually used. The tags are the same as the ones {@link ExifReader} returns for
+ * well-formed files. The JPEG sections are not kept, which only matters for {@link ExifInterface#writeExif},
+ * and that reads its source again anyway.
+ */
+class ExifBufferParser {
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final short TAG_EXIF_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_EXIF_IFD);
+    private static final short TAG_GPS_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_GPS_IFD);
+    private static final short TAG_INTEROPERABILITY_IFD = ExifInterface.getTrueTagKey(ExifInterface.TAG_INTEROPERABILITY_IFD);
+    private static final short TAG_JPEG_INTERCHANGE_FORMAT = ExifInterface.getTrueTagKey(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT);
+    private static final short TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = ExifInterface.getTrueTagKey(ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH);
+    private static final short TAG_STRIP_OFFSETS = ExifInterface.getTrueTagKey(ExifInterface.TAG_STRIP_OFFSETS);
+    private static final short TAG_STRIP_BYTE_COUNTS = ExifInterface.getTrueTagKey(ExifInterface.TAG_STRIP_BYTE_COUNTS);
+
+    private final int mOptions;
+    private final ExifInterface mInterface;
+    private final Set<Integer> mVisitedIfds = new HashSet<>();
+    private ByteBuffer mTiff;
+    private ExifData mExifData;
+    private int mIfd0Position;
+    private int mQualityGuess;
+    private int mImageWidth;
+    private int mImageLength;
+    private short mProcess = 0;
+    private int mUncompressedDataPosition = 0;
+    private long mThumbnailOffset = -1;
+    private ExifTag mJpegSizeTag;
+    private ExifTag mStripSizeTag;
+    private long[] mStripOffsets;
+
+    private ExifBufferParser(int options, ExifInterface iRef) {
+        mOptions = options;
+        mInterface = iRef;
+    }
+
+    /**
+     * Parses the data between the position and the limit of the buffer. The buffer itself is not modified,
+     * but it must stay valid as long as the values of the returned tags can be accessed.
+     */
+    protected static ExifData parse(ByteBuffer buffer, int options, ExifInterface iRef) throws ExifInvalidFormatException {
+        ExifBufferParser parser = new ExifBufferParser(options, iRef);
+        try {
+            return parser.parse(buffer.slice());
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new ExifInvalidFormatException("Premature end of file: " + e);
+        }
+    }
+
+    private ExifData parse(ByteBuffer source) throws ExifInvalidFormatException {
+        source.order(ByteOrder.BIG_ENDIAN);
+        if (source.remaining() >= 4 && (source.getShort(0) == ExifParser.LITTLE_ENDIAN_TAG || source.getShort(0) == ExifParser.BIG_ENDIAN_TAG)) {
+            mTiff = source;
+        } else {
+            mTiff = seekTiffData(source);
+        }
+
+        if (mTiff == null) {
+            mExifData = new ExifData(null);
+        } else {
+            parseTiff();
+        }
+
+        mExifData.setSections(new ArrayList<ExifParser.Section>(0));
+        mExifData.mUncompressedDataPosition = mUncompressedDataPosition;
+        mExifData.setQualityGuess(mQualityGuess);
+        mExifData.setJpegProcess(mProcess);
+        if (mImageWidth > 0 && mImageLength > 0) {
+            mExifData.setImageSize(mImageWidth, mImageLength);
+        }
+        return mExifData;
+    }
+
+    private ByteBuffer seekTiffData(ByteBuffer source) throws ExifInvalidFormatException {
+        if (source.remaining() < 2 || (source.get(0) & 0xff) != 0xFF || (source.get(1) & 0xff) != JpegHeader.TAG_SOI) {
+            Timber.e("invalid jpeg header");
+            return null;
+        }
+
+        ByteBuffer tiff = null;
+        int position = 2;
+        while (true) {
+            int marker;
+            int prev = 0;
+            while (true) {
+                marker = source.get(position++) & 0xff;
+                if (marker != 0xff && prev == 0xff) break;
+                prev = marker;
+            }
+
+            int segmentStart = position;
+            int itemlen = source.getShort(position) & 0xffff;
+            if (itemlen < 2) {
+                throw new ExifInvalidFormatException("Invalid marker");
+            }
+            if (segmentStart + itemlen > source.limit()) {
+                throw new ExifInvalidFormatException("Premature end of file? Expecting " + (itemlen - 2) + ", received " + (source.limit() - segmentStart - 2));
+            }
+            position += itemlen;
+
+            switch (marker) {
+                case JpegHeader.TAG_M_SOS:
+                    mUncompressedDataPosition = position;
+                    return tiff;
+
+                case JpegHeader.TAG_M_EOI:
+                    Timber.w("No image in jpeg!");
+                    return null;
+
+                case JpegHeader.TAG_M_DQT:
+                    byte[] data = new byte[itemlen];
+                    ((ByteBuffer) source.duplicate().position(segmentStart)).get(data);
+                    mQualityGuess = ExifParser.guessQuality(data, mQualityGuess);
+                    break;
+
+                case JpegHeader.TAG_M_SOF0:
+                case JpegHeader.TAG_M_SOF1:
+                case JpegHeader.TAG_M_SOF2:
+                case JpegHeader.TAG_M_SOF3:
+                case JpegHeader.TAG_M_SOF5:
+                case JpegHeader.TAG_M_SOF6:
+                case JpegHeader.TAG_M_SOF7:
+                case JpegHeader.TAG_M_SOF9:
+                case JpegHeader.TAG_M_SOF10:
+                case JpegHeader.TAG_M_SOF11:
+                case JpegHeader.TAG_M_SOF13:
+                case JpegHeader.TAG_M_SOF14:
+                case JpegHeader.TAG_M_SOF15:
+                    if (itemlen > 7) {
+                        mImageLength = source.getShort(segmentStart + 3) & 0xffff;
+                        mImageWidth = source.getShort(segmentStart + 5) & 0xffff;
+                    }
+                    mProcess = (short) marker;
+                    break;
+
+                case JpegHeader.TAG_M_EXIF:
+                    if (itemlen >= 8 && source.getInt(segmentStart + 2) == ExifParser.EXIF_HEADER && source.getShort(segmentStart + 6) == ExifParser.EXIF_HEADER_TAIL) {
+                        ByteBuffer slice = source.duplicate();
+                        slice.position(segmentStart + 8);
+                        slice.limit(segmentStart + itemlen);
+                        tiff = slice.slice();
+                    }
+                    break;
+            }
+        }
+    }
+
+    private void parseTiff() throws ExifInvalidFormatException {
+        short byteOrder = mTiff.getShort(0);
+        if (byteOrder == ExifParser.LITTLE_ENDIAN_TAG) {
+            mTiff.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (byteOrder == ExifParser.BIG_ENDIAN_TAG) {
+            mTiff.order(ByteOrder.BIG_ENDIAN);
+        } else {
+            throw new ExifInvalidFormatException("Invalid TIFF header");
+        }
+
+        if (mTiff.getShort(2) != ExifParser.TIFF_HEADER_TAIL) {
+            throw new ExifInvalidFormatException("Invalid TIFF header");
+        }
+
+        mExifData = new ExifData(mTiff.order());
+        long offset = getUnsignedInt(4);
+        if (offset > Integer.MAX_VALUE) {
+            throw new ExifInvalidFormatException("Invalid offset " + offset);
+        }
+        mIfd0Position = (int) offset;
+
+        if (isIfdRequested(IfdId.TYPE_IFD_0) || needToParseOffsets(IfdId.TYPE_IFD_0)) {
+            parseIfd(IfdId.TYPE_IFD_0, offset);
+        }
+        readThumbnail();
+    }
+
+    private void parseIfd(int ifdType, long ifdOffset) throws ExifInvalidFormatException {
+        if (ifdOffset <= 0 || ifdOffset + ExifParser.OFFSET_SIZE > mTiff.limit() || !mVisitedIfds.add((int) ifdOffset)) {
+            return;
+        }
+
+        int start = (int) ifdOffset;
+        int tagCount = mTiff.getShort(start) & 0xffff;
+        int endOfTags = start + ExifParser.OFFSET_SIZE + ExifParser.TAG_SIZE * tagCount;
+        if (endOfTags > mTiff.limit()) {
+            Timber.w("Invalid size of IFD %s", ifdType);
+            return;
+        }
+
+        boolean isRequested = isIfdRequested(ifdType);
+        boolean parseOffsets = needToParseOffsets(ifdType);
+        if (isRequested) {
+            mExifData.addIfdData(new IfdData(ifdType));
+        }
+
+        // the linked IFDs are visited once this one is done, like the stream parser does
+        List<long[]> linkedIfds = new ArrayList<>();
+        if (isRequested || parseOffsets) {
+            for (int entry = start + ExifParser.OFFSET_SIZE; entry < endOfTags; entry += ExifParser.TAG_SIZE) {
+                ExifTag tag = readTag(ifdType, entry, isRequested);
+                if (tag != null && (parseOffsets || !isInline(tag))) {
+                    checkOffsetOrImageTag(tag, linkedIfds);
+                }
+            }
+        }
+
+        // there is a link to IFD1 at the end of IFD0
+        if (ifdType == IfdId.TYPE_IFD_0 && endOfTags + 4 <= mTiff.limit()) {
+            long ifd1Offset = getUnsignedInt(endOfTags);
+            if ((isIfdRequested(IfdId.TYPE_IFD_1) || isThumbnailRequested()) && ifd1Offset != 0) {
+                linkedIfds.add(new long[]{IfdId.TYPE_IFD_1, ifd1Offset});
+            }
+        }
+
+        for (long[] linkedIfd : linkedIfds) {
+            parseIfd((int) linkedIfd[0], linkedIfd[1]);
+        }
+    }
+
+    private ExifTag readTag(int ifdType, int entry, boolean addToIfd) throws ExifInvalidFormatException {
+        short tagId = mTiff.getShort(entry);
+        short dataFormat = mTiff.getShort(entry + 2);
+        long numOfComp = getUnsignedInt(entry + 4);
+        if (numOfComp > Integer.MAX_VALUE) {
+            throw new ExifInvalidFormatException("Number of component is larger then Integer.MAX_VALUE");
+        }
+        if (!ExifTag.isValidType(dataFormat)) {
+            Timber.w("Tag %04x: Invalid data type %d", tagId, dataFormat);
+            return null;
+        }
+
+        ExifTag tag = new ExifTag(tagId, dataFormat, (int) numOfComp, ifdType, ((int) numOfComp) != ExifTag.SIZE_UNDEFINED);
+        int dataSize = getRawDataSize(tag);
+        boolean hasValue;
+        if (dataSize > 4) {
+            long offset = getUnsignedInt(entry + 8);
+            if (offset > Integer.MAX_VALUE) {
+                throw new ExifInvalidFormatException("offset is larger then Integer.MAX_VALUE");
+            }
+            if ((offset < mIfd0Position) && (offset >= ExifParser.DEFAULT_IFD0_OFFSET) && (dataFormat == ExifTag.TYPE_UNDEFINED)) {
+                // Some invalid images put some undefined data before IFD0
+                int length = Math.min(mIfd0Position - ExifParser.DEFAULT_IFD0_OFFSET, (int) numOfComp);
+                if (offset + length > mTiff.limit()) {
+                    return null;
+                }
+                byte[] buf = new byte[length];
+                getBytes((int) offset, buf);
+                tag.setValue(buf);
+                hasValue = tag.hasValue();
+            } else {
+                if (offset + dataSize > mTiff.limit() || numOfComp >= 0x66000000) {
+                    Timber.w("Failed to read the value of tag %04x, the file may be broken", tagId);
+                    return null;
+                }
+                tag.setOffset((int) offset);
+                tag.setValueLoader(new BufferValueLoader(mTiff, (int) offset, false));
+                hasValue = false;
+            }
+        } else {
+            tag.setOffset(entry + 8);
+            tag.setValueLoader(new BufferValueLoader(mTiff, entry + 8, true));
+            hasValue = true;
+        }
+
+        if (addToIfd) {
+            // tags with a value in place must be defined, the ones stored elsewhere are always kept
+            if (!hasValue || isDefinedTag(ifdType, tagId)) {
+                mExifData.getIfdData(ifdType).setTag(tag);
+            } else {
+                Timber.w("skip tag because not registered in the tag table:%s", tag);
+            }
+        }
+        return tag;
+    }
+
+    private boolean isInline(ExifTag tag) {
+        return getRawDataSize(tag) <= 4;
+    }
+
+    // the getters of the tag would decode its value, which is what this parser avoids
+    private static int getRawDataSize(ExifTag tag) {
+        return tag.getRawComponentCount() * ExifTag.getElementSize(tag.getDataType());
+    }
+
+    /**
+     * Checks the tag, if the tag is one of the offset tags that points to an IFD or to the thumbnail
+     * the caller is interested in, remember it.
+     */
+    private void checkOffsetOrImageTag(ExifTag tag, List<long[]> linkedIfds) {
+        if (tag.getRawComponentCount() == 0) {
+            return;
+        }
+        short tid = tag.getTagId();
+        int ifd = tag.getIfd();
+        if (tid == TAG_EXIF_IFD && checkAllowed(ifd, ExifInterface.TAG_EXIF_IFD)) {
+            if (isIfdRequested(IfdId.TYPE_IFD_EXIF) || isIfdRequested(IfdId.TYPE_IFD_INTEROPERABILITY)) {
+                linkedIfds.add(new long[]{IfdId.TYPE_IFD_EXIF, tag.getValueAt(0)});
+            }
+        } else if (tid == TAG_GPS_IFD && checkAllowed(ifd, ExifInterface.TAG_GPS_IFD)) {
+            if (isIfdRequested(IfdId.TYPE_IFD_GPS)) {
+                linkedIfds.add(new long[]{IfdId.TYPE_IFD_GPS, tag.getValueAt(0)});
+            }
+        } else if (tid == TAG_INTEROPERABILITY_IFD && checkAllowed(ifd, ExifInterface.TAG_INTEROPERABILITY_IFD)) {
+            if (isIfdRequested(IfdId.TYPE_IFD_INTEROPERABILITY)) {
+                linkedIfds.add(new long[]{IfdId.TYPE_IFD_INTEROPERABILITY, tag.getValueAt(0)});
+            }
+        } else if (tid == TAG_JPEG_INTERCHANGE_FORMAT && checkAllowed(ifd, ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT)) {
+            if (isThumbnailRequested()) {
+                mThumbnailOffset = tag.getValueAt(0);
+            }
+        } else if (tid == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH && checkAllowed(ifd, ExifInterface.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH)) {
+            if (isThumbnailRequested()) {
+                mJpegSizeTag = tag;
+            }
+        } else if (tid == TAG_STRIP_OFFSETS && checkAllowed(ifd, ExifInterface.TAG_STRIP_OFFSETS)) {
+            if (isThumbnailRequested()) {
+                mStripOffsets = new long[tag.getRawComponentCount()];
+                for (int i = 0; i < mStripOffsets.length; i++) {
+                    mStripOffsets[i] = tag.getValueAt(i);
+                }
+            }
+        } else if (tid == TAG_STRIP_BYTE_COUNTS && checkAllowed(ifd, ExifInterface.TAG_STRIP_BYTE_COUNTS) && isThumbnailRequested() && isInline(tag)) {
+            mStripSizeTag = tag;
+        }
+    }
+
+    private void readThumbnail() {
+        if (mThumbnailOffset >= 0) {
+            int size = mJpegSizeTag == null ? 0 : (int) mJpegSizeTag.getValueAt(0);
+            if (size >= 0 && mThumbnailOffset + size <= mTiff.limit()) {
+                byte[] buf = new byte[size];
+                getBytes((int) mThumbnailOffset, buf);
+                mExifData.setCompressedThumbnail(buf);
+            } else {
+                Timber.w("Failed to read the compressed thumbnail");
+            }
+        }
+
+        if (mStripOffsets != null) {
+            int size = mStripSizeTag == null ? 0 : (int) mStripSizeTag.getValueAt(0);
+            for (int i = 0; i < mStripOffsets.length; i++) {
+                if (size >= 0 && mStripOffsets[i] + size <= mTiff.limit()) {
+                    byte[] buf = new byte[size];
+                    getBytes((int) mStripOffsets[i], buf);
+                    mExifData.setStripBytes(i, buf);
+                } else {
+                    Timber.w("Failed to read the strip bytes");
+                }
+            }
+        }
+    }
+
+    private boolean isIfdRequested(int ifdType) {
+        switch (ifdType) {
+            case IfdId.TYPE_IFD_0:
+                return (mOptions & ExifInterface.Options.OPTION_IFD_0) != 0;
+            case IfdId.TYPE_IFD_1:
+                return (mOptions & ExifInterface.Options.OPTION_IFD_1) != 0;
+            case IfdId.TYPE_IFD_EXIF:
+                return (mOptions & ExifInterface.Options.OPTION_IFD_EXIF) != 0;
+            case IfdId.TYPE_IFD_GPS:
+                return (mOptions & ExifInterface.Options.OPTION_IFD_GPS) != 0;
+            case IfdId.TYPE_IFD_INTEROPERABILITY:
+                return (mOptions & ExifInterface.Options.OPTION_IFD_INTEROPERABILITY) != 0;
+        }
+        return false;
+    }
+
+    private boolean isThumbnailRequested() {
+        return (mOptions & ExifInterface.Options.OPTION_THUMBNAIL) != 0;
+    }
+
+    private boolean needToParseOffsets(int ifdType) {
+        switch (ifdType) {
+            case IfdId.TYPE_IFD_0:
+                return isIfdRequested(IfdId.TYPE_IFD_EXIF) || isIfdRequested(IfdId.TYPE_IFD_GPS) || isIfdRequested(IfdId.TYPE_IFD_INTEROPERABILITY) ||
+                        isIfdRequested(IfdId.TYPE_IFD_1);
+            case IfdId.TYPE_IFD_1:
+                return isThumbnailRequested();
+            case IfdId.TYPE_IFD_EXIF:
+                return isIfdRequested(IfdId.TYPE_IFD_INTEROPERABILITY);
+            default:
+                return false;
+        }
+    }
+
+    private boolean isDefinedTag(int ifdId, short tagId) {
+        return mInterface.getTagInfo().get(ExifInterface.defineTag(ifdId, tagId)) != ExifInterface.DEFINITION_NULL;
+    }
+
+    private boolean checkAllowed(int ifd, int tagId) {
+        int info = mInterface.getTagInfo().get(tagId);
+        if (info == ExifInterface.DEFINITION_NULL) {
+            return false;
+        }
+        return ExifInterface.isIfdAllowed(info, ifd);
+    }
+
+    private long getUnsignedInt(int position) {
+        return mTiff.getInt(position) & 0xffffffffL;
+    }
+
+    private void getBytes(int position, byte[] dst) {
+        ByteBuffer duplicate = mTiff.duplicate();
+        duplicate.position(position);
+        duplicate.get(dst);
+    }
+
+    /**
+     * Decodes a tag value straight from the buffer, the same way {@link ExifParser#readFullTagValue} does.
+     */
+    private static class BufferValueLoader implements ExifTag.ValueLoader {
+        private final ByteBuffer mBuffer;
+        private final int mPosition;
+        private final boolean mIsInline;
+
+        BufferValueLoader(ByteBuffer buffer, int position, boolean isInline) {
+            mBuffer = buffer;
+            mPosition = position;
+            mIsInline = isInline;
+        }
+
+        @Override
+        public void load(ExifTag tag) {
+            if (mIsInline) {
+                // values stored in place may omit the \0 of short strings, like in ExifParser#readTag
+                boolean defCount = tag.hasDefinedCount();
+                tag.setHasDefinedCount(false);
+                decode(tag);
+                tag.setHasDefinedCount(defCount);
+            } else {
+                decode(tag);
+            }
+        }
+
+        private void decode(ExifTag tag) {
+            ByteBuffer buffer = mBuffer.duplicate().order(mBuffer.order());
+            buffer.position(mPosition);
+            int componentCount = tag.getRawComponentCount();
+            switch (tag.getDataType()) {
+                case ExifTag.TYPE_UNSIGNED_BYTE:
+                case ExifTag.TYPE_UNDEFINED: {
+                    byte[] buf = new byte[componentCount];
+                    buffer.get(buf);
+                    tag.setValue(buf);
+                }
+                break;
+                case ExifTag.TYPE_ASCII:
+                    if (componentCount > 0) {
+                        byte[] buf = new byte[componentCount];
+                        buffer.get(buf);
+                        tag.setValue(new String(buf, US_ASCII));
+                    } else {
+                        tag.setValue("");
+                    }
+                    break;
+                case ExifTag.TYPE_UNSIGNED_LONG: {
+                    long[] value = new long[componentCount];
+                    for (int i = 0; i < value.length; i++) {
+                        value[i] = buffer.getInt() & 0xffffffffL;
+                    }
+                    tag.setValue(value);
+                }
+                break;
+                case ExifTag.TYPE_UNSIGNED_RATIONAL: {
+                    Rational[] value = new Rational[componentCount];
+                    for (int i = 0; i < value.length; i++) {
+                        long nomi = buffer.getInt() & 0xffffffffL;
+                        long denomi = buffer.getInt() & 0xffffffffL;
+                        value[i] = new Rational(nomi, denomi);
+                    }
+                    tag.setValue(value);
+                }
+                break;
+                case ExifTag.TYPE_UNSIGNED_SHORT: {
+                    int[] value = new int[componentCount];
+                    for (int i = 0; i < value.length; i++) {
+                        value[i] = buffer.getShort() & 0xffff;
+                    }
+                    tag.setValue(value);
+                }
+                break;
+                case ExifTag.TYPE_LONG: {
+                    int[] value = new int[componentCount];
+                    for (int i = 0; i < value.length; i++) {
+                        value[i] = buffer.getInt();
+                    }
+                    tag.setValue(value);
+                }
+                break;
+                case ExifTag.TYPE_RATIONAL: {
+                    Rational[] value = new Rational[componentCount];
+                    for (int i = 0; i < value.length; i++) {
+                        int nomi = buffer.getInt();
+                        int denomi = buffer.getInt();
+                        value[i] = new Rational(nomi, denomi);
+                    }
+                    tag.setValue(value);
+                }
+                break;
+            }
+        }
+    }
+}
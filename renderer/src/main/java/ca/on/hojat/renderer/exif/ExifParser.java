@@ -1,5 +1,6 @@
 package ca.on.hojat.renderer.exif;
 
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ByteArrayInputStream;
@@ -9,6 +10,7 @@ import java.nio.charset.Charset;
 import java.util.List;
 import java.util.TreeMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 
 import timber.log.Timber;
@@ -67,6 +69,9 @@ class ExifParser {
     private static final short TAG_STRIP_OFFSETS = ExifInterface.getTrueTagKey(ExifInterface.TAG_STRIP_OFFSETS);
     private static final short TAG_STRIP_BYTE_COUNTS = ExifInterface.getTrueTagKey(ExifInterface.TAG_STRIP_BYTE_COUNTS);
     private final int mOptions;
+    // the defined tag constants to look for, or null to read every tag of the requested IFDs
+    private final int[] mRequestedTags;
+    private int mFoundTagCount = 0;
     private final ExifInterface mInterface;
     private final TreeMap<Integer, Object> mCorrespondingEvent = new TreeMap<Integer, Object>();
     private final CountedDataInputStream mTiffStream;
@@ -103,7 +108,7 @@ class ExifParser {
         deftabs = new int[][]{std_luminance_quant_tbl, std_chrominance_quant_tbl};
     }
 
-    private ExifParser(InputStream inputStream, int options, ExifInterface iRef) throws IOException, ExifInvalidFormatException {
+    private ExifParser(InputStream inputStream, int options, int[] requestedTags, ExifInterface iRef) throws IOException, ExifInvalidFormatException {
         if (inputStream == null) {
             throw new IOException("Null argument inputStream to ExifParser");
         }
@@ -112,6 +117,7 @@ class ExifParser {
         mSections = new ArrayList<ExifParser.Section>(0);
 
         mInterface = iRef;
+        mRequestedTags = requestedTags;
         mTiffStream = seekTiffData(inputStream);
         mOptions = options;
 
@@ -203,11 +209,26 @@ class ExifParser {
 
             section.size = itemlen;
 
-            data = new byte[itemlen];
-            data[0] = lh;
-            data[1] = ll;
+            if (isTargeted() && marker == JpegHeader.TAG_M_EXIF && itemlen >= 8) {
+                // only the header is copied, the requested tags are parsed straight from the input
+                data = new byte[8];
+                data[0] = lh;
+                data[1] = ll;
+                got = readBytes(dataStream, data, 2, 6);
+                if (got == 6 && readInt(data, 2) == EXIF_HEADER && readShort(data, 6) == EXIF_HEADER_TAIL) {
+                    tiffStream = new CountedDataInputStream(new SegmentInputStream(dataStream, itemlen - 8));
+                    tiffStream.setEnd(itemlen - 6);
+                    return tiffStream;
+                }
 
-            got = readBytes(dataStream, data, 2, itemlen - 2);
+                data = Arrays.copyOf(data, itemlen);
+                got += readBytes(dataStream, data, 8, itemlen - 8);
+            } else {
+                data = new byte[itemlen];
+                data[0] = lh;
+                data[1] = ll;
+                got = readBytes(dataStream, data, 2, itemlen - 2);
+            }
 
             if (got != itemlen - 2) {
                 throw new ExifInvalidFormatException("Premature end of file? Expecting " + (itemlen - 2) + ", received " + got);
@@ -335,6 +356,14 @@ class ExifParser {
     }
 
     private void process_M_DQT(final byte[] data, int length) {
+        mQualityGuess = guessQuality(data, mQualityGuess);
+    }
+
+    /**
+     * Guesses the JPEG quality from the luminance quantization table of a DQT segment.
+     * Returns qualityGuess if the segment has no such table.
+     */
+    static int guessQuality(final byte[] data, int qualityGuess) {
         int a = 2;
         int c;
         int tableindex, coefindex;
@@ -383,11 +412,12 @@ class ExifParser {
                 }
 
                 if (tableindex == 0) {
-                    mQualityGuess = (int) (qual + 0.5);
+                    qualityGuess = (int) (qual + 0.5);
 
                 }
             }
         }
+        return qualityGuess;
     }
 
     private void parseTiffHeader(final CountedDataInputStream stream) throws IOException, ExifInvalidFormatException {
@@ -460,7 +490,64 @@ class ExifParser {
      * @throws ExifInvalidFormatException
      */
     protected static ExifParser parse(InputStream inputStream, int options, ExifInterface iRef) throws IOException, ExifInvalidFormatException {
-        return new ExifParser(inputStream, options, iRef);
+        return new ExifParser(inputStream, options, null, iRef);
+    }
+
+    /**
+     * Parses the given InputStream looking for the given tags only. Only the IFDs containing the tags are visited,
+     * the other tags are skipped without reading their values, and parsing stops as soon as every tag is found.
+     * The JPEG segments following the EXIF one are not read either.
+     *
+     * @param tagIds defined tag constants, e.g. {@link ExifInterface#TAG_ORIENTATION}.
+     */
+    protected static ExifParser parse(InputStream inputStream, int[] tagIds, ExifInterface iRef) throws IOException, ExifInvalidFormatException {
+        int options = 0;
+        for (int tagId : tagIds) {
+            options |= getOptionForIfd(ExifInterface.getTrueIfd(tagId));
+        }
+        return new ExifParser(inputStream, options, tagIds, iRef);
+    }
+
+    private static int getOptionForIfd(int ifdType) {
+        switch (ifdType) {
+            case IfdId.TYPE_IFD_0:
+                return ExifInterface.Options.OPTION_IFD_0;
+            case IfdId.TYPE_IFD_1:
+                return ExifInterface.Options.OPTION_IFD_1;
+            case IfdId.TYPE_IFD_EXIF:
+                return ExifInterface.Options.OPTION_IFD_EXIF;
+            case IfdId.TYPE_IFD_GPS:
+                return ExifInterface.Options.OPTION_IFD_GPS;
+            case IfdId.TYPE_IFD_INTEROPERABILITY:
+                return ExifInterface.Options.OPTION_IFD_INTEROPERABILITY;
+        }
+        return 0;
+    }
+
+    private boolean isTargeted() {
+        return mRequestedTags != null;
+    }
+
+    private boolean isRequestedTag(int ifdType, short tagId) {
+        if (mRequestedTags == null) {
+            return true;
+        }
+
+        int tag = ExifInterface.defineTag(ifdType, tagId);
+        for (int requestedTag : mRequestedTags) {
+            if (requestedTag == tag) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isIfdOffsetTag(short tagId) {
+        return tagId == TAG_EXIF_IFD || tagId == TAG_GPS_IFD || tagId == TAG_INTEROPERABILITY_IFD;
+    }
+
+    private boolean areAllRequestedTagsFound() {
+        return mRequestedTags != null && mFoundTagCount >= mRequestedTags.length;
     }
 
     /**
@@ -476,7 +563,7 @@ class ExifParser {
      * @see #EVENT_END
      */
     protected int next() throws IOException, ExifInvalidFormatException {
-        if (null == mTiffStream) {
+        if (null == mTiffStream || areAllRequestedTagsFound()) {
             return EVENT_END;
         }
 
@@ -490,6 +577,14 @@ class ExifParser {
             if (mNeedToParseOffsetsInCurrentIfd) {
                 checkOffsetOrImageTag(mTag);
             }
+            if (isTargeted()) {
+                if (!isRequestedTag(mTag.getIfd(), mTag.getTagId())) {
+                    return next();
+                }
+                if (mTag.hasValue()) {
+                    mFoundTagCount++;
+                }
+            }
             return EVENT_NEW_TAG;
         } else if (offset == endOfTags) {
             // There is a link to ifd1 at the end of ifd0
@@ -553,6 +648,9 @@ class ExifParser {
                     checkOffsetOrImageTag(mTag);
                 }
                 if (tagEvent.isRequested) {
+                    if (isTargeted()) {
+                        mFoundTagCount++;
+                    }
                     return EVENT_VALUE_OF_REGISTERED_TAG;
                 }
             }
@@ -713,6 +811,11 @@ class ExifParser {
             mTiffStream.skip(4);
             return null;
         }
+        // In targeted mode, don't bother decoding the values of the tags nobody asked for
+        if (isTargeted() && !isRequestedTag(mIfdType, tagId) && !isIfdOffsetTag(tagId)) {
+            mTiffStream.skip(4);
+            return null;
+        }
         // TODO: handle numOfComp overflow
         ExifTag tag = new ExifTag(tagId, dataFormat, (int) numOfComp, mIfdType, ((int) numOfComp) != ExifTag.SIZE_UNDEFINED);
         int dataSize = tag.getDataSize();
@@ -996,6 +1099,57 @@ class ExifParser {
         return mUncompressedDataPosition;
     }
 
+    /**
+     * The rest of a JPEG segment, read straight from the stream of the whole file.
+     */
+    private static class SegmentInputStream extends FilterInputStream {
+        private int mRemaining;
+
+        SegmentInputStream(InputStream in, int length) {
+            super(in);
+            mRemaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int r = in.read();
+            if (r >= 0) {
+                mRemaining--;
+            }
+            return r;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            int r = in.read(b, off, Math.min(len, mRemaining));
+            mRemaining -= Math.max(r, 0);
+            return r;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, mRemaining));
+            mRemaining -= (int) skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return Math.min(in.available(), mRemaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
     private static class ImageEvent {
         int stripIndex;
         int type;
@@ -0,0 +1,223 @@
+package ca.on.hojat.renderer.exif
+
+import androidx.exifinterface.media.ExifInterface as AndroidExifInterface
+import timber.log.Timber
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Updates the Orientation and DateTimeOriginal tags of a JPEG by overwriting their values where they already
+ * are in the file. Both have a fixed size (a SHORT and 20 ASCII bytes), so as long as the tag exists with its
+ * standard layout, only a couple of bytes have to be written instead of the whole file.
+ *
+ * If a tag is missing or stored in an unexpected way, the file is rewritten with the androidx ExifInterface.
+ * An in-place patch keeps the last modified time of the file, the media sorting and date taken checks go by it.
+ */
+object ExifPatcher {
+
+    private const val MARKER_PREFIX = 0xFF
+    private const val MARKER_SOI = 0xD8
+    private const val MARKER_APP1 = 0xE1
+    private const val MARKER_SOS = 0xDA
+    private const val MARKER_EOI = 0xD9
+
+    private const val TAG_ORIENTATION = 0x0112
+    private const val TAG_EXIF_IFD = 0x8769
+    private const val TAG_DATE_TIME_ORIGINAL = 0x9003
+
+    private const val TYPE_ASCII = 2
+    private const val TYPE_SHORT = 3
+    private const val TYPE_LONG = 4
+
+    private const val IFD_ENTRY_SIZE = 12
+    private const val DATE_TIME_LENGTH = 19
+
+    private val EXIF_HEADER = "Exif\u0000\u0000".toByteArray(Charsets.US_ASCII)
+
+    /**
+     * The tag values to write, null values are left alone.
+     * [dateTimeOriginal] has to be in the EXIF format, "yyyy:MM:dd HH:mm:ss".
+     */
+    data class Patch(val orientation: Int? = null, val dateTimeOriginal: String? = null)
+
+    /**
+     * Writes the given tags into the file at [path]. Returns false if neither the in-place patch nor the
+     * rewrite worked.
+     */
+    @JvmStatic
+    fun patch(path: String, patch: Patch): Boolean {
+        val dateTime = patch.dateTimeOriginal
+        require(dateTime == null || dateTime.length == DATE_TIME_LENGTH) { "Invalid EXIF date: $dateTime" }
+
+        return try {
+            if (!patchInPlace(path, patch)) {
+                rewrite(path, patch)
+            }
+            true
+        } catch (e: IOException) {
+            Timber.e(e, "Failed to patch the EXIF of $path")
+            false
+        }
+    }
+
+    @JvmStatic
+    fun patchOrientation(path: String, orientation: Int) = patch(path, Patch(orientation = orientation))
+
+    private fun rewrite(path: String, patch: Patch) {
+        val exif = AndroidExifInterface(path)
+        patch.orientation?.let { exif.setAttribute(AndroidExifInterface.TAG_ORIENTATION, it.toString()) }
+        patch.dateTimeOriginal?.let { exif.setAttribute(AndroidExifInterface.TAG_DATETIME_ORIGINAL, it) }
+        exif.saveAttributes()
+    }
+
+    /**
+     * Returns false if the file layout doesn't allow patching every requested tag. In that case nothing is written,
+     * so the caller can fall back to a full rewrite.
+     */
+    private fun patchInPlace(path: String, patch: Patch): Boolean {
+        val target = File(path)
+        if (!target.isFile) {
+            return false
+        }
+
+        val lastModified = target.lastModified()
+        RandomAccessFile(target, "rw").use { file ->
+            val segment = findTiffSegment(file) ?: return false
+            val tiffStart = segment.start
+            val length = segment.length
+
+            // the APP1 segment is at most 64 KB, so reading it whole is cheaper than seeking around it.
+            // Every offset is checked against its length, nothing outside of the segment is ever written
+            val data = ByteArray(length)
+            file.seek(tiffStart)
+            file.readFully(data)
+            val tiff = ByteBuffer.wrap(data)
+            tiff.order(
+                when (tiff.getShort(0).toInt()) {
+                    0x4949 -> ByteOrder.LITTLE_ENDIAN
+                    0x4D4D -> ByteOrder.BIG_ENDIAN
+                    else -> return false
+                }
+            )
+
+            val ifd0 = tiff.getInt(4)
+            var orientationOffset = -1
+            if (patch.orientation != null) {
+                val entry = findEntry(tiff, ifd0, TAG_ORIENTATION)
+                if (entry < 0 || tiff.getShort(entry + 2).toInt() != TYPE_SHORT || tiff.getInt(entry + 4) != 1) {
+                    return false
+                }
+                orientationOffset = entry + 8
+            }
+
+            var dateTimeOffset = -1
+            if (patch.dateTimeOriginal != null) {
+                val exifIfdEntry = findEntry(tiff, ifd0, TAG_EXIF_IFD)
+                if (exifIfdEntry < 0 || tiff.getShort(exifIfdEntry + 2).toInt() != TYPE_LONG) {
+                    return false
+                }
+
+                val entry = findEntry(tiff, tiff.getInt(exifIfdEntry + 8), TAG_DATE_TIME_ORIGINAL)
+                if (entry < 0 || tiff.getShort(entry + 2).toInt() != TYPE_ASCII ||
+                    tiff.getInt(entry + 4) != DATE_TIME_LENGTH + 1
+                ) {
+                    return false
+                }
+                dateTimeOffset = tiff.getInt(entry + 8)
+                if (dateTimeOffset < 8 || dateTimeOffset.toLong() + DATE_TIME_LENGTH + 1 > length) {
+                    return false
+                }
+            }
+
+            if (orientationOffset >= 0) {
+                val value = ByteBuffer.allocate(2).order(tiff.order()).putShort(patch.orientation!!.toShort())
+                file.seek(tiffStart + orientationOffset)
+                file.write(value.array())
+            }
+
+            if (dateTimeOffset >= 0) {
+                file.seek(tiffStart + dateTimeOffset)
+                file.write(patch.dateTimeOriginal!!.toByteArray(Charsets.US_ASCII))
+                file.write(0)
+            }
+        }
+
+        if (lastModified != 0L) {
+            target.setLastModified(lastModified)
+        }
+        return true
+    }
+
+    /**
+     * The TIFF data inside the Exif APP1 segment, [length] comes from the segment header.
+     */
+    private class TiffSegment(val start: Long, val length: Int)
+
+    /**
+     * Returns the TIFF data of the Exif APP1 segment, or null if there is none.
+     */
+    private fun findTiffSegment(file: RandomAccessFile): TiffSegment? {
+        if (file.read() != MARKER_PREFIX || file.read() != MARKER_SOI) {
+            return null
+        }
+
+        while (true) {
+            if (file.read() != MARKER_PREFIX) {
+                return null
+            }
+
+            var marker = file.read()
+            while (marker == MARKER_PREFIX) {
+                marker = file.read()
+            }
+
+            if (marker < 0 || marker == MARKER_SOS || marker == MARKER_EOI) {
+                return null
+            }
+
+            val segmentLength = (file.read() shl 8) or file.read()
+            if (segmentLength < 2) {
+                return null
+            }
+
+            val segmentStart = file.filePointer
+            if (segmentStart + segmentLength - 2 > file.length()) {
+                return null
+            }
+
+            if (marker == MARKER_APP1 && segmentLength >= 2 + EXIF_HEADER.size + 8) {
+                val header = ByteArray(EXIF_HEADER.size)
+                file.readFully(header)
+                if (header.contentEquals(EXIF_HEADER)) {
+                    return TiffSegment(file.filePointer, segmentLength - 2 - EXIF_HEADER.size)
+                }
+            }
+            file.seek(segmentStart + segmentLength - 2)
+        }
+    }
+
+    /**
+     * Returns the position of the IFD entry of [tag] in [tiff], or -1 if the IFD doesn't contain it.
+     */
+    private fun findEntry(tiff: ByteBuffer, ifdOffset: Int, tag: Int): Int {
+        if (ifdOffset < 8 || ifdOffset > tiff.limit() - 2) {
+            return -1
+        }
+
+        val count = tiff.getShort(ifdOffset).toInt() and 0xFFFF
+        for (i in 0 until count) {
+            val entry = ifdOffset + 2 + i * IFD_ENTRY_SIZE
+            if (entry + IFD_ENTRY_SIZE > tiff.limit()) {
+                return -1
+            }
+
+            if ((tiff.getShort(entry).toInt() and 0xFFFF) == tag) {
+                return entry
+            }
+        }
+        return -1
+    }
+}
@@ -23,7 +23,18 @@ class ExifReader {
      * {@link }.
      */
     protected ExifData read(InputStream inputStream, int options) throws ExifInvalidFormatException, IOException {
-        ExifParser parser = ExifParser.parse(inputStream, options, mInterface);
+        return read(ExifParser.parse(inputStream, options, mInterface));
+    }
+
+    /**
+     * Parses the inputStream looking for the given tags only and returns them in an
+     * {@link ExifData}. The result has no thumbnail and no JPEG sections after the EXIF one.
+     */
+    protected ExifData read(InputStream inputStream, int[] tagIds) throws ExifInvalidFormatException, IOException {
+        return read(ExifParser.parse(inputStream, tagIds, mInterface));
+    }
+
+    private ExifData read(ExifParser parser) throws ExifInvalidFormatException, IOException {
         ExifData exifData = new ExifData(parser.getByteOrder());
         exifData.setSections(parser.getSections());
         exifData.mUncompressedDataPosition = parser.getUncompressedDataPosition();
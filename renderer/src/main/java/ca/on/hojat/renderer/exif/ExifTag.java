@@ -86,6 +86,8 @@ public class ExifTag {
     private Object mValue;
     // Value offset in exif header.
     private int mOffset;
+    // Decodes the value on first access, see ExifBufferParser
+    private ValueLoader mValueLoader;
 
     // Use builtTag in ExifInterface instead of constructor.
     ExifTag(
@@ -98,6 +100,22 @@ public class ExifTag {
         mValue = null;
     }
 
+    /**
+     * Sets a loader which decodes the value of this tag the first time it is needed.
+     * Setting a value explicitly drops the loader.
+     */
+    void setValueLoader(ValueLoader loader) {
+        mValueLoader = loader;
+    }
+
+    private void loadValue() {
+        if (mValueLoader != null) {
+            ValueLoader loader = mValueLoader;
+            mValueLoader = null;
+            loader.load(this);
+        }
+    }
+
     /**
      * Returns true if the given IFD is a valid IFD.
      */
@@ -191,6 +209,14 @@ public class ExifTag {
 
     // TODO: fix integer overflows with this
     public int getComponentCount() {
+        loadValue();
+        return mComponentCountActual;
+    }
+
+    /**
+     * Gets the component count this tag was created with, without decoding a lazily loaded value.
+     */
+    int getRawComponentCount() {
         return mComponentCountActual;
     }
 
@@ -223,6 +249,7 @@ public class ExifTag {
      * contain an offset value that is determined when the tag is written.
      */
     public boolean hasValue() {
+        loadValue();
         return mValue != null;
     }
 
@@ -255,6 +282,7 @@ public class ExifTag {
         for (int i = 0; i < value.length; i++) {
             data[i] = value[i];
         }
+        mValueLoader = null;
         mValue = data;
         mComponentCountActual = value.length;
         return true;
@@ -292,6 +320,7 @@ public class ExifTag {
         if (checkOverflowForUnsignedLong(value)) {
             return false;
         }
+        mValueLoader = null;
         mValue = value;
         mComponentCountActual = value.length;
         return true;
@@ -337,6 +366,7 @@ public class ExifTag {
             return false;
         }
 
+        mValueLoader = null;
         mValue = value;
         mComponentCountActual = value.length;
         return true;
@@ -377,6 +407,7 @@ public class ExifTag {
         if (mDataType != TYPE_UNSIGNED_BYTE && mDataType != TYPE_UNDEFINED) {
             return false;
         }
+        mValueLoader = null;
         mValue = new byte[length];
         System.arraycopy(value, offset, mValue, 0, length);
         mComponentCountActual = length;
@@ -520,6 +551,7 @@ public class ExifTag {
         if (checkBadComponentCount(count)) {
             return false;
         }
+        mValueLoader = null;
         mComponentCountActual = count;
         mValue = finalBuf;
         return true;
@@ -553,6 +585,7 @@ public class ExifTag {
      * or cannot be converted to a String.
      */
     public String getValueAsString() {
+        loadValue();
         if (mValue == null) {
             return null;
         } else if (mValue instanceof String) {
@@ -588,6 +621,7 @@ public class ExifTag {
      * exist or cannot be converted to a byte array.
      */
     public byte[] getValueAsBytes() {
+        loadValue();
         if (mValue instanceof byte[]) {
             return (byte[]) mValue;
         }
@@ -634,6 +668,7 @@ public class ExifTag {
      * does not exist or cannot be converted to an array of Rationals.
      */
     public Rational[] getValueAsRationals() {
+        loadValue();
         if (mValue instanceof Rational[]) {
             return (Rational[]) mValue;
         }
@@ -665,6 +700,7 @@ public class ExifTag {
      * not exist or cannot be converted to an array of ints.
      */
     public int[] getValueAsInts() {
+        loadValue();
         if (mValue == null) {
             return null;
         } else if (mValue instanceof long[]) {
@@ -703,6 +739,7 @@ public class ExifTag {
      * does not exist or cannot be converted to an array of longs.
      */
     public long[] getValueAsLongs() {
+        loadValue();
         if (mValue instanceof long[]) {
             return (long[]) mValue;
         }
@@ -713,6 +750,7 @@ public class ExifTag {
      * Gets the tag's value or null if none exists.
      */
     public Object getValue() {
+        loadValue();
         return mValue;
     }
 
@@ -751,6 +789,7 @@ public class ExifTag {
      *                                  {@link #TYPE_RATIONAL} or {@link #TYPE_UNSIGNED_RATIONAL}.
      */
     protected long getValueAt(int index) {
+        loadValue();
         if (mValue instanceof long[]) {
             return ((long[]) mValue)[index];
         } else if (mValue instanceof byte[]) {
@@ -766,6 +805,7 @@ public class ExifTag {
      *                                  {@link #TYPE_ASCII}.
      */
     protected String getString() {
+        loadValue();
         if (mDataType != TYPE_ASCII) {
             throw new IllegalArgumentException("Cannot get ASCII value from " + convertTypeToString(mDataType));
         }
@@ -776,6 +816,7 @@ public class ExifTag {
      * Get the converted ascii byte. Used by ExifOutputStream.
      */
     protected byte[] getStringByte() {
+        loadValue();
         return (byte[]) mValue;
     }
 
@@ -786,6 +827,7 @@ public class ExifTag {
      *                                  {@link #TYPE_RATIONAL} or {@link #TYPE_UNSIGNED_RATIONAL}.
      */
     protected Rational getRational(int index) {
+        loadValue();
         if ((mDataType != TYPE_RATIONAL) && (mDataType != TYPE_UNSIGNED_RATIONAL)) {
             throw new IllegalArgumentException("Cannot get RATIONAL value from " + convertTypeToString(mDataType));
         }
@@ -810,6 +852,7 @@ public class ExifTag {
      *                                  {@link #TYPE_UNDEFINED} or {@link #TYPE_UNSIGNED_BYTE}.
      */
     protected void getBytes(byte[] buf, int offset, int length) {
+        loadValue();
         if ((mDataType != TYPE_UNDEFINED) && (mDataType != TYPE_UNSIGNED_BYTE)) {
             throw new IllegalArgumentException("Cannot get BYTE value from " + convertTypeToString(mDataType));
         }
@@ -891,6 +934,8 @@ public class ExifTag {
         }
         if (obj instanceof ExifTag) {
             ExifTag tag = (ExifTag) obj;
+            loadValue();
+            tag.loadValue();
             if (tag.mTagId != this.mTagId || tag.mComponentCountActual != this.mComponentCountActual || tag.mDataType != this.mDataType) {
                 return false;
             }
@@ -922,9 +967,17 @@ public class ExifTag {
         return false;
     }
 
+    /**
+     * Decodes the value of a tag lazily.
+     */
+    interface ValueLoader {
+        void load(ExifTag tag);
+    }
+
     @NonNull
     @Override
     public String toString() {
+        loadValue();
         return String.format("tag id: %04X\n", mTagId) + "ifd id: " + mIfd + "\ntype: " + convertTypeToString(mDataType) + "\ncount: " + mComponentCountActual + "\noffset: " +
                 mOffset + "\nvalue: " + forceGetValueAsString() + "\n";
     }
@@ -933,6 +986,7 @@ public class ExifTag {
      * Gets a string representation of the value.
      */
     public String forceGetValueAsString() {
+        loadValue();
         if (mValue == null) {
             return "";
         } else if (mValue instanceof byte[]) {
@@ -1,7 +1,7 @@
 package ca.on.hojat.renderer.exif;
 
 import java.util.Map;
-import java.util.HashMap;
+import java.util.TreeMap;
 
 /**
  * This class stores all the tags in an IFD.
@@ -13,7 +13,9 @@ class IfdData {
 
     private static final int[] sIfds = {IfdId.TYPE_IFD_0, IfdId.TYPE_IFD_1, IfdId.TYPE_IFD_EXIF, IfdId.TYPE_IFD_INTEROPERABILITY, IfdId.TYPE_IFD_GPS};
     private final int mIfdId;
-    private final Map<Short, ExifTag> mExifTags = new HashMap<Short, ExifTag>();
+    // the entries of an IFD are written in ascending order of their unsigned tag id, as TIFF requires,
+    // whatever order the parser found them in
+    private final Map<Short, ExifTag> mExifTags = new TreeMap<Short, ExifTag>((a, b) -> Integer.compare(a & 0xffff, b & 0xffff));
     private int mOffsetToNextIfd = 0;
 
     /**
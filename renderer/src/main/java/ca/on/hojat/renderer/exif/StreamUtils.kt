@@ -38,7 +38,7 @@ object StreamUtils {
     private fun copyLarge(input: InputStream, output: OutputStream): Long {
         var count = 0L
         var n = 0
-        val buffer = byteArrayOf(DEFAULT_BUFFER_SIZE.toByte())
+        val buffer = ByteArray(DEFAULT_BUFFER_SIZE)
 
         while (EOF != input.read(buffer).also { lengthOfInput ->
                 n = lengthOfInput
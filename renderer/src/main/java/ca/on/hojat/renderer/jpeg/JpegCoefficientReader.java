@@ -0,0 +1,710 @@
+package ca.on.hojat.renderer.jpeg;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the quantized DCT coefficients of a baseline, extended sequential or progressive Huffman
+ * coded JPEG, without dequantizing or transforming them back to pixels.<br>
+ * The APPn and COM segments are kept as they are, so they can be written into a transformed image.
+ */
+final class JpegCoefficientReader {
+
+    // region: Fields and Consts
+
+    /**
+     * The position in an 8x8 block of the n-th coefficient in zigzag order.
+     */
+    static final int[] ZIGZAG = {
+            0, 1, 8, 16, 9, 2, 3, 10, 17, 24, 32, 25, 18, 11, 4, 5,
+            12, 19, 26, 33, 40, 48, 41, 34, 27, 20, 13, 6, 7, 14, 21, 28,
+            35, 42, 49, 56, 57, 50, 43, 36, 29, 22, 15, 23, 30, 37, 44, 51,
+            58, 59, 52, 45, 38, 31, 39, 46, 53, 60, 61, 54, 47, 55, 62, 63,
+            // a corrupt Se can point past the end, these just land on the last coefficient
+            63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63, 63
+    };
+
+    private static final int MARKER_SOF0 = 0xC0;
+
+    private static final int MARKER_SOF1 = 0xC1;
+
+    private static final int MARKER_SOF2 = 0xC2;
+
+    private static final int MARKER_DHT = 0xC4;
+
+    private static final int MARKER_SOI = 0xD8;
+
+    private static final int MARKER_EOI = 0xD9;
+
+    private static final int MARKER_SOS = 0xDA;
+
+    private static final int MARKER_DQT = 0xDB;
+
+    private static final int MARKER_DRI = 0xDD;
+
+    private static final int MARKER_APP0 = 0xE0;
+
+    private static final int MARKER_APP15 = 0xEF;
+
+    private static final int MARKER_COM = 0xFE;
+
+    private final byte[] mData;
+
+    private int mPosition;
+
+    private final HuffmanDecoder[] mDcTables = new HuffmanDecoder[4];
+
+    private final HuffmanDecoder[] mAcTables = new HuffmanDecoder[4];
+
+    private int mRestartInterval;
+
+    private int mBitBuffer;
+
+    private int mBitCount;
+
+    private int mEobRun;
+
+    private final JpegImage mImage = new JpegImage();
+
+    private final FrameCheck mFrameCheck;
+    // endregion
+
+    /**
+     * Decides from the frame header whether the image is worth decoding.
+     */
+    interface FrameCheck {
+
+        /**
+         * Called with the frame header and the segments before it, the coefficients aren't read
+         * yet.
+         *
+         * @throws IOException to stop reading the image
+         */
+        void check(JpegImage frame) throws IOException;
+    }
+
+    private JpegCoefficientReader(byte[] data, FrameCheck frameCheck) {
+        mData = data;
+        mFrameCheck = frameCheck;
+    }
+
+    /**
+     * Read the whole JPEG of the stream.
+     *
+     * @param maxCoefficients the image is rejected if it has more coefficients than this, they take
+     *                        two bytes each
+     * @param frameCheck      rejects the image as soon as the frame header is read, before any
+     *                        memory is allocated for the coefficients or any scan is decoded
+     */
+    static JpegImage read(InputStream input, long maxCoefficients, FrameCheck frameCheck) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            bytes.write(buffer, 0, count);
+        }
+
+        JpegCoefficientReader reader = new JpegCoefficientReader(bytes.toByteArray(), frameCheck);
+        reader.readImage(maxCoefficients);
+        return reader.mImage;
+    }
+
+    // region: Private methods
+
+    private void readImage(long maxCoefficients) throws IOException {
+        if (readByte() != 0xFF || readByte() != MARKER_SOI) {
+            throw new IOException("Not a JPEG");
+        }
+
+        while (true) {
+            int marker = readMarker();
+            if (marker == MARKER_EOI) {
+                break;
+            }
+
+            int length = readShort() - 2;
+            int end = mPosition + length;
+            if (length < 0 || end > mData.length) {
+                throw new IOException("Truncated segment " + Integer.toHexString(marker));
+            }
+
+            if (marker == MARKER_SOF0 || marker == MARKER_SOF1 || marker == MARKER_SOF2) {
+                readFrame(marker == MARKER_SOF2, maxCoefficients);
+            } else if ((marker & 0xF0) == 0xC0 && marker != MARKER_DHT && marker != 0xC8 && marker != 0xCC) {
+                throw new IOException("Unsupported coding process " + Integer.toHexString(marker));
+            } else if (marker == MARKER_DHT) {
+                readHuffmanTables(end);
+            } else if (marker == MARKER_DQT) {
+                readQuantizationTables(end);
+            } else if (marker == MARKER_DRI) {
+                mRestartInterval = readShort();
+            } else if ((marker >= MARKER_APP0 && marker <= MARKER_APP15) || marker == MARKER_COM) {
+                byte[] segment = new byte[length];
+                System.arraycopy(mData, mPosition, segment, 0, length);
+                mImage.markers.add(new JpegImage.Marker(marker, segment));
+            } else if (marker == MARKER_SOS) {
+                if (mImage.components == null) {
+                    throw new IOException("Scan before the frame header");
+                }
+                mPosition = end;
+                readScan(length);
+                continue;
+            }
+            mPosition = end;
+        }
+
+        if (mImage.components == null) {
+            throw new IOException("No frame in the JPEG");
+        }
+    }
+
+    /**
+     * Find the next marker, skipping fill bytes and anything that isn't a marker.
+     */
+    private int readMarker() throws IOException {
+        while (true) {
+            if (readByte() != 0xFF) {
+                continue;
+            }
+            int marker;
+            do {
+                marker = readByte();
+            } while (marker == 0xFF);
+            if (marker != 0) {
+                return marker;
+            }
+        }
+    }
+
+    private void readFrame(boolean progressive, long maxCoefficients) throws IOException {
+        if (mImage.components != null) {
+            throw new IOException("More than one frame in the JPEG");
+        }
+
+        int precision = readByte();
+        if (precision != 8) {
+            throw new IOException("Unsupported sample precision " + precision);
+        }
+        mImage.progressive = progressive;
+        mImage.height = readShort();
+        mImage.width = readShort();
+        int count = readByte();
+        if (mImage.width == 0 || mImage.height == 0 || count == 0 || count > 4) {
+            throw new IOException("Invalid frame " + mImage.width + "x" + mImage.height + ", " + count);
+        }
+
+        JpegImage.Component[] components = new JpegImage.Component[count];
+        for (int i = 0; i < count; i++) {
+            JpegImage.Component component = new JpegImage.Component();
+            component.id = readByte();
+            int sampling = readByte();
+            component.horizontalSampling = sampling >> 4;
+            component.verticalSampling = sampling & 0x0F;
+            component.quantizationTable = readByte();
+            if (component.horizontalSampling < 1 || component.horizontalSampling > 4
+                    || component.verticalSampling < 1 || component.verticalSampling > 4
+                    || component.quantizationTable > 3) {
+                throw new IOException("Invalid component " + component.id);
+            }
+            components[i] = component;
+            mImage.maxHorizontalSampling = Math.max(mImage.maxHorizontalSampling, component.horizontalSampling);
+            mImage.maxVerticalSampling = Math.max(mImage.maxVerticalSampling, component.verticalSampling);
+        }
+
+        int mcuColumns = ceilDiv(mImage.width, 8 * mImage.maxHorizontalSampling);
+        int mcuRows = ceilDiv(mImage.height, 8 * mImage.maxVerticalSampling);
+        mImage.mcuColumns = mcuColumns;
+        mImage.mcuRows = mcuRows;
+        mImage.components = components;
+        mFrameCheck.check(mImage);
+
+        long total = 0;
+        for (JpegImage.Component component : components) {
+            component.blocksPerLine = mcuColumns * component.horizontalSampling;
+            component.blocksPerColumn = mcuRows * component.verticalSampling;
+            total += 64L * component.blocksPerLine * component.blocksPerColumn;
+        }
+        if (total > maxCoefficients) {
+            throw new IOException("The JPEG is too large to transform: " + mImage.width + "x" + mImage.height);
+        }
+
+        for (JpegImage.Component component : components) {
+            component.coefficients = new short[64 * component.blocksPerLine * component.blocksPerColumn];
+        }
+    }
+
+    private void readHuffmanTables(int end) throws IOException {
+        while (mPosition < end) {
+            int classAndId = readByte();
+            int[] counts = new int[16];
+            int total = 0;
+            for (int i = 0; i < 16; i++) {
+                counts[i] = readByte();
+                total += counts[i];
+            }
+            if (total > 256 || mPosition + total > end) {
+                throw new IOException("Invalid Huffman table");
+            }
+            int[] symbols = new int[total];
+            for (int i = 0; i < total; i++) {
+                symbols[i] = readByte();
+            }
+
+            HuffmanDecoder table = new HuffmanDecoder(counts, symbols);
+            int id = classAndId & 0x03;
+            if ((classAndId >> 4) == 0) {
+                mDcTables[id] = table;
+            } else {
+                mAcTables[id] = table;
+            }
+        }
+    }
+
+    private void readQuantizationTables(int end) throws IOException {
+        while (mPosition < end) {
+            int precisionAndId = readByte();
+            int[] table = new int[64];
+            boolean sixteenBits = (precisionAndId >> 4) != 0;
+            for (int i = 0; i < 64; i++) {
+                table[ZIGZAG[i]] = sixteenBits ? readShort() : readByte();
+            }
+            mImage.quantizationTables[precisionAndId & 0x03] = table;
+        }
+    }
+
+    private void readScan(int length) throws IOException {
+        int start = mPosition - length;
+        int count = mData[start] & 0xFF;
+        if (count < 1 || count > 4 || length != 4 + 2 * count) {
+            throw new IOException("Invalid scan header");
+        }
+
+        ScanComponent[] components = new ScanComponent[count];
+        for (int i = 0; i < count; i++) {
+            int id = mData[start + 1 + 2 * i] & 0xFF;
+            int tables = mData[start + 2 + 2 * i] & 0xFF;
+            ScanComponent component = new ScanComponent();
+            component.component = findComponent(id);
+            component.dcTable = mDcTables[(tables >> 4) & 0x03];
+            component.acTable = mAcTables[tables & 0x03];
+            components[i] = component;
+        }
+        int spectralStart = mData[start + 1 + 2 * count] & 0xFF;
+        int spectralEnd = mData[start + 2 + 2 * count] & 0xFF;
+        int approximation = mData[start + 3 + 2 * count] & 0xFF;
+        int approximationHigh = approximation >> 4;
+        int approximationLow = approximation & 0x0F;
+
+        if (!mImage.progressive) {
+            spectralStart = 0;
+            spectralEnd = 63;
+            approximationHigh = 0;
+            approximationLow = 0;
+        } else if (spectralStart > spectralEnd || spectralEnd > 63
+                || (spectralStart == 0 && spectralEnd != 0) || (spectralStart > 0 && count != 1)) {
+            throw new IOException("Invalid progressive scan");
+        }
+
+        for (ScanComponent component : components) {
+            boolean needsDc = spectralStart == 0 && approximationHigh == 0;
+            boolean needsAc = spectralEnd > 0;
+            if ((needsDc && component.dcTable == null) || (needsAc && component.acTable == null)) {
+                throw new IOException("Missing Huffman table for component " + component.component.id);
+            }
+        }
+
+        decodeScan(components, spectralStart, spectralEnd, approximationHigh, approximationLow);
+    }
+
+    private JpegImage.Component findComponent(int id) throws IOException {
+        for (JpegImage.Component component : mImage.components) {
+            if (component.id == id) {
+                return component;
+            }
+        }
+        throw new IOException("Unknown component " + id);
+    }
+
+    private void decodeScan(
+            ScanComponent[] components,
+            int spectralStart,
+            int spectralEnd,
+            int approximationHigh,
+            int approximationLow)
+            throws IOException {
+        mBitBuffer = 0;
+        mBitCount = 0;
+        mEobRun = 0;
+
+        // a scan of a single component goes through its blocks one by one, only as many as the
+        // component needs without the padding of the MCUs
+        boolean single = components.length == 1;
+        JpegImage.Component first = components[0].component;
+        int columns = single
+                ? ceilDiv(ceilDiv(mImage.width * first.horizontalSampling, mImage.maxHorizontalSampling), 8)
+                : mImage.mcuColumns;
+        int rows = single
+                ? ceilDiv(ceilDiv(mImage.height * first.verticalSampling, mImage.maxVerticalSampling), 8)
+                : mImage.mcuRows;
+        int mcuCount = columns * rows;
+
+        for (int mcu = 0; mcu < mcuCount; mcu++) {
+            if (mRestartInterval > 0 && mcu > 0 && mcu % mRestartInterval == 0) {
+                restart(components);
+            }
+
+            int mcuColumn = mcu % columns;
+            int mcuRow = mcu / columns;
+            for (ScanComponent component : components) {
+                int horizontal = single ? 1 : component.component.horizontalSampling;
+                int vertical = single ? 1 : component.component.verticalSampling;
+                for (int v = 0; v < vertical; v++) {
+                    for (int h = 0; h < horizontal; h++) {
+                        int blockColumn = mcuColumn * horizontal + h;
+                        int blockRow = mcuRow * vertical + v;
+                        int offset = 64 * (blockRow * component.component.blocksPerLine + blockColumn);
+                        short[] coefficients = component.component.coefficients;
+                        if (!mImage.progressive) {
+                            decodeBlockSequential(component, coefficients, offset);
+                        } else if (spectralStart == 0) {
+                            if (approximationHigh == 0) {
+                                decodeDcFirst(component, coefficients, offset, approximationLow);
+                            } else if (readBit() != 0) {
+                                coefficients[offset] |= (short) (1 << approximationLow);
+                            }
+                        } else if (approximationHigh == 0) {
+                            decodeAcFirst(component, coefficients, offset, spectralStart, spectralEnd, approximationLow);
+                        } else {
+                            decodeAcRefine(component, coefficients, offset, spectralStart, spectralEnd, approximationLow);
+                        }
+                    }
+                }
+            }
+        }
+
+        // the next marker comes right after the entropy coded data
+        mBitBuffer = 0;
+        mBitCount = 0;
+    }
+
+    private void restart(ScanComponent[] components) {
+        mBitBuffer = 0;
+        mBitCount = 0;
+        mEobRun = 0;
+        for (ScanComponent component : components) {
+            component.dcPrediction = 0;
+        }
+
+        // skip the RSTn marker, a missing one is tolerated like libjpeg does
+        int position = mPosition;
+        while (position + 1 < mData.length && (mData[position] & 0xFF) == 0xFF) {
+            int next = mData[position + 1] & 0xFF;
+            if (next >= 0xD0 && next <= 0xD7) {
+                mPosition = position + 2;
+                return;
+            } else if (next == 0xFF) {
+                position++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void decodeBlockSequential(ScanComponent component, short[] coefficients, int offset)
+            throws IOException {
+        int category = component.dcTable.decode(this);
+        int diff = category == 0 ? 0 : receiveExtend(category);
+        component.dcPrediction += diff;
+        coefficients[offset] = (short) component.dcPrediction;
+
+        HuffmanDecoder acTable = component.acTable;
+        for (int k = 1; k < 64; ) {
+            int symbol = acTable.decode(this);
+            int run = symbol >> 4;
+            int size = symbol & 0x0F;
+            if (size == 0) {
+                if (run != 15) {
+                    break;
+                }
+                k += 16;
+                continue;
+            }
+            k += run;
+            if (k > 63) {
+                throw new IOException("Invalid AC coefficient run");
+            }
+            coefficients[offset + ZIGZAG[k]] = (short) receiveExtend(size);
+            k++;
+        }
+    }
+
+    private void decodeDcFirst(ScanComponent component, short[] coefficients, int offset, int shift)
+            throws IOException {
+        int category = component.dcTable.decode(this);
+        int diff = category == 0 ? 0 : receiveExtend(category);
+        component.dcPrediction += diff;
+        coefficients[offset] = (short) (component.dcPrediction << shift);
+    }
+
+    private void decodeAcFirst(
+            ScanComponent component,
+            short[] coefficients,
+            int offset,
+            int spectralStart,
+            int spectralEnd,
+            int shift)
+            throws IOException {
+        if (mEobRun > 0) {
+            mEobRun--;
+            return;
+        }
+
+        HuffmanDecoder acTable = component.acTable;
+        for (int k = spectralStart; k <= spectralEnd; ) {
+            int symbol = acTable.decode(this);
+            int run = symbol >> 4;
+            int size = symbol & 0x0F;
+            if (size == 0) {
+                if (run < 15) {
+                    mEobRun = (1 << run) - 1;
+                    if (run > 0) {
+                        mEobRun += readBits(run);
+                    }
+                    break;
+                }
+                k += 16;
+                continue;
+            }
+            k += run;
+            coefficients[offset + ZIGZAG[k]] = (short) (receiveExtend(size) * (1 << shift));
+            k++;
+        }
+    }
+
+    /**
+     * The successive approximation refinement of AC coefficients, as in section G.1.2.3 of the
+     * standard and decode_mcu_AC_refine of libjpeg.
+     */
+    private void decodeAcRefine(
+            ScanComponent component,
+            short[] coefficients,
+            int offset,
+            int spectralStart,
+            int spectralEnd,
+            int shift)
+            throws IOException {
+        int positive = 1 << shift;
+        int negative = -1 << shift;
+        int k = spectralStart;
+
+        if (mEobRun <= 0) {
+            HuffmanDecoder acTable = component.acTable;
+            for (; k <= spectralEnd; k++) {
+                int symbol = acTable.decode(this);
+                int run = symbol >> 4;
+                int size = symbol & 0x0F;
+                int value = 0;
+                if (size != 0) {
+                    if (size != 1) {
+                        throw new IOException("Invalid refinement coefficient");
+                    }
+                    value = readBit() != 0 ? positive : negative;
+                } else if (run != 15) {
+                    mEobRun = 1 << run;
+                    if (run > 0) {
+                        mEobRun += readBits(run);
+                    }
+                    break;
+                }
+
+                // skip the zero coefficients of the run, refining the nonzero ones on the way
+                do {
+                    int position = offset + ZIGZAG[k];
+                    if (coefficients[position] != 0) {
+                        refine(coefficients, position, positive, negative);
+                    } else {
+                        if (--run < 0) {
+                            break;
+                        }
+                    }
+                    k++;
+                } while (k <= spectralEnd);
+
+                if (value != 0 && k <= spectralEnd) {
+                    coefficients[offset + ZIGZAG[k]] = (short) value;
+                }
+            }
+        }
+
+        if (mEobRun > 0) {
+            // the rest of the band only gets correction bits for the coefficients already nonzero
+            for (; k <= spectralEnd; k++) {
+                int position = offset + ZIGZAG[k];
+                if (coefficients[position] != 0) {
+                    refine(coefficients, position, positive, negative);
+                }
+            }
+            mEobRun--;
+        }
+    }
+
+    private void refine(short[] coefficients, int position, int positive, int negative) throws IOException {
+        if (readBit() != 0 && (coefficients[position] & positive) == 0) {
+            coefficients[position] += (short) (coefficients[position] >= 0 ? positive : negative);
+        }
+    }
+
+    private int receiveExtend(int size) throws IOException {
+        int value = readBits(size);
+        return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+    }
+
+    int readBit() throws IOException {
+        if (mBitCount == 0) {
+            fillBitBuffer();
+        }
+        mBitCount--;
+        return (mBitBuffer >> mBitCount) & 1;
+    }
+
+    private int readBits(int count) throws IOException {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            value = (value << 1) | readBit();
+        }
+        return value;
+    }
+
+    /**
+     * Peek at the next 16 bits of the entropy coded data, without consuming them.
+     */
+    int peekBits16() throws IOException {
+        while (mBitCount < 16) {
+            fillBitBuffer();
+        }
+        return (mBitBuffer >> (mBitCount - 16)) & 0xFFFF;
+    }
+
+    void skipBits(int count) {
+        mBitCount -= count;
+    }
+
+    /**
+     * Append the next byte of entropy coded data to the bit buffer. At a marker no data is
+     * consumed and zeros are returned, like libjpeg does for a truncated scan.
+     */
+    private void fillBitBuffer() {
+        int b = 0;
+        if (mPosition < mData.length) {
+            b = mData[mPosition] & 0xFF;
+            if (b == 0xFF) {
+                int next = mPosition + 1 < mData.length ? mData[mPosition + 1] & 0xFF : 0xD9;
+                if (next == 0) {
+                    mPosition += 2;
+                } else {
+                    b = 0;
+                }
+            } else {
+                mPosition++;
+            }
+        }
+        mBitBuffer = (mBitBuffer << 8) | b;
+        mBitCount += 8;
+    }
+
+    private int readByte() throws IOException {
+        if (mPosition >= mData.length) {
+            throw new IOException("Unexpected end of the JPEG");
+        }
+        return mData[mPosition++] & 0xFF;
+    }
+
+    private int readShort() throws IOException {
+        return (readByte() << 8) | readByte();
+    }
+
+    static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+    // endregion
+
+    // region: Inner class: ScanComponent
+
+    /**
+     * A component of the current scan with its tables and the prediction of its DC coefficient.
+     */
+    private static final class ScanComponent {
+
+        JpegImage.Component component;
+
+        HuffmanDecoder dcTable;
+
+        HuffmanDecoder acTable;
+
+        int dcPrediction;
+    }
+    // endregion
+
+    // region: Inner class: HuffmanDecoder
+
+    /**
+     * Decodes the symbols of a Huffman table, the codes of up to 8 bits through a lookup table and
+     * the longer ones with the maximum code of every length, as in section F.2.2.3 of the standard.
+     */
+    private static final class HuffmanDecoder {
+
+        private static final int LOOKUP_BITS = 8;
+
+        /**
+         * The length of the code in the high byte and the symbol in the low byte, indexed by the
+         * next 8 bits, or 0 if the code is longer.
+         */
+        private final int[] mLookup = new int[1 << LOOKUP_BITS];
+
+        private final int[] mMaxCode = new int[18];
+
+        private final int[] mValueOffset = new int[17];
+
+        private final int[] mSymbols;
+
+        HuffmanDecoder(int[] counts, int[] symbols) {
+            mSymbols = symbols;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                mValueOffset[length] = k - code;
+                for (int i = 0; i < counts[length - 1]; i++, k++, code++) {
+                    if (length <= LOOKUP_BITS) {
+                        int shift = LOOKUP_BITS - length;
+                        for (int fill = 0; fill < 1 << shift; fill++) {
+                            mLookup[(code << shift) | fill] = (length << 8) | symbols[k];
+                        }
+                    }
+                }
+                mMaxCode[length] = counts[length - 1] > 0 ? code - 1 : -1;
+                code <<= 1;
+            }
+            mMaxCode[17] = Integer.MAX_VALUE;
+        }
+
+        int decode(JpegCoefficientReader reader) throws IOException {
+            int bits = reader.peekBits16();
+            int entry = mLookup[bits >> (16 - LOOKUP_BITS)];
+            if (entry != 0) {
+                reader.skipBits(entry >> 8);
+                return entry & 0xFF;
+            }
+
+            for (int length = LOOKUP_BITS + 1; length <= 16; length++) {
+                int code = bits >> (16 - length);
+                if (code <= mMaxCode[length]) {
+                    reader.skipBits(length);
+                    return mSymbols[code + mValueOffset[length]];
+                }
+            }
+            throw new IOException("Invalid Huffman code");
+        }
+    }
+    // endregion
+}
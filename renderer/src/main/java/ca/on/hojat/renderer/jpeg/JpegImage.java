@@ -0,0 +1,77 @@
+package ca.on.hojat.renderer.jpeg;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The quantized DCT coefficients of a JPEG with the tables and segments needed to write it again.
+ */
+final class JpegImage {
+
+    int width;
+
+    int height;
+
+    boolean progressive;
+
+    int maxHorizontalSampling;
+
+    int maxVerticalSampling;
+
+    int mcuColumns;
+
+    int mcuRows;
+
+    Component[] components;
+
+    /**
+     * The quantization tables in natural order, indexed by their id.
+     */
+    final int[][] quantizationTables = new int[4][];
+
+    /**
+     * The APPn and COM segments in the order of the file.
+     */
+    final List<Marker> markers = new ArrayList<>();
+
+    // region: Inner class: Component
+
+    static final class Component {
+
+        int id;
+
+        int horizontalSampling;
+
+        int verticalSampling;
+
+        int quantizationTable;
+
+        /**
+         * The blocks of the component padded to whole MCUs, row after row.
+         */
+        int blocksPerLine;
+
+        int blocksPerColumn;
+
+        /**
+         * The 64 coefficients of every block in natural order.
+         */
+        short[] coefficients;
+    }
+    // endregion
+
+    // region: Inner class: Marker
+
+    static final class Marker {
+
+        final int type;
+
+        final byte[] data;
+
+        Marker(int type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+    // endregion
+}
@@ -0,0 +1,600 @@
+package ca.on.hojat.renderer.jpeg;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Rotates and flips JPEGs without decoding their pixels, like {@code jpegtran}.<br>
+ * The quantized DCT coefficients are read, every 8x8 block is moved to its new place with its
+ * coefficients transposed and the signs of the odd frequencies flipped as needed, then everything
+ * is Huffman coded again as a baseline JPEG with the standard tables. No pixel value changes.<br>
+ * Blocks at the right or bottom edge that don't fill a whole MCU can't be moved to the left or the
+ * top, so such partial MCUs are either trimmed off in the directions that get mirrored or the
+ * transform fails.<br>
+ * The APPn and COM segments are copied, the EXIF dimensions are updated and the EXIF orientation
+ * can be applied to the pixels and reset.
+ */
+public final class JpegTransform {
+
+    // region: Fields and Consts
+
+    private static final int MARKER_APP1 = 0xE1;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+
+    private static final int TAG_EXIF_IFD = 0x8769;
+
+    private static final int TAG_PIXEL_X_DIMENSION = 0xA002;
+
+    private static final int TAG_PIXEL_Y_DIMENSION = 0xA003;
+
+    private static final int TYPE_SHORT = 3;
+
+    private static final int TYPE_LONG = 4;
+
+    private final OutputStream mOut;
+
+    private int mBitBuffer;
+
+    private int mBitCount;
+    // endregion
+
+    /**
+     * The eight ways of rotating and flipping an image, as the matrix mapping the coordinates of a
+     * source pixel relative to the center to the ones of the output pixel.
+     */
+    public enum Transform {
+        NONE(1, 0, 0, 1),
+        FLIP_HORIZONTAL(-1, 0, 0, 1),
+        FLIP_VERTICAL(1, 0, 0, -1),
+        TRANSPOSE(0, 1, 1, 0),
+        TRANSVERSE(0, -1, -1, 0),
+        ROTATE_90(0, -1, 1, 0),
+        ROTATE_180(-1, 0, 0, -1),
+        ROTATE_270(0, 1, -1, 0);
+
+        final int a;
+        final int b;
+        final int c;
+        final int d;
+
+        Transform(int a, int b, int c, int d) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.d = d;
+        }
+
+        /**
+         * Get the transform applying this one and then the given one.
+         */
+        public Transform then(Transform next) {
+            int a = next.a * this.a + next.b * this.c;
+            int b = next.a * this.b + next.b * this.d;
+            int c = next.c * this.a + next.d * this.c;
+            int d = next.c * this.b + next.d * this.d;
+            for (Transform transform : values()) {
+                if (transform.a == a && transform.b == b && transform.c == c && transform.d == d) {
+                    return transform;
+                }
+            }
+            throw new IllegalStateException();
+        }
+
+        /**
+         * Whether the width and height of the image get swapped.
+         */
+        public boolean isTransposing() {
+            return a == 0;
+        }
+
+        /**
+         * Get the clockwise rotation by the given multiple of 90 degrees.
+         */
+        public static Transform fromDegrees(int degrees) {
+            switch (((degrees % 360) + 360) % 360) {
+                case 90:
+                    return ROTATE_90;
+                case 180:
+                    return ROTATE_180;
+                case 270:
+                    return ROTATE_270;
+                default:
+                    return NONE;
+            }
+        }
+
+        /**
+         * Get the transform that shows an image with the given EXIF orientation upright.
+         */
+        public static Transform fromExifOrientation(int orientation) {
+            switch (orientation) {
+                case 2:
+                    return FLIP_HORIZONTAL;
+                case 3:
+                    return ROTATE_180;
+                case 4:
+                    return FLIP_VERTICAL;
+                case 5:
+                    return TRANSPOSE;
+                case 6:
+                    return ROTATE_90;
+                case 7:
+                    return TRANSVERSE;
+                case 8:
+                    return ROTATE_270;
+                default:
+                    return NONE;
+            }
+        }
+    }
+
+    private JpegTransform(OutputStream out) {
+        mOut = out;
+    }
+
+    /**
+     * Write the transformed JPEG of the input stream into the output stream. Neither stream is
+     * closed.
+     *
+     * @param applyExifOrientation apply the EXIF orientation of the image before the transform and
+     *                             reset it, so viewers ignoring it show the image right too
+     * @param trim                 drop the partial MCUs that can't be transformed, otherwise such
+     *                             images fail like with {@code jpegtran -perfect}
+     * @throws IOException if the image can't be read, isn't a Huffman coded 8 bit JPEG or can't be
+     *                     transformed without trimming it, nothing usable is written then
+     */
+    public static void transform(
+            InputStream input,
+            OutputStream output,
+            Transform transform,
+            boolean applyExifOrientation,
+            boolean trim) throws IOException {
+        // the coefficients take two bytes each, leave most of the heap to everything else
+        long maxCoefficients = Runtime.getRuntime().maxMemory() / 3 / 2;
+
+        // the EXIF segment comes before the frame header, so whether the transform works is known
+        // before anything gets decoded
+        JpegImage image = JpegCoefficientReader.read(input, maxCoefficients, frame ->
+                checkTransform(frame, getTransform(frame, transform, applyExifOrientation), trim));
+
+        BufferedOutputStream out = new BufferedOutputStream(output, 64 * 1024);
+        new JpegTransform(out).write(image, getTransform(image, transform, applyExifOrientation),
+                applyExifOrientation, trim);
+        out.flush();
+    }
+
+    // region: Private methods
+
+    /**
+     * The requested transform, after the EXIF orientation if it gets applied.
+     */
+    private static Transform getTransform(JpegImage image, Transform transform, boolean applyExifOrientation) {
+        if (applyExifOrientation) {
+            for (JpegImage.Marker marker : image.markers) {
+                int orientation = readExifOrientation(marker);
+                if (orientation > 0) {
+                    return Transform.fromExifOrientation(orientation).then(transform);
+                }
+            }
+        }
+        return transform;
+    }
+
+    /**
+     * Fail unless the partial MCUs of the image can be transformed or trimmed, from the frame header
+     * alone.
+     */
+    private static void checkTransform(JpegImage frame, Transform transform, boolean trim) throws IOException {
+        if (transform.a < 0 || transform.c < 0) {
+            trim(frame.width, 8 * frame.maxHorizontalSampling, trim);
+        }
+        if (transform.b < 0 || transform.d < 0) {
+            trim(frame.height, 8 * frame.maxVerticalSampling, trim);
+        }
+    }
+
+    private void write(JpegImage image, Transform transform, boolean resetOrientation, boolean trim)
+            throws IOException {
+        boolean transposing = transform.isTransposing();
+
+        // the output pixel (x', y') comes from the source pixel given by the transposed matrix,
+        // wherever it has a negative factor the source gets mirrored in that direction
+        boolean mirrorX = transform.a < 0 || transform.c < 0;
+        boolean mirrorY = transform.b < 0 || transform.d < 0;
+        int imcuWidth = 8 * image.maxHorizontalSampling;
+        int imcuHeight = 8 * image.maxVerticalSampling;
+        int sourceWidth = mirrorX ? trim(image.width, imcuWidth, trim) : image.width;
+        int sourceHeight = mirrorY ? trim(image.height, imcuHeight, trim) : image.height;
+
+        int width = transposing ? sourceHeight : sourceWidth;
+        int height = transposing ? sourceWidth : sourceHeight;
+        int maxHorizontal = transposing ? image.maxVerticalSampling : image.maxHorizontalSampling;
+        int maxVertical = transposing ? image.maxHorizontalSampling : image.maxVerticalSampling;
+        int mcuColumns = JpegCoefficientReader.ceilDiv(width, 8 * maxHorizontal);
+        int mcuRows = JpegCoefficientReader.ceilDiv(height, 8 * maxVertical);
+
+        int[] sourceIndices = new int[64];
+        int[] signs = new int[64];
+        initBlockTransform(transform, sourceIndices, signs);
+
+        // SOI and the copied segments
+        writeBytes(0xFF, 0xD8);
+        for (JpegImage.Marker marker : image.markers) {
+            byte[] data = marker.data;
+            if (marker.type == MARKER_APP1 && isExif(data)) {
+                data = data.clone();
+                patchExif(data, resetOrientation, width, height);
+            }
+            writeBytes(0xFF, marker.type, (data.length + 2) >> 8, (data.length + 2) & 0xFF);
+            mOut.write(data);
+        }
+
+        // DQT, the tables are transposed with the blocks
+        boolean extended = false;
+        boolean[] written = new boolean[4];
+        for (JpegImage.Component component : image.components) {
+            int id = component.quantizationTable;
+            int[] table = image.quantizationTables[id];
+            if (table == null) {
+                throw new IOException("Missing quantization table " + id);
+            }
+            if (written[id]) {
+                continue;
+            }
+            written[id] = true;
+
+            boolean sixteenBits = false;
+            for (int value : table) {
+                sixteenBits |= value > 255;
+            }
+            extended |= sixteenBits;
+            writeBytes(0xFF, 0xDB, 0, sixteenBits ? 2 + 129 : 2 + 65, (sixteenBits ? 0x10 : 0) | id);
+            for (int i = 0; i < 64; i++) {
+                int position = JpegCoefficientReader.ZIGZAG[i];
+                int value = table[transposing ? transpose(position) : position];
+                if (sixteenBits) {
+                    mOut.write(value >> 8);
+                }
+                mOut.write(value & 0xFF);
+            }
+        }
+
+        // SOF0, or SOF1 for 16 bit quantization tables
+        int count = image.components.length;
+        writeBytes(0xFF, extended ? 0xC1 : 0xC0, 0, 8 + 3 * count, 8);
+        writeBytes(height >> 8, height & 0xFF, width >> 8, width & 0xFF, count);
+        for (JpegImage.Component component : image.components) {
+            int horizontal = transposing ? component.verticalSampling : component.horizontalSampling;
+            int vertical = transposing ? component.horizontalSampling : component.verticalSampling;
+            writeBytes(component.id, (horizontal << 4) | vertical, component.quantizationTable);
+        }
+
+        // DHT, the luminance tables for the first component and the chrominance ones for the others
+        // of a YCbCr image. Every table has a segment of its own, like libjpeg writes them
+        boolean chrominance = count == 3;
+        writeHuffmanTable(HuffmanTable.DC_LUMINANCE, 0x00);
+        writeHuffmanTable(HuffmanTable.AC_LUMINANCE, 0x10);
+        if (chrominance) {
+            writeHuffmanTable(HuffmanTable.DC_CHROMINANCE, 0x01);
+            writeHuffmanTable(HuffmanTable.AC_CHROMINANCE, 0x11);
+        }
+
+        // SOS with every component
+        writeBytes(0xFF, 0xDA, 0, 6 + 2 * count, count);
+        for (int i = 0; i < count; i++) {
+            writeBytes(image.components[i].id, chrominance && i > 0 ? 0x11 : 0x00);
+        }
+        writeBytes(0, 63, 0);
+
+        HuffmanTable dcLuminance = HuffmanTable.DC_LUMINANCE;
+        HuffmanTable acLuminance = HuffmanTable.AC_LUMINANCE;
+        HuffmanTable dcChrominance = HuffmanTable.DC_CHROMINANCE;
+        HuffmanTable acChrominance = HuffmanTable.AC_CHROMINANCE;
+
+        // the source blocks of every component that make up the trimmed image
+        int[] sourceColumns = new int[count];
+        int[] sourceRows = new int[count];
+        for (int i = 0; i < count; i++) {
+            JpegImage.Component component = image.components[i];
+            sourceColumns[i] = JpegCoefficientReader.ceilDiv(JpegCoefficientReader.ceilDiv(
+                    sourceWidth * component.horizontalSampling, image.maxHorizontalSampling), 8);
+            sourceRows[i] = JpegCoefficientReader.ceilDiv(JpegCoefficientReader.ceilDiv(
+                    sourceHeight * component.verticalSampling, image.maxVerticalSampling), 8);
+        }
+
+        int[] predictions = new int[count];
+        short[] block = new short[64];
+        if (count == 1) {
+            // a single component isn't interleaved, its blocks are written one by one
+            int columns = transposing ? sourceRows[0] : sourceColumns[0];
+            int rows = transposing ? sourceColumns[0] : sourceRows[0];
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    readBlock(image.components[0], transform, sourceColumns[0], sourceRows[0], column, row,
+                            sourceIndices, signs, block);
+                    predictions[0] = encodeBlock(block, dcLuminance, acLuminance, predictions[0]);
+                }
+            }
+        } else {
+            for (int mcuRow = 0; mcuRow < mcuRows; mcuRow++) {
+                for (int mcuColumn = 0; mcuColumn < mcuColumns; mcuColumn++) {
+                    for (int i = 0; i < count; i++) {
+                        JpegImage.Component component = image.components[i];
+                        int horizontal = transposing ? component.verticalSampling : component.horizontalSampling;
+                        int vertical = transposing ? component.horizontalSampling : component.verticalSampling;
+                        HuffmanTable dcTable = chrominance && i > 0 ? dcChrominance : dcLuminance;
+                        HuffmanTable acTable = chrominance && i > 0 ? acChrominance : acLuminance;
+                        for (int v = 0; v < vertical; v++) {
+                            for (int h = 0; h < horizontal; h++) {
+                                readBlock(component, transform, sourceColumns[i], sourceRows[i],
+                                        mcuColumn * horizontal + h, mcuRow * vertical + v,
+                                        sourceIndices, signs, block);
+                                predictions[i] = encodeBlock(block, dcTable, acTable, predictions[i]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // pad the last byte with ones and end the image
+        if (mBitCount > 0) {
+            writeBits(0x7F, 8 - mBitCount);
+        }
+        writeBytes(0xFF, 0xD9);
+    }
+
+    /**
+     * The size reduced to whole iMCUs, unless it's smaller than one.
+     */
+    private static int trim(int size, int imcuSize, boolean allowed) throws IOException {
+        int trimmed = size / imcuSize * imcuSize;
+        if (trimmed != size && !allowed) {
+            throw new IOException("The image has partial MCUs that would have to be trimmed");
+        }
+        if (trimmed == 0) {
+            throw new IOException("The image is too small to be transformed losslessly");
+        }
+        return trimmed;
+    }
+
+    /**
+     * Fill the given arrays with the position in the source block every coefficient of the output
+     * block comes from, and the sign it gets. Transposing the image transposes the coefficients,
+     * mirroring it negates the odd frequencies in that direction.
+     */
+    private static void initBlockTransform(Transform transform, int[] sourceIndices, int[] signs) {
+        // the output flips that follow the transposition, if any
+        int flipX = transform.isTransposing() ? transform.b : transform.a;
+        int flipY = transform.isTransposing() ? transform.c : transform.d;
+        for (int v = 0; v < 8; v++) {
+            for (int u = 0; u < 8; u++) {
+                int index = v * 8 + u;
+                sourceIndices[index] = transform.isTransposing() ? transpose(index) : index;
+                int sign = 1;
+                if (flipX < 0 && (u & 1) != 0) {
+                    sign = -sign;
+                }
+                if (flipY < 0 && (v & 1) != 0) {
+                    sign = -sign;
+                }
+                signs[index] = sign;
+            }
+        }
+    }
+
+    private static int transpose(int index) {
+        return (index % 8) * 8 + index / 8;
+    }
+
+    /**
+     * Read the block of the output at the given position from the source block it comes from.
+     * Blocks outside of the source only pad the last MCUs, like libjpeg they keep the DC value of
+     * the block before them in the MCU, which is still in the given block, and get no frequencies.
+     */
+    private static void readBlock(
+            JpegImage.Component component,
+            Transform transform,
+            int sourceColumns,
+            int sourceRows,
+            int column,
+            int row,
+            int[] sourceIndices,
+            int[] signs,
+            short[] block) {
+        // the transposed matrix maps the output back to the source, done on doubled coordinates
+        // relative to the center of the trimmed blocks so they stay integers
+        int columns = transform.isTransposing() ? sourceRows : sourceColumns;
+        int rows = transform.isTransposing() ? sourceColumns : sourceRows;
+        int x = 2 * column - (columns - 1);
+        int y = 2 * row - (rows - 1);
+        int sourceColumn = ((sourceColumns - 1) + transform.a * x + transform.c * y) / 2;
+        int sourceRow = ((sourceRows - 1) + transform.b * x + transform.d * y) / 2;
+
+        if (column >= columns || row >= rows || sourceColumn < 0 || sourceRow < 0
+                || sourceColumn >= component.blocksPerLine || sourceRow >= component.blocksPerColumn) {
+            Arrays.fill(block, 1, 64, (short) 0);
+            return;
+        }
+
+        short[] coefficients = component.coefficients;
+        int offset = 64 * (sourceRow * component.blocksPerLine + sourceColumn);
+        for (int i = 0; i < 64; i++) {
+            block[i] = (short) (signs[i] * coefficients[offset + sourceIndices[i]]);
+        }
+    }
+
+    /**
+     * Huffman code one block, returns its DC value for the next block.
+     */
+    private int encodeBlock(short[] block, HuffmanTable dcTable, HuffmanTable acTable, int lastDc)
+            throws IOException {
+        int dc = block[0];
+        int diff = dc - lastDc;
+        int category = getCategory(diff);
+        writeBits(dcTable.getCode(category), dcTable.getLength(category));
+        if (category > 0) {
+            writeBits(diff < 0 ? diff - 1 : diff, category);
+        }
+
+        int run = 0;
+        for (int i = 1; i < 64; i++) {
+            int value = block[JpegCoefficientReader.ZIGZAG[i]];
+            if (value == 0) {
+                run++;
+                continue;
+            }
+            while (run > 15) {
+                writeBits(acTable.getCode(0xF0), acTable.getLength(0xF0));
+                run -= 16;
+            }
+            category = getCategory(value);
+            int symbol = (run << 4) | category;
+            writeBits(acTable.getCode(symbol), acTable.getLength(symbol));
+            writeBits(value < 0 ? value - 1 : value, category);
+            run = 0;
+        }
+        if (run > 0) {
+            writeBits(acTable.getCode(0x00), acTable.getLength(0x00));
+        }
+        return dc;
+    }
+
+    private static int getCategory(int value) {
+        return 32 - Integer.numberOfLeadingZeros(Math.abs(value));
+    }
+
+    private void writeBits(int value, int count) throws IOException {
+        mBitBuffer = (mBitBuffer << count) | (value & ((1 << count) - 1));
+        mBitCount += count;
+        while (mBitCount >= 8) {
+            int b = (mBitBuffer >> (mBitCount - 8)) & 0xFF;
+            mOut.write(b);
+            if (b == 0xFF) {
+                // byte stuffing, a 0xFF in the entropy coded data is followed by a zero
+                mOut.write(0);
+            }
+            mBitCount -= 8;
+        }
+        mBitBuffer &= (1 << mBitCount) - 1;
+    }
+
+    private void writeHuffmanTable(HuffmanTable table, int classAndId) throws IOException {
+        int length = 2 + table.getSegmentLength();
+        writeBytes(0xFF, 0xC4, length >> 8, length & 0xFF);
+        table.write(mOut, classAndId);
+    }
+
+    private void writeBytes(int... bytes) throws IOException {
+        for (int b : bytes) {
+            mOut.write(b);
+        }
+    }
+    // endregion
+
+    // region: EXIF
+
+    private static boolean isExif(byte[] data) {
+        return data.length >= 14 && data[0] == 'E' && data[1] == 'x' && data[2] == 'i' && data[3] == 'f'
+                && data[4] == 0 && data[5] == 0;
+    }
+
+    /**
+     * Get the orientation of an EXIF segment, or 0 if it isn't one or has no valid orientation.
+     */
+    private static int readExifOrientation(JpegImage.Marker marker) {
+        if (marker.type != MARKER_APP1 || !isExif(marker.data)) {
+            return 0;
+        }
+        byte[] data = marker.data;
+        boolean littleEndian = data[6] == 'I';
+        int entry = findEntry(data, littleEndian, readInt(data, 10, littleEndian), TAG_ORIENTATION);
+        if (entry < 0 || readShort(data, entry + 2, littleEndian) != TYPE_SHORT) {
+            return 0;
+        }
+        int orientation = readShort(data, entry + 8, littleEndian);
+        return orientation >= 1 && orientation <= 8 ? orientation : 0;
+    }
+
+    /**
+     * Overwrite the orientation and the pixel dimensions of an EXIF segment where they are, the
+     * ones that are missing or stored in an unexpected way are left alone.
+     */
+    private static void patchExif(byte[] data, boolean resetOrientation, int width, int height) {
+        boolean littleEndian = data[6] == 'I';
+        int ifd0 = readInt(data, 10, littleEndian);
+        if (resetOrientation) {
+            int entry = findEntry(data, littleEndian, ifd0, TAG_ORIENTATION);
+            if (entry >= 0 && readShort(data, entry + 2, littleEndian) == TYPE_SHORT) {
+                writeValue(data, entry + 8, 1, TYPE_SHORT, littleEndian);
+            }
+        }
+
+        int exifIfdEntry = findEntry(data, littleEndian, ifd0, TAG_EXIF_IFD);
+        if (exifIfdEntry < 0) {
+            return;
+        }
+        int exifIfd = readInt(data, exifIfdEntry + 8, littleEndian);
+        patchDimension(data, littleEndian, exifIfd, TAG_PIXEL_X_DIMENSION, width);
+        patchDimension(data, littleEndian, exifIfd, TAG_PIXEL_Y_DIMENSION, height);
+    }
+
+    private static void patchDimension(byte[] data, boolean littleEndian, int ifd, int tag, int value) {
+        int entry = findEntry(data, littleEndian, ifd, tag);
+        if (entry < 0 || readInt(data, entry + 4, littleEndian) != 1) {
+            return;
+        }
+        int type = readShort(data, entry + 2, littleEndian);
+        if (type == TYPE_LONG || (type == TYPE_SHORT && value <= 0xFFFF)) {
+            writeValue(data, entry + 8, value, type, littleEndian);
+        }
+    }
+
+    /**
+     * Get the position of the entry of the tag in the IFD at the given TIFF offset, or -1.
+     */
+    private static int findEntry(byte[] data, boolean littleEndian, int ifdOffset, int tag) {
+        // the TIFF header starts after "Exif\0\0"
+        int ifd = 6 + ifdOffset;
+        if (ifdOffset < 8 || ifd + 2 > data.length) {
+            return -1;
+        }
+        int count = readShort(data, ifd, littleEndian);
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + 12 * i;
+            if (entry + 12 > data.length) {
+                return -1;
+            }
+            if (readShort(data, entry, littleEndian) == tag) {
+                return entry;
+            }
+        }
+        return -1;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        return littleEndian ? (b1 << 8) | b0 : (b0 << 8) | b1;
+    }
+
+    private static int readInt(byte[] data, int offset, boolean littleEndian) {
+        int high = readShort(data, offset + (littleEndian ? 2 : 0), littleEndian);
+        int low = readShort(data, offset + (littleEndian ? 0 : 2), littleEndian);
+        return (high << 16) | low;
+    }
+
+    private static void writeValue(byte[] data, int offset, int value, int type, boolean littleEndian) {
+        int size = type == TYPE_SHORT ? 2 : 4;
+        for (int i = 0; i < size; i++) {
+            int shift = 8 * (littleEndian ? i : size - 1 - i);
+            data[offset + i] = (byte) (value >> shift);
+        }
+    }
+    // endregion
+
+}
@@ -5,6 +5,7 @@ import android.annotation.SuppressLint;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -13,6 +14,7 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import ca.on.hojat.renderer.BuildConfig;
 import ca.on.hojat.renderer.svg.SVGExternalFileResolver;
@@ -164,6 +166,8 @@ public class CSSParser {
     }
 
     private static boolean ruleMatchOnAncestors(CSSParser.RuleMatchContext ruleMatchContext, CSSParser.Selector selector, int selPartPos, List<SVGBase.SvgContainer> ancestors, int ancestorsPos) {
+        if (ancestorsPos < 0)  // A child combinator reached above the root element
+            return false;
         CSSParser.SimpleSelector sel = selector.get(selPartPos);
         SVGBase.SvgElementBase obj = (SVGBase.SvgElementBase) ancestors.get(ancestorsPos);
 
@@ -192,6 +196,19 @@ public class CSSParser {
         }
     }
 
+    // There are only a few node names, so their lower case versions are kept instead of being made for every match
+    private static final Map<String, String> lowerCaseNodeNames = new ConcurrentHashMap<>();
+
+    private static String lowerCaseNodeName(SVGBase.SvgElementBase obj) {
+        String nodeName = obj.getNodeName();
+        String lowerCaseName = lowerCaseNodeNames.get(nodeName);
+        if (lowerCaseName == null) {
+            lowerCaseName = nodeName.toLowerCase(Locale.US);
+            lowerCaseNodeNames.put(nodeName, lowerCaseName);
+        }
+        return lowerCaseName;
+    }
+
     private static int getChildPosition(List<SVGBase.SvgContainer> ancestors, int ancestorsPos, SVGBase.SvgElementBase obj) {
         if (ancestorsPos < 0)  // Has no parent, so must be only child of document
             return 0;
@@ -208,7 +225,7 @@ public class CSSParser {
 
     private static boolean selectorMatch(CSSParser.RuleMatchContext ruleMatchContext, CSSParser.SimpleSelector sel, SVGBase.SvgElementBase obj) {
         // Check tag name. tag==null means tag is "*" which matches everything.
-        if (sel.tag != null && !sel.tag.equals(obj.getNodeName().toLowerCase(Locale.US)))
+        if (sel.tag != null && !sel.tag.equals(lowerCaseNodeName(obj)))
             return false;
 
         // If here, then tag part matched
@@ -578,11 +595,13 @@ public class CSSParser {
 
     public static class Ruleset {
         private List<CSSParser.Rule> rules = null;
+        private CSSParser.RuleIndex index = null;   // Built when first needed, dropped when the rules change
 
         // Add a rule to the ruleset. The position at which it is inserted is determined by its specificity value.
         void add(CSSParser.Rule rule) {
             if (this.rules == null)
                 this.rules = new LinkedList<>();
+            this.index = null;
 
             ListIterator<CSSParser.Rule> iter = this.rules.listIterator();
             while (iter.hasNext()) {
@@ -616,6 +635,15 @@ public class CSSParser {
             return this.rules == null || this.rules.isEmpty();
         }
 
+        /*
+         * Returns the rules indexed by the last part of their selectors.
+         */
+        CSSParser.RuleIndex getIndex() {
+            if (this.index == null)
+                this.index = new CSSParser.RuleIndex(this.rules);
+            return this.index;
+        }
+
         /*
          * Remove all rules that were added from a given Source.
          */
@@ -624,8 +652,10 @@ public class CSSParser {
                 return;
             Iterator<CSSParser.Rule> iter = this.rules.iterator();
             while (iter.hasNext()) {
-                if (iter.next().source == sourceToBeRemoved)
+                if (iter.next().source == sourceToBeRemoved) {
                     iter.remove();
+                    this.index = null;
+                }
             }
         }
 
@@ -641,6 +671,140 @@ public class CSSParser {
         }
     }
 
+    /*
+     * The rules of a ruleset grouped by the last simple selector of their selectors: by id, by class,
+     * by element name, or with the rules that can match any element. An element only has to be matched
+     * against the groups it can be in, instead of against every rule.
+     *
+     * Candidates are returned in ruleset order, so styles are still applied by ascending specificity.
+     */
+    static class RuleIndex {
+        private static final int[] NO_RULES = new int[0];
+
+        private final CSSParser.Rule[] rules;
+        private final Map<String, int[]> byId = new HashMap<>();
+        private final Map<String, int[]> byClass = new HashMap<>();
+        private final Map<String, int[]> byTag = new HashMap<>();
+        private final int[] universal;
+
+        RuleIndex(List<CSSParser.Rule> rules) {
+            this.rules = (rules == null) ? new CSSParser.Rule[0] : rules.toArray(new CSSParser.Rule[0]);
+
+            Map<String, List<Integer>> ids = new HashMap<>();
+            Map<String, List<Integer>> classes = new HashMap<>();
+            Map<String, List<Integer>> tags = new HashMap<>();
+            List<Integer> others = new ArrayList<>();
+            for (int i = 0; i < this.rules.length; i++) {
+                CSSParser.Selector selector = this.rules[i].selector;
+                CSSParser.SimpleSelector last = selector.isEmpty() ? null : selector.get(selector.size() - 1);
+                String id = (last != null) ? getAttribValue(last, ID) : null;
+                String className = (last != null && id == null) ? getAttribValue(last, CLASS) : null;
+                if (id != null)
+                    addToGroup(ids, id, i);
+                else if (className != null)
+                    addToGroup(classes, className, i);
+                else if (last != null && last.tag != null)
+                    addToGroup(tags, last.tag, i);
+                else
+                    others.add(i);
+            }
+
+            toArrays(ids, byId);
+            toArrays(classes, byClass);
+            toArrays(tags, byTag);
+            this.universal = toArray(others);
+        }
+
+        CSSParser.Rule get(int position) {
+            return rules[position];
+        }
+
+        /*
+         * Returns the positions of the rules that might match the given element, in ruleset order.
+         */
+        int[] getCandidates(SVGBase.SvgElementBase obj) {
+            int[][] groups = new int[3 + ((obj.classNames != null) ? obj.classNames.size() : 0)][];
+            int numGroups = 0;
+            int total = 0;
+
+            int[] group = (obj.id != null) ? byId.get(obj.id) : null;
+            if (group != null) {
+                groups[numGroups++] = group;
+                total += group.length;
+            }
+            if (obj.classNames != null && !byClass.isEmpty()) {
+                for (String className : obj.classNames) {
+                    group = byClass.get(className);
+                    if (group != null) {
+                        groups[numGroups++] = group;
+                        total += group.length;
+                    }
+                }
+            }
+            group = byTag.isEmpty() ? null : byTag.get(lowerCaseNodeName(obj));
+            if (group != null) {
+                groups[numGroups++] = group;
+                total += group.length;
+            }
+            if (universal.length > 0) {
+                groups[numGroups++] = universal;
+                total += universal.length;
+            }
+
+            if (numGroups == 0)
+                return NO_RULES;
+            if (numGroups == 1)
+                return groups[0];
+
+            int[] candidates = new int[total];
+            int count = 0;
+            for (int i = 0; i < numGroups; i++) {
+                System.arraycopy(groups[i], 0, candidates, count, groups[i].length);
+                count += groups[i].length;
+            }
+            Arrays.sort(candidates);
+
+            // An element can list the same class twice, keep each rule once
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (unique == 0 || candidates[i] != candidates[unique - 1])
+                    candidates[unique++] = candidates[i];
+            }
+            return (unique == count) ? candidates : Arrays.copyOf(candidates, unique);
+        }
+
+        private static String getAttribValue(CSSParser.SimpleSelector sel, String name) {
+            if (sel.attribs == null)
+                return null;
+            for (CSSParser.Attrib attrib : sel.attribs) {
+                if (name.equals(attrib.name) && attrib.operation == CSSParser.AttribOp.EQUALS && attrib.value != null)
+                    return attrib.value;
+            }
+            return null;
+        }
+
+        private static void addToGroup(Map<String, List<Integer>> groups, String key, int position) {
+            List<Integer> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(position);
+        }
+
+        private static void toArrays(Map<String, List<Integer>> groups, Map<String, int[]> arrays) {
+            for (Map.Entry<String, List<Integer>> entry : groups.entrySet())
+                arrays.put(entry.getKey(), toArray(entry.getValue()));
+        }
+
+        private static int[] toArray(List<Integer> positions) {
+            int[] array = new int[positions.size()];
+            for (int i = 0; i < array.length; i++)
+                array[i] = positions.get(i);
+            return array;
+        }
+    }
+
     public static class Rule {
         final CSSParser.Selector selector;
         final Style style;
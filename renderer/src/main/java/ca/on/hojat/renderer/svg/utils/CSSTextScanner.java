@@ -8,7 +8,8 @@ public class CSSTextScanner extends TextScanner {
     static final Pattern PATTERN_BLOCK_COMMENTS = Pattern.compile("(?s)/\\*.*?\\*/");
 
     public CSSTextScanner(String input) {
-        super(PATTERN_BLOCK_COMMENTS.matcher(input).replaceAll(""));  // strip all block comments
+        // strip all block comments, most inputs have none so don't run the regex for them
+        super(input.contains("/*") ? PATTERN_BLOCK_COMMENTS.matcher(input).replaceAll("") : input);
     }
 
     /*
@@ -216,9 +216,9 @@ class NumberParser {
             } else if (exponent < 0) {
                 // Some valid numbers can have an exponent greater than the max (ie. < -38)
                 // for a float.  For example, significand=123, exponent=-40
-                // If that's the case, we need to apply the exponent in two steps.
-                if (exponent < -38) {
-                    // Long.MAX_VALUE is 19 digits, so taking 20 off the exponent should be enough.
+                // If that's the case, we need to apply the exponent in steps. With a long
+                // significand it can be as low as -63, so taking 20 off once isn't always enough.
+                while (exponent < -38) {
                     f *= 1e-20;
                     exponent += 20;
                 }
@@ -28,6 +28,7 @@ import ca.on.hojat.renderer.svg.CSS;
 public class RenderOptionsBase {
     String css = null;
     CSSParser.Ruleset cssRuleset = null;
+    CSSParser.Ruleset parsedCss = null;   // css, parsed by the first render that uses it
     //String             id = null;
     PreserveAspectRatio preserveAspectRatio = null;
     String targetId = null;
@@ -64,6 +65,7 @@ public class RenderOptionsBase {
             return;
         this.css = other.css;
         this.cssRuleset = other.cssRuleset;
+        this.parsedCss = other.parsedCss;
         //this.id = other.id;
         this.preserveAspectRatio = other.preserveAspectRatio;
         this.viewBox = other.viewBox;
@@ -82,12 +84,14 @@ public class RenderOptionsBase {
     public RenderOptionsBase css(CSS css) {
         this.cssRuleset = css.cssRuleset;
         this.css = null;
+        this.parsedCss = null;
         return this;
     }
 
     public RenderOptionsBase css(String css) {
         this.css = css;
         this.cssRuleset = null;
+        this.parsedCss = null;
         return this;
     }
 
@@ -26,6 +26,7 @@ import android.os.Build;
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -431,8 +432,12 @@ public class SVGAndroidRenderer {
 
         if (renderOptions.hasCss()) {
             if (renderOptions.css != null) {
-                CSSParser parser = new CSSParser(CSSParser.Source.RenderOptions, externalFileResolver);
-                document.addCSSRules(parser.parse(renderOptions.css));
+                // the same options are usually used for many renders, parse their CSS only once
+                if (renderOptions.parsedCss == null) {
+                    CSSParser parser = new CSSParser(CSSParser.Source.RenderOptions, externalFileResolver);
+                    renderOptions.parsedCss = parser.parse(renderOptions.css);
+                }
+                document.addCSSRules(renderOptions.parsedCss);
             } else if (renderOptions.cssRuleset != null) {
                 document.addCSSRules(renderOptions.cssRuleset);
             }
@@ -588,7 +593,9 @@ public class SVGAndroidRenderer {
 
         // Apply the styles from any CSS files or <style> elements
         if (document.hasCSSRules()) {
-            for (CSSParser.Rule rule : document.getCSSRules()) {
+            CSSParser.RuleIndex ruleIndex = document.getCSSRuleIndex();
+            for (int position : ruleIndex.getCandidates(obj)) {
+                CSSParser.Rule rule = ruleIndex.get(position);
                 if (CSSParser.ruleMatch(this.ruleMatchContext, rule.selector, obj)) {
                     updateStyle(state, rule.style);
                 }
@@ -1152,7 +1159,7 @@ public class SVGAndroidRenderer {
         if (obj.transform != null)
             canvas.concat(obj.transform);
 
-        Path path = (new SVGAndroidRenderer.PathConverter(obj.d)).getPath();
+        Path path = getCompiledPath(obj);
 
         if (obj.boundingBox == null) {
             obj.boundingBox = calculatePathBounds(path);
@@ -1164,10 +1171,8 @@ public class SVGAndroidRenderer {
 
         boolean compositing = pushLayer();
 
-        if (state.hasFill) {
-            path.setFillType(getFillTypeFromState());
-            doFilledPath(obj, path);
-        }
+        if (state.hasFill)
+            doFilledPath(obj, getCompiledPath(obj, getFillTypeFromState()));
         if (state.hasStroke)
             doStroke(path);
 
@@ -1180,6 +1185,83 @@ public class SVGAndroidRenderer {
 
     //==============================================================================
 
+    /*
+     * Returns the path of the element, converting its path definition only on the first render.
+     * The returned path is shared by all the renders, copy it before transforming it.
+     */
+    private static Path getCompiledPath(SVGBase.Path obj) {
+        if (obj.compiledPath == null)
+            obj.compiledPath = (new SVGAndroidRenderer.PathConverter(obj.d)).getPath();
+        return obj.compiledPath;
+    }
+
+    /*
+     * Returns the path of the element with the given fill type. The compiled path is left as it is,
+     * the even-odd one is a copy made on the first render that needs it.
+     */
+    private static Path getCompiledPath(SVGBase.Path obj, Path.FillType fillType) {
+        Path path = getCompiledPath(obj);
+        if (fillType == path.getFillType())
+            return path;
+        if (obj.compiledEvenOddPath == null)
+            obj.compiledEvenOddPath = copyWithFillType(path, Path.FillType.EVEN_ODD);
+        return obj.compiledEvenOddPath;
+    }
+
+    private static Path getCompiledPath(SVGBase.PolyLine obj, Path path, Path.FillType fillType) {
+        if (fillType == path.getFillType())
+            return path;
+        if (obj.compiledEvenOddPath == null)
+            obj.compiledEvenOddPath = copyWithFillType(path, Path.FillType.EVEN_ODD);
+        return obj.compiledEvenOddPath;
+    }
+
+    private static Path copyWithFillType(Path path, Path.FillType fillType) {
+        Path copy = new Path(path);
+        copy.setFillType(fillType);
+        return copy;
+    }
+
+    /*
+     * Returns the shader the gradient made last time if it was made from the same values, so that
+     * redrawing a document doesn't create all its shaders again.
+     */
+    private static Shader getCachedShader(SVGBase.GradientElement gradient, int[] key) {
+        if (gradient.cachedShader != null && Arrays.equals(key, gradient.cachedShaderKey))
+            return gradient.cachedShader;
+        return null;
+    }
+
+    private static void putCachedShader(SVGBase.GradientElement gradient, int[] key, Shader shader) {
+        gradient.cachedShader = shader;
+        gradient.cachedShaderKey = key;
+    }
+
+    private static int[] makeShaderKey(float[] geometry, Matrix matrix, int[] colours, long[] colourLongs, float[] positions, Shader.TileMode tileMode) {
+        float[] matrixValues = new float[9];
+        matrix.getValues(matrixValues);
+        int numColours = (colourLongs != null) ? colourLongs.length * 2 : colours.length;
+        int[] key = new int[geometry.length + 9 + numColours + positions.length + 1];
+        int i = 0;
+        for (float value : geometry)
+            key[i++] = Float.floatToIntBits(value);
+        for (float value : matrixValues)
+            key[i++] = Float.floatToIntBits(value);
+        if (colourLongs != null) {
+            for (long colour : colourLongs) {
+                key[i++] = (int) (colour >>> 32);
+                key[i++] = (int) colour;
+            }
+        } else {
+            for (int colour : colours)
+                key[i++] = colour;
+        }
+        for (float position : positions)
+            key[i++] = Float.floatToIntBits(position);
+        key[i] = tileMode.ordinal();
+        return key;
+    }
+
     private SVGBase.Box calculatePathBounds(Path path) {
         RectF pathBounds = new RectF();
         path.computeBounds(pathBounds, true);
@@ -1363,7 +1445,7 @@ public class SVGAndroidRenderer {
         updateParentBoundingBox(obj);
 
         assert path != null;
-        path.setFillType(getFillTypeFromState());
+        path = getCompiledPath(obj, path, getFillTypeFromState());
 
         checkForGradientsAndPatterns(obj);
         checkForClipPath(obj);
@@ -1705,7 +1787,7 @@ public class SVGAndroidRenderer {
         }
 
         SVGBase.Path pathObj = (SVGBase.Path) ref;
-        Path path = (new SVGAndroidRenderer.PathConverter(pathObj.d)).getPath();
+        Path path = new Path(getCompiledPath(pathObj));
 
         if (pathObj.transform != null)
             path.transform(pathObj.transform);
@@ -2868,9 +2950,14 @@ public class SVGAndroidRenderer {
 
         statePop();
 
-        // Create shader instance
-        LinearGradient gr = new LinearGradient(_x1, _y1, _x2, _y2, colours, positions, tileMode);
-        gr.setLocalMatrix(m);
+        // Create shader instance, or reuse the one from the last render
+        int[] shaderKey = makeShaderKey(new float[]{_x1, _y1, _x2, _y2}, m, colours, null, positions, tileMode);
+        Shader gr = getCachedShader(gradient, shaderKey);
+        if (gr == null) {
+            gr = new LinearGradient(_x1, _y1, _x2, _y2, colours, positions, tileMode);
+            gr.setLocalMatrix(m);
+            putCachedShader(gradient, shaderKey, gr);
+        }
         paint.setShader(gr);
         paint.setAlpha(clamp255(state.style.fillOpacity));
     }
@@ -2996,10 +3083,16 @@ public class SVGAndroidRenderer {
 
         statePop();
 
-        // Create shader instance
-        RadialGradient gr = SUPPORTS_RADIAL_GRADIENT_WITH_FOCUS ? new RadialGradient(_fx, _fy, _fr, _cx, _cy, _r, colourLongs, positions, tileMode)
-                : new RadialGradient(_cx, _cy, _r, colours, positions, tileMode);
-        gr.setLocalMatrix(m);
+        // Create shader instance, or reuse the one from the last render
+        int[] shaderKey = makeShaderKey(new float[]{_fx, _fy, _fr, _cx, _cy, _r}, m, colours,
+                SUPPORTS_RADIAL_GRADIENT_WITH_FOCUS ? colourLongs : null, positions, tileMode);
+        Shader gr = getCachedShader(gradient, shaderKey);
+        if (gr == null) {
+            gr = SUPPORTS_RADIAL_GRADIENT_WITH_FOCUS ? new RadialGradient(_fx, _fy, _fr, _cx, _cy, _r, colourLongs, positions, tileMode)
+                    : new RadialGradient(_cx, _cy, _r, colours, positions, tileMode);
+            gr.setLocalMatrix(m);
+            putCachedShader(gradient, shaderKey, gr);
+        }
         paint.setShader(gr);
         paint.setAlpha(clamp255(state.style.fillOpacity));
     }
@@ -3241,7 +3334,7 @@ public class SVGAndroidRenderer {
 
             if (obj instanceof SVGBase.Path) {
                 SVGBase.Path pathElem = (SVGBase.Path) obj;
-                path = (new SVGAndroidRenderer.PathConverter(pathElem.d)).getPath();
+                path = new Path(getCompiledPath(pathElem));
                 if (obj.boundingBox == null)
                     obj.boundingBox = calculatePathBounds(path);
             } else if (obj instanceof SVGBase.Rect)
@@ -3250,8 +3343,10 @@ public class SVGAndroidRenderer {
                 path = makePathAndBoundingBox((SVGBase.Circle) obj);
             else if (obj instanceof SVGBase.Ellipse)
                 path = makePathAndBoundingBox((SVGBase.Ellipse) obj);
-            else if (obj instanceof SVGBase.PolyLine)
-                path = makePathAndBoundingBox((SVGBase.PolyLine) obj);
+            else if (obj instanceof SVGBase.PolyLine) {
+                Path compiledPath = makePathAndBoundingBox((SVGBase.PolyLine) obj);
+                path = (compiledPath != null) ? new Path(compiledPath) : null;
+            }
 
             if (path == null)
                 return null;
@@ -3415,7 +3510,7 @@ public class SVGAndroidRenderer {
         if (obj.transform != null)
             combinedPathMatrix.preConcat(obj.transform);
 
-        Path path = (new SVGAndroidRenderer.PathConverter(obj.d)).getPath();
+        Path path = getCompiledPath(obj);
 
         if (obj.boundingBox == null) {
             obj.boundingBox = calculatePathBounds(path);
@@ -3660,6 +3755,9 @@ public class SVGAndroidRenderer {
     }
 
     private Path makePathAndBoundingBox(SVGBase.PolyLine obj) {
+        if (obj.compiledPath != null)
+            return obj.compiledPath;
+
         Path path = new Path();
 
         int numPoints = (obj.points != null) ? obj.points.length : 0;
@@ -3684,6 +3782,7 @@ public class SVGAndroidRenderer {
         if (obj.boundingBox == null) {
             obj.boundingBox = calculatePathBounds(path);
         }
+        obj.compiledPath = path;
         return path;
     }
 
@@ -4342,7 +4441,7 @@ public class SVGAndroidRenderer {
                     return false;
                 }
                 SVGBase.Path pathObj = (SVGBase.Path) ref;
-                Path path = (new SVGAndroidRenderer.PathConverter(pathObj.d)).getPath();
+                Path path = new Path(getCompiledPath(pathObj));
                 if (pathObj.transform != null)
                     path.transform(pathObj.transform);
                 RectF pathBounds = new RectF();
@@ -892,6 +892,10 @@ public class SVGBase {
         return this.cssRules.getRules();
     }
 
+    CSSParser.RuleIndex getCSSRuleIndex() {
+        return this.cssRules.getIndex();
+    }
+
 
     //===============================================================================
     // CSS support methods
@@ -1531,6 +1535,10 @@ public class SVGBase {
     static class Path extends GraphicsElement {
         PathDefinition d;
         Float pathLength;
+        // built from d by the first render and reused by the following ones, never modify it
+        android.graphics.Path compiledPath;
+        // the same with the even-odd fill rule, made when a render first needs it
+        android.graphics.Path compiledEvenOddPath;
 
         @Override
         String getNodeName() {
@@ -1589,6 +1597,10 @@ public class SVGBase {
 
     static class PolyLine extends GraphicsElement {
         float[] points;
+        // built from points by the first render and reused by the following ones, never modify it
+        android.graphics.Path compiledPath;
+        // the same with the even-odd fill rule, made when a render first needs it
+        android.graphics.Path compiledEvenOddPath;
 
         @Override
         String getNodeName() {
@@ -1757,6 +1769,9 @@ public class SVGBase {
         Matrix gradientTransform;
         GradientSpread spreadMethod;
         String href;
+        // the last shader made for this gradient and the values it was made from
+        android.graphics.Shader cachedShader;
+        int[] cachedShaderKey;
 
         @Override
         public List<SvgObject> getChildren() {
@@ -1926,9 +1941,13 @@ public class SVGBase {
         private int coordsLength = 0;
 
 
-        PathDefinition() {
-            this.commands = new byte[8];
-            this.coords = new float[16];
+        /*
+         * Creates a path with room for about the given number of coordinates, so that long path data doesn't
+         * make the arrays grow over and over.
+         */
+        PathDefinition(int coordsCapacity) {
+            this.commands = new byte[Math.max(8, coordsCapacity / 4)];
+            this.coords = new float[Math.max(16, coordsCapacity)];
         }
 
 
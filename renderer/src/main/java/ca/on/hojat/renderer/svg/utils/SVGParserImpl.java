@@ -21,7 +21,6 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.ParserConfigurationException;
@@ -83,7 +82,6 @@ class SVGParserImpl implements SVGParser {
     // nextToken() method. Also, they throw an exception when calling setFeature().
     // So for simplicity, we'll just force the use of the SAX parser on Androids < 15.
     private static final boolean FORCE_SAX_ON_EARLY_ANDROIDS = false;
-    private static final Pattern PATTERN_BLOCK_COMMENTS = Pattern.compile("/\\*.*?\\*/");
     // SVG parser
     private SVGBase svgDocument = null;
     private SVGBase.SvgContainer currentElement = null;
@@ -104,7 +102,7 @@ class SVGParserImpl implements SVGParser {
      * Parse the 'style' attribute.
      */
     private static void parseStyle(SvgElementBase obj, String style) {
-        CSSTextScanner scan = new CSSTextScanner(PATTERN_BLOCK_COMMENTS.matcher(style).replaceAll(""));  // regex strips block comments
+        CSSTextScanner scan = new CSSTextScanner(style);  // strips block comments
 
         while (!scan.empty()) {
             scan.skipWhitespace();
@@ -140,12 +138,9 @@ class SVGParserImpl implements SVGParser {
             unit = Unit.percent;
         } else if (end > 2 && Character.isLetter(lastChar) && Character.isLetter(val.charAt(end - 2))) {
             end -= 2;
-            String unitStr = val.substring(end);
-            try {
-                unit = Unit.valueOf(unitStr.toLowerCase(Locale.US));
-            } catch (IllegalArgumentException e) {
+            unit = TextScanner.unitOf(val, end);
+            if (unit == null)
                 throw new SVGParseException("Invalid length unit specifier: " + val);
-            }
         }
         try {
             float scalar = parseFloat(val, end);
@@ -872,7 +867,8 @@ class SVGParserImpl implements SVGParser {
         float rx, ry, xAxisRotation;
         Boolean largeArcFlag, sweepFlag;
 
-        SVGBase.PathDefinition path = new SVGBase.PathDefinition();
+        // a coordinate takes at least two characters with its separator, usually a lot more
+        SVGBase.PathDefinition path = new SVGBase.PathDefinition(val.length() / 6);
 
         if (scan.empty()) return path;
 
@@ -1257,6 +1253,7 @@ class SVGParserImpl implements SVGParser {
         try {
             XmlPullParser parser = Xml.newPullParser();
             SVGParserImpl.XPPAttributesWrapper attributes = new SVGParserImpl.XPPAttributesWrapper(parser);
+            int[] startAndLength = new int[2];
 
 
             parser.setFeature(XmlPullParser.FEATURE_PROCESS_DOCDECL, false);
@@ -1280,9 +1277,11 @@ class SVGParserImpl implements SVGParser {
                         endElement(parser.getNamespace(), parser.getName(), qName);
                         break;
                     case XmlPullParser.TEXT:
-                        int[] startAndLength = new int[2];
-                        char[] text = parser.getTextCharacters(startAndLength);
-                        text(text, startAndLength[0], startAndLength[1]);
+                        // most text is the whitespace between elements, don't copy what won't be kept
+                        if (isKeepingText()) {
+                            char[] text = parser.getTextCharacters(startAndLength);
+                            text(text, startAndLength[0], startAndLength[1]);
+                        }
                         break;
                     case XmlPullParser.ENTITY_REF:
                     case XmlPullParser.CDSECT:
@@ -1478,6 +1477,10 @@ class SVGParserImpl implements SVGParser {
         }
     }
 
+    private boolean isKeepingText() {
+        return !ignoring && (inMetadataElement || inStyleElement || currentElement instanceof SVGBase.TextContainer);
+    }
+
     private void text(char[] ch, int start, int length) throws SVGParseException {
         if (ignoring) return;
 
@@ -2821,7 +2824,8 @@ class SVGParserImpl implements SVGParser {
             }
             //boolean  inherit = val.equals("inherit");   // NYI
 
-            switch (SVGAttr.fromString(attributes.getLocalName(i))) {
+            SVGAttr attr = SVGAttr.fromString(attributes.getLocalName(i));
+            switch (attr) {
                 case style:
                     parseStyle(obj, val);
                     break;
@@ -2832,7 +2836,7 @@ class SVGParserImpl implements SVGParser {
 
                 default:
                     if (obj.baseStyle == null) obj.baseStyle = new Style();
-                    Style.processStyleProperty(obj.baseStyle, attributes.getLocalName(i), attributes.getValue(i).trim(), true);
+                    Style.processStyleProperty(obj.baseStyle, attr, val, true);
                     break;
             }
         }
@@ -199,13 +199,17 @@ public class Style implements Cloneable {
     }
 
     static void processStyleProperty(Style style, String localName, String val, boolean isFromAttribute) {
+        processStyleProperty(style, SVGParserImpl.SVGAttr.fromString(localName), val, isFromAttribute);
+    }
+
+    static void processStyleProperty(Style style, SVGParserImpl.SVGAttr attr, String val, boolean isFromAttribute) {
         if (val.length() == 0) { // The spec doesn't say how to handle empty style attributes.
             return;               // Our strategy is just to ignore them.
         }
         if (val.equals("inherit"))
             return;
 
-        switch (SVGParserImpl.SVGAttr.fromString(localName)) {
+        switch (attr) {
             case fill:
                 style.fill = SVGParserImpl.parsePaintSpecifier(val);
                 if (style.fill != null)
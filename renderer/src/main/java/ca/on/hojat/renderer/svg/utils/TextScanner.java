@@ -3,8 +3,6 @@ package ca.on.hojat.renderer.svg.utils;
 import ca.on.hojat.renderer.svg.utils.SVGBase.Length;
 import ca.on.hojat.renderer.svg.utils.SVGBase.Unit;
 
-import java.util.Locale;
-
 public class TextScanner {
     final String input;
     int position = 0;
@@ -14,8 +12,16 @@ public class TextScanner {
 
 
     public TextScanner(String input) {
-        this.input = input.trim();
-        this.inputLength = this.input.length();
+        // same as scanning input.trim(), without copying the string
+        int start = 0;
+        int end = input.length();
+        while (start < end && input.charAt(start) <= ' ')
+            start++;
+        while (end > start && input.charAt(end - 1) <= ' ')
+            end--;
+        this.input = input;
+        this.position = start;
+        this.inputLength = end;
     }
 
     /**
@@ -159,7 +165,7 @@ public class TextScanner {
 
     public boolean consume(String str) {
         int len = str.length();
-        boolean found = (position <= (inputLength - len) && input.substring(position, position + len).equals(str));
+        boolean found = (position <= (inputLength - len) && input.regionMatches(position, str, 0, len));
         if (found)
             position += len;
         return found;
@@ -300,12 +306,37 @@ public class TextScanner {
         }
         if (position > (inputLength - 2))
             return null;
-        try {
-            Unit result = Unit.valueOf(input.substring(position, position + 2).toLowerCase(Locale.US));
+        Unit result = unitOf(input, position);
+        if (result != null)
             position += 2;
-            return result;
-        } catch (IllegalArgumentException e) {
-            return null;
+        return result;
+    }
+
+    /*
+     * Returns the two letter unit at the given position, ignoring case, or null if there isn't one.
+     * Most numbers aren't followed by a unit, so this avoids the substring and the exception of Unit.valueOf().
+     */
+    static Unit unitOf(String str, int pos) {
+        char c1 = (char) (str.charAt(pos) | 0x20);
+        char c2 = (char) (str.charAt(pos + 1) | 0x20);
+        switch (c1) {
+            case 'p':
+                if (c2 == 'x') return Unit.px;
+                if (c2 == 't') return Unit.pt;
+                if (c2 == 'c') return Unit.pc;
+                return null;
+            case 'e':
+                if (c2 == 'm') return Unit.em;
+                if (c2 == 'x') return Unit.ex;
+                return null;
+            case 'i':
+                return (c2 == 'n') ? Unit.in : null;
+            case 'c':
+                return (c2 == 'm') ? Unit.cm : null;
+            case 'm':
+                return (c2 == 'm') ? Unit.mm : null;
+            default:
+                return null;
         }
     }
 
@@ -350,7 +381,7 @@ public class TextScanner {
 
         int start = position;
         position = inputLength;
-        return input.substring(start);
+        return input.substring(start, inputLength);
     }
 
 }
@@ -0,0 +1,453 @@
+package ca.on.hojat.renderer.cropper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.net.Uri;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.GraphicsMode;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadow.api.Shadow;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the strips written by {@link TiledBitmapWriter} with the whole image transformed at
+ * once. The region decoder of Robolectric returns blank bitmaps, so it is replaced by one cutting
+ * the regions out of the decoded source, which also records the regions to check how much of the
+ * source gets decoded.
+ */
+@RunWith(RobolectricTestRunner.class)
+@GraphicsMode(GraphicsMode.Mode.NATIVE)
+@Config(shadows = TiledBitmapWriterTest.ShadowRegionDecoder.class)
+public class TiledBitmapWriterTest {
+
+    private static final int SOURCE_WIDTH = 301;
+
+    private static final int SOURCE_HEIGHT = 203;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final Rect mCrop = new Rect(7, 5, 290, 200);
+
+    private Context mContext;
+
+    private Bitmap mSource;
+
+    private Uri mSourceUri;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = RuntimeEnvironment.getApplication();
+
+        // noise, so any pixel taken from the wrong place shows
+        Bitmap noise = Bitmap.createBitmap(SOURCE_WIDTH, SOURCE_HEIGHT, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < SOURCE_HEIGHT; y++) {
+            for (int x = 0; x < SOURCE_WIDTH; x++) {
+                int hash = (x * 73856093) ^ (y * 19349663);
+                hash ^= hash >>> 13;
+                noise.setPixel(x, y, 0xff000000 | (hash * 0x9e3779b1 & 0xffffff));
+            }
+        }
+        useSource(noise);
+        ShadowRegionDecoder.sRegions.clear();
+    }
+
+    @After
+    public void tearDown() {
+        mSource.recycle();
+    }
+
+    @Test
+    public void rightAnglesMovePixelsExactly() throws IOException {
+        for (int degrees = 0; degrees < 360; degrees += 90) {
+            for (int flips = 0; flips < 4; flips++) {
+                boolean flipHorizontally = (flips & 1) != 0;
+                boolean flipVertically = (flips & 2) != 0;
+                boolean sideways = degrees % 180 != 0;
+                int width = sideways ? mCrop.height() : mCrop.width();
+                int height = sideways ? mCrop.width() : mCrop.height();
+
+                Bitmap expected = transformAtOnce(degrees, flipHorizontally, flipVertically, width, height);
+                Bitmap actual = writeTiled(degrees, flipHorizontally, flipVertically, width, height);
+                assertSamePixels(degrees + "° " + flips, expected, actual, 0);
+            }
+        }
+    }
+
+    @Test
+    public void scaledOutputsMatchTheWholeImage() throws IOException {
+        for (int degrees = 0; degrees < 360; degrees += 90) {
+            boolean sideways = degrees % 180 != 0;
+            int width = (sideways ? mCrop.height() : mCrop.width()) * 3 / 4;
+            int height = (sideways ? mCrop.width() : mCrop.height()) * 3 / 4;
+
+            Bitmap expected = transformAtOnce(degrees, false, true, width, height);
+            Bitmap actual = writeTiled(degrees, false, true, width, height);
+
+            // the filter rounds the sample positions, a row or column whose positions fall on a
+            // tie can go the other way when drawn from a strip, misplaced strips differ everywhere
+            assertSamePixels(degrees + "°", expected, actual, 2 * Math.max(width, height));
+        }
+    }
+
+    @Test
+    public void sidewaysOutputsDecodeTheSourceByRowsFromItsTop() throws IOException {
+        for (int degrees = 90; degrees < 360; degrees += 180) {
+            for (int flips = 0; flips < 4; flips++) {
+                String message = degrees + "° " + flips;
+                ShadowRegionDecoder.sRegions.clear();
+                writeTiled(degrees, (flips & 1) != 0, (flips & 2) != 0, mCrop.height(), mCrop.width());
+
+                // a region of a JPEG costs whole rows of it, so no row may be decoded many times
+                long decoded = 0;
+                int previousTop = Integer.MIN_VALUE;
+                for (Rect region : ShadowRegionDecoder.sRegions) {
+                    assertEquals(message, mCrop.left, region.left);
+                    assertEquals(message, mCrop.right, region.right);
+                    assertTrue(message + " the regions go up at " + region, region.top > previousTop);
+                    previousTop = region.top;
+                    decoded += region.height();
+                }
+
+                // only the margins around the bands are decoded twice
+                assertTrue(message + " decoded " + decoded + " rows", decoded < mCrop.height() * 5 / 4);
+            }
+        }
+    }
+
+    @Test
+    public void exifOrientationsMovePixelsLikeTheirDefinitions() throws IOException {
+        int w = mCrop.width();
+        int h = mCrop.height();
+
+        // the rotation and flip androidx reports for each EXIF orientation, flipping first
+        int[][] orientations = {
+                {1, 0, 0}, {2, 0, 1}, {3, 180, 0}, {4, 180, 1}, {5, 270, 1}, {6, 90, 0}, {7, 90, 1}, {8, 270, 0}
+        };
+        for (int[] orientation : orientations) {
+            int tag = orientation[0];
+            boolean flipped = orientation[2] != 0;
+            int degrees = TiledBitmapWriter.getRotationBeforeFlip(orientation[1], flipped);
+            boolean sideways = degrees % 180 != 0;
+            int width = sideways ? h : w;
+            int height = sideways ? w : h;
+            Bitmap actual = writeTiled(degrees, flipped, false, width, height);
+
+            String message = "orientation " + tag;
+            assertEquals(message, width, actual.getWidth());
+            assertEquals(message, height, actual.getHeight());
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int sourceX;
+                    int sourceY;
+                    switch (tag) {
+                        case 2: sourceX = w - 1 - x; sourceY = y; break;
+                        case 3: sourceX = w - 1 - x; sourceY = h - 1 - y; break;
+                        case 4: sourceX = x; sourceY = h - 1 - y; break;
+                        case 5: sourceX = y; sourceY = x; break;
+                        case 6: sourceX = y; sourceY = h - 1 - x; break;
+                        case 7: sourceX = w - 1 - y; sourceY = h - 1 - x; break;
+                        case 8: sourceX = w - 1 - y; sourceY = x; break;
+                        default: sourceX = x; sourceY = y; break;
+                    }
+
+                    int expected = mSource.getPixel(mCrop.left + sourceX, mCrop.top + sourceY);
+                    if (actual.getPixel(x, y) != expected) {
+                        throw new AssertionError(String.format(
+                                "%s at %d,%d expected %08x but was %08x",
+                                message, x, y, expected, actual.getPixel(x, y)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void jpegOutputsMatchCompressingTheWholeImage() throws IOException {
+        useSource(createSmoothSource());
+        for (int degrees = 0; degrees < 360; degrees += 90) {
+            boolean sideways = degrees % 180 != 0;
+            int width = sideways ? mCrop.height() : mCrop.width();
+            int height = sideways ? mCrop.width() : mCrop.height();
+            String message = degrees + "°";
+
+            // the single bitmap way compresses the transformed image with the platform encoder
+            Bitmap exact = transformAtOnce(degrees, true, false, width, height);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertTrue(exact.compress(Bitmap.CompressFormat.JPEG, 90, out));
+            Bitmap compressed = BitmapFactory.decodeByteArray(out.toByteArray(), 0, out.size());
+            Bitmap actual = writeTiled(degrees, true, false, width, height, Bitmap.CompressFormat.JPEG);
+
+            double compressedError = assertSimilarPixels(message + " compressed", exact, compressed, 1.5, 24);
+            double actualError = assertSimilarPixels(message + " tiled", exact, actual, 1.5, 24);
+            assertTrue(message + " the tiled JPEG is off by " + actualError + " on average, the compressed one by "
+                    + compressedError, actualError <= compressedError + 0.25);
+            assertSimilarPixels(message, compressed, actual, 1, 16);
+        }
+    }
+
+    @Test
+    public void sampledSourcesMatchTheWholeImage() throws IOException {
+        useSource(createSmoothSource());
+        for (int degrees = 0; degrees < 360; degrees += 90) {
+            boolean sideways = degrees % 180 != 0;
+
+            // a third of the size, the source is decoded at half of its size
+            int width = (sideways ? mCrop.height() : mCrop.width()) / 3;
+            int height = (sideways ? mCrop.width() : mCrop.height()) / 3;
+            String message = degrees + "°";
+            ShadowRegionDecoder.sRegions.clear();
+
+            Bitmap expected = transformAtOnce(degrees, false, true, width, height);
+            Bitmap png = writeTiled(degrees, false, true, width, height);
+            Bitmap jpeg = writeTiled(degrees, false, true, width, height, Bitmap.CompressFormat.JPEG);
+            assertEquals(message, 2, ShadowRegionDecoder.sLastSampleSize);
+
+            // downscaling by steps averages the pixels a little differently than at once
+            assertSimilarPixels(message + " PNG", expected, png, 1, 8);
+            assertSimilarPixels(message + " JPEG", expected, jpeg, 3, 40);
+        }
+    }
+
+    private void useSource(Bitmap source) throws IOException {
+        if (mSource != null) {
+            mSource.recycle();
+        }
+        mSource = source;
+
+        File file = File.createTempFile("source", ".png", mFolder.getRoot());
+        try (OutputStream out = new FileOutputStream(file)) {
+            assertTrue(mSource.compress(Bitmap.CompressFormat.PNG, 100, out));
+        }
+        mSourceUri = Uri.fromFile(file);
+    }
+
+    /**
+     * Gradients a lossy encoder keeps well, every pixel still has its own color so misplaced
+     * strips show.
+     */
+    private static Bitmap createSmoothSource() {
+        Bitmap source = Bitmap.createBitmap(SOURCE_WIDTH, SOURCE_HEIGHT, Bitmap.Config.ARGB_8888);
+        for (int y = 0; y < SOURCE_HEIGHT; y++) {
+            for (int x = 0; x < SOURCE_WIDTH; x++) {
+                int red = x * 255 / (SOURCE_WIDTH - 1);
+                int green = y * 255 / (SOURCE_HEIGHT - 1);
+                int blue = (int) (128 + 127 * Math.sin((x + 2 * y) / 23.0));
+                source.setPixel(x, y, Color.rgb(red, green, blue));
+            }
+        }
+        return source;
+    }
+
+    private Bitmap writeTiled(
+            int degrees, boolean flipHorizontally, boolean flipVertically, int width, int height)
+            throws IOException {
+        return writeTiled(degrees, flipHorizontally, flipVertically, width, height, Bitmap.CompressFormat.PNG);
+    }
+
+    private Bitmap writeTiled(
+            int degrees,
+            boolean flipHorizontally,
+            boolean flipVertically,
+            int width,
+            int height,
+            Bitmap.CompressFormat format)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TiledBitmapWriter.write(
+                mContext,
+                mSourceUri,
+                mCrop,
+                degrees,
+                flipHorizontally,
+                flipVertically,
+                width,
+                height,
+                out,
+                format,
+                format == Bitmap.CompressFormat.JPEG ? 90 : 100);
+
+        byte[] encoded = out.toByteArray();
+        Bitmap bitmap = BitmapFactory.decodeByteArray(encoded, 0, encoded.length);
+        assertNotNull(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * The single bitmap way: the whole rectangle drawn rotated, flipped and scaled at once.
+     */
+    private Bitmap transformAtOnce(
+            int degrees, boolean flipHorizontally, boolean flipVertically, int width, int height) {
+        Matrix matrix = new Matrix();
+        matrix.setRotate(degrees);
+        matrix.postScale(flipHorizontally ? -1 : 1, flipVertically ? -1 : 1);
+        RectF rotated = new RectF(0, 0, mCrop.width(), mCrop.height());
+        matrix.mapRect(rotated);
+        matrix.postTranslate(-rotated.left, -rotated.top);
+        matrix.postScale(width / rotated.width(), height / rotated.height());
+
+        // the filtering must not reach the pixels around the rectangle
+        Bitmap cropped = Bitmap.createBitmap(mSource, mCrop.left, mCrop.top, mCrop.width(), mCrop.height());
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.TRANSPARENT);
+        new Canvas(bitmap).drawBitmap(cropped, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        cropped.recycle();
+        return bitmap;
+    }
+
+    /**
+     * Check the pixels are equal, except for at most the given number of them.
+     */
+    private static void assertSamePixels(String message, Bitmap expected, Bitmap actual, int allowedDifferences) {
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        int differences = 0;
+        String first = null;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int e = expected.getPixel(x, y);
+                int a = actual.getPixel(x, y);
+                if (e != a && differences++ == 0) {
+                    first = String.format("at %d,%d expected %08x but was %08x", x, y, e, a);
+                }
+            }
+        }
+        assertTrue(message + " " + differences + " pixels differ, first " + first, differences <= allowedDifferences);
+    }
+
+    /**
+     * Check no channel of a pixel differs by more than the given maximum and that they differ by
+     * at most the given mean.
+     *
+     * @return the mean difference of the channels
+     */
+    private static double assertSimilarPixels(
+            String message, Bitmap expected, Bitmap actual, double maxMeanDifference, int maxDifference) {
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        long total = 0;
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                int e = expected.getPixel(x, y);
+                int a = actual.getPixel(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = Math.abs((e >> shift & 0xff) - (a >> shift & 0xff));
+                    if (difference > maxDifference) {
+                        throw new AssertionError(String.format(
+                                "%s at %d,%d expected %08x but was %08x", message, x, y, e, a));
+                    }
+                    total += difference;
+                }
+            }
+        }
+
+        double mean = (double) total / (3L * expected.getWidth() * expected.getHeight());
+        assertTrue(message + " the pixels differ by " + mean + " on average", mean <= maxMeanDifference);
+        return mean;
+    }
+
+    @Implements(BitmapRegionDecoder.class)
+    public static class ShadowRegionDecoder {
+
+        static final List<Rect> sRegions = new ArrayList<>();
+
+        static int sLastSampleSize;
+
+        private Bitmap mImage;
+
+        @Implementation
+        protected static BitmapRegionDecoder newInstance(InputStream is, boolean isShareable)
+                throws IOException {
+            BitmapRegionDecoder decoder = Shadow.newInstanceOf(BitmapRegionDecoder.class);
+            ShadowRegionDecoder shadow = Shadow.extract(decoder);
+            shadow.mImage = BitmapFactory.decodeStream(is);
+            if (shadow.mImage == null) {
+                throw new IOException("Failed to decode the image");
+            }
+            return decoder;
+        }
+
+        @Implementation
+        protected int getWidth() {
+            return mImage.getWidth();
+        }
+
+        @Implementation
+        protected int getHeight() {
+            return mImage.getHeight();
+        }
+
+        /**
+         * Cut the region out, averaging blocks of the sample size like a sampled JPEG decode.
+         */
+        @Implementation
+        protected Bitmap decodeRegion(Rect rect, BitmapFactory.Options options) {
+            sRegions.add(new Rect(rect));
+            int sampleSize = Math.max(options.inSampleSize, 1);
+            sLastSampleSize = sampleSize;
+            int width = (rect.width() + sampleSize - 1) / sampleSize;
+            int height = (rect.height() + sampleSize - 1) / sampleSize;
+            int[] pixels = new int[rect.width() * rect.height()];
+            mImage.getPixels(pixels, 0, rect.width(), rect.left, rect.top, rect.width(), rect.height());
+
+            Bitmap region = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int[] sums = new int[4];
+                    int count = 0;
+                    for (int sy = y * sampleSize; sy < Math.min((y + 1) * sampleSize, rect.height()); sy++) {
+                        for (int sx = x * sampleSize; sx < Math.min((x + 1) * sampleSize, rect.width()); sx++) {
+                            int pixel = pixels[sy * rect.width() + sx];
+                            for (int channel = 0; channel < 4; channel++) {
+                                sums[channel] += pixel >>> (channel * 8) & 0xff;
+                            }
+                            count++;
+                        }
+                    }
+
+                    int pixel = 0;
+                    for (int channel = 0; channel < 4; channel++) {
+                        pixel |= (sums[channel] + count / 2) / count << (channel * 8);
+                    }
+                    region.setPixel(x, y, pixel);
+                }
+            }
+            return region;
+        }
+
+        @Implementation
+        protected void recycle() {
+            mImage.recycle();
+        }
+    }
+}
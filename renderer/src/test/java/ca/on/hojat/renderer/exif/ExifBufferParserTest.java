@@ -0,0 +1,358 @@
+package ca.on.hojat.renderer.exif;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Compares the in place {@link ExifBufferParser} with the stream based {@link ExifReader} on a corpus of
+ * generated files, both must give the same tags, the same thumbnail and the same bytes when written back.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ExifBufferParserTest {
+
+    private static final int[] OPTIONS = {
+            ExifInterface.Options.OPTION_ALL,
+            ExifInterface.Options.OPTION_IFD_0,
+            ExifInterface.Options.OPTION_IFD_0 | ExifInterface.Options.OPTION_IFD_GPS,
+            ExifInterface.Options.OPTION_IFD_EXIF | ExifInterface.Options.OPTION_IFD_INTEROPERABILITY,
+            ExifInterface.Options.OPTION_IFD_1 | ExifInterface.Options.OPTION_THUMBNAIL,
+    };
+
+    private static final byte[] THUMBNAIL = {
+            (byte) 0xFF, (byte) 0xD8, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, (byte) 0xFF, (byte) 0xD9
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void bufferParserMatchesStreamParser() throws IOException {
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            for (boolean withThumbnail : new boolean[]{false, true}) {
+                byte[] jpeg = buildJpeg(buildTiff(order, withThumbnail));
+                for (int options : OPTIONS) {
+                    ExifInterface stream = new ExifInterface();
+                    stream.readExif(new ByteArrayInputStream(jpeg), options);
+                    ExifInterface buffer = new ExifInterface();
+                    buffer.readExif(ByteBuffer.wrap(jpeg), options);
+
+                    String name = order + ", thumbnail " + withThumbnail + ", options " + options;
+                    assertSameExif(name, stream, buffer);
+                    if (options == ExifInterface.Options.OPTION_ALL) {
+                        // only a complete read can be written back
+                        assertArrayEquals(name, write(stream, jpeg), write(buffer, jpeg));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mappedFileMatchesStreamParser() throws IOException {
+        byte[] jpeg = buildJpeg(buildTiff(ByteOrder.LITTLE_ENDIAN, true));
+        File file = folder.newFile("corpus.jpg");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(jpeg);
+        }
+
+        ExifInterface stream = new ExifInterface();
+        stream.readExif(new ByteArrayInputStream(jpeg), ExifInterface.Options.OPTION_ALL);
+        ExifInterface mapped = new ExifInterface();
+        mapped.readExifMapped(file.getAbsolutePath(), ExifInterface.Options.OPTION_ALL);
+
+        assertSameExif("mapped", stream, mapped);
+        assertArrayEquals(THUMBNAIL, mapped.getThumbnail());
+        assertArrayEquals(write(stream, jpeg), write(mapped, jpeg));
+    }
+
+    @Test
+    public void valuesAreDecodedOnFirstAccess() throws IOException {
+        byte[] jpeg = buildJpeg(buildTiff(ByteOrder.BIG_ENDIAN, false));
+        ByteBuffer buffer = ByteBuffer.wrap(jpeg);
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(buffer, ExifInterface.Options.OPTION_ALL);
+
+        // nothing was decoded while parsing, so the value comes from the buffer as it is now
+        int make = indexOf(jpeg, "Canon".getBytes(StandardCharsets.US_ASCII));
+        System.arraycopy("Nikon".getBytes(StandardCharsets.US_ASCII), 0, jpeg, make, 5);
+        assertEquals("Nikon", exif.getTagStringValue(ExifInterface.TAG_MAKE).trim());
+    }
+
+    @Test
+    public void truncatedFilesFailWithIOException() {
+        byte[] jpeg = buildJpeg(buildTiff(ByteOrder.LITTLE_ENDIAN, true));
+        for (int length = 0; length < jpeg.length; length++) {
+            try {
+                new ExifInterface().readExif(ByteBuffer.wrap(jpeg, 0, length), ExifInterface.Options.OPTION_ALL);
+            } catch (IOException ignored) {
+                // the only acceptable failure
+            }
+        }
+    }
+
+    private static void assertSameExif(String name, ExifInterface expected, ExifInterface actual) {
+        List<ExifTag> expectedTags = sorted(expected.getAllTags());
+        List<ExifTag> actualTags = sorted(actual.getAllTags());
+        assertEquals(name, expectedTags.size(), actualTags.size());
+        for (int i = 0; i < expectedTags.size(); i++) {
+            assertEquals(name, expectedTags.get(i), actualTags.get(i));
+        }
+        assertArrayEquals(name, expected.getThumbnail(), actual.getThumbnail());
+    }
+
+    private static List<ExifTag> sorted(List<ExifTag> tags) {
+        List<ExifTag> result = tags == null ? new ArrayList<ExifTag>() : new ArrayList<>(tags);
+        result.sort(Comparator.comparingInt(ExifTag::getIfd).thenComparingInt(ExifTag::getTagId));
+        return result;
+    }
+
+    private static byte[] write(ExifInterface exif, byte[] jpeg) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(new ByteArrayInputStream(jpeg), out);
+        return out.toByteArray();
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new AssertionError("pattern not found");
+    }
+
+    // region: corpus
+
+    /**
+     * Wraps the TIFF data in a JPEG with an APP1 segment, a quantization table, a frame header and an empty scan.
+     */
+    private static byte[] buildJpeg(byte[] tiff) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+
+        byte[] exifHeader = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+        writeSegment(out, 0xE1, concat(exifHeader, tiff));
+
+        byte[] dqt = new byte[65];
+        for (int i = 1; i < dqt.length; i++) {
+            dqt[i] = (byte) (1 + i / 8);
+        }
+        writeSegment(out, 0xDB, dqt);
+        writeSegment(out, 0xC0, new byte[]{8, 0, 48, 0, 64, 1, 1, 0x11, 0});
+        writeSegment(out, 0xDA, new byte[]{1, 1, 0, 0, 63, 0});
+        out.write(0);
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, byte[] data) {
+        int length = data.length + 2;
+        out.write(0xFF);
+        out.write(marker);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(data, 0, data.length);
+    }
+
+    /**
+     * Builds a TIFF header with every IFD, inline and out of line values of every common type and an unknown tag.
+     */
+    private static byte[] buildTiff(ByteOrder order, boolean withThumbnail) {
+        Ifd ifd0 = new Ifd();
+        Ifd exif = new Ifd();
+        Ifd interop = new Ifd();
+        Ifd gps = new Ifd();
+        Ifd ifd1 = new Ifd();
+
+        ifd0.shorts(order, 0x0102, 8, 8, 8);
+        ifd0.ascii(0x010F, "Canon");
+        ifd0.ascii(0x0110, "M5");
+        ifd0.shorts(order, 0x0112, 6);
+        ifd0.rationals(order, ExifTag.TYPE_UNSIGNED_RATIONAL, 0x011A, 72, 1);
+        ifd0.ascii(0x0132, "2022:10:09 11:12:13");
+        ifd0.pointer(0x8769, exif);
+        ifd0.pointer(0x8825, gps);
+        ifd0.ascii(0xC000, "unknown");
+
+        exif.rationals(order, ExifTag.TYPE_UNSIGNED_RATIONAL, 0x829A, 1, 250);
+        exif.ascii(0x9003, "2022:10:09 11:12:13");
+        exif.rationals(order, ExifTag.TYPE_RATIONAL, 0x9204, -1, 3);
+        exif.undefined(0x9286, "ASCII\0\0\0a comment".getBytes(StandardCharsets.US_ASCII));
+        exif.longs(order, 0xA002, 64);
+        exif.pointer(0xA005, interop);
+
+        interop.ascii(0x0001, "R98");
+
+        gps.ascii(0x0001, "N");
+        gps.rationals(order, ExifTag.TYPE_UNSIGNED_RATIONAL, 0x0002, 46, 1, 29, 1, 3012, 100);
+        gps.ascii(0x0003, "W");
+        gps.rationals(order, ExifTag.TYPE_UNSIGNED_RATIONAL, 0x0004, 80, 1, 59, 1, 4, 1);
+        gps.bytes(0x0005, 0);
+        gps.rationals(order, ExifTag.TYPE_UNSIGNED_RATIONAL, 0x0006, 3481, 10);
+
+        List<Ifd> ifds = new ArrayList<>(Arrays.asList(ifd0, exif, interop, gps));
+        if (withThumbnail) {
+            ifd1.shorts(order, 0x0103, 6);
+            ifd1.blob(0x0201, THUMBNAIL);
+            ifd1.longs(order, 0x0202, THUMBNAIL.length);
+            ifd0.next = ifd1;
+            ifds.add(ifd1);
+        }
+
+        // every IFD is followed by its values, the offsets are known before anything is written
+        int offset = 8;
+        for (Ifd ifd : ifds) {
+            ifd.offset = offset;
+            offset += 2 + ifd.entries.size() * 12 + 4;
+            for (Entry entry : ifd.entries) {
+                int size = entry.blob != null ? entry.blob.length : entry.value.length;
+                if (entry.blob != null || size > 4) {
+                    entry.dataOffset = offset;
+                    offset += size + (size & 1);
+                }
+            }
+        }
+
+        ByteBuffer tiff = ByteBuffer.allocate(offset).order(order);
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.put(order == ByteOrder.BIG_ENDIAN ? (byte) 'M' : (byte) 'I');
+        tiff.putShort((short) 42);
+        tiff.putInt(8);
+        for (Ifd ifd : ifds) {
+            tiff.position(ifd.offset);
+            tiff.putShort((short) ifd.entries.size());
+            for (Entry entry : ifd.entries) {
+                tiff.putShort((short) entry.tag);
+                tiff.putShort(entry.type);
+                tiff.putInt(entry.count);
+                if (entry.target != null) {
+                    tiff.putInt(entry.target.offset);
+                } else if (entry.blob != null) {
+                    tiff.putInt(entry.dataOffset);
+                } else if (entry.dataOffset != 0) {
+                    tiff.putInt(entry.dataOffset);
+                } else {
+                    tiff.put(Arrays.copyOf(entry.value, 4));
+                }
+            }
+            tiff.putInt(ifd.next == null ? 0 : ifd.next.offset);
+            for (Entry entry : ifd.entries) {
+                if (entry.dataOffset != 0) {
+                    tiff.position(entry.dataOffset);
+                    tiff.put(entry.blob != null ? entry.blob : entry.value);
+                }
+            }
+        }
+        return tiff.array();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static final class Entry {
+        int tag;
+        short type;
+        int count;
+        byte[] value;
+        byte[] blob;
+        Ifd target;
+        int dataOffset;
+    }
+
+    private static final class Ifd {
+        final List<Entry> entries = new ArrayList<>();
+        Ifd next;
+        int offset;
+
+        private void add(int tag, short type, int count, byte[] value) {
+            Entry entry = new Entry();
+            entry.tag = tag;
+            entry.type = type;
+            entry.count = count;
+            entry.value = value;
+            entries.add(entry);
+        }
+
+        void ascii(int tag, String value) {
+            byte[] bytes = (value + '\0').getBytes(StandardCharsets.US_ASCII);
+            add(tag, ExifTag.TYPE_ASCII, bytes.length, bytes);
+        }
+
+        void undefined(int tag, byte[] value) {
+            add(tag, ExifTag.TYPE_UNDEFINED, value.length, value);
+        }
+
+        void bytes(int tag, int... values) {
+            byte[] bytes = new byte[values.length];
+            for (int i = 0; i < values.length; i++) {
+                bytes[i] = (byte) values[i];
+            }
+            add(tag, ExifTag.TYPE_UNSIGNED_BYTE, values.length, bytes);
+        }
+
+        void shorts(ByteOrder order, int tag, int... values) {
+            ByteBuffer buffer = ByteBuffer.allocate(values.length * 2).order(order);
+            for (int value : values) {
+                buffer.putShort((short) value);
+            }
+            add(tag, ExifTag.TYPE_UNSIGNED_SHORT, values.length, buffer.array());
+        }
+
+        void longs(ByteOrder order, int tag, int... values) {
+            ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(order);
+            for (int value : values) {
+                buffer.putInt(value);
+            }
+            add(tag, ExifTag.TYPE_UNSIGNED_LONG, values.length, buffer.array());
+        }
+
+        void rationals(ByteOrder order, short type, int tag, int... values) {
+            ByteBuffer buffer = ByteBuffer.allocate(values.length * 4).order(order);
+            for (int value : values) {
+                buffer.putInt(value);
+            }
+            add(tag, type, values.length / 2, buffer.array());
+        }
+
+        void pointer(int tag, Ifd target) {
+            add(tag, ExifTag.TYPE_UNSIGNED_LONG, 1, new byte[4]);
+            entries.get(entries.size() - 1).target = target;
+        }
+
+        void blob(int tag, byte[] data) {
+            add(tag, ExifTag.TYPE_UNSIGNED_LONG, 1, new byte[4]);
+            entries.get(entries.size() - 1).blob = data;
+        }
+    }
+
+    // endregion
+}
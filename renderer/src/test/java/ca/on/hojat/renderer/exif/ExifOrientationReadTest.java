@@ -0,0 +1,136 @@
+package ca.on.hojat.renderer.exif;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Reading only the orientation tag has to find the same value as parsing the whole EXIF data. The
+ * photo carries the EXIF data of a typical camera, so the tag is followed by large values the
+ * orientation read skips.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class ExifOrientationReadTest {
+
+    private static final int ORIENTATION = 6;
+
+    private byte[] mJpeg;
+
+    @Before
+    public void setUp() throws IOException {
+        mJpeg = buildCameraJpeg();
+    }
+
+    @Test
+    public void orientationOnlyReadFindsTheOrientation() throws IOException {
+        assertEquals(ORIENTATION, readAll());
+        assertEquals(ORIENTATION, readOrientation());
+    }
+
+    @Test
+    public void orientationIsFoundBehindAnXmpSegment() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(mJpeg, 0, 2);
+        writeSegment(out, 0xE1, "http://ns.adobe.com/xap/1.0/\0<x:xmpmeta/>".getBytes(StandardCharsets.US_ASCII));
+        out.write(mJpeg, 2, mJpeg.length - 2);
+        mJpeg = out.toByteArray();
+
+        assertEquals(ORIENTATION, readAll());
+        assertEquals(ORIENTATION, readOrientation());
+    }
+
+    private int readAll() throws IOException {
+        ExifInterface exif = new ExifInterface();
+        exif.readExif(new ByteArrayInputStream(mJpeg), ExifInterface.Options.OPTION_ALL);
+        return exif.getTag(ExifInterface.TAG_ORIENTATION).getValueAsInt(-1);
+    }
+
+    private int readOrientation() throws IOException {
+        ExifInterface exif = new ExifInterface();
+        exif.readExifTags(new ByteArrayInputStream(mJpeg), ExifInterface.TAG_ORIENTATION);
+        return exif.getTag(ExifInterface.TAG_ORIENTATION).getValueAsInt(-1);
+    }
+
+    /**
+     * A JPEG with the EXIF data of a typical camera: the orientation in IFD0, a few dozen tags in the
+     * other IFDs, a large maker note and a thumbnail.
+     */
+    private static byte[] buildCameraJpeg() throws IOException {
+        Random random = new Random(31);
+        ExifInterface exif = new ExifInterface();
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKE, "Camera maker"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MODEL, "Camera model"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ORIENTATION, (short) ORIENTATION));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_SOFTWARE, "Firmware 1.0"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_DATE_TIME, "2022:10:09 11:12:13"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_DATE_TIME_ORIGINAL, "2022:10:09 11:12:13"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_DATE_TIME_DIGITIZED, "2022:10:09 11:12:13"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_EXPOSURE_TIME, new Rational(1, 250)));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_F_NUMBER, new Rational(18, 10)));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_FOCAL_LENGTH, new Rational(42, 10)));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_ISO_SPEED_RATINGS, (short) 100));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_PIXEL_X_DIMENSION, 4000));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_PIXEL_Y_DIMENSION, 3000));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_GPS_LATITUDE_REF, "N"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_GPS_LATITUDE,
+                new Rational[]{new Rational(46, 1), new Rational(29, 1), new Rational(3012, 100)}));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_GPS_LONGITUDE_REF, "W"));
+        exif.setTag(exif.buildTag(ExifInterface.TAG_GPS_LONGITUDE,
+                new Rational[]{new Rational(80, 1), new Rational(59, 1), new Rational(4, 1)}));
+
+        byte[] makerNote = new byte[32 * 1024];
+        random.nextBytes(makerNote);
+        exif.setTag(exif.buildTag(ExifInterface.TAG_MAKER_NOTE, makerNote));
+
+        byte[] thumbnail = new byte[16 * 1024];
+        random.nextBytes(thumbnail);
+        thumbnail[0] = (byte) 0xFF;
+        thumbnail[1] = (byte) 0xD8;
+        thumbnail[thumbnail.length - 2] = (byte) 0xFF;
+        thumbnail[thumbnail.length - 1] = (byte) 0xD9;
+        assertTrue(exif.setCompressedThumbnail(thumbnail));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exif.writeExif(new ByteArrayInputStream(buildPlainJpeg()), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * A JPEG without EXIF data: a quantization table, a frame header and an empty scan.
+     */
+    private static byte[] buildPlainJpeg() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+
+        byte[] dqt = new byte[65];
+        Arrays.fill(dqt, 1, dqt.length, (byte) 1);
+        writeSegment(out, 0xDB, dqt);
+        writeSegment(out, 0xC0, new byte[]{8, 0, 48, 0, 64, 1, 1, 0x11, 0});
+        writeSegment(out, 0xDA, new byte[]{1, 1, 0, 0, 63, 0});
+        out.write(0);
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    private static void writeSegment(ByteArrayOutputStream out, int marker, byte[] data) {
+        int length = data.length + 2;
+        out.write(0xFF);
+        out.write(marker);
+        out.write(length >> 8);
+        out.write(length & 0xFF);
+        out.write(data, 0, data.length);
+    }
+}
@@ -0,0 +1,399 @@
+package ca.on.hojat.renderer.jpeg;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.plugins.jpeg.JPEGQTable;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.w3c.dom.NodeList;
+
+/**
+ * Checks the coefficients of the transformed JPEGs against the ones of their source, and the decoded
+ * pixels against the source pixels transformed in the pixel domain. The written files are compared
+ * bit for bit with the ones libjpeg writes, which is the library jpegtran writes its outputs with.
+ */
+public class JpegTransformTest {
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+
+    private static final int[][] SIZES = {{64, 48}, {67, 45}, {123, 77}, {17, 33}};
+
+    @Test
+    public void coefficientsAreMovedBitExactly() throws IOException {
+        for (boolean gray : new boolean[]{false, true}) {
+            for (int[] size : SIZES) {
+                for (boolean progressive : new boolean[]{false, true}) {
+                    byte[] source = encode(createImage(size[0], size[1], gray), progressive);
+                    for (JpegTransform.Transform transform : JpegTransform.Transform.values()) {
+                        byte[] result = transform(source, transform, false, true);
+                        String name = size[0] + "x" + size[1] + (gray ? " gray" : " color")
+                                + (progressive ? " progressive " : " baseline ") + transform;
+                        assertCoefficients(name, source, result, transform);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pixelsMatchTheReferenceTransform() throws IOException {
+        for (boolean gray : new boolean[]{false, true}) {
+            // whole MCUs, so nothing gets trimmed and every pixel has a source
+            byte[] source = encode(createImage(64, 48, gray), false);
+            BufferedImage original = ImageIO.read(new ByteArrayInputStream(source));
+            for (JpegTransform.Transform transform : JpegTransform.Transform.values()) {
+                BufferedImage result = ImageIO.read(new ByteArrayInputStream(transform(source, transform, false, false)));
+                String name = (gray ? "gray " : "color ") + transform;
+                assertEquals(name, transform.isTransposing() ? 48 : 64, result.getWidth());
+                assertEquals(name, transform.isTransposing() ? 64 : 48, result.getHeight());
+
+                // the decoders round the transposed blocks differently, the samples are off by a few at most
+                double psnr = getPsnr(original, result, transform);
+                assertTrue(name + ": " + psnr, psnr > (gray ? 45 : 35));
+            }
+        }
+    }
+
+    @Test
+    public void baselineJpegsAreWrittenLikeLibjpeg() throws IOException {
+        // ImageIO writes baseline JPEGs with libjpeg and the standard Huffman tables, like jpegtran
+        // does without -optimize, so copying the coefficients has to give back the same file
+        for (boolean gray : new boolean[]{false, true}) {
+            for (int[] size : SIZES) {
+                byte[] source = encode(createImage(size[0], size[1], gray), false);
+                String name = size[0] + "x" + size[1] + (gray ? " gray" : " color");
+                assertArrayEquals(name, source, transform(source, JpegTransform.Transform.NONE, false, false));
+            }
+        }
+    }
+
+    @Test
+    public void flatBlocksAreWrittenLikeLibjpeg() throws IOException {
+        // without frequencies in the blocks and with a symmetric quantization table the transform in the
+        // pixel domain is lossless too, so libjpeg writing the transformed pixels is the reference output
+        for (boolean gray : new boolean[]{false, true}) {
+            BufferedImage original = createFlatImage(64, 48, gray ? 8 : 16, gray);
+            byte[] source = encodeWithFlatTables(original);
+            for (JpegTransform.Transform transform : JpegTransform.Transform.values()) {
+                byte[] expected = encodeWithFlatTables(transformPixels(original, transform));
+                String name = (gray ? "gray " : "color ") + transform;
+                assertArrayEquals(name, expected, transform(source, transform, false, false));
+            }
+        }
+    }
+
+    @Test
+    public void fourRotationsGiveBackTheSource() throws IOException {
+        byte[] source = encode(createImage(64, 48, false), true);
+        byte[] expected = transform(source, JpegTransform.Transform.NONE, false, false);
+
+        byte[] result = source;
+        for (int i = 0; i < 4; i++) {
+            result = transform(result, JpegTransform.Transform.ROTATE_90, false, false);
+        }
+        assertArrayEquals(expected, result);
+
+        result = transform(source, JpegTransform.Transform.TRANSPOSE, false, false);
+        result = transform(result, JpegTransform.Transform.TRANSPOSE, false, false);
+        assertArrayEquals(expected, result);
+    }
+
+    @Test
+    public void exifOrientationIsAppliedAndReset() throws IOException {
+        byte[] source = insertExif(encode(createImage(64, 48, false), false), 6);
+        byte[] result = transform(source, JpegTransform.Transform.NONE, true, false);
+
+        assertCoefficients("orientation 6", source, result, JpegTransform.Transform.ROTATE_90);
+        int orientation = indexOf(result, new byte[]{0x01, 0x12, 0x00, 0x03}) + 8;
+        assertEquals(1, ((result[orientation] & 0xFF) << 8) | (result[orientation + 1] & 0xFF));
+    }
+
+    @Test
+    public void partialMcusFailBeforeTheScansAreDecoded() {
+        // a 4000x3000 4:2:0 photo has 16x16 MCUs, the last row of them is only half full. The scan has no
+        // Huffman tables, so getting past the frame header would fail with another error
+        byte[] header = createHeader(4000, 3000);
+        for (JpegTransform.Transform transform : new JpegTransform.Transform[]{
+                JpegTransform.Transform.ROTATE_90, JpegTransform.Transform.ROTATE_180,
+                JpegTransform.Transform.FLIP_VERTICAL, JpegTransform.Transform.TRANSVERSE}) {
+            assertFailure(header, transform, false, "partial MCUs");
+        }
+        assertFailure(insertExif(header, 6), JpegTransform.Transform.NONE, true, "partial MCUs");
+
+        // the right edge is whole, so mirroring it is fine and the scan gets decoded
+        assertFailure(header, JpegTransform.Transform.FLIP_HORIZONTAL, false, "Missing Huffman table");
+        assertFailure(header, JpegTransform.Transform.ROTATE_270, false, "Missing Huffman table");
+    }
+
+    private static void assertFailure(byte[] jpeg, JpegTransform.Transform transform, boolean applyExif, String message) {
+        try {
+            transform(jpeg, transform, applyExif, false);
+            fail(transform + " didn't fail");
+        } catch (IOException e) {
+            assertTrue(transform + ": " + e.getMessage(), e.getMessage().contains(message));
+        }
+    }
+
+    /**
+     * Every output block has to be the source block it comes from, transposed and with the signs of its
+     * odd frequencies flipped in the mirrored directions. The quantization tables are transposed too.
+     */
+    private static void assertCoefficients(String name, byte[] source, byte[] result, JpegTransform.Transform transform)
+            throws IOException {
+        JpegImage in = JpegCoefficientReader.read(new ByteArrayInputStream(source), Long.MAX_VALUE, frame -> {
+        });
+        JpegImage out = JpegCoefficientReader.read(new ByteArrayInputStream(result), Long.MAX_VALUE, frame -> {
+        });
+        boolean transposing = transform.isTransposing();
+        int flipX = transposing ? transform.b : transform.a;
+        int flipY = transposing ? transform.c : transform.d;
+        assertEquals(name, in.components.length, out.components.length);
+
+        for (int c = 0; c < in.components.length; c++) {
+            JpegImage.Component inComponent = in.components[c];
+            JpegImage.Component outComponent = out.components[c];
+            int columns = JpegCoefficientReader.ceilDiv(JpegCoefficientReader.ceilDiv(
+                    out.width * outComponent.horizontalSampling, out.maxHorizontalSampling), 8);
+            int rows = JpegCoefficientReader.ceilDiv(JpegCoefficientReader.ceilDiv(
+                    out.height * outComponent.verticalSampling, out.maxVerticalSampling), 8);
+            int sourceColumns = transposing ? rows : columns;
+            int sourceRows = transposing ? columns : rows;
+
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    // coordinates doubled and relative to the center, so they stay integers
+                    int x = 2 * column - (columns - 1);
+                    int y = 2 * row - (rows - 1);
+                    int sourceColumn = ((sourceColumns - 1) + transform.a * x + transform.c * y) / 2;
+                    int sourceRow = ((sourceRows - 1) + transform.b * x + transform.d * y) / 2;
+                    int inOffset = 64 * (sourceRow * inComponent.blocksPerLine + sourceColumn);
+                    int outOffset = 64 * (row * outComponent.blocksPerLine + column);
+
+                    for (int v = 0; v < 8; v++) {
+                        for (int u = 0; u < 8; u++) {
+                            int expected = inComponent.coefficients[inOffset + (transposing ? u * 8 + v : v * 8 + u)];
+                            if ((flipX < 0 && (u & 1) == 1) != (flipY < 0 && (v & 1) == 1)) {
+                                expected = -expected;
+                            }
+                            assertEquals(name + ", component " + c + ", block " + column + "," + row,
+                                    expected, outComponent.coefficients[outOffset + v * 8 + u]);
+                        }
+                    }
+                }
+            }
+
+            int[] inTable = in.quantizationTables[inComponent.quantizationTable];
+            int[] outTable = out.quantizationTables[outComponent.quantizationTable];
+            for (int i = 0; i < 64; i++) {
+                assertEquals(name, inTable[transposing ? (i % 8) * 8 + i / 8 : i], outTable[i]);
+            }
+        }
+    }
+
+    private static double getPsnr(BufferedImage original, BufferedImage result, JpegTransform.Transform transform) {
+        int width = result.getWidth();
+        int height = result.getHeight();
+        int sourceWidth = original.getWidth();
+        int sourceHeight = original.getHeight();
+        double error = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int centerX = 2 * x - (width - 1);
+                int centerY = 2 * y - (height - 1);
+                int sourceX = ((sourceWidth - 1) + transform.a * centerX + transform.c * centerY) / 2;
+                int sourceY = ((sourceHeight - 1) + transform.b * centerX + transform.d * centerY) / 2;
+                int expected = original.getRGB(sourceX, sourceY);
+                int actual = result.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = ((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF);
+                    error += difference * difference;
+                }
+            }
+        }
+        error /= 3.0 * width * height;
+        return error == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / error);
+    }
+
+    private static BufferedImage transformPixels(BufferedImage original, JpegTransform.Transform transform) {
+        int sourceWidth = original.getWidth();
+        int sourceHeight = original.getHeight();
+        int width = transform.isTransposing() ? sourceHeight : sourceWidth;
+        int height = transform.isTransposing() ? sourceWidth : sourceHeight;
+        BufferedImage result = new BufferedImage(width, height, original.getType());
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int centerX = 2 * x - (width - 1);
+                int centerY = 2 * y - (height - 1);
+                int sourceX = ((sourceWidth - 1) + transform.a * centerX + transform.c * centerY) / 2;
+                int sourceY = ((sourceHeight - 1) + transform.b * centerX + transform.d * centerY) / 2;
+                // the samples are copied as they are, the RGB values of a gray image get converted
+                result.getRaster().setDataElements(x, y, original.getRaster().getDataElements(sourceX, sourceY, null));
+            }
+        }
+        return result;
+    }
+
+    private static byte[] transform(byte[] jpeg, JpegTransform.Transform transform, boolean applyExif, boolean trim)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JpegTransform.transform(new ByteArrayInputStream(jpeg), out, transform, applyExif, trim);
+        return out.toByteArray();
+    }
+
+    // region: Test images
+
+    private static BufferedImage createImage(int width, int height, boolean gray) {
+        BufferedImage image = new BufferedImage(width, height,
+                gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(1);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int red = (x * 4) & 0xFF;
+                int green = (y * 5) & 0xFF;
+                int blue = ((x * y) & 0xFF) ^ random.nextInt(30);
+                image.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        return image;
+    }
+
+    private static byte[] encode(BufferedImage image, boolean progressive) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.95f);
+        if (progressive) {
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * An image with one color for every square of the given size, so every block of the JPEG is flat.
+     */
+    private static BufferedImage createFlatImage(int width, int height, int size, boolean gray) {
+        BufferedImage image = new BufferedImage(width, height,
+                gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(1);
+        for (int top = 0; top < height; top += size) {
+            for (int left = 0; left < width; left += size) {
+                int color = random.nextInt();
+                for (int y = top; y < top + size; y++) {
+                    for (int x = left; x < left + size; x++) {
+                        image.setRGB(x, y, color);
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Encode the image with the standard Huffman tables and quantization tables that stay the same
+     * when they are transposed.
+     */
+    private static byte[] encodeWithFlatTables(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+        IIOMetadataNode tree = (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA_FORMAT);
+        int[] values = new int[64];
+        Arrays.fill(values, 4);
+        NodeList tables = tree.getElementsByTagName("dqtable");
+        for (int i = 0; i < tables.getLength(); i++) {
+            ((IIOMetadataNode) tables.item(i)).setUserObject(new JPEGQTable(values));
+        }
+        metadata.setFromTree(JPEG_METADATA_FORMAT, tree);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(out);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The headers of a 4:2:0 YCbCr JPEG with a scan that has no Huffman tables.
+     */
+    private static byte[] createHeader(int width, int height) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeBytes(out, 0xFF, 0xD8);
+        writeBytes(out, 0xFF, 0xDB, 0, 67, 0);
+        for (int i = 0; i < 64; i++) {
+            out.write(1);
+        }
+        writeBytes(out, 0xFF, 0xC0, 0, 17, 8, height >> 8, height & 0xFF, width >> 8, width & 0xFF, 3);
+        writeBytes(out, 1, 0x22, 0, 2, 0x11, 0, 3, 0x11, 0);
+        writeBytes(out, 0xFF, 0xDA, 0, 12, 3, 1, 0, 2, 0x11, 3, 0x11, 0, 63, 0);
+        writeBytes(out, 0, 0, 0, 0, 0xFF, 0xD9);
+        return out.toByteArray();
+    }
+
+    /**
+     * Insert an EXIF segment with only the orientation tag after the SOI marker.
+     */
+    private static byte[] insertExif(byte[] jpeg, int orientation) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(jpeg, 0, 2);
+        byte[] exif = "Exif\0\0".getBytes(StandardCharsets.US_ASCII);
+        writeBytes(out, 0xFF, 0xE1, 0, 2 + exif.length + 26);
+        out.write(exif, 0, exif.length);
+        writeBytes(out, 'M', 'M', 0, 42, 0, 0, 0, 8);
+        writeBytes(out, 0, 1, 0x01, 0x12, 0, 3, 0, 0, 0, 1, 0, orientation, 0, 0);
+        writeBytes(out, 0, 0, 0, 0);
+        out.write(jpeg, 2, jpeg.length - 2);
+        return out.toByteArray();
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, int... values) {
+        for (int value : values) {
+            out.write(value);
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        throw new AssertionError("pattern not found");
+    }
+
+    // endregion
+}
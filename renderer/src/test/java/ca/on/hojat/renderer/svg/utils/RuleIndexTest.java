@@ -0,0 +1,234 @@
+package ca.on.hojat.renderer.svg.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import ca.on.hojat.renderer.svg.SVGParseException;
+
+/**
+ * The rules an element gets through the {@link CSSParser.RuleIndex} must be exactly the ones
+ * found by matching every rule of the document against it, in the same order. The documents are
+ * parsed with the XML parser of the framework, so they need Robolectric.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RuleIndexTest {
+
+    private static final String[] TAGS = {"g", "rect", "circle", "path", "ellipse", "line"};
+
+    private static final String[] CLASSES = {"a", "b", "c", "d", "e", "f"};
+
+    private static final int ID_COUNT = 40;
+
+    // The last parts of selectors, only some of them can be indexed
+    private static final String[] SELECTOR_TAILS = {
+            "", "", "", ":first-child", ":last-child", ":nth-child(2n+1)", ":nth-last-of-type(2)",
+            ":only-of-type", ":not(.a)", ":not(#e3)", ":target", ":root", ":empty", "[class~=b]",
+            "[class=c]", "[id|=e7]", "[id=e5]", "[fill]"
+    };
+
+    @Test
+    public void handwrittenSelectorsMatchLikeBefore() throws SVGParseException {
+        String css = "* { fill: #000001 }"
+                + " svg { fill: #000002 }"
+                + " rect, circle { fill: #000003 }"
+                + " .a { fill: #000004 }"
+                + " .a.b { fill: #000005 }"
+                + " rect.b { fill: #000006 }"
+                + " #e1 { fill: #000007 }"
+                + " g#e2.a { fill: #000008 }"
+                + " g > .b { fill: #000009 }"
+                + " g .c rect { fill: #00000a }"
+                + " rect + circle { fill: #00000b }"
+                + " .a + #e6 { fill: #00000c }"
+                + " #e4 > * { fill: #00000d }"
+                + " *.d { fill: #00000e }"
+                + " clippath { fill: #00000f }"
+                + " clipPath { fill: #000010 }"
+                + " lineargradient stop:last-child { fill: #000011 }"
+                + " text > tspan.a { fill: #000012 }"
+                + " tspan { fill: #000013 }"
+                + " :not(.a) { fill: #000014 }"
+                + " g:first-child { fill: #000015 }"
+                + " .missing, #missing, missing { fill: #000016 }"
+                + " [class~=a] { fill: #000017 }"
+                + " :target { fill: #000018 }"
+                + " #e5.a.b rect { fill: #000019 }";
+        String svg = "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"100\" height=\"100\">"
+                + "<style>" + css + "</style>"
+                + "<defs><linearGradient id=\"e0\"><stop offset=\"0\"/><stop class=\"a\" offset=\"1\"/></linearGradient>"
+                + "<clipPath id=\"e9\"><rect class=\"d\" width=\"5\" height=\"5\"/></clipPath></defs>"
+                + "<g id=\"e2\" class=\"a\">"
+                + "<rect id=\"e1\" class=\"b\" width=\"10\" height=\"10\"/>"
+                + "<circle class=\"a a b\" r=\"2\"/>"
+                + "<g id=\"e4\" class=\"c\"><rect class=\"A\" width=\"1\" height=\"1\"/><path id=\"e6\" d=\"M0 0h1\"/></g>"
+                + "</g>"
+                + "<g id=\"e5\" class=\"b a\"><g><rect class=\"d b\" width=\"1\" height=\"1\"/></g></g>"
+                + "<text class=\"c\">x<tspan class=\"a\">y</tspan><tspan id=\"e3\">z</tspan></text>"
+                + "</svg>";
+
+        SVGBase document = SVGBase.getFromString(svg);
+        assertEquals(28, document.getCSSRules().size());
+        int candidates = assertSameRules(document, "e3");
+
+        // most rules are only tried on the elements they can be about
+        List<SVGBase.SvgElementBase> elements = getElements(document);
+        assertTrue(candidates + " candidates", candidates < elements.size() * document.getCSSRules().size() / 2);
+    }
+
+    @Test
+    public void generatedSelectorsMatchLikeBefore() throws SVGParseException {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            SVGBase document = SVGBase.getFromString(createDocument(random));
+            assertSameRules(document, "e" + random.nextInt(ID_COUNT));
+        }
+    }
+
+    @Test
+    public void theIndexFollowsChangesOfTheRules() throws SVGParseException {
+        SVGBase document = SVGBase.getFromString(createDocument(new Random(7)));
+        assertSameRules(document, null);
+
+        CSSParser parser = new CSSParser(CSSParser.Source.RenderOptions, null);
+        document.addCSSRules(parser.parse("rect { fill: red } .b > .c { fill: blue } #e2 { fill: green } * { fill: none }"));
+        assertSameRules(document, null);
+
+        int count = document.getCSSRules().size();
+        document.clearRenderCSSRules();
+        assertEquals(count - 4, document.getCSSRules().size());
+        assertSameRules(document, null);
+    }
+
+    /*
+     * Compares the rules found through the index with the ones matched one by one, for every element
+     * of the document. Returns how many candidates the index gave.
+     */
+    private static int assertSameRules(SVGBase document, String targetId) {
+        CSSParser.RuleMatchContext context = new CSSParser.RuleMatchContext();
+        if (targetId != null)
+            context.targetElement = document.getElementById(targetId);
+
+        List<CSSParser.Rule> rules = document.getCSSRules();
+        CSSParser.RuleIndex index = document.getCSSRuleIndex();
+        int candidateCount = 0;
+        for (SVGBase.SvgElementBase element : getElements(document)) {
+            List<CSSParser.Rule> expected = new ArrayList<>();
+            for (CSSParser.Rule rule : rules) {
+                if (CSSParser.ruleMatch(context, rule.selector, element))
+                    expected.add(rule);
+            }
+
+            List<CSSParser.Rule> actual = new ArrayList<>();
+            int previous = -1;
+            for (int position : index.getCandidates(element)) {
+                assertTrue("candidates out of order", position > previous);
+                previous = position;
+                candidateCount++;
+
+                CSSParser.Rule rule = index.get(position);
+                if (CSSParser.ruleMatch(context, rule.selector, element))
+                    actual.add(rule);
+            }
+
+            String message = String.format("<%s id=%s class=%s>", element.getNodeName(), element.id, element.classNames);
+            assertEquals(message, expected, actual);
+        }
+        return candidateCount;
+    }
+
+    private static List<SVGBase.SvgElementBase> getElements(SVGBase document) {
+        List<SVGBase.SvgElementBase> elements = new ArrayList<>();
+        addElements(document.getRootElement(), elements);
+        return elements;
+    }
+
+    private static void addElements(SVGBase.SvgObject obj, List<SVGBase.SvgElementBase> elements) {
+        if (obj instanceof SVGBase.SvgElementBase)
+            elements.add((SVGBase.SvgElementBase) obj);
+        if (obj instanceof SVGBase.SvgContainer) {
+            for (SVGBase.SvgObject child : ((SVGBase.SvgContainer) obj).getChildren())
+                addElements(child, elements);
+        }
+    }
+
+    /*
+     * A tree of groups and shapes with random ids and classes, styled by random selectors.
+     */
+    private static String createDocument(Random random) {
+        StringBuilder svg = new StringBuilder("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"100\" height=\"100\"><style>");
+        for (int i = 0; i < 60; i++) {
+            svg.append(i % 7 == 0 ? createSelector(random) + ", " + createSelector(random) : createSelector(random));
+            svg.append(String.format(Locale.US, " { fill: #%06x }\n", i));
+        }
+        svg.append("</style>");
+
+        int[] nextId = {0};
+        for (int i = 0; i < 4; i++)
+            appendElement(svg, random, 0, nextId);
+        return svg.append("</svg>").toString();
+    }
+
+    private static void appendElement(StringBuilder svg, Random random, int depth, int[] nextId) {
+        boolean group = depth < 3 && random.nextInt(3) == 0;
+        String tag = group ? "g" : TAGS[1 + random.nextInt(TAGS.length - 1)];
+        svg.append('<').append(tag);
+        if (nextId[0] < ID_COUNT && random.nextBoolean())
+            svg.append(" id=\"e").append(nextId[0]++).append('"');
+
+        int classCount = random.nextInt(4);
+        if (classCount > 0) {
+            svg.append(" class=\"");
+            for (int i = 0; i < classCount; i++) {
+                // the same class can be listed twice
+                svg.append(i > 0 ? " " : "").append(CLASSES[random.nextInt(CLASSES.length)]);
+            }
+            svg.append('"');
+        }
+
+        if (group) {
+            svg.append('>');
+            int childCount = random.nextInt(5);
+            for (int i = 0; i < childCount; i++)
+                appendElement(svg, random, depth + 1, nextId);
+            svg.append("</g>");
+        } else {
+            svg.append("/>");
+        }
+    }
+
+    private static String createSelector(Random random) {
+        StringBuilder selector = new StringBuilder();
+        int parts = 1 + random.nextInt(3);
+        for (int i = 0; i < parts; i++) {
+            if (i > 0)
+                selector.append(random.nextBoolean() ? " " : random.nextBoolean() ? " > " : " + ");
+
+            int kind = random.nextInt(3);
+            if (kind == 0)
+                selector.append(TAGS[random.nextInt(TAGS.length)]);
+            else if (kind == 1)
+                selector.append('*');
+            if (random.nextInt(4) == 0)
+                selector.append("#e").append(random.nextInt(ID_COUNT));
+
+            int classCount = random.nextInt(3);
+            for (int c = 0; c < classCount; c++)
+                selector.append('.').append(CLASSES[random.nextInt(CLASSES.length)]);
+
+            selector.append(SELECTOR_TAILS[random.nextInt(SELECTOR_TAILS.length)]);
+            if (selector.length() == 0 || Character.isWhitespace(selector.charAt(selector.length() - 1))
+                    || selector.charAt(selector.length() - 1) == '>' || selector.charAt(selector.length() - 1) == '+')
+                selector.append('*');
+        }
+        return selector.toString();
+    }
+}
@@ -0,0 +1,157 @@
+package ca.on.hojat.renderer.svg.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import ca.on.hojat.renderer.svg.utils.SVGBase.Length;
+import ca.on.hojat.renderer.svg.utils.SVGBase.Unit;
+
+import org.junit.Test;
+
+/**
+ * The scanners only look at the trimmed range of their input, nothing they return may reach into the
+ * whitespace around it.
+ */
+public class TextScannerTest {
+
+    @Test
+    public void blankInputsAreEmpty() {
+        assertTrue(new TextScanner("").empty());
+        assertTrue(new TextScanner(" \t\r\n ").empty());
+        assertNull(new TextScanner("  \n").restOfText());
+    }
+
+    @Test
+    public void restOfTextStopsAtTheTrimmedEnd() {
+        TextScanner scanner = new TextScanner("  12px serif, sans-serif \n\t ");
+        Length size = scanner.nextLength();
+        scanner.skipWhitespace();
+
+        assertEquals(12f, size.value, 0f);
+        assertSame(Unit.px, size.unit);
+        assertEquals("serif, sans-serif", scanner.restOfText());
+        assertTrue(scanner.empty());
+        assertNull(scanner.restOfText());
+    }
+
+    @Test
+    public void tokensStopAtTheTrimmedEnd() {
+        TextScanner scanner = new TextScanner(" \tabc def\n ");
+        assertEquals("abc", scanner.nextToken());
+        scanner.skipWhitespace();
+        assertEquals("def", scanner.nextToken());
+        assertTrue(scanner.empty());
+        assertNull(scanner.nextToken());
+
+        scanner = new TextScanner(" a, b c ,d ");
+        assertEquals("a", scanner.nextTokenWithWhitespace());
+        assertTrue(scanner.skipCommaWhitespace());
+        assertEquals("b c ", scanner.nextTokenWithWhitespace());
+        assertTrue(scanner.skipCommaWhitespace());
+        assertEquals("d", scanner.nextTokenWithWhitespace());
+        assertFalse(scanner.skipCommaWhitespace());
+    }
+
+    @Test
+    public void consumeDoesNotMatchTheTrailingWhitespace() {
+        TextScanner scanner = new TextScanner("ab \n");
+        assertFalse(scanner.consume("ab "));
+        assertTrue(scanner.consume("ab"));
+        assertFalse(scanner.consume(' '));
+        assertTrue(scanner.empty());
+    }
+
+    @Test
+    public void numbersAndUnits() {
+        TextScanner scanner = new TextScanner(" 1.5e2 -3PT 40% 7 1q 2p ");
+        assertEquals(150f, scanner.nextFloat(), 0f);
+        scanner.skipWhitespace();
+
+        Length length = scanner.nextLength();
+        assertEquals(-3f, length.value, 0f);
+        assertSame(Unit.pt, length.unit);
+        scanner.skipWhitespace();
+
+        assertSame(Unit.percent, scanner.nextLength().unit);
+        scanner.skipWhitespace();
+
+        // no unit means pixels, an unknown one isn't consumed
+        assertSame(Unit.px, scanner.nextLength().unit);
+        scanner.skipWhitespace();
+        assertSame(Unit.px, scanner.nextLength().unit);
+        assertEquals("q", scanner.ahead());
+        scanner.nextChar();
+        scanner.skipWhitespace();
+
+        // a unit can't take its second letter from the whitespace after the input
+        assertEquals(2f, scanner.nextFloat(), 0f);
+        assertNull(scanner.nextUnit());
+        assertEquals("p", scanner.restOfText());
+    }
+
+    @Test
+    public void tinyNumbersWithLongSignificands() {
+        // exporters write values close to zero like this, the exponent has to be applied in several steps
+        TextScanner scanner = new TextScanner("7.053303447733004e-45 +.0493032730030150013e-43 1234567890123456789e-63");
+        for (int i = 0; i < 3; i++) {
+            float value = scanner.nextFloat();
+            assertTrue(value + " at " + i, value > 0f && value < 1e-44f);
+            scanner.skipWhitespace();
+        }
+        assertTrue(scanner.empty());
+    }
+
+    @Test
+    public void everyUnitIsFoundIgnoringCase() {
+        for (Unit unit : Unit.values()) {
+            if (unit == Unit.percent)
+                continue;
+            assertSame(unit, TextScanner.unitOf(unit.name(), 0));
+            assertSame(unit, TextScanner.unitOf(unit.name().toUpperCase(java.util.Locale.US), 0));
+        }
+        assertNull(TextScanner.unitOf("pq", 0));
+        assertNull(TextScanner.unitOf("xx", 0));
+    }
+
+    @Test
+    public void wordsFunctionsAndQuotedStrings() {
+        TextScanner scanner = new TextScanner(" rgb ( 1) 'it''s' \"open ");
+        assertEquals("rgb", scanner.nextFunction());
+        scanner.skipWhitespace();
+        assertEquals(1, (int) scanner.nextInteger());
+        assertTrue(scanner.consume(')'));
+        scanner.skipWhitespace();
+
+        assertEquals("it", scanner.nextQuotedString());
+        assertEquals("s", scanner.nextQuotedString());
+        scanner.skipWhitespace();
+
+        // an unterminated string is left where it is
+        assertNull(scanner.nextQuotedString());
+        assertEquals("\"open", scanner.restOfText());
+    }
+
+    @Test
+    public void cssScannerSkipsBlockComments() {
+        CSSTextScanner scanner = new CSSTextScanner(" /* a */ fill /* b\n c */ :  red /**/ ; ");
+        assertEquals("fill", scanner.nextIdentifier());
+        scanner.skipWhitespace();
+        assertTrue(scanner.consume(':'));
+        scanner.skipWhitespace();
+        assertEquals("red", scanner.nextPropertyValue());
+        assertTrue(scanner.consume(';'));
+        assertTrue(scanner.empty());
+    }
+
+    @Test
+    public void cssScannerReadsUrls() {
+        CSSTextScanner scanner = new CSSTextScanner(" url( 'a b.svg' ) url(c.svg) ");
+        assertEquals("a b.svg", scanner.nextURL());
+        scanner.skipWhitespace();
+        assertEquals("c.svg", scanner.nextURL());
+        assertTrue(scanner.empty());
+    }
+}